@@ -2,12 +2,16 @@ package com.dozingcatsoftware.bouncy;
 
 import static com.dozingcatsoftware.bouncy.ScoreView.TOUCH_TO_START_MESSAGE;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -18,6 +22,7 @@ import com.dozingcatsoftware.vectorpinball.util.IOUtils;
 import com.dozingcatsoftware.vectorpinball.model.Field;
 import com.dozingcatsoftware.vectorpinball.model.FieldDriver;
 import com.dozingcatsoftware.vectorpinball.model.GameState;
+import com.dozingcatsoftware.vectorpinball.util.FrameTimeHistogram;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
@@ -123,6 +128,7 @@ public class BouncyActivity extends Activity {
     static String LAST_SCORE_PREFS_KEY = "lastScore";
     static String OLD_HIGHSCORE_PREFS_KEY = "highScore";
     static String INITIAL_LEVEL_PREFS_KEY = "initialLevel";
+    static String STABLE_FRAME_RATE_PREFS_KEY = "stableFrameRate";
 
     boolean useZoom = true;
     static final float ZOOM_FACTOR = 1.5f;
@@ -137,6 +143,8 @@ public class BouncyActivity extends Activity {
     final FieldViewManager fieldViewManager = new FieldViewManager(field, () -> doStartGame(null));
     final FieldDriver fieldDriver = new FieldDriver(field, fieldViewManager::draw);
     OrientationListener orientationListener;
+    // Aligns game frames to display refreshes where Choreographer is available.
+    ChoreographerVsyncSource vsyncSource;
     BroadcastReceiver powerSaveModeReceiver;
     OnBackInvokedCallback backInvokedCallback;
 
@@ -162,6 +170,18 @@ public class BouncyActivity extends Activity {
         this.currentLevel = getInitialLevel();
         resetFieldForCurrentLevel();
 
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            vsyncSource = new ChoreographerVsyncSource();
+            fieldDriver.setVsyncSource(vsyncSource);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+            fieldDriver.setThermalSource(new PowerManagerThermalSource(pm));
+        }
+
+        // Input events need to wake the game thread if it's idle.
+        fieldViewManager.setUpdateRequestedListener(fieldDriver::wakeUp);
+
         canvasFieldView = findViewById(R.id.canvasFieldView);
         canvasFieldView.setManager(fieldViewManager);
 
@@ -388,7 +408,12 @@ public class BouncyActivity extends Activity {
             maxGameFrameRate = Math.min(60f, maxGameFrameRate);
         }
         fieldDriver.setMaxTargetFrameRate(maxGameFrameRate);
+        fieldDriver.setInitialFrameRate(stableFrameRateFromPreferences());
         fieldDriver.resetFrameRate();
+        if (vsyncSource != null) {
+            WindowManager wm = (WindowManager) getSystemService(WINDOW_SERVICE);
+            vsyncSource.setRefreshRate(wm.getDefaultDisplay().getRefreshRate());
+        }
     }
 
     @Override public void onResume() {
@@ -404,9 +429,60 @@ public class BouncyActivity extends Activity {
 
     @Override public void onPause() {
         pauseGame();
+        writeStableFrameRateToPreferences();
+        writeFrameTimeReport();
         super.onPause();
     }
 
+    static final String FRAME_TIME_REPORT_FILE = "frame_times.txt";
+    static final String PREVIOUS_FRAME_TIME_REPORT_FILE = "frame_times_previous.txt";
+    // A few hundred reports. Older ones are moved to the previous file, which is replaced each
+    // time, so the reports never take more than twice this.
+    static final long MAX_FRAME_TIME_REPORT_BYTES = 64 * 1024;
+
+    // Writes reports in order without blocking the UI thread.
+    private final ExecutorService frameTimeReportExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Appends frame time percentiles and jank counts since the last report to a file in the app's
+     * private storage, and resets the histogram. Used to compare frame pacing between builds.
+     */
+    private void writeFrameTimeReport() {
+        FrameTimeHistogram histogram = fieldDriver.getFrameTimeHistogram();
+        if (histogram.getTotalCount() == 0) return;
+        String report = String.format(Locale.US, "%tF %<tT table: %d renderer: %s %s%n",
+                new Date(), currentLevel, currentRendererName(), histogram.summary());
+        histogram.reset();
+        Log.i(TAG, "Frame times: " + report.trim());
+        frameTimeReportExecutor.execute(() -> appendToFrameTimeReportFile(report));
+    }
+
+    // Called on frameTimeReportExecutor.
+    private void appendToFrameTimeReportFile(String report) {
+        File reportFile = getFileStreamPath(FRAME_TIME_REPORT_FILE);
+        if (reportFile.length() > MAX_FRAME_TIME_REPORT_BYTES &&
+                !reportFile.renameTo(getFileStreamPath(PREVIOUS_FRAME_TIME_REPORT_FILE))) {
+            deleteFile(FRAME_TIME_REPORT_FILE);
+        }
+        FileOutputStream out = null;
+        try {
+            out = openFileOutput(FRAME_TIME_REPORT_FILE, MODE_APPEND);
+            out.write(report.getBytes("UTF-8"));
+        }
+        catch (IOException ex) {
+            Log.e(TAG, "Error writing frame time report", ex);
+        }
+        finally {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
     @Override public void onWindowFocusChanged(boolean hasWindowFocus) {
         // This handles the main activity pausing and resuming.
         super.onWindowFocusChanged(hasWindowFocus);
@@ -425,6 +501,7 @@ public class BouncyActivity extends Activity {
             }
             else {
                 unpauseGame();
+                fieldDriver.wakeUp();
             }
         }
     }
@@ -489,6 +566,7 @@ public class BouncyActivity extends Activity {
         state.setPaused(true);
 
         if (orientationListener != null) orientationListener.stop();
+        if (vsyncSource != null) vsyncSource.stop();
         fieldDriver.stop();
         if (glFieldView != null) glFieldView.onPause();
         dialogState = DialogState.MAIN_MENU;
@@ -502,6 +580,7 @@ public class BouncyActivity extends Activity {
 
         handler.postDelayed(this::tick, 75);
         if (orientationListener != null) orientationListener.start();
+        if (vsyncSource != null) vsyncSource.start();
 
         fieldDriver.start();
         if (glFieldView != null) glFieldView.onResume();
@@ -588,6 +667,8 @@ public class BouncyActivity extends Activity {
     @Override public void onDestroy() {
         VPSoundpool.cleanup();
         thumbnailExecutor.shutdownNow();
+        // Let reports from onPause finish writing.
+        frameTimeReportExecutor.shutdown();
         if (powerSaveModeReceiver != null) {
             unregisterReceiver(powerSaveModeReceiver);
         }
@@ -667,6 +748,8 @@ public class BouncyActivity extends Activity {
         VPSoundpool.setSoundEnabled(prefs.getBoolean("sound", true));
         VPSoundpool.setMusicEnabled(prefs.getBoolean("music", true));
         useHapticFeedback = prefs.getBoolean("haptic", false);
+        // Redraw with the new settings if the field is idle.
+        fieldDriver.wakeUp();
     }
 
     // Called every 100 milliseconds while app is visible, to update score view and high score.
@@ -712,6 +795,35 @@ public class BouncyActivity extends Activity {
         }
     }
 
+    String currentRendererName() {
+        return (fieldViewManager.fieldRenderer != null) ?
+                fieldViewManager.fieldRenderer.getClass().getSimpleName() : "none";
+    }
+
+    // The sustainable frame rate depends on both the table and the renderer.
+    String stableFrameRatePrefsKey() {
+        return STABLE_FRAME_RATE_PREFS_KEY + "." + currentLevel + "." + currentRendererName();
+    }
+
+    /**
+     * Returns the frame rate that was last maintained for the current table and renderer, or 0 if
+     * none has been recorded. Starting at this rate avoids a slowdown while the FrameRateManager
+     * finds that it can't maintain higher rates (e.g. because the system limits games to 60fps).
+     */
+    float stableFrameRateFromPreferences() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
+        return prefs.getFloat(stableFrameRatePrefsKey(), 0f);
+    }
+
+    void writeStableFrameRateToPreferences() {
+        double rate = fieldDriver.getStableFrameRate();
+        if (rate <= 0) return;
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putFloat(stableFrameRatePrefsKey(), (float) rate);
+        editor.commit();
+    }
+
     // Store separate high scores for each field, using unique suffix in prefs key.
     String highScorePrefsKeyForLevel(int theLevel) {
         return HIGHSCORES_PREFS_KEY + "." + theLevel;
@@ -853,6 +965,7 @@ public class BouncyActivity extends Activity {
                     field.startGame();
                 }
             }
+            fieldDriver.wakeUp();
             VPSoundpool.playStart();
             endGameTime = null;
             updateUiControls();
@@ -865,6 +978,7 @@ public class BouncyActivity extends Activity {
         synchronized (field) {
             field.endGame();
         }
+        fieldDriver.wakeUp();
     }
 
     public void doPreferences(View view) {
@@ -891,6 +1005,7 @@ public class BouncyActivity extends Activity {
     }
 
     void switchToTable(int tableNum) {
+        writeStableFrameRateToPreferences();
         this.currentLevel = tableNum;
         synchronized (field) {
             resetFieldForCurrentLevel();
@@ -899,7 +1014,9 @@ public class BouncyActivity extends Activity {
         this.highScores = this.highScoresFromPreferencesForCurrentLevel();
         this.lastScore = this.lastScoreFromPreferencesForCurrentLevel();
         scoreView.setHighScores(highScores);
+        fieldDriver.wakeUp();
         // Performance can be different on different tables.
+        fieldDriver.setInitialFrameRate(stableFrameRateFromPreferences());
         fieldDriver.resetFrameRate();
     }
 
@@ -919,6 +1036,9 @@ public class BouncyActivity extends Activity {
 
     void resetFieldForCurrentLevel() {
         field.resetForLayoutMap(FieldLayoutReader.layoutMapForLevel(this, currentLevel));
+        Log.i(TAG, String.format(Locale.US, "Table %d: created %d bodies in %.2f ms",
+                currentLevel, field.getLayoutBodyCount(),
+                field.getLayoutBodyCreationNanos() / 1e6));
     }
 
     public void showHighScore(View view) {
@@ -3,13 +3,17 @@ package com.dozingcatsoftware.bouncy;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
+import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
+import com.dozingcatsoftware.bouncy.util.DrawCommandRecorder;
 import com.dozingcatsoftware.vectorpinball.model.Color;
+import com.dozingcatsoftware.vectorpinball.model.Field;
 import com.dozingcatsoftware.vectorpinball.model.IFieldRenderer;
 
 public class CanvasFieldView extends SurfaceView implements IFieldRenderer.FloatOnlyRenderer {
@@ -17,6 +21,22 @@ public class CanvasFieldView extends SurfaceView implements IFieldRenderer.Float
     public CanvasFieldView(Context context, AttributeSet attrs) {
         super(context, attrs);
         setFocusable(true);
+        getHolder().addCallback(new SurfaceHolder.Callback() {
+            @Override public void surfaceCreated(SurfaceHolder holder) {
+                needsFullRedraw = true;
+                if (manager != null) manager.requestUpdate();
+            }
+
+            @Override public void surfaceChanged(
+                    SurfaceHolder holder, int format, int width, int height) {
+                needsFullRedraw = true;
+                if (manager != null) manager.requestUpdate();
+            }
+
+            @Override public void surfaceDestroyed(SurfaceHolder holder) {
+                needsFullRedraw = true;
+            }
+        });
     }
 
     FieldViewManager manager;
@@ -28,7 +48,19 @@ public class CanvasFieldView extends SurfaceView implements IFieldRenderer.Float
         paint.setAntiAlias(true);
     }
 
-    Canvas canvas;
+    // Draw commands for the current and previous frames. Elements draw into the recorder, and the
+    // result is compared to the previous frame so that unchanged frames aren't drawn at all, and
+    // frames where only a few things moved only repaint the affected region.
+    DrawCommandRecorder currentFrame = new DrawCommandRecorder();
+    DrawCommandRecorder previousFrame = new DrawCommandRecorder();
+    float[] dirtyBounds = new float[4];
+    Rect dirtyRect = new Rect();
+    float previousLineWidth = -1;
+    // Set when the surface is (re)created or resized, since its contents are then undefined.
+    volatile boolean needsFullRedraw = true;
+
+    // If the changed area is at least this fraction of the view, redraw everything.
+    static final float MAX_DIRTY_AREA_FRACTION = 0.5f;
 
     public void setManager(FieldViewManager value) {
         this.manager = value;
@@ -52,58 +84,183 @@ public class CanvasFieldView extends SurfaceView implements IFieldRenderer.Float
 
     /**
      * Main draw method, called from FieldDriver's game thread. Calls each FieldElement's draw()
-     * method passing itself as the IFieldRenderer implementation.
+     * method passing itself as the IFieldRenderer implementation, which records the draw commands.
+     * If the commands are identical to the previous frame, nothing is drawn. If only some commands
+     * changed, only the region they cover (in this frame and the previous one) is repainted.
      */
     @Override public void doDraw() {
-        Canvas c = this.getHolder().lockCanvas();
-        if (c == null) return;
-        c.drawARGB(255, 0, 0, 0);
-        paint.setStrokeWidth(manager.getLineWidth());
-        this.canvas = c;
+        float lineWidth = manager.getLineWidth();
+        currentFrame.clear();
+        // Stroke width and antialiasing can extend up to a line width beyond the geometry.
+        currentFrame.setBoundsPadding(lineWidth + 1);
+        // Elements read positions from Box2D bodies, which are freed if the main thread switches
+        // tables, so hold the lock while recording. Replaying the frame doesn't need it.
+        Field field = manager.getField();
+        synchronized (field) {
+            field.draw(this);
+        }
+
+        boolean fullRedraw = needsFullRedraw || lineWidth != previousLineWidth ||
+                !currentFrame.computeDirtyBounds(previousFrame, dirtyBounds);
+        if (!fullRedraw) {
+            if (dirtyBounds[0] > dirtyBounds[2]) {
+                // Identical to what's already on screen.
+                return;
+            }
+            int width = getWidth();
+            int height = getHeight();
+            dirtyRect.set(
+                    Math.max(0, (int) Math.floor(dirtyBounds[0])),
+                    Math.max(0, (int) Math.floor(dirtyBounds[1])),
+                    Math.min(width, (int) Math.ceil(dirtyBounds[2])),
+                    Math.min(height, (int) Math.ceil(dirtyBounds[3])));
+            if (dirtyRect.isEmpty()) {
+                // Changes were entirely offscreen.
+                swapFrames();
+                return;
+            }
+            long dirtyArea = (long) dirtyRect.width() * dirtyRect.height();
+            fullRedraw = dirtyArea >= MAX_DIRTY_AREA_FRACTION * width * height;
+        }
+
+        SurfaceHolder holder = this.getHolder();
+        // lockCanvas(Rect) may expand the rect, and the returned canvas is clipped to it.
+        Canvas c = fullRedraw ? holder.lockCanvas() : holder.lockCanvas(dirtyRect);
+        if (c == null) {
+            needsFullRedraw = true;
+            return;
+        }
         try {
-            manager.getField().draw(this);
+            c.drawARGB(255, 0, 0, 0);
+            paint.setStrokeWidth(lineWidth);
+            replayFrame(c, currentFrame);
         }
         finally {
-            this.getHolder().unlockCanvasAndPost(c);
+            holder.unlockCanvasAndPost(c);
+        }
+        needsFullRedraw = false;
+        previousLineWidth = lineWidth;
+        swapFrames();
+    }
+
+    private void swapFrames() {
+        DrawCommandRecorder tmp = previousFrame;
+        previousFrame = currentFrame;
+        currentFrame = tmp;
+    }
+
+    // Paint state last set during replay, so Paint is only updated when these change.
+    int paintColor;
+    Paint.Style paintStyle;
+    // Reusable buffer of line endpoints for Canvas.drawLines.
+    float[] lineBuffer = new float[1024];
+
+    void replayFrame(Canvas c, DrawCommandRecorder frame) {
+        // The stroke width may have been changed, so always start by setting color and style.
+        setPaintColor(frame.size() > 0 ? frame.colorAt(0) : 0, true);
+        setPaintStyle(Paint.Style.STROKE, true);
+        int size = frame.size();
+        int i = 0;
+        while (i < size) {
+            int opcode = frame.opcodeAt(i);
+            setPaintColor(frame.colorAt(i), false);
+            switch (opcode) {
+                case DrawCommandRecorder.LINE:
+                    i = drawLineRun(c, frame, i);
+                    continue;
+                case DrawCommandRecorder.FILL_CIRCLE:
+                case DrawCommandRecorder.FRAME_CIRCLE:
+                    setPaintStyle(opcode == DrawCommandRecorder.FILL_CIRCLE ?
+                            Paint.Style.FILL : Paint.Style.STROKE, false);
+                    c.drawCircle(frame.paramAt(i, 0), frame.paramAt(i, 1),
+                            frame.paramAt(i, 2), paint);
+                    break;
+                case DrawCommandRecorder.ARC:
+                    setPaintStyle(Paint.Style.STROKE, false);
+                    rect.set(frame.paramAt(i, 0), frame.paramAt(i, 1),
+                            frame.paramAt(i, 2), frame.paramAt(i, 3));
+                    c.drawArc(rect, frame.paramAt(i, 4), frame.paramAt(i, 5), false, paint);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown draw command: " + opcode);
+            }
+            i++;
+        }
+    }
+
+    // Draws the line at `start` along with all immediately following lines of the same color
+    // with a single drawLines call. Returns the index of the first command not drawn.
+    private int drawLineRun(Canvas c, DrawCommandRecorder frame, int start) {
+        int color = frame.colorAt(start);
+        int end = start;
+        int size = frame.size();
+        while (end < size &&
+                frame.opcodeAt(end) == DrawCommandRecorder.LINE && frame.colorAt(end) == color) {
+            end++;
+        }
+        int numFloats = 4 * (end - start);
+        if (lineBuffer.length < numFloats) {
+            lineBuffer = new float[Math.max(numFloats, 2 * lineBuffer.length)];
+        }
+        int offset = 0;
+        for (int i = start; i < end; i++) {
+            lineBuffer[offset++] = frame.paramAt(i, 0);
+            lineBuffer[offset++] = frame.paramAt(i, 1);
+            lineBuffer[offset++] = frame.paramAt(i, 2);
+            lineBuffer[offset++] = frame.paramAt(i, 3);
+        }
+        // drawLines ignores the paint style, so it doesn't need to be changed.
+        c.drawLines(lineBuffer, 0, numFloats, paint);
+        return end;
+    }
+
+    private void setPaintColor(int color, boolean force) {
+        if (force || color != paintColor) {
+            paint.setColor(Color.toARGB(color));
+            paintColor = color;
+        }
+    }
+
+    private void setPaintStyle(Paint.Style style, boolean force) {
+        if (force || style != paintStyle) {
+            paint.setStyle(style);
+            paintStyle = style;
         }
     }
 
     // Implementation of IFieldRenderer drawing methods that FieldElement classes can call.
     // Assumes cacheScaleAndOffsets has been called.
     @Override public void drawLine(float x1, float y1, float x2, float y2, int color) {
-        this.paint.setColor(Color.toARGB(color));
-        this.canvas.drawLine(
+        currentFrame.addLine(
                 manager.world2pixelX(x1), manager.world2pixelY(y1),
                 manager.world2pixelX(x2), manager.world2pixelY(y2),
-                this.paint);
+                color);
     }
 
     @Override public void drawLinePath(float[] xEndpoints, float[] yEndpoints, int color) {
-        this.paint.setColor(Color.toARGB(color));
         float x1 = manager.world2pixelX(xEndpoints[0]);
         float y1 = manager.world2pixelY(yEndpoints[0]);
         for (int i = 1; i < xEndpoints.length; i++) {
             float x2 = manager.world2pixelX(xEndpoints[i]);
             float y2 = manager.world2pixelY(yEndpoints[i]);
-            this.canvas.drawLine(x1, y1, x2, y2, this.paint);
+            currentFrame.addLine(x1, y1, x2, y2, color);
             x1 = x2;
             y1 = y2;
         }
     }
 
     @Override public void fillCircle(float cx, float cy, float radius, int color) {
-        drawCircle(cx, cy, radius, color, Paint.Style.FILL);
+        drawCircle(cx, cy, radius, color, true);
     }
 
     @Override public void frameCircle(float cx, float cy, float radius, int color) {
-        drawCircle(cx, cy, radius, color, Paint.Style.STROKE);
+        drawCircle(cx, cy, radius, color, false);
     }
 
-    void drawCircle(float cx, float cy, float radius, int color, Paint.Style style) {
-        this.paint.setColor(Color.toARGB(color));
-        this.paint.setStyle(style);
+    void drawCircle(float cx, float cy, float radius, int color, boolean filled) {
         float rad = radius * manager.getCachedScale();
-        this.canvas.drawCircle(manager.world2pixelX(cx), manager.world2pixelY(cy), rad, paint);
+        currentFrame.addCircle(
+                manager.world2pixelX(cx), manager.world2pixelY(cy), rad, color, filled);
     }
 
     @Override public boolean canDrawArc() {
@@ -114,15 +271,13 @@ public class CanvasFieldView extends SurfaceView implements IFieldRenderer.Float
             float startAngle, float endAngle, int color) {
         // Android drawArc draws in degrees clockwise with 0 at the top. Arguments to this function
         // are in radians, counterclockwise with 0 to the right.
-        this.paint.setColor(Color.toARGB(color));
-        this.paint.setStyle(Paint.Style.STROKE);
         float wcx = manager.world2pixelX(cx);
         float wcy = manager.world2pixelY(cy);
         float wxrad = xRadius * manager.getCachedScale();
         float wyrad = yRadius * manager.getCachedScale();
-        this.rect.set(wcx - wxrad, wcy - wyrad, wcx + wxrad, wcy + wyrad);
         float startDegrees = (float) (360 - Math.toDegrees(endAngle));
         float sweepDegrees = (float) Math.toDegrees(endAngle - startAngle);
-        this.canvas.drawArc(this.rect, startDegrees, sweepDegrees, false, paint);
+        currentFrame.addArc(wcx - wxrad, wcy - wyrad, wcx + wxrad, wcy + wyrad,
+                startDegrees, sweepDegrees, color);
     }
 }
@@ -0,0 +1,80 @@
+package com.dozingcatsoftware.bouncy;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import com.dozingcatsoftware.vectorpinball.util.VsyncSource;
+
+/**
+ * VsyncSource that gets vsync times from Choreographer frame callbacks. Must be created, started,
+ * and stopped on the UI thread; the game thread reads the most recent values and calls setIdle.
+ * Choreographer frame times use the System.nanoTime clock, which is what FrameRateManager uses by
+ * default. Frame callbacks are only requested while started and not idle, so that an idle game
+ * doesn't wake the UI thread on every vsync.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class ChoreographerVsyncSource implements VsyncSource, Choreographer.FrameCallback {
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private volatile long lastVsyncNanos = 0;
+    private volatile long vsyncPeriodNanos = 0;
+    // Only accessed while synchronized on this object.
+    private boolean running = false;
+    private boolean idle = false;
+
+    /** Sets the vsync period from the display refresh rate, e.g. Display.getRefreshRate(). */
+    public void setRefreshRate(float framesPerSecond) {
+        vsyncPeriodNanos = (framesPerSecond > 0) ? (long) (1e9 / framesPerSecond) : 0;
+    }
+
+    /** Starts requesting frame callbacks to track vsync times. */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        updateCallbacks();
+    }
+
+    /**
+     * Stops requesting frame callbacks. Vsync times are invalid until the next callback after
+     * start() is called again, so FrameRateManager will fall back to sleep-based pacing.
+     */
+    public synchronized void stop() {
+        running = false;
+        updateCallbacks();
+    }
+
+    /**
+     * Stops requesting frame callbacks while idle, as with stop(). Can be called from any thread,
+     * because Choreographer allows posting and removing callbacks from other threads.
+     */
+    @Override public synchronized void setIdle(boolean idle) {
+        this.idle = idle;
+        updateCallbacks();
+    }
+
+    private void updateCallbacks() {
+        // Remove first so that there's never more than one pending callback.
+        choreographer.removeFrameCallback(this);
+        if (running && !idle) {
+            choreographer.postFrameCallback(this);
+        }
+        else {
+            lastVsyncNanos = 0;
+        }
+    }
+
+    @Override public synchronized void doFrame(long frameTimeNanos) {
+        if (!running || idle) return;
+        lastVsyncNanos = frameTimeNanos;
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override public long lastVsyncNanos() {
+        return lastVsyncNanos;
+    }
+
+    @Override public long vsyncPeriodNanos() {
+        return vsyncPeriodNanos;
+    }
+}
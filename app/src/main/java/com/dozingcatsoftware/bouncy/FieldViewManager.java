@@ -28,11 +28,27 @@ public class FieldViewManager {
     }
 
     IFieldRenderer fieldRenderer;
+    // Called on input events and view changes, so an idle game thread can update and redraw.
+    Runnable updateRequestedListener;
 
     public void setFieldRenderer(IFieldRenderer renderer) {
         this.fieldRenderer = renderer;
     }
 
+    public void setUpdateRequestedListener(Runnable listener) {
+        this.updateRequestedListener = listener;
+    }
+
+    /**
+     * Notifies the listener that the field may need to be updated or redrawn, for example because
+     * the view's surface was recreated.
+     */
+    public void requestUpdate() {
+        if (updateRequestedListener != null) {
+            updateRequestedListener.run();
+        }
+    }
+
     boolean independentFlippers;
     float maxZoom = 1.0f;
     int customLineWidth = 0;
@@ -155,6 +171,14 @@ public class FieldViewManager {
      * progress, and launches a ball if one is not in play.
      */
     public boolean handleTouchEvent(MotionEvent event) {
+        boolean handled = updateFieldForTouchEvent(event);
+        // Wake the game thread after changing the field, so that it sees a launched ball or
+        // moving flippers rather than going back to waiting.
+        requestUpdate();
+        return handled;
+    }
+
+    private boolean updateFieldForTouchEvent(MotionEvent event) {
         int actionType = event.getAction() & MotionEvent.ACTION_MASK;
         synchronized (field) {
             if (!field.getGameState().isGameInProgress() || field.getGameState().isPaused()) {
@@ -307,6 +331,12 @@ public class FieldViewManager {
             KeyEvent.KEYCODE_SPACE, KeyEvent.KEYCODE_ENTER, KeyEvent.KEYCODE_DPAD_CENTER);
 
     public boolean handleKeyDown(int keyCode, KeyEvent event) {
+        boolean handled = updateFieldForKeyDown(keyCode, event);
+        requestUpdate();
+        return handled;
+    }
+
+    private boolean updateFieldForKeyDown(int keyCode, KeyEvent event) {
         // android.util.Log.i("FVM", "key down: " + event.getKeyCode());
         if (event.getAction() == KeyEvent.ACTION_DOWN && event.getRepeatCount() == 0) {
             synchronized (field) {
@@ -323,6 +353,12 @@ public class FieldViewManager {
     }
 
     public boolean handleKeyUp(int keyCode, KeyEvent event) {
+        boolean handled = updateFieldForKeyUp(keyCode, event);
+        requestUpdate();
+        return handled;
+    }
+
+    private boolean updateFieldForKeyUp(int keyCode, KeyEvent event) {
         // android.util.Log.i("FVM", "key up: " + event.getKeyCode());
         if (event.getAction() == KeyEvent.ACTION_UP) {
             synchronized (field) {
@@ -636,12 +636,70 @@ public class GL20Renderer implements IFieldRenderer.FloatOnlyRenderer, GLSurface
         }
     }
 
-    private void addPolygonOutline(
-            float cx, float cy, float radius, int minPolySides,
-            float coreWidthPixels, float aaWidthPixels, int color) {
-        TrigLookupTable.SinCosValues sinCosValues = trigTable.valuesWithSizeAtLeast(minPolySides);
-        int polySides = sinCosValues.size();
+    // Vertex geometry and indices for a polygon outline depend only on the number of sides, the
+    // line widths, and the view height (which converts pixel widths to GL units). Bumpers,
+    // rollovers and other framed circles are drawn every frame with the same few sizes, so this is
+    // computed once per trig table size and reused; drawing an outline is then just scaling and
+    // translating the unit vertices.
+    private static class CircleOutlineTemplate {
+        TrigLookupTable.SinCosValues sinCosValues;
+        float coreWidthPixels;
+        float aaWidthPixels;
+        int viewHeight;
+        // Offsets from the circle's radius in GL units: inner and outer core rings, and if
+        // antialiasing, inner and outer rings that fade to transparent.
+        float[] ringOffsets;
+        // For each vertex in buffer order, its unit direction and offset from the radius.
+        float[] unitX;
+        float[] unitY;
+        float[] offsetX;
+        float[] offsetY;
+        boolean[] transparent;
+        // Triangle indices relative to the first vertex of the outline.
+        int[] relativeIndices;
+
+        boolean matches(float coreWidthPixels, float aaWidthPixels, int viewHeight) {
+            return this.coreWidthPixels == coreWidthPixels &&
+                    this.aaWidthPixels == aaWidthPixels &&
+                    this.viewHeight == viewHeight;
+        }
+
+        int numRings() {
+            return ringOffsets.length;
+        }
+    }
+
+    private final CircleOutlineTemplate[] outlineTemplates =
+            new CircleOutlineTemplate[trigTable.numberOfSizes()];
+
+    private CircleOutlineTemplate outlineTemplate(
+            int minPolySides, float coreWidthPixels, float aaWidthPixels) {
+        int sizeIndex = trigTable.indexOfSizeAtLeast(minPolySides);
+        CircleOutlineTemplate t = outlineTemplates[sizeIndex];
+        if (t == null || !t.matches(coreWidthPixels, aaWidthPixels, cachedHeight)) {
+            t = createOutlineTemplate(
+                    trigTable.valuesAtIndex(sizeIndex), coreWidthPixels, aaWidthPixels);
+            outlineTemplates[sizeIndex] = t;
+        }
+        return t;
+    }
+
+    private CircleOutlineTemplate createOutlineTemplate(
+            TrigLookupTable.SinCosValues sinCosValues,
+            float coreWidthPixels, float aaWidthPixels) {
+        CircleOutlineTemplate t = new CircleOutlineTemplate();
+        t.sinCosValues = sinCosValues;
+        t.coreWidthPixels = coreWidthPixels;
+        t.aaWidthPixels = aaWidthPixels;
+        t.viewHeight = cachedHeight;
         boolean useAA = (aaWidthPixels > coreWidthPixels);
+        float corePerpDistGl = coreWidthPixels / cachedHeight;
+        float aaPerpDistGl = aaWidthPixels / cachedHeight;
+        t.ringOffsets = useAA ?
+                new float[] {-corePerpDistGl, corePerpDistGl, -aaPerpDistGl, aaPerpDistGl} :
+                new float[] {-corePerpDistGl, corePerpDistGl};
+
+        int polySides = sinCosValues.size();
         // With or without antialiasing, the inner and outer polygons have vertex indices of:
         // 1--3--...--2n-1
         // 0--2--...--2n-2
@@ -650,8 +708,72 @@ public class GL20Renderer implements IFieldRenderer.FloatOnlyRenderer, GLSurface
         //    1 --  3   -- ... -- 2n-1
         //    0 --  2   -- ... -- 2n-2
         //   2n -- 2n+2 -- ... -- 4n-2
-        int numVerticesToAdd = polySides * (useAA ? 4 : 2);
-        int numIndicesToAdd = polySides * (useAA ? 18 : 6);
+        int numVertices = polySides * t.numRings();
+        t.unitX = new float[numVertices];
+        t.unitY = new float[numVertices];
+        t.offsetX = new float[numVertices];
+        t.offsetY = new float[numVertices];
+        t.transparent = new boolean[numVertices];
+        for (int ringPair = 0; ringPair < t.numRings() / 2; ringPair++) {
+            for (int side = 0; side < polySides; side++) {
+                float cos = sinCosValues.cosAtIndex(side);
+                float sin = sinCosValues.sinAtIndex(side);
+                for (int r = 0; r < 2; r++) {
+                    int ring = 2 * ringPair + r;
+                    int vi = 2 * polySides * ringPair + 2 * side + r;
+                    t.unitX[vi] = cos;
+                    t.unitY[vi] = sin;
+                    t.offsetX[vi] = t.ringOffsets[ring] * cos;
+                    t.offsetY[vi] = t.ringOffsets[ring] * sin;
+                    t.transparent[vi] = (ringPair > 0);
+                }
+            }
+        }
+
+        int[] indices = new int[polySides * (useAA ? 18 : 6)];
+        int i = 0;
+        for (int side = 0; side < polySides; side++) {
+            int baseIndex = 2 * side;
+            // Wrap around to start for the last side.
+            int nextIndex = (side < polySides - 1) ? baseIndex + 2 : 0;
+            indices[i++] = baseIndex + 0;
+            indices[i++] = baseIndex + 1;
+            indices[i++] = nextIndex;
+            indices[i++] = baseIndex + 1;
+            indices[i++] = nextIndex;
+            indices[i++] = nextIndex + 1;
+        }
+        if (useAA) {
+            for (int side = 0; side < polySides; side++) {
+                int baseCoreIndex = 2 * side;
+                int baseAaIndex = baseCoreIndex + 2 * polySides;
+                int nextCoreIndex = (side < polySides - 1) ? baseCoreIndex + 2 : 0;
+                int nextAaIndex = nextCoreIndex + 2 * polySides;
+                indices[i++] = baseAaIndex + 0;
+                indices[i++] = baseCoreIndex + 0;
+                indices[i++] = nextAaIndex;
+                indices[i++] = baseCoreIndex + 0;
+                indices[i++] = nextAaIndex;
+                indices[i++] = nextCoreIndex;
+
+                indices[i++] = baseAaIndex + 1;
+                indices[i++] = baseCoreIndex + 1;
+                indices[i++] = nextAaIndex + 1;
+                indices[i++] = baseCoreIndex + 1;
+                indices[i++] = nextAaIndex + 1;
+                indices[i++] = nextCoreIndex + 1;
+            }
+        }
+        t.relativeIndices = indices;
+        return t;
+    }
+
+    private void addPolygonOutline(
+            float cx, float cy, float radius, int minPolySides,
+            float coreWidthPixels, float aaWidthPixels, int color) {
+        CircleOutlineTemplate t = outlineTemplate(minPolySides, coreWidthPixels, aaWidthPixels);
+        int numVerticesToAdd = t.unitX.length;
+        int numIndicesToAdd = t.relativeIndices.length;
         tmpLineVertices = ensureRemaining(
                 tmpLineVertices, numLineVertices, LINE_VERTEX_STRIDE_INTS * numVerticesToAdd);
         tmpLineVertexIndices = ensureRemaining(
@@ -662,97 +784,124 @@ public class GL20Renderer implements IFieldRenderer.FloatOnlyRenderer, GLSurface
         float glcx = world2glX(cx);
         float glcy = world2glY(cy);
         float glrad = world2glX(radius) - world2glX(0);
-        float corePerpDistGl = coreWidthPixels / cachedHeight;
-        float innerRadius = glrad - corePerpDistGl;
-        float outerRadius = glrad + corePerpDistGl;
         int packedColor = packColor(color);
+        int alphaZeroColor = packColor(Color.withAlpha(color, 0));
 
         int[] vertices = this.tmpLineVertices;
         int[] indices = this.tmpLineVertexIndices;
         int v = this.numLineVertices;
         int i = this.numLineVertexIndices;
-        int numLineVertices = this.numLineVertices / LINE_VERTEX_STRIDE_INTS;
+        int baseIndex = this.numLineVertices / LINE_VERTEX_STRIDE_INTS;
 
-        for (int side = 0; side < polySides; side++) {
-            vertices[v++] = f2i(glcx + innerRadius * sinCosValues.cosAtIndex(side));
-            vertices[v++] = f2i(glcy + innerRadius * sinCosValues.sinAtIndex(side));
+        float[] unitX = t.unitX;
+        float[] unitY = t.unitY;
+        float[] offsetX = t.offsetX;
+        float[] offsetY = t.offsetY;
+        for (int k = 0; k < numVerticesToAdd; k++) {
+            vertices[v++] = f2i(glcx + glrad * unitX[k] + offsetX[k]);
+            vertices[v++] = f2i(glcy + glrad * unitY[k] + offsetY[k]);
             vertices[v++] = f2i(0f);
-            vertices[v++] = packedColor;
-
-            vertices[v++] = f2i(glcx + outerRadius * sinCosValues.cosAtIndex(side));
-            vertices[v++] = f2i(glcy + outerRadius * sinCosValues.sinAtIndex(side));
-            vertices[v++] = f2i(0);
-            vertices[v++] = packedColor;
-
-            int baseIndex = numLineVertices + 2 * side;
-            if (side < polySides - 1) {
-                indices[i++] = baseIndex + 0;
-                indices[i++] = baseIndex + 1;
-                indices[i++] = baseIndex + 2;
-                indices[i++] = baseIndex + 1;
-                indices[i++] = baseIndex + 2;
-                indices[i++] = baseIndex + 3;
-            }
-            else {
-                // Wrap around to start.
-                indices[i++] = baseIndex + 0;
-                indices[i++] = baseIndex + 1;
-                indices[i++] = numLineVertices;
-                indices[i++] = baseIndex + 1;
-                indices[i++] = numLineVertices;
-                indices[i++] = numLineVertices + 1;
-            }
+            vertices[v++] = t.transparent[k] ? alphaZeroColor : packedColor;
+        }
+        int[] relativeIndices = t.relativeIndices;
+        for (int k = 0; k < numIndicesToAdd; k++) {
+            indices[i++] = baseIndex + relativeIndices[k];
         }
 
-        if (useAA) {
-            float aaPerpDistGl = aaWidthPixels / cachedHeight;
-            float aaInnerRadius = glrad - aaPerpDistGl;
-            float aaOuterRadius = glrad + aaPerpDistGl;
-            int alphaZeroColor = packColor(Color.withAlpha(color, 0));
-            for (int side = 0; side < polySides; side++) {
-                vertices[v++] = (f2i(glcx + aaInnerRadius * sinCosValues.cosAtIndex(side)));
-                vertices[v++] = (f2i(glcy + aaInnerRadius * sinCosValues.sinAtIndex(side)));
-                vertices[v++] = (f2i(0f));
-                vertices[v++] = (alphaZeroColor);
+        this.numLineVertices = v;
+        this.numLineVertexIndices = i;
+    }
 
-                vertices[v++] = (f2i(glcx + aaOuterRadius * sinCosValues.cosAtIndex(side)));
-                vertices[v++] = (f2i(glcy + aaOuterRadius * sinCosValues.sinAtIndex(side)));
-                vertices[v++] = (f2i(0f));
-                vertices[v++] = (alphaZeroColor);
+    // Adds the vertices for one angle of an arc: one for each ring of the template.
+    private int addArcVertices(
+            int[] vertices, int v, CircleOutlineTemplate t, float glcx, float glcy, float glrad,
+            float cos, float sin, int packedColor, int alphaZeroColor) {
+        for (int ring = 0; ring < t.numRings(); ring++) {
+            float r = glrad + t.ringOffsets[ring];
+            vertices[v++] = f2i(glcx + r * cos);
+            vertices[v++] = f2i(glcy + r * sin);
+            vertices[v++] = f2i(0f);
+            vertices[v++] = (ring < 2) ? packedColor : alphaZeroColor;
+        }
+        return v;
+    }
 
-                int baseCoreIndex = numLineVertices + 2 * side;
-                int baseAaIndex = baseCoreIndex + 2 * polySides;
-                if (side < polySides - 1) {
-                    indices[i++] = baseAaIndex + 0;
-                    indices[i++] = baseCoreIndex + 0;
-                    indices[i++] = baseAaIndex + 2;
-                    indices[i++] = baseCoreIndex + 0;
-                    indices[i++] = baseAaIndex + 2;
-                    indices[i++] = baseCoreIndex + 2;
-
-                    indices[i++] = baseAaIndex + 1;
-                    indices[i++] = baseCoreIndex + 1;
-                    indices[i++] = baseAaIndex + 3;
-                    indices[i++] = baseCoreIndex + 1;
-                    indices[i++] = baseAaIndex + 3;
-                    indices[i++] = baseCoreIndex + 3;
-                }
-                else {
-                    // Wrap around to start.
-                    indices[i++] = baseAaIndex + 0;
-                    indices[i++] = baseCoreIndex + 0;
-                    indices[i++] = numLineVertices + 2 * polySides;
-                    indices[i++] = baseCoreIndex + 0;
-                    indices[i++] = numLineVertices + 2 * polySides;
-                    indices[i++] = numLineVertices;
-
-                    indices[i++] = baseAaIndex + 1;
-                    indices[i++] = baseCoreIndex + 1;
-                    indices[i++] = numLineVertices + 2 * polySides + 1;
-                    indices[i++] = baseCoreIndex + 1;
-                    indices[i++] = numLineVertices + 2 * polySides + 1;
-                    indices[i++] = numLineVertices + 1;
-                }
+    // Draws a circular arc as an open strip, using the template's unit vectors for the interior
+    // points and exact positions for the endpoints.
+    private void addArcOutline(
+            float cx, float cy, float radius, float startAngle, float endAngle, int minPolySides,
+            float coreWidthPixels, float aaWidthPixels, int color) {
+        CircleOutlineTemplate t = outlineTemplate(minPolySides, coreWidthPixels, aaWidthPixels);
+        TrigLookupTable.SinCosValues sinCosValues = t.sinCosValues;
+        int polySides = sinCosValues.size();
+        double sideAngle = TAU / polySides;
+        double start = startAngle % TAU;
+        if (start < 0) start += TAU;
+        double end = start + (endAngle - startAngle);
+        // Template sides strictly between the endpoints.
+        int firstSide = (int) Math.floor(start / sideAngle) + 1;
+        int lastSide = (int) Math.ceil(end / sideAngle) - 1;
+        int numInteriorSides = Math.max(0, lastSide - firstSide + 1);
+
+        int numRings = t.numRings();
+        int numColumns = numInteriorSides + 2;
+        int numVerticesToAdd = numColumns * numRings;
+        int numIndicesToAdd = (numColumns - 1) * (numRings == 4 ? 18 : 6);
+        tmpLineVertices = ensureRemaining(
+                tmpLineVertices, numLineVertices, LINE_VERTEX_STRIDE_INTS * numVerticesToAdd);
+        tmpLineVertexIndices = ensureRemaining(
+                tmpLineVertexIndices, numLineVertexIndices, numIndicesToAdd);
+
+        recordShapesInBatch(ShapeType.LINE, numLineVertexIndices, numIndicesToAdd);
+
+        float glcx = world2glX(cx);
+        float glcy = world2glY(cy);
+        float glrad = world2glX(radius) - world2glX(0);
+        int packedColor = packColor(color);
+        int alphaZeroColor = packColor(Color.withAlpha(color, 0));
+
+        int[] vertices = this.tmpLineVertices;
+        int[] indices = this.tmpLineVertexIndices;
+        int v = this.numLineVertices;
+        int i = this.numLineVertexIndices;
+        int baseIndex = this.numLineVertices / LINE_VERTEX_STRIDE_INTS;
+
+        v = addArcVertices(vertices, v, t, glcx, glcy, glrad,
+                (float) Math.cos(start), (float) Math.sin(start), packedColor, alphaZeroColor);
+        for (int side = firstSide; side <= lastSide; side++) {
+            int index = side % polySides;
+            v = addArcVertices(vertices, v, t, glcx, glcy, glrad,
+                    sinCosValues.cosAtIndex(index), sinCosValues.sinAtIndex(index),
+                    packedColor, alphaZeroColor);
+        }
+        v = addArcVertices(vertices, v, t, glcx, glcy, glrad,
+                (float) Math.cos(end), (float) Math.sin(end), packedColor, alphaZeroColor);
+
+        // Within each column, vertices are core inner, core outer, and if antialiasing,
+        // transparent inner and transparent outer.
+        for (int col = 0; col < numColumns - 1; col++) {
+            int a = baseIndex + col * numRings;
+            int b = a + numRings;
+            indices[i++] = a + 0;
+            indices[i++] = a + 1;
+            indices[i++] = b + 0;
+            indices[i++] = a + 1;
+            indices[i++] = b + 0;
+            indices[i++] = b + 1;
+            if (numRings == 4) {
+                indices[i++] = a + 2;
+                indices[i++] = a + 0;
+                indices[i++] = b + 2;
+                indices[i++] = a + 0;
+                indices[i++] = b + 2;
+                indices[i++] = b + 0;
+
+                indices[i++] = a + 3;
+                indices[i++] = a + 1;
+                indices[i++] = b + 3;
+                indices[i++] = a + 1;
+                indices[i++] = b + 3;
+                indices[i++] = b + 1;
             }
         }
 
@@ -760,11 +909,15 @@ public class GL20Renderer implements IFieldRenderer.FloatOnlyRenderer, GLSurface
         this.numLineVertexIndices = i;
     }
 
-    @Override public void frameCircle(float cx, float cy, float radius, int color) {
+    private int minPolySidesForRadius(float radius) {
         int radPixels = (int) Math.ceil(fvManager.world2pixelX(radius) - fvManager.world2pixelX(0));
-        // Draw a polygon, with antialiasing if the line width is sufficient. A 64-sided polygon
-        // is good enough for all but the largest circles.
-        int minPolySides = radPixels < 256 ? Math.min(64, radPixels) : radPixels;
+        // A 64-sided polygon is good enough for all but the largest circles.
+        return radPixels < 256 ? Math.min(64, radPixels) : radPixels;
+    }
+
+    @Override public void frameCircle(float cx, float cy, float radius, int color) {
+        int minPolySides = minPolySidesForRadius(radius);
+        // Draw a polygon, with antialiasing if the line width is sufficient.
         if (cachedLineWidth >= 5) {
             addPolygonOutline(cx, cy, radius, minPolySides,
                     cachedLineWidth - 2, cachedLineWidth + 2, color);
@@ -774,6 +927,48 @@ public class GL20Renderer implements IFieldRenderer.FloatOnlyRenderer, GLSurface
         }
     }
 
+    @Override public boolean canDrawArc() {
+        return true;
+    }
+
+    @Override public void drawArc(float cx, float cy, float xRadius, float yRadius,
+            float startAngle, float endAngle, int color) {
+        if (endAngle < startAngle) {
+            float tmp = startAngle;
+            startAngle = endAngle;
+            endAngle = tmp;
+        }
+        int minPolySides = minPolySidesForRadius(Math.max(xRadius, yRadius));
+        if (xRadius != yRadius) {
+            // Elliptical arcs are rare; draw them as line segments through the same angles.
+            double sideAngle = TAU / trigTable.valuesWithSizeAtLeast(minPolySides).size();
+            float prevX = cx + xRadius * (float) Math.cos(startAngle);
+            float prevY = cy + yRadius * (float) Math.sin(startAngle);
+            for (double angle = startAngle + sideAngle; ; angle += sideAngle) {
+                double a = Math.min(angle, endAngle);
+                float x = cx + xRadius * (float) Math.cos(a);
+                float y = cy + yRadius * (float) Math.sin(a);
+                drawLine(prevX, prevY, x, y, color);
+                if (a >= endAngle) break;
+                prevX = x;
+                prevY = y;
+            }
+            return;
+        }
+        if (endAngle - startAngle >= TAU) {
+            frameCircle(cx, cy, xRadius, color);
+            return;
+        }
+        if (cachedLineWidth >= 5) {
+            addArcOutline(cx, cy, xRadius, startAngle, endAngle, minPolySides,
+                    cachedLineWidth - 2, cachedLineWidth + 2, color);
+        }
+        else {
+            addArcOutline(cx, cy, xRadius, startAngle, endAngle, minPolySides,
+                    cachedLineWidth, 0, color);
+        }
+    }
+
     final Object renderLock = new Object();
     boolean renderDone;
 
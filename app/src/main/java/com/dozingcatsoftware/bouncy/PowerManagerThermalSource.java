@@ -0,0 +1,25 @@
+package com.dozingcatsoftware.bouncy;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.PowerManager;
+
+import com.dozingcatsoftware.vectorpinball.util.ThermalSource;
+
+/**
+ * ThermalSource that reports PowerManager's thermal status, whose values are the same as the
+ * ThermalSource constants. Available on API 29 and later.
+ */
+@TargetApi(Build.VERSION_CODES.Q)
+public class PowerManagerThermalSource implements ThermalSource {
+
+    private final PowerManager powerManager;
+
+    public PowerManagerThermalSource(PowerManager powerManager) {
+        this.powerManager = powerManager;
+    }
+
+    @Override public int thermalStatus() {
+        return powerManager.getCurrentThermalStatus();
+    }
+}
@@ -140,6 +140,10 @@ public class ScoreView extends View {
         if (showFps && currentFps > 0) {
             String fpsMessage = String.format("%.1f/%d fps", currentFps, (int) targetFps);
             c.drawText(fpsMessage, 16 * metrics.density, height * 0.25f, fpsPaint);
+            // Average times for physics, game logic and drawing, to show where frame time goes.
+            String timingsMessage = field.getPhaseTimings().recentAveragesSummary();
+            c.drawText(timingsMessage, 16 * metrics.density,
+                    height * 0.25f + 1.2f * fpsPaint.getTextSize(), fpsPaint);
         }
         if (debugMessage != null) {
             c.drawText(debugMessage, width * 0.02f, height * 0.75f, fpsPaint);
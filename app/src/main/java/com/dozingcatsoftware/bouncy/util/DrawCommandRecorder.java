@@ -0,0 +1,140 @@
+package com.dozingcatsoftware.bouncy.util;
+
+import java.util.Arrays;
+
+/**
+ * Records a frame's draw commands in pixel coordinates so they can be compared against the
+ * previous frame and replayed. Each command has an opcode, a color, up to
+ * {@link #MAX_PARAMS} float parameters, and a pixel bounding box. Storage is in flat arrays which
+ * are reused between frames, so recording doesn't allocate once the arrays have grown to the size
+ * of a typical frame.
+ */
+public class DrawCommandRecorder {
+
+    public static final int LINE = 1; // x1, y1, x2, y2
+    public static final int FILL_CIRCLE = 2; // cx, cy, radius
+    public static final int FRAME_CIRCLE = 3; // cx, cy, radius
+    public static final int ARC = 4; // left, top, right, bottom, startDegrees, sweepDegrees
+
+    public static final int MAX_PARAMS = 6;
+    static final int BOUNDS_SIZE = 4;
+
+    int size = 0;
+    int[] opcodes = new int[256];
+    int[] colors = new int[256];
+    float[] params = new float[256 * MAX_PARAMS];
+    float[] bounds = new float[256 * BOUNDS_SIZE];
+
+    // Padding added to bounding boxes to account for stroke width and antialiasing.
+    float boundsPadding = 0;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setBoundsPadding(float value) {
+        boundsPadding = value;
+    }
+
+    public int opcodeAt(int index) {
+        return opcodes[index];
+    }
+
+    public int colorAt(int index) {
+        return colors[index];
+    }
+
+    public float paramAt(int index, int paramIndex) {
+        return params[index * MAX_PARAMS + paramIndex];
+    }
+
+    private int add(int opcode, int color, float minX, float minY, float maxX, float maxY) {
+        if (size == opcodes.length) {
+            int newCapacity = 2 * size;
+            opcodes = Arrays.copyOf(opcodes, newCapacity);
+            colors = Arrays.copyOf(colors, newCapacity);
+            params = Arrays.copyOf(params, newCapacity * MAX_PARAMS);
+            bounds = Arrays.copyOf(bounds, newCapacity * BOUNDS_SIZE);
+        }
+        int index = size++;
+        opcodes[index] = opcode;
+        colors[index] = color;
+        int b = index * BOUNDS_SIZE;
+        bounds[b] = minX - boundsPadding;
+        bounds[b + 1] = minY - boundsPadding;
+        bounds[b + 2] = maxX + boundsPadding;
+        bounds[b + 3] = maxY + boundsPadding;
+        return index * MAX_PARAMS;
+    }
+
+    public void addLine(float x1, float y1, float x2, float y2, int color) {
+        int p = add(LINE, color,
+                Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+        params[p] = x1;
+        params[p + 1] = y1;
+        params[p + 2] = x2;
+        params[p + 3] = y2;
+    }
+
+    public void addCircle(float cx, float cy, float radius, int color, boolean filled) {
+        int p = add(filled ? FILL_CIRCLE : FRAME_CIRCLE, color,
+                cx - radius, cy - radius, cx + radius, cy + radius);
+        params[p] = cx;
+        params[p + 1] = cy;
+        params[p + 2] = radius;
+    }
+
+    public void addArc(float left, float top, float right, float bottom,
+            float startDegrees, float sweepDegrees, int color) {
+        // Bounds are the full oval; tighter bounds aren't worth computing for the few arcs drawn.
+        int p = add(ARC, color, left, top, right, bottom);
+        params[p] = left;
+        params[p + 1] = top;
+        params[p + 2] = right;
+        params[p + 3] = bottom;
+        params[p + 4] = startDegrees;
+        params[p + 5] = sweepDegrees;
+    }
+
+    boolean commandEquals(int index, DrawCommandRecorder other) {
+        if (opcodes[index] != other.opcodes[index] || colors[index] != other.colors[index]) {
+            return false;
+        }
+        int p = index * MAX_PARAMS;
+        for (int i = 0; i < MAX_PARAMS; i++) {
+            if (params[p + i] != other.params[p + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compares this frame's commands to those of {@code previous}. Returns false if the frames
+     * can't be compared command-by-command (i.e. they have different numbers of commands), in
+     * which case the whole frame should be redrawn. Otherwise returns true and stores the union of
+     * the bounds of all changed commands, from both frames, in {@code dirty} as
+     * [left, top, right, bottom]. If nothing changed, dirty[0] will be greater than dirty[2].
+     */
+    public boolean computeDirtyBounds(DrawCommandRecorder previous, float[] dirty) {
+        if (size != previous.size) return false;
+        dirty[0] = dirty[1] = Float.POSITIVE_INFINITY;
+        dirty[2] = dirty[3] = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            if (!commandEquals(i, previous)) {
+                unionBounds(dirty, bounds, i * BOUNDS_SIZE);
+                unionBounds(dirty, previous.bounds, i * BOUNDS_SIZE);
+            }
+        }
+        return true;
+    }
+
+    private static void unionBounds(float[] dirty, float[] b, int offset) {
+        dirty[0] = Math.min(dirty[0], b[offset]);
+        dirty[1] = Math.min(dirty[1], b[offset + 1]);
+        dirty[2] = Math.max(dirty[2], b[offset + 2]);
+        dirty[3] = Math.max(dirty[3], b[offset + 3]);
+    }
+}
@@ -44,11 +44,27 @@ public class TrigLookupTable {
     }
 
     public SinCosValues valuesWithSizeAtLeast(int minSize) {
+        return values[indexOfSizeAtLeast(minSize)];
+    }
+
+    /**
+     * Returns the index of the smallest table with at least `minSize` values, or the index of the
+     * largest table if none are that large. Callers can use this to cache data per table.
+     */
+    public int indexOfSizeAtLeast(int minSize) {
         for (int i = 0; i < sizes.length; i++) {
             if (sizes[i] >= minSize) {
-                return values[i];
+                return i;
             }
         }
-        return values[values.length - 1];
+        return sizes.length - 1;
+    }
+
+    public SinCosValues valuesAtIndex(int index) {
+        return values[index];
+    }
+
+    public int numberOfSizes() {
+        return sizes.length;
     }
 }
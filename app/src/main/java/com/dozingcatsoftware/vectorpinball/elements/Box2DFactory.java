@@ -1,46 +1,163 @@
 package com.dozingcatsoftware.vectorpinball.elements;
 
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.CircleShape;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
 import com.badlogic.gdx.physics.box2d.World;
 
 /**
  * Methods to create Box2D shapes.
+ *
+ * Box2D copies shapes and definitions when it creates bodies and fixtures, so the same objects
+ * can be used for many bodies. When many bodies are created at once, such as when loading a
+ * table, call beginBatch first and endBatch afterwards. In between, the methods called on the
+ * same thread reuse a single set of definitions and native shapes, which endBatch disposes.
+ * Outside of a batch, each call creates its own shape and disposes it before returning.
  */
 public class Box2DFactory {
 
     /** Box2D's default fixture friction, used for walls unless overridden. */
     public static final float DEFAULT_WALL_FRICTION = 0.2f;
 
-    /** Creates a circle object with the given position and radius. Resitution defaults to 0.6. */
-    public static Body createCircle(World world, float x, float y, float radius, boolean isStatic) {
-        CircleShape sd = new CircleShape();
-        sd.setRadius(radius);
+    /**
+     * Reusable definitions and shapes for creating bodies, and statistics about the bodies
+     * created with them.
+     */
+    public static class BodyBatch {
+        final BodyDef bodyDef = new BodyDef();
+        final FixtureDef fixtureDef = new FixtureDef();
+        // Native objects, created when first needed and freed by dispose().
+        CircleShape circle;
+        PolygonShape polygon;
+        final boolean temporary;
+        int bodyCount = 0;
+        long creationNanos = 0;
 
-        FixtureDef fdef = new FixtureDef();
-        fdef.shape = sd;
-        fdef.density = 1.0f;
-        fdef.friction = 0.3f;
-        fdef.restitution = 0.6f;
+        BodyBatch(boolean temporary) {
+            this.temporary = temporary;
+        }
+
+        /** Returns the number of bodies created in this batch. */
+        public int getBodyCount() {
+            return bodyCount;
+        }
+
+        /** Returns the total time spent creating bodies and fixtures in this batch. */
+        public long getCreationNanos() {
+            return creationNanos;
+        }
+
+        CircleShape circle(float radius) {
+            if (circle == null) {
+                circle = new CircleShape();
+            }
+            circle.setRadius(radius);
+            return circle;
+        }
+
+        PolygonShape box(float halfWidth, float halfHeight) {
+            if (polygon == null) {
+                polygon = new PolygonShape();
+            }
+            polygon.setAsBox(halfWidth, halfHeight);
+            return polygon;
+        }
+
+        // Restores the Box2D defaults for the fields that the factory methods change.
+        BodyDef resetBodyDef(BodyDef.BodyType type, float x, float y) {
+            bodyDef.type = type;
+            bodyDef.position.set(x, y);
+            bodyDef.angle = 0;
+            bodyDef.allowSleep = true;
+            return bodyDef;
+        }
+
+        FixtureDef resetFixtureDef(Shape shape) {
+            fixtureDef.shape = shape;
+            fixtureDef.density = 0f;
+            fixtureDef.friction = DEFAULT_WALL_FRICTION;
+            fixtureDef.restitution = 0f;
+            fixtureDef.isSensor = false;
+            return fixtureDef;
+        }
+
+        Body createBody(World world, long startNanos) {
+            Body body = world.createBody(bodyDef);
+            if (fixtureDef.shape != null) {
+                body.createFixture(fixtureDef);
+            }
+            fixtureDef.shape = null;
+            bodyCount++;
+            creationNanos += System.nanoTime() - startNanos;
+            return body;
+        }
+
+        void dispose() {
+            if (circle != null) {
+                circle.dispose();
+                circle = null;
+            }
+            if (polygon != null) {
+                polygon.dispose();
+                polygon = null;
+            }
+        }
+    }
+
+    private static final ThreadLocal<BodyBatch> activeBatch = new ThreadLocal<>();
+
+    /**
+     * Starts a batch on the current thread, which must not already have one. Bodies created by
+     * this class on the current thread will use the batch until endBatch is called.
+     */
+    public static void beginBatch() {
+        if (activeBatch.get() != null) {
+            throw new IllegalStateException("Batch already in progress");
+        }
+        activeBatch.set(new BodyBatch(false));
+    }
 
-        BodyDef bd = new BodyDef();
-        bd.allowSleep = true;
-        bd.position.set(x, y);
-        Body body = world.createBody(bd);
-        body.createFixture(fdef);
-        if (isStatic) {
-            body.setType(BodyDef.BodyType.StaticBody);
+    /**
+     * Ends the current thread's batch, disposes its shapes, and returns it for its statistics.
+     */
+    public static BodyBatch endBatch() {
+        BodyBatch batch = activeBatch.get();
+        if (batch == null) {
+            throw new IllegalStateException("No batch in progress");
         }
-        else {
-            body.setType(BodyDef.BodyType.DynamicBody);
+        activeBatch.remove();
+        batch.dispose();
+        return batch;
+    }
+
+    private static BodyBatch currentBatch() {
+        BodyBatch batch = activeBatch.get();
+        return (batch != null) ? batch : new BodyBatch(true);
+    }
+
+    private static Body finish(BodyBatch batch, Body body) {
+        if (batch.temporary) {
+            batch.dispose();
         }
         return body;
     }
 
+    /** Creates a circle object with the given position and radius. Resitution defaults to 0.6. */
+    public static Body createCircle(World world, float x, float y, float radius, boolean isStatic) {
+        long startNanos = System.nanoTime();
+        BodyBatch batch = currentBatch();
+        batch.resetBodyDef(
+                isStatic ? BodyDef.BodyType.StaticBody : BodyDef.BodyType.DynamicBody, x, y);
+        FixtureDef fdef = batch.resetFixtureDef(batch.circle(radius));
+        fdef.density = 1.0f;
+        fdef.friction = 0.3f;
+        fdef.restitution = 0.6f;
+        return finish(batch, batch.createBody(world, startNanos));
+    }
+
     /**
      * Creates a wall by constructing a rectangle whose corners are (xmin,ymin) and (xmax,ymax),
      * and rotating the box counterclockwise through the given angle. Restitution defaults to 0.
@@ -68,28 +185,21 @@ public class Box2DFactory {
     public static Body createWall(
             World world, float xmin, float ymin, float xmax, float ymax,
             float angle, float restitution, float friction) {
+        long startNanos = System.nanoTime();
         float cx = (xmin + xmax) / 2;
         float cy = (ymin + ymax) / 2;
         float hx = Math.abs((xmax - xmin) / 2);
         float hy = Math.abs((ymax - ymin) / 2);
-        PolygonShape wallshape = new PolygonShape();
-        // Don't set the angle here; instead call setTransform on the body below. This allows future
-        // calls to setTransform to adjust the rotation as expected.
-        wallshape.setAsBox(hx, hy, new Vector2(0f, 0f), 0f);
-
-        FixtureDef fdef = new FixtureDef();
-        fdef.shape = wallshape;
+        BodyBatch batch = currentBatch();
+        // Don't rotate the shape; instead set the angle of the body. This allows future calls
+        // to setTransform to adjust the rotation as expected.
+        BodyDef bd = batch.resetBodyDef(BodyDef.BodyType.StaticBody, cx, cy);
+        bd.angle = angle;
+        FixtureDef fdef = batch.resetFixtureDef(batch.box(hx, hy));
         fdef.density = 1.0f;
         if (restitution > 0) fdef.restitution = restitution;
         fdef.friction = friction;
-
-        BodyDef bd = new BodyDef();
-        bd.position.set(cx, cy);
-        Body wall = world.createBody(bd);
-        wall.createFixture(fdef);
-        wall.setType(BodyDef.BodyType.StaticBody);
-        wall.setTransform(cx, cy, angle);
-        return wall;
+        return finish(batch, batch.createBody(world, startNanos));
     }
 
     /** Creates a segment-like thin wall with 0.05 thickness going from (x1,y1) to (x2,y2) */
@@ -113,4 +223,47 @@ public class Box2DFactory {
                 world, cx - mag / 2, cy - 0.05f, cx + mag / 2, cy + 0.05f, angle, restitution,
                 friction);
     }
+
+    /**
+     * Creates a static body with a circular sensor fixture. Sensors don't collide with balls, but
+     * Box2D reports when balls start and stop overlapping them.
+     */
+    public static Body createSensorCircle(World world, float x, float y, float radius) {
+        long startNanos = System.nanoTime();
+        BodyBatch batch = currentBatch();
+        return finish(batch, createSensorBody(
+                batch, world, x, y, batch.circle(radius), startNanos));
+    }
+
+    /**
+     * Creates a static body with a rectangular sensor fixture whose corners are (xmin,ymin) and
+     * (xmax,ymax).
+     */
+    public static Body createSensorRect(
+            World world, float xmin, float ymin, float xmax, float ymax) {
+        long startNanos = System.nanoTime();
+        BodyBatch batch = currentBatch();
+        Shape shape = batch.box(Math.abs(xmax - xmin) / 2, Math.abs(ymax - ymin) / 2);
+        return finish(batch, createSensorBody(
+                batch, world, (xmin + xmax) / 2, (ymin + ymax) / 2, shape, startNanos));
+    }
+
+    private static Body createSensorBody(
+            BodyBatch batch, World world, float x, float y, Shape shape, long startNanos) {
+        batch.resetBodyDef(BodyDef.BodyType.StaticBody, x, y);
+        batch.resetFixtureDef(shape).isSensor = true;
+        return batch.createBody(world, startNanos);
+    }
+
+    /**
+     * Creates a static body with no fixtures at the origin, for callers that add their own
+     * fixtures.
+     */
+    public static Body createEmptyStaticBody(World world) {
+        long startNanos = System.nanoTime();
+        BodyBatch batch = currentBatch();
+        batch.resetBodyDef(BodyDef.BodyType.StaticBody, 0, 0);
+        batch.resetFixtureDef(null);
+        return finish(batch, batch.createBody(world, startNanos));
+    }
 }
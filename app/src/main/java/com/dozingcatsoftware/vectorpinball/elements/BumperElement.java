@@ -8,6 +8,7 @@ import java.util.Map;
 
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.World;
 import com.dozingcatsoftware.vectorpinball.model.Ball;
 import com.dozingcatsoftware.vectorpinball.model.Color;
@@ -70,13 +71,15 @@ public class BumperElement extends FieldElement {
         return bumperBodySet;
     }
 
-    @Override public boolean shouldCallTick() {
-        // Needs to call tick() to decrement flash counter, but can use superclass implementation.
-        return true;
-    }
+    // Reused to avoid allocating memory in handleCollision().
+    final Vector2 impulse = new Vector2();
 
-    Vector2 impulseForBall(Ball ball) {
-        if (this.kick <= 0.01f) return null;
+    /**
+     * Sets `result` to the impulse to apply to the ball when it hits this bumper, and returns
+     * true. Returns false and leaves `result` unchanged if the bumper doesn't kick.
+     */
+    boolean impulseForBall(Ball ball, Vector2 result) {
+        if (this.kick <= 0.01f) return false;
         // Compute unit vector from center of bumper to ball, and scale by kick value to get impulse.
         Vector2 ballpos = ball.getPosition();
         Vector2 thisPos = bumperBody.getPosition();
@@ -84,21 +87,34 @@ public class BumperElement extends FieldElement {
         float iy = ballpos.y - thisPos.y;
         float mag = (float) Math.hypot(ix, iy);
         float scale = this.kick / mag;
-        return new Vector2(ix * scale, iy * scale);
+        result.set(ix * scale, iy * scale);
+        return true;
     }
 
     @Override public void handleCollision(Ball ball, Body bodyHit, Field field) {
-        Vector2 impulse = this.impulseForBall(ball);
-        if (impulse != null) {
-            ball.applyLinearImpulse(impulse);
-            flashForNanos(100_000_000);
+        if (this.impulseForBall(ball, impulse)) {
+            ball.applyLinearImpulse(impulse.x, impulse.y);
+            flashForNanos(field, 100_000_000);
         }
     }
 
+    /** Returns a new Vector2 with the bumper's center. Use getCenterX/Y to avoid allocating. */
     public Vector2 getCenter() {
         return new Vector2(this.cx, this.cy);
     }
 
+    public float getCenterX() {
+        return (this.bumperBody != null) ? this.bumperBody.getPosition().x : this.cx;
+    }
+
+    public float getCenterY() {
+        return (this.bumperBody != null) ? this.bumperBody.getPosition().y : this.cy;
+    }
+
+    /**
+     * Immediately moves the bumper to the given position. Box2D doesn't treat this as movement,
+     * so a ball touching the bumper can end up inside it; use setVelocityToReach to animate.
+     */
     public void setCenter(float cx, float cy) {
         this.cx = cx;
         this.cy = cy;
@@ -107,20 +123,36 @@ public class BumperElement extends FieldElement {
         }
     }
 
+    /**
+     * Sets the velocity of the bumper so that it reaches the given position after the next
+     * `seconds` of world steps. The first call makes the bumper's body kinematic, so that Box2D
+     * moves it and handles collisions with balls as continuous motion. The bumper must have a
+     * body, so its radius must be greater than 0.
+     */
+    public void setVelocityToReach(float x, float y, float seconds) {
+        if (this.bumperBody.getType() != BodyDef.BodyType.KinematicBody) {
+            this.bumperBody.setType(BodyDef.BodyType.KinematicBody);
+        }
+        Vector2 position = this.bumperBody.getPosition();
+        this.bumperBody.setLinearVelocity((x - position.x) / seconds, (y - position.y) / seconds);
+    }
+
     public void setNewOuterColor(Integer color) {
         this.newOuterColor = color;
     }
 
     @Override public void draw(Field field, IFieldRenderer renderer) {
+        float x = getCenterX();
+        float y = getCenterY();
         if (outerRadius > 0) {
             int baseOuterColor = this.newOuterColor != null ? this.newOuterColor : this.outerColor;
             int currentOuterColor = colorApplyingLayerOrFlash(
                     baseOuterColor, this.inactiveLayerOuterColor);
-            renderer.fillCircle(this.cx, this.cy, outerRadius, currentOuterColor);
+            renderer.fillCircle(x, y, outerRadius, currentOuterColor);
         }
         if (radius > 0) {
             int currentInnerColor = currentColor(DEFAULT_COLOR);
-            renderer.fillCircle(this.cx, this.cy, radius, currentInnerColor);
+            renderer.fillCircle(x, y, radius, currentInnerColor);
         }
     }
 }
@@ -6,8 +6,10 @@ import java.util.List;
 import java.util.Map;
 
 import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.World;
 import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.BallGrid;
 import com.dozingcatsoftware.vectorpinball.model.Color;
 import com.dozingcatsoftware.vectorpinball.model.Field;
 import com.dozingcatsoftware.vectorpinball.model.IDrawable;
@@ -25,6 +27,8 @@ public abstract class FieldElement implements IDrawable {
     public static final String COLOR_PROPERTY = "color";
     public static final String LAYER_PROPERTY = "layer";
     public static final String INACTIVE_LAYER_COLOR_PROPERTY = "inactiveLayerColor";
+    // For elements that detect balls in an area, whether to use Box2D sensor fixtures.
+    public static final String SENSOR_FIXTURE_PROPERTY = "sensorFixture";
 
     Map<String, ?> parameters;
     World box2dWorld;
@@ -36,7 +40,7 @@ public abstract class FieldElement implements IDrawable {
     // Between 0 and 1, increases if a ball is at this element's layer, decreases if not.
     double layerColorFraction = 0;
 
-    long flashCounter = 0; // Inverts colors when >0, decrements in tick().
+    long flashCounter = 0; // Inverts colors when >0, decrements in tick() while >0.
     long score = 0;
 
     // Default wall color shared by WallElement, WallArcElement, WallPathElement.
@@ -111,18 +115,46 @@ public abstract class FieldElement implements IDrawable {
     }
 
     /**
-     * Called after creation to determine if tick() needs to be called after every frame is
-     * simulated. Default returns false unless there is a separate inactive layer color. Subclasses
-     * can override. This is an optimization to avoid needless method calls in the game loop.
+     * Called after creation to determine when tick() needs to be called. The default is
+     * ON_DEMAND, so tick() is only called while the element is flashing, transitioning between
+     * active and inactive layer colors, or otherwise has requested ticks with Field.requestTicks.
+     * Subclasses that need to check ball positions or do other work every frame can override.
+     * This is an optimization to avoid needless method calls in the game loop.
      */
-    public boolean shouldCallTick() {
-        return (this.inactiveLayerColor != null);
+    public TickCadence getTickCadence() {
+        return TickCadence.ON_DEMAND;
     }
 
     /**
-     * Called on every update from Field.tick. Default implementation decrements flash counter if
-     * active, subclasses can override to perform additional processing, e.g. RolloverGroupElement
-     * checking for balls within radius of rollovers. Subclasses should call super.tick(field).
+     * Called after tick() for elements that have requested ticks with Field.requestTicks. Returns
+     * true if tick() should continue to be called. The default implementation returns true while
+     * the element is flashing or its layer color is changing. Subclasses that request ticks for
+     * other reasons should override and also check the superclass implementation.
+     */
+    public boolean needsTick(Field field) {
+        if (this.flashCounter > 0) {
+            return true;
+        }
+        if (this.inactiveLayerColor != null) {
+            double targetFraction = field.hasBallAtLayer(this.getLayer()) ? 1.0 : 0.0;
+            return this.layerColorFraction != targetFraction;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the element's color depends on whether a ball is at its layer. Field calls
+     * requestTicks on these elements when the set of layers with balls changes.
+     */
+    public boolean hasInactiveLayerColor() {
+        return this.inactiveLayerColor != null;
+    }
+
+    /**
+     * Called from Field.tick according to the element's tick cadence. Default implementation
+     * decrements flash counter if active and updates the layer color transition; subclasses can
+     * override to perform additional processing, e.g. RolloverGroupElement checking for balls
+     * within radius of rollovers. Subclasses should call super.tick(field).
      */
     public void tick(Field field, long nanos) {
         if (this.flashCounter > 0) {
@@ -151,8 +183,9 @@ public abstract class FieldElement implements IDrawable {
      * Causes the colors returned by red/blue/greenColorComponent methods to be inverted for the
      * given amount of game time. This can be used to flash an element when it is hit by a ball.
      */
-    public void flashForNanos(long nanos) {
+    public void flashForNanos(Field field, long nanos) {
         flashCounter = nanos;
+        field.requestTicks(this);
     }
 
     /**
@@ -178,6 +211,14 @@ public abstract class FieldElement implements IDrawable {
      */
     public abstract void draw(Field field, IFieldRenderer renderer);
 
+    /**
+     * Called when the layout is loaded. Elements that look for balls in fixed areas should add
+     * those areas to `grid`, so that it can be sized for efficient queries. The default
+     * implementation does nothing.
+     */
+    public void registerBallRegions(BallGrid grid) {
+    }
+
     /**
      * Called when a ball collides with a Body in this element. The default implementation does
      * nothing (allowing objects to bounce off each other normally). Subclasses can override to
@@ -186,6 +227,58 @@ public abstract class FieldElement implements IDrawable {
     public void handleCollision(Ball ball, Body bodyHit, Field field) {
     }
 
+    /**
+     * Called when a ball starts or stops overlapping a sensor fixture in one of this element's
+     * bodies. Box2D reports these during World.step, when bodies can't be modified, so Field
+     * queues them and calls this method after the step. `ball` may have been removed from the
+     * field by then, in which case `began` is false, and its slot may have been given to another
+     * ball; `ballSlot` is the ball's slot when the contact was reported. The default
+     * implementation does nothing.
+     */
+    public void handleSensorContact(
+            Ball ball, int ballSlot, Fixture fixture, boolean began, Field field) {
+    }
+
+    /**
+     * Returns the collection's StaticWallCompiler if this element's walls can be merged with
+     * other static walls, otherwise null. Walls with IDs aren't merged, because delegates may
+     * look them up and modify them, and neither are walls that score.
+     */
+    StaticWallCompiler staticWallCompilerIfMergeable(FieldElementCollection collection) {
+        if (this.score != 0 || !this.elementID.isEmpty()) {
+            return null;
+        }
+        return collection.getStaticWallCompiler();
+    }
+
+    /**
+     * Returns true if nothing can change how this element is drawn after it's created, so Field
+     * may reorder it among adjacent elements that also return true, to group their colors. The
+     * default is false; static walls override it.
+     */
+    public boolean hasFixedAppearance() {
+        return false;
+    }
+
+    /**
+     * Returns true if delegates can't look this element up, it doesn't score, and its color
+     * doesn't depend on which layers have balls. Subclasses use this in hasFixedAppearance().
+     */
+    boolean hasFixedColor() {
+        return this.score == 0 && this.elementID.isEmpty() && this.inactiveLayerColor == null;
+    }
+
+    /**
+     * Returns whether an element should detect balls with Box2D sensor fixtures rather than
+     * by checking ball positions every tick, from the "sensorFixture" parameter or the layout
+     * default.
+     */
+    static boolean usesSensorFixture(Map<String, ?> params, FieldElementCollection collection) {
+        Object value = params.get(SENSOR_FIXTURE_PROPERTY);
+        return (value != null) ? Boolean.TRUE.equals(value) :
+                collection.getSensorFixturesByDefault();
+    }
+
     /** Returns this element's ID, or null if not specified. */
     public String getElementId() {
         return elementID;
@@ -195,23 +288,27 @@ public abstract class FieldElement implements IDrawable {
         return this.layer;
     }
 
+    /** Returns the color specified in the element's parameters, or null if not specified. */
+    public Integer getInitialColor() {
+        return initialColor;
+    }
+
+    // Expressions in parameters are replaced with their values by FieldLayout before elements are
+    // created (see LayoutExpression), so these methods only need to handle numbers.
     public Object getRawParameterValueForKey(String key) {
         return parameters.get(key);
     }
 
     public float getFloatParameterValueForKey(String key) {
-        // TODO: parse function/math expressions.
         return asFloat(parameters.get(key));
     }
 
     public int getIntParameterValueForKey(String key) {
-        // TODO: parse function/math expressions.
         Number num = (Number) parameters.get(key);
         return num.intValue();
     }
 
     public float[] getFloatArrayParameterValueForKey(String key) {
-        // TODO: parse function/math expressions.
         List<?> list = (List<?>) parameters.get(key);
         float[] result = new float[list.size()];
         for (int i = 0; i < list.size(); i++) {
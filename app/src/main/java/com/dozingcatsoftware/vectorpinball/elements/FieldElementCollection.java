@@ -2,8 +2,10 @@ package com.dozingcatsoftware.vectorpinball.elements;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 public class FieldElementCollection {
@@ -16,6 +18,10 @@ public class FieldElementCollection {
     List<FlipperElement> rightFlipperElements = new ArrayList<>();
 
     Map<String, Object> variables = new HashMap<>();
+    // Whether sensors and rollovers use Box2D sensor fixtures if their parameters don't say.
+    boolean sensorFixturesByDefault = false;
+    // Collects static wall geometry to merge into shared bodies, or null if disabled.
+    StaticWallCompiler staticWallCompiler;
 
     public void addElement(FieldElement element) {
         allElements.add(element);
@@ -33,6 +39,52 @@ public class FieldElementCollection {
         variables.put(key, value);
     }
 
+    /**
+     * Replaces variables whose values are expressions with their values. Expressions can use
+     * other variables, in any order. Throws IllegalArgumentException if an expression uses a
+     * variable that isn't set, or if variables depend on each other in a cycle.
+     */
+    public void resolveVariableExpressions() {
+        Set<String> inProgress = new HashSet<>();
+        for (String name : new ArrayList<>(variables.keySet())) {
+            resolveVariable(name, inProgress);
+        }
+    }
+
+    private Object resolveVariable(String name, Set<String> inProgress) {
+        Object value = getVariable(name);
+        if (!LayoutExpression.isExpression(value)) {
+            return value;
+        }
+        if (!inProgress.add(name)) {
+            throw new IllegalArgumentException("Variable depends on itself: " + name);
+        }
+        LayoutExpression expr = LayoutExpression.compile((String) value, null);
+        String[] names = expr.getVariableNames();
+        double[] values = new double[names.length];
+        for (int i = 0; i < names.length; i++) {
+            Object dependency = resolveVariable(names[i], inProgress);
+            if (!(dependency instanceof Number)) {
+                throw new IllegalArgumentException(
+                        "Variable " + names[i] + " used in " + name + " is not a number");
+            }
+            values[i] = ((Number) dependency).doubleValue();
+        }
+        Double result = expr.evaluate(values);
+        variables.put(name, result);
+        inProgress.remove(name);
+        return result;
+    }
+
+    /**
+     * Returns a copy of an element's parameters with expressions replaced by their values, using
+     * the current variables. `params` itself isn't modified, and is returned if it doesn't contain
+     * any expressions. Call after resolveVariableExpressions.
+     */
+    public Object resolveExpressions(Object params) {
+        return LayoutExpression.resolveExpressions(params, variables);
+    }
+
     public List<FieldElement> getAllElements() {
         return allElements;
     }
@@ -63,4 +115,20 @@ public class FieldElementCollection {
     public Object getVariableOrDefault(String key, Object defaultValue) {
         return (variables.containsKey(key)) ? variables.get(key) : defaultValue;
     }
+
+    public boolean getSensorFixturesByDefault() {
+        return sensorFixturesByDefault;
+    }
+
+    public void setSensorFixturesByDefault(boolean value) {
+        sensorFixturesByDefault = value;
+    }
+
+    public StaticWallCompiler getStaticWallCompiler() {
+        return staticWallCompiler;
+    }
+
+    public void setStaticWallCompiler(StaticWallCompiler compiler) {
+        staticWallCompiler = compiler;
+    }
 }
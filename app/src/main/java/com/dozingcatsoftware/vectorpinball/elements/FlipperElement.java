@@ -156,8 +156,12 @@ public class FlipperElement extends FieldElement {
         return flipperBodySet;
     }
 
-    @Override public boolean shouldCallTick() {
-        return true;
+    /**
+     * Field requests ticks when the flipper is engaged, and tick() slows the flipper when it
+     * reaches the top. After that there's nothing to do until it's engaged again.
+     */
+    @Override public boolean needsTick(Field field) {
+        return getEffectiveMotorSpeed() > 0.5f || super.needsTick(field);
     }
 
     @Override public void tick(Field field, long nanos) {
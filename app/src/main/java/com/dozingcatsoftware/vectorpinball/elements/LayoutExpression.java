@@ -0,0 +1,482 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An arithmetic expression in a table layout. Any string parameter or variable value that starts
+ * with "=" is an expression, for example "=RotatingBumper2CenterX + 1.5*cos(rad(30))". Expressions
+ * support numbers, variable names, + - * / % ^ (power), parentheses, the constants pi and tau, and
+ * the functions in FUNCTIONS.
+ *
+ * Expressions are compiled to a small stack program. Variables whose values are known when the
+ * expression is compiled are replaced by their values, and operations whose inputs are all
+ * constant are computed during compilation, so an expression using only layout variables becomes
+ * a single constant. FieldLayout replaces such expressions in element parameters with their
+ * values before creating elements, so elements only ever see numbers. Expressions compiled without
+ * some variable values keep those variables as slots, whose values are passed to evaluate();
+ * FieldElementCollection does this to resolve variables defined in terms of other variables.
+ */
+public class LayoutExpression {
+
+    public static final String PREFIX = "=";
+
+    // Instructions are stored as int values, with the opcode in the low 8 bits and the operand
+    // (constant or variable index) in the remaining bits.
+    static final int OP_CONST = 0;
+    static final int OP_VAR = 1;
+    static final int OP_ADD = 2;
+    static final int OP_SUB = 3;
+    static final int OP_MUL = 4;
+    static final int OP_DIV = 5;
+    static final int OP_MOD = 6;
+    static final int OP_POW = 7;
+    static final int OP_NEG = 8;
+    static final int OP_SIN = 9;
+    static final int OP_COS = 10;
+    static final int OP_TAN = 11;
+    static final int OP_ATAN2 = 12;
+    static final int OP_SQRT = 13;
+    static final int OP_ABS = 14;
+    static final int OP_MIN = 15;
+    static final int OP_MAX = 16;
+    static final int OP_FLOOR = 17;
+    static final int OP_CEIL = 18;
+    static final int OP_RAD = 19;
+    static final int OP_DEG = 20;
+
+    // Maps function names to {opcode, number of arguments}.
+    static final Map<String, int[]> FUNCTIONS = new HashMap<>();
+    static {
+        FUNCTIONS.put("sin", new int[] {OP_SIN, 1});
+        FUNCTIONS.put("cos", new int[] {OP_COS, 1});
+        FUNCTIONS.put("tan", new int[] {OP_TAN, 1});
+        FUNCTIONS.put("atan2", new int[] {OP_ATAN2, 2});
+        FUNCTIONS.put("sqrt", new int[] {OP_SQRT, 1});
+        FUNCTIONS.put("abs", new int[] {OP_ABS, 1});
+        FUNCTIONS.put("min", new int[] {OP_MIN, 2});
+        FUNCTIONS.put("max", new int[] {OP_MAX, 2});
+        FUNCTIONS.put("floor", new int[] {OP_FLOOR, 1});
+        FUNCTIONS.put("ceil", new int[] {OP_CEIL, 1});
+        FUNCTIONS.put("rad", new int[] {OP_RAD, 1});
+        FUNCTIONS.put("deg", new int[] {OP_DEG, 1});
+    }
+
+    private final String source;
+    private final int[] code;
+    private final double[] constants;
+    private final String[] variableNames;
+    // Reused by evaluate() so that it doesn't allocate.
+    private final double[] stack;
+
+    private LayoutExpression(
+            String source, int[] code, double[] constants, String[] variableNames, int maxDepth) {
+        this.source = source;
+        this.code = code;
+        this.constants = constants;
+        this.variableNames = variableNames;
+        this.stack = new double[maxDepth];
+    }
+
+    /** Returns true if `value` is a string that should be compiled as an expression. */
+    public static boolean isExpression(Object value) {
+        return (value instanceof String) && ((String) value).startsWith(PREFIX);
+    }
+
+    /**
+     * Compiles an expression, with or without the leading "=". Variables with numeric values in
+     * `knownValues` are replaced by those values; other variables are left for evaluate().
+     * `knownValues` may be null. Throws IllegalArgumentException if the expression is invalid.
+     */
+    public static LayoutExpression compile(String source, Map<String, ?> knownValues) {
+        String text = source.startsWith(PREFIX) ? source.substring(PREFIX.length()) : source;
+        Parser parser = new Parser(source, text, knownValues);
+        parser.parseExpression();
+        parser.skipSpaces();
+        if (parser.pos < text.length()) {
+            throw parser.error("Unexpected '" + text.charAt(parser.pos) + "'");
+        }
+        int[] code = new int[parser.code.size()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = parser.code.get(i);
+        }
+        double[] constants = new double[parser.constants.size()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = parser.constants.get(i);
+        }
+        String[] variableNames = parser.variableNames.toArray(new String[0]);
+        return new LayoutExpression(source, code, constants, variableNames, parser.maxDepth);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /** Returns true if the expression doesn't depend on any variables. */
+    public boolean isConstant() {
+        return code.length == 1 && (code[0] & 0xff) == OP_CONST;
+    }
+
+    /** Returns the value of a constant expression. */
+    public double getConstantValue() {
+        if (!isConstant()) {
+            throw new IllegalStateException("Expression is not constant: " + source);
+        }
+        return constants[code[0] >> 8];
+    }
+
+    /**
+     * Returns the names of the variables that weren't known when the expression was compiled.
+     * The values passed to evaluate() are in the same order.
+     */
+    public String[] getVariableNames() {
+        return variableNames.clone();
+    }
+
+    /**
+     * Evaluates the expression using the given values for the variables returned by
+     * getVariableNames. Doesn't allocate, and isn't safe to call from multiple threads at once.
+     */
+    public double evaluate(double[] variableValues) {
+        double[] stack = this.stack;
+        int sp = 0;
+        for (int instruction : code) {
+            int op = instruction & 0xff;
+            switch (op) {
+                case OP_CONST:
+                    stack[sp++] = constants[instruction >> 8];
+                    break;
+                case OP_VAR:
+                    stack[sp++] = variableValues[instruction >> 8];
+                    break;
+                default:
+                    int arity = arity(op);
+                    if (arity == 2) {
+                        sp--;
+                        stack[sp - 1] = apply(op, stack[sp - 1], stack[sp]);
+                    }
+                    else {
+                        stack[sp - 1] = apply(op, stack[sp - 1], 0);
+                    }
+            }
+        }
+        return stack[0];
+    }
+
+    static int arity(int op) {
+        switch (op) {
+            case OP_ADD: case OP_SUB: case OP_MUL: case OP_DIV: case OP_MOD: case OP_POW:
+            case OP_ATAN2: case OP_MIN: case OP_MAX:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    static double apply(int op, double a, double b) {
+        switch (op) {
+            case OP_ADD: return a + b;
+            case OP_SUB: return a - b;
+            case OP_MUL: return a * b;
+            case OP_DIV: return a / b;
+            case OP_MOD: return a % b;
+            case OP_POW: return Math.pow(a, b);
+            case OP_NEG: return -a;
+            case OP_SIN: return Math.sin(a);
+            case OP_COS: return Math.cos(a);
+            case OP_TAN: return Math.tan(a);
+            case OP_ATAN2: return Math.atan2(a, b);
+            case OP_SQRT: return Math.sqrt(a);
+            case OP_ABS: return Math.abs(a);
+            case OP_MIN: return Math.min(a, b);
+            case OP_MAX: return Math.max(a, b);
+            case OP_FLOOR: return Math.floor(a);
+            case OP_CEIL: return Math.ceil(a);
+            case OP_RAD: return Math.toRadians(a);
+            case OP_DEG: return Math.toDegrees(a);
+            default: throw new IllegalArgumentException("Unknown opcode: " + op);
+        }
+    }
+
+    /**
+     * Returns `value` with every expression in it replaced by its value as a Double, using
+     * `variables` for the variable values. Maps and lists are searched recursively. `value` isn't
+     * modified: maps and lists that contain expressions are copied, and ones that don't are
+     * returned as is. Throws IllegalArgumentException if an expression uses a variable that isn't
+     * set.
+     */
+    @SuppressWarnings("unchecked")
+    public static Object resolveExpressions(Object value, Map<String, ?> variables) {
+        if (isExpression(value)) {
+            LayoutExpression expr = compile((String) value, variables);
+            if (!expr.isConstant()) {
+                throw new IllegalArgumentException(
+                        "Variable not set: " + expr.variableNames[0] + " in " + value);
+            }
+            return expr.getConstantValue();
+        }
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            Map<String, Object> resolvedMap = null;
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                Object resolved = resolveExpressions(entry.getValue(), variables);
+                if (resolved != entry.getValue()) {
+                    if (resolvedMap == null) {
+                        resolvedMap = new HashMap<>(map);
+                    }
+                    resolvedMap.put(entry.getKey(), resolved);
+                }
+            }
+            return (resolvedMap != null) ? resolvedMap : map;
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> resolvedList = null;
+            for (int i = 0; i < list.size(); i++) {
+                Object resolved = resolveExpressions(list.get(i), variables);
+                if (resolved != list.get(i)) {
+                    if (resolvedList == null) {
+                        resolvedList = new ArrayList<>(list);
+                    }
+                    resolvedList.set(i, resolved);
+                }
+            }
+            return (resolvedList != null) ? resolvedList : list;
+        }
+        return value;
+    }
+
+    static class Parser {
+        final String source;
+        final String text;
+        final Map<String, ?> knownValues;
+        int pos = 0;
+        final List<Integer> code = new ArrayList<>();
+        final List<Double> constants = new ArrayList<>();
+        final List<String> variableNames = new ArrayList<>();
+        int depth = 0;
+        int maxDepth = 0;
+
+        Parser(String source, String text, Map<String, ?> knownValues) {
+            this.source = source;
+            this.text = text;
+            this.knownValues = knownValues;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(
+                    message + " at position " + pos + " in expression: " + source);
+        }
+
+        void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean consume(char c) {
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void emitConstant(double value) {
+            code.add(OP_CONST | (constants.size() << 8));
+            constants.add(value);
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        void emitVariable(String name) {
+            int index = variableNames.indexOf(name);
+            if (index < 0) {
+                index = variableNames.size();
+                variableNames.add(name);
+            }
+            code.add(OP_VAR | (index << 8));
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        // Adds an operation, or if its inputs are the constants at the end of the program,
+        // replaces them with the result.
+        void emitOperation(int op) {
+            int arity = arity(op);
+            int n = code.size();
+            boolean constantInputs = n >= arity;
+            for (int i = n - arity; constantInputs && i < n; i++) {
+                constantInputs = (code.get(i) & 0xff) == OP_CONST;
+            }
+            if (constantInputs) {
+                // Each OP_CONST adds its own constant, so the inputs are the last constants.
+                double b = (arity == 2) ? constants.remove(constants.size() - 1) : 0;
+                double a = constants.remove(constants.size() - 1);
+                for (int i = 0; i < arity; i++) {
+                    code.remove(code.size() - 1);
+                }
+                depth -= arity;
+                emitConstant(apply(op, a, b));
+            }
+            else {
+                code.add(op);
+                depth -= arity - 1;
+            }
+        }
+
+        // expression := term (('+' | '-') term)*
+        void parseExpression() {
+            parseTerm();
+            while (true) {
+                if (consume('+')) {
+                    parseTerm();
+                    emitOperation(OP_ADD);
+                }
+                else if (consume('-')) {
+                    parseTerm();
+                    emitOperation(OP_SUB);
+                }
+                else {
+                    return;
+                }
+            }
+        }
+
+        // term := unary (('*' | '/' | '%') unary)*
+        void parseTerm() {
+            parseUnary();
+            while (true) {
+                if (consume('*')) {
+                    parseUnary();
+                    emitOperation(OP_MUL);
+                }
+                else if (consume('/')) {
+                    parseUnary();
+                    emitOperation(OP_DIV);
+                }
+                else if (consume('%')) {
+                    parseUnary();
+                    emitOperation(OP_MOD);
+                }
+                else {
+                    return;
+                }
+            }
+        }
+
+        // unary := ('-' | '+') unary | power
+        void parseUnary() {
+            if (consume('-')) {
+                parseUnary();
+                emitOperation(OP_NEG);
+            }
+            else if (consume('+')) {
+                parseUnary();
+            }
+            else {
+                parsePower();
+            }
+        }
+
+        // power := primary ('^' unary)?, so 2^3^2 is 2^(3^2) and 2^-1 is 0.5.
+        void parsePower() {
+            parsePrimary();
+            if (consume('^')) {
+                parseUnary();
+                emitOperation(OP_POW);
+            }
+        }
+
+        // primary := number | name | name '(' arguments ')' | '(' expression ')'
+        void parsePrimary() {
+            skipSpaces();
+            if (pos >= text.length()) {
+                throw error("Unexpected end");
+            }
+            char c = text.charAt(pos);
+            if (c == '(') {
+                pos++;
+                parseExpression();
+                if (!consume(')')) {
+                    throw error("Expected ')'");
+                }
+            }
+            else if (Character.isDigit(c) || c == '.') {
+                parseNumber();
+            }
+            else if (Character.isLetter(c) || c == '_') {
+                int start = pos;
+                while (pos < text.length() &&
+                        (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) {
+                    pos++;
+                }
+                parseName(text.substring(start, pos));
+            }
+            else {
+                throw error("Unexpected '" + c + "'");
+            }
+        }
+
+        void parseNumber() {
+            int start = pos;
+            while (pos < text.length() &&
+                    (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                pos++;
+            }
+            // Exponent, as in 1.5e-3.
+            if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                pos++;
+                if (pos < text.length() && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+                    pos++;
+                }
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                    pos++;
+                }
+            }
+            try {
+                emitConstant(Double.parseDouble(text.substring(start, pos)));
+            }
+            catch (NumberFormatException ex) {
+                pos = start;
+                throw error("Invalid number");
+            }
+        }
+
+        void parseName(String name) {
+            if (consume('(')) {
+                int[] function = FUNCTIONS.get(name);
+                if (function == null) {
+                    throw error("Unknown function " + name);
+                }
+                for (int i = 0; i < function[1]; i++) {
+                    if (i > 0 && !consume(',')) {
+                        throw error("Expected ','");
+                    }
+                    parseExpression();
+                }
+                if (!consume(')')) {
+                    throw error(name + " takes " + function[1] + " argument(s), expected ')'");
+                }
+                emitOperation(function[0]);
+                return;
+            }
+            Object value = (knownValues != null) ? knownValues.get(name) : null;
+            if (value instanceof Number) {
+                emitConstant(((Number) value).doubleValue());
+            }
+            else if (value == null && "pi".equals(name)) {
+                emitConstant(Math.PI);
+            }
+            else if (value == null && "tau".equals(name)) {
+                emitConstant(2 * Math.PI);
+            }
+            else {
+                emitVariable(name);
+            }
+        }
+    }
+}
@@ -9,8 +9,10 @@ import java.util.Map;
 
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.World;
 import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.BallGrid;
 import com.dozingcatsoftware.vectorpinball.model.Color;
 import com.dozingcatsoftware.vectorpinball.model.Field;
 import com.dozingcatsoftware.vectorpinball.model.IFieldRenderer;
@@ -21,6 +23,10 @@ import com.dozingcatsoftware.vectorpinball.model.IFieldRenderer;
  * instances of the Rollover nested class, which specify center, radius, and color. Parameters at
  * the collection level control whether the rollovers should cycle when flippers are activated,
  * and whether rollovers can toggle from on to off.
+ *
+ * If the "sensorFixture" parameter (or the layout's "sensorFixtures" parameter) is true, each
+ * rollover has a Box2D sensor fixture, and only balls that Box2D reports as overlapping it are
+ * checked.
  */
 public class RolloverGroupElement extends FieldElement {
 
@@ -42,6 +48,9 @@ public class RolloverGroupElement extends FieldElement {
         Integer color;
         long score;
         float resetDelay;
+        // Only used with sensor fixtures. Bit N is set if the ball in slot N overlaps the fixture.
+        Body sensorBody;
+        long overlappingBallSlots;
     }
 
     static final int DEFAULT_COLOR = Color.fromRGB(0, 255, 0);
@@ -55,6 +64,8 @@ public class RolloverGroupElement extends FieldElement {
     List<Rollover> activeRollovers = new ArrayList<>();
     List<Rollover> rolloversHitOnPreviousTick = new ArrayList<>();
     boolean isVisible = true;
+    boolean useSensorFixtures;
+    List<Body> sensorBodies = Collections.emptyList();
 
     @SuppressWarnings("unchecked")
     @Override public void finishCreateElement(
@@ -85,32 +96,34 @@ public class RolloverGroupElement extends FieldElement {
 
             rollover.radiusSquared = rollover.radius * rollover.radius;
         }
+        this.useSensorFixtures = usesSensorFixture(params, collection);
     }
 
     @Override public void createBodies(World world) {
-        // Not needed.
+        if (this.useSensorFixtures) {
+            this.sensorBodies = new ArrayList<>();
+            for (Rollover r : rollovers) {
+                r.sensorBody = Box2DFactory.createSensorCircle(
+                        world, r.position.x, r.position.y, r.radius);
+                r.sensorBody.getFixtureList().get(0).setUserData(r);
+                sensorBodies.add(r.sensorBody);
+            }
+        }
     }
 
     @Override public List<Body> getBodies() {
-        return Collections.emptyList();
+        return sensorBodies;
     }
 
-    /** Sets `hitRollovers` to the rollovers which have `ball` within their specified radius. */
-    private void getRolloversHitByBall(Ball ball, List<Rollover> hitRollovers) {
-        hitRollovers.clear();
-        if (ball.getLayer() != this.getLayer()) {
-            return;
+    @Override public void handleSensorContact(
+            Ball ball, int ballSlot, Fixture fixture, boolean began, Field field) {
+        if (ballSlot < 0 || !(fixture.getUserData() instanceof Rollover)) return;
+        Rollover r = (Rollover) fixture.getUserData();
+        if (began) {
+            r.overlappingBallSlots |= 1L << ballSlot;
         }
-        int rsize = this.rollovers.size();
-        for(int i = 0; i < rsize; i++) {
-            Rollover rollover = this.rollovers.get(i);
-            Vector2 position = ball.getPosition();
-            float xdiff = position.x - rollover.position.x;
-            float ydiff = position.y - rollover.position.y;
-            float distanceSquared = xdiff * xdiff + ydiff * ydiff;
-            if (distanceSquared <= rollover.radiusSquared) {
-                hitRollovers.add(rollover);
-            }
+        else {
+            r.overlappingBallSlots &= ~(1L << ballSlot);
         }
     }
 
@@ -158,6 +171,9 @@ public class RolloverGroupElement extends FieldElement {
         Rollover r = rollovers.get(index);
         r.position.x = (float) x;
         r.position.y = (float) y;
+        if (r.sensorBody != null) {
+            r.sensorBody.setTransform(r.position.x, r.position.y, 0f);
+        }
     }
 
     public float getRolloverRadiusAtIndex(int index) {
@@ -168,66 +184,111 @@ public class RolloverGroupElement extends FieldElement {
         Rollover r = rollovers.get(index);
         r.radius = radius;
         r.radiusSquared = radius * radius;
+        if (r.sensorBody != null) {
+            r.sensorBody.getFixtureList().get(0).getShape().setRadius(radius);
+            // Changing the shape doesn't update the fixture's bounds in Box2D's broadphase, so a
+            // larger rollover would miss contacts at its new edge. setTransform updates them.
+            r.sensorBody.setTransform(r.position.x, r.position.y, 0f);
+        }
     }
 
     public void setRolloverColorAtIndex(int index, Integer color) {
         rollovers.get(index).color = color;
     }
 
-    @Override public boolean shouldCallTick() {
-        return true;
+    /**
+     * Registers the initial area of each rollover. Delegates can move rollovers later, which is
+     * fine because the regions are only used to size the grid.
+     */
+    @Override public void registerBallRegions(BallGrid grid) {
+        for (int i = 0; i < rollovers.size(); i++) {
+            Rollover r = rollovers.get(i);
+            grid.addRegion(r.position.x - r.radius, r.position.y - r.radius,
+                    r.position.x + r.radius, r.position.y + r.radius);
+        }
+    }
+
+    @Override public TickCadence getTickCadence() {
+        return TickCadence.WHILE_BALLS_IN_PLAY;
     }
 
     // Reuse these to avoid allocating memory in tick().
-    List<Rollover> rolloversHitByBall = new ArrayList<>();
+    List<Ball> ballsHittingRollover = new ArrayList<>();
     List<Rollover> allHitRollovers = new ArrayList<>();
 
+    /**
+     * Returns the first ball in field.getBalls() whose center is within the rollover's radius, or
+     * null if there isn't one. With sensor fixtures, only checks balls overlapping the fixture.
+     */
+    private Ball firstBallHittingRollover(Field field, Rollover r) {
+        if (!this.useSensorFixtures) {
+            field.getBallsWithinRadius(r.position.x, r.position.y, r.radius,
+                    this.getLayer(), ballsHittingRollover);
+            return ballsHittingRollover.isEmpty() ? null : ballsHittingRollover.get(0);
+        }
+        if (r.overlappingBallSlots == 0) return null;
+        List<Ball> balls = field.getBalls();
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            int slot = ball.getSlot();
+            if (slot < 0 || (r.overlappingBallSlots & (1L << slot)) == 0) continue;
+            if (ball.getLayer() != this.getLayer()) continue;
+            Vector2 position = ball.getPosition();
+            float xdiff = position.x - r.position.x;
+            float ydiff = position.y - r.position.y;
+            if (xdiff * xdiff + ydiff * ydiff <= r.radiusSquared) {
+                return ball;
+            }
+        }
+        return null;
+    }
+
     @Override public void tick(Field field, long nanos) {
         super.tick(field, nanos);
         if (this.ignoreBall) return;
+        if (rolloversHitOnPreviousTick.isEmpty() && !field.hasBallAtLayer(this.getLayer())) {
+            return;
+        }
 
         boolean allActivePrevious = this.allRolloversActive();
         allHitRollovers.clear();
-        List<Ball> balls = field.getBalls();
         // With multiple balls this may not behave as expected, for example if two balls
         // simultaneously activate the two remaining inactive rollovers, the ball object passed
         // to `allRolloversInGroupActivated` will arbitrarily be one of them.
-        for (int i = 0; i < balls.size(); i++) {
-            final Ball ball = balls.get(i);
-            getRolloversHitByBall(ball, rolloversHitByBall);
-            for (int j = 0; j < rolloversHitByBall.size(); j++) {
-                final Rollover r = rolloversHitByBall.get(j);
-                if (allHitRollovers.contains(r)) {
-                    continue;
+        int rsize = this.rollovers.size();
+        for (int i = 0; i < rsize; i++) {
+            final Rollover r = this.rollovers.get(i);
+            final Ball ball = firstBallHittingRollover(field, r);
+            if (ball == null) {
+                continue;
+            }
+            allHitRollovers.add(r);
+            if (rolloversHitOnPreviousTick.contains(r)) {
+                continue;
+            }
+            // Inactive rollover becomes active, active rollover becomes inactive if toggleOff
+            // setting is true. Add score whenever the state changes.
+            if (!activeRollovers.contains(r)) {
+                activeRollovers.add(r);
+                if (r.score != 0) {
+                    field.addScoreWithAnimation(r.score, ball.getPosition());
                 }
-                allHitRollovers.add(r);
-                if (rolloversHitOnPreviousTick.contains(r)) {
-                    continue;
+                field.getAudioPlayer().playRollover();
+                // Set timer to clear rollover if reset parameter is present and >0.
+                if (r.resetDelay > 0) {
+                    field.scheduleAction((long)(r.resetDelay*1000), () -> activeRollovers.remove(r));
                 }
-                // Inactive rollover becomes active, active rollover becomes inactive if toggleOff
-                // setting is true. Add score whenever the state changes.
-                if (!activeRollovers.contains(r)) {
-                    activeRollovers.add(r);
-                    if (r.score != 0) {
-                        field.addScoreWithAnimation(r.score, ball.getPosition());
-                    }
-                    field.getAudioPlayer().playRollover();
-                    // Set timer to clear rollover if reset parameter is present and >0.
-                    if (r.resetDelay > 0) {
-                        field.scheduleAction((long)(r.resetDelay*1000), () -> activeRollovers.remove(r));
-                    }
-                    // Notify delegate if all rollovers are now active and they weren't previously.
-                    if (!allActivePrevious && allRolloversActive()) {
-                        field.getDelegate().allRolloversInGroupActivated(field, this, ball);
-                    }
+                // Notify delegate if all rollovers are now active and they weren't previously.
+                if (!allActivePrevious && allRolloversActive()) {
+                    field.getDelegate().allRolloversInGroupActivated(field, this, ball);
                 }
-                else if (this.canToggleOff) {
-                    activeRollovers.remove(r);
-                    if (r.score != 0) {
-                        field.addScoreWithAnimation(r.score, ball.getPosition());
-                    }
-                    field.getAudioPlayer().playRollover();
+            }
+            else if (this.canToggleOff) {
+                activeRollovers.remove(r);
+                if (r.score != 0) {
+                    field.addScoreWithAnimation(r.score, ball.getPosition());
                 }
+                field.getAudioPlayer().playRollover();
             }
         }
 
@@ -0,0 +1,95 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+/**
+ * Moves a group of bumpers in a circle around a center point, with the bumpers evenly spaced.
+ * Layouts declare groups with RotatingBumperGroupElement. Each tick sets the bumpers'
+ * velocities with BumperElement.setVelocityToReach, so Box2D moves them during the following
+ * world steps rather than having them jump to new positions.
+ *
+ * Instead of computing the sine and cosine of each bumper's angle on every tick, the group
+ * rotates the offset of the first bumper by the angle moved since the last tick, and gets the
+ * other offsets by rotating that by fixed amounts computed when the group is created.
+ */
+public class RotatingBumperGroup {
+
+    final BumperElement[] bumpers;
+    final double centerX, centerY;
+    final double radius;
+    final double speed;
+    // Rotation from the first bumper's offset to each bumper's offset.
+    final double[] spacingCos, spacingSin;
+    // Offset from the center to the first bumper, with length `radius`.
+    double offsetX, offsetY;
+    // Cached rotation for the most recent tick, which is usually the same as the next one.
+    double lastStep = 0;
+    double stepCos = 1, stepSin = 0;
+
+    /**
+     * Creates a group rotating at `speed` radians per second around (cx, cy). The distance and
+     * starting angle come from the first bumper's position, and the other bumpers are
+     * immediately moved to be evenly spaced around the circle. The bumpers must have bodies,
+     * which requires a radius greater than 0.
+     */
+    public RotatingBumperGroup(BumperElement[] bumpers, double cx, double cy, double speed) {
+        this.bumpers = bumpers;
+        this.centerX = cx;
+        this.centerY = cy;
+        this.speed = speed;
+        this.offsetX = bumpers[0].getCenterX() - cx;
+        this.offsetY = bumpers[0].getCenterY() - cy;
+        this.radius = Math.hypot(offsetX, offsetY);
+        this.spacingCos = new double[bumpers.length];
+        this.spacingSin = new double[bumpers.length];
+        for (int i = 0; i < bumpers.length; i++) {
+            double angle = 2 * Math.PI * i / bumpers.length;
+            spacingCos[i] = Math.cos(angle);
+            spacingSin[i] = Math.sin(angle);
+            bumpers[i].setCenter((float) bumperX(i), (float) bumperY(i));
+        }
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    /** Returns the current angle of the first bumper from the center, in radians. */
+    public double getAngle() {
+        return Math.atan2(offsetY, offsetX);
+    }
+
+    double bumperX(int index) {
+        return centerX + offsetX * spacingCos[index] - offsetY * spacingSin[index];
+    }
+
+    double bumperY(int index) {
+        return centerY + offsetX * spacingSin[index] + offsetY * spacingCos[index];
+    }
+
+    /**
+     * Advances the rotation by `seconds`, and sets the bumpers' velocities so that they reach
+     * their new positions after the next `seconds` of world steps. Because the velocities are
+     * computed from the bumpers' actual positions, a following tick of a different length only
+     * moves the bumpers off the circle until the tick after that.
+     */
+    public void tick(double seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        double step = seconds * speed;
+        if (step != lastStep) {
+            stepCos = Math.cos(step);
+            stepSin = Math.sin(step);
+            lastStep = step;
+        }
+        double x = offsetX * stepCos - offsetY * stepSin;
+        double y = offsetX * stepSin + offsetY * stepCos;
+        // Rescale so that rounding errors don't accumulate in the radius.
+        double scale = radius / Math.sqrt(x * x + y * y);
+        offsetX = x * scale;
+        offsetY = y * scale;
+        for (int i = 0; i < bumpers.length; i++) {
+            bumpers[i].setVelocityToReach(
+                    (float) bumperX(i), (float) bumperY(i), (float) seconds);
+        }
+    }
+}
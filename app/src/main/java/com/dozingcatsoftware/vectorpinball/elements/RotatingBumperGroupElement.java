@@ -0,0 +1,74 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.World;
+import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.model.IFieldRenderer;
+
+/**
+ * Moves bumpers in a circle with a RotatingBumperGroup. The "bumpers" parameter lists the IDs of
+ * BumperElements, which must come before this element in the layout. "center" is the center of
+ * the circle, and "speed" is the rotation speed in radians per second, counterclockwise if
+ * positive. The distance from the center and the starting angle come from the first bumper's
+ * position. This element has no bodies and doesn't draw anything itself.
+ */
+public class RotatingBumperGroupElement extends FieldElement {
+
+    public static final String BUMPERS_PROPERTY = "bumpers";
+    public static final String CENTER_PROPERTY = "center";
+    public static final String SPEED_PROPERTY = "speed";
+
+    RotatingBumperGroup group;
+
+    @Override
+    public void finishCreateElement(Map<String, ?> params, FieldElementCollection collection) {
+        List<?> ids = (List<?>) params.get(BUMPERS_PROPERTY);
+        BumperElement[] bumpers = new BumperElement[ids.size()];
+        for (int i = 0; i < bumpers.length; i++) {
+            FieldElement element = collection.getElementForId((String) ids.get(i));
+            if (!(element instanceof BumperElement)) {
+                throw new IllegalArgumentException(
+                        "Rotating group bumper not found or not a bumper: " + ids.get(i));
+            }
+            bumpers[i] = (BumperElement) element;
+        }
+        List<?> center = (List<?>) params.get(CENTER_PROPERTY);
+        float speed = asFloat(params.get(SPEED_PROPERTY));
+        this.group = new RotatingBumperGroup(
+                bumpers, asFloat(center.get(0)), asFloat(center.get(1)), speed);
+    }
+
+    @Override
+    public void createBodies(World world) {
+        // No physical components; the bumpers have their own bodies.
+    }
+
+    @Override
+    public List<Body> getBodies() {
+        return Collections.emptyList();
+    }
+
+    public RotatingBumperGroup getGroup() {
+        return group;
+    }
+
+    @Override public TickCadence getTickCadence() {
+        return TickCadence.EVERY_FRAME;
+    }
+
+    @Override public void tick(Field field, long nanos) {
+        super.tick(field, nanos);
+        group.tick(nanos / 1e9);
+    }
+
+    @Override
+    public void draw(Field field, IFieldRenderer renderer) {
+        // The bumpers draw themselves.
+    }
+}
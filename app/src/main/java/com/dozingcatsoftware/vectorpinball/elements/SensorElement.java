@@ -2,24 +2,31 @@ package com.dozingcatsoftware.vectorpinball.elements;
 
 import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.World;
 import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.BallGrid;
 import com.dozingcatsoftware.vectorpinball.model.Field;
 import com.dozingcatsoftware.vectorpinball.model.IFieldRenderer;
 
 /**
  * This FieldElement subclass is used to identify areas on the table that should cause custom
- * behavior when the ball enters. A SensorElement has no bodies and doesn't draw anything. The area
- * it monitors is a rectangle defined by the "rect" parameter as a [xmin,ymin,xmax,ymax] list.
- * During every tick() invocation, a sensor determines if any of the field's balls are within its
- * area, and if so calls the field delegate's ballInSensorRange method.
+ * behavior when the ball enters. A SensorElement doesn't draw anything. The area it monitors is a
+ * rectangle defined by the "rect" parameter as a [xmin,ymin,xmax,ymax] list. During every tick()
+ * invocation, a sensor determines if any of the field's balls are within its area, using the
+ * field's ball grid, and if so calls the field delegate's ballInSensorRange method.
+ *
+ * If the "sensorFixture" parameter (or the layout's "sensorFixtures" parameter) is true, the
+ * sensor instead creates a Box2D sensor fixture covering its area, and only checks the balls that
+ * Box2D reports as overlapping it. In that mode the sensor only detects balls on its own layer,
+ * so sensors that use "ballLayerFrom" should set "layer" to the same value.
  */
 public class SensorElement extends FieldElement {
 
@@ -32,7 +39,16 @@ public class SensorElement extends FieldElement {
     private Number layerTo;
     private Number layerFrom;
     boolean recordBallTimes;
-    WeakHashMap<Ball, Long> ballEntryTimestamps;
+    // Entry times indexed by ball slot. A slot's entry is valid if its bit is set in
+    // `ballSlotsWithEntryTimes` and the ball in `ballsWithEntryTimes` is the one being checked.
+    long ballSlotsWithEntryTimes = 0;
+    long[] ballEntryTimes;
+    Ball[] ballsWithEntryTimes;
+
+    boolean useSensorFixture;
+    List<Body> sensorBodies = Collections.emptyList();
+    // Bit N is set if the ball in slot N overlaps the sensor fixture.
+    long overlappingBallSlots = 0;
 
     @Override public void finishCreateElement(
             Map<String, ?> params, FieldElementCollection collection) {
@@ -45,55 +61,109 @@ public class SensorElement extends FieldElement {
         this.layerTo = (Number)params.get(BALL_LAYER_TO_PROPERTY);
         this.recordBallTimes = Boolean.TRUE.equals(params.get(RECORD_BALL_TIMES_PROPERTY));
         if (this.recordBallTimes) {
-            this.ballEntryTimestamps = new WeakHashMap<>();
+            this.ballEntryTimes = new long[Field.MAX_BALL_SLOTS];
+            this.ballsWithEntryTimes = new Ball[Field.MAX_BALL_SLOTS];
         }
+        this.useSensorFixture = usesSensorFixture(params, collection);
     }
 
     @Override public void createBodies(World world) {
-        // Not needed.
+        if (this.useSensorFixture) {
+            this.sensorBodies = Collections.singletonList(
+                    Box2DFactory.createSensorRect(world, xmin, ymin, xmax, ymax));
+        }
+    }
+
+    @Override public void registerBallRegions(BallGrid grid) {
+        grid.addRegion(xmin, ymin, xmax, ymax);
     }
 
-    @Override public boolean shouldCallTick() {
-        return true;
+    @Override public TickCadence getTickCadence() {
+        return TickCadence.WHILE_BALLS_IN_PLAY;
     }
 
-    boolean ballInRange(Ball ball) {
-        Vector2 bpos = ball.getPosition();
-        // Test against rect.
-        if (bpos.x < xmin || bpos.x > xmax || bpos.y < ymin || bpos.y > ymax) {
-            return false;
+    @Override public void handleSensorContact(
+            Ball ball, int ballSlot, Fixture fixture, boolean began, Field field) {
+        if (ballSlot < 0) return;
+        if (began) {
+            overlappingBallSlots |= 1L << ballSlot;
         }
-        // Only trigger the sensor if the "from" layer is empty or it matches the ball.
-        if (this.layerFrom != null && this.layerFrom.intValue() != ball.getLayer()) {
-            return false;
+        else {
+            overlappingBallSlots &= ~(1L << ballSlot);
         }
-        return true;
     }
 
-    @Override public void tick(Field field, long nanos) {
+    // Reused to avoid allocating memory in tick().
+    List<Ball> ballsInRange = new ArrayList<>();
+
+    /**
+     * Sets `ballsInRange` to the balls that overlap the sensor fixture and whose centers are in
+     * the sensor's rectangle.
+     */
+    private void findBallsOverlappingFixture(Field field, int layer) {
+        ballsInRange.clear();
+        if (overlappingBallSlots == 0) return;
         List<Ball> balls = field.getBalls();
         for (int i = 0; i < balls.size(); i++) {
             Ball ball = balls.get(i);
-            if (ballInRange(ball)) {
-                if (this.layerTo != null) {
-                    ball.moveToLayer(this.layerTo.intValue());
-                }
-                if (this.recordBallTimes && !this.ballEntryTimestamps.containsKey(ball)) {
-                    this.ballEntryTimestamps.put(ball, field.getGameTimeNanos());
-                }
-                field.getDelegate().ballInSensorRange(field, this, ball);
-                ball.setMostRecentSensorId(this.getElementId());
+            int slot = ball.getSlot();
+            if (slot < 0 || (overlappingBallSlots & (1L << slot)) == 0) continue;
+            if (layer != BallGrid.ANY_LAYER && ball.getLayer() != layer) continue;
+            Vector2 pos = ball.getPosition();
+            if (pos.x >= xmin && pos.x <= xmax && pos.y >= ymin && pos.y <= ymax) {
+                ballsInRange.add(ball);
             }
-            else {
-                if (this.recordBallTimes) {
-                    this.ballEntryTimestamps.remove(ball);
-                }
+        }
+    }
+
+    @Override public void tick(Field field, long nanos) {
+        // Only trigger the sensor if the "from" layer is empty or it matches the ball.
+        int layer = (this.layerFrom != null) ? this.layerFrom.intValue() : BallGrid.ANY_LAYER;
+        if (this.useSensorFixture) {
+            findBallsOverlappingFixture(field, layer);
+        }
+        else {
+            field.getBallsInRect(xmin, ymin, xmax, ymax, layer, ballsInRange);
+        }
+        if (this.recordBallTimes) {
+            clearEntryTimesForBallsNotInRange();
+        }
+        for (int i = 0; i < ballsInRange.size(); i++) {
+            Ball ball = ballsInRange.get(i);
+            if (this.layerTo != null) {
+                ball.moveToLayer(this.layerTo.intValue());
+            }
+            if (this.recordBallTimes && ballEntryTimeNanos(ball) == null && ball.getSlot() >= 0) {
+                int slot = ball.getSlot();
+                ballSlotsWithEntryTimes |= 1L << slot;
+                ballsWithEntryTimes[slot] = ball;
+                ballEntryTimes[slot] = field.getGameTimeNanos();
             }
+            field.getDelegate().ballInSensorRange(field, this, ball);
+            ball.setMostRecentSensorId(this.getElementId());
         }
     }
 
+    private void clearEntryTimesForBallsNotInRange() {
+        long inRangeSlots = 0;
+        for (int i = 0; i < ballsInRange.size(); i++) {
+            Ball ball = ballsInRange.get(i);
+            int slot = ball.getSlot();
+            if (slot >= 0 && ballsWithEntryTimes[slot] == ball) {
+                inRangeSlots |= 1L << slot;
+            }
+        }
+        long staleSlots = ballSlotsWithEntryTimes & ~inRangeSlots;
+        while (staleSlots != 0) {
+            int slot = Long.numberOfTrailingZeros(staleSlots);
+            staleSlots &= ~(1L << slot);
+            ballsWithEntryTimes[slot] = null;
+        }
+        ballSlotsWithEntryTimes &= inRangeSlots;
+    }
+
     @Override public List<Body> getBodies() {
-        return Collections.emptyList();
+        return sensorBodies;
     }
 
     @Override public void draw(Field field, IFieldRenderer renderer) {
@@ -106,6 +176,12 @@ public class SensorElement extends FieldElement {
      * otherwise returns null.
      */
     public Long ballEntryTimeNanos(Ball ball) {
-        return this.ballEntryTimestamps != null ? this.ballEntryTimestamps.get(ball) : null;
+        int slot = ball.getSlot();
+        if (!this.recordBallTimes || slot < 0 ||
+                (ballSlotsWithEntryTimes & (1L << slot)) == 0 ||
+                ballsWithEntryTimes[slot] != ball) {
+            return null;
+        }
+        return ballEntryTimes[slot];
     }
 }
@@ -98,8 +98,14 @@ public class SpinnerElement extends FieldElement {
         status = Status.ACTIVE_INVISIBLE;
     }
 
-    @Override public boolean shouldCallTick() {
-        return true;
+    @Override public TickCadence getTickCadence() {
+        // Checks for balls crossing it, and also requests ticks while spinning so that it keeps
+        // spinning after the last ball is lost.
+        return TickCadence.WHILE_BALLS_IN_PLAY;
+    }
+
+    @Override public boolean needsTick(Field field) {
+        return status != Status.INACTIVE || super.needsTick(field);
     }
 
     @Override
@@ -111,6 +117,7 @@ public class SpinnerElement extends FieldElement {
             Ball b = ballInActivationRange(field);
             if (b != null) {
                 startSpinnerForBall(b);
+                field.requestTicks(this);
                 field.getDelegate().spinnerActivated(field, this, b);
             }
         }
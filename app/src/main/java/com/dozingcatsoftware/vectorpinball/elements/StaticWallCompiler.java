@@ -0,0 +1,127 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.ChainShape;
+import com.badlogic.gdx.physics.box2d.EdgeShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.FixtureDef;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.physics.box2d.World;
+
+/**
+ * Combines the geometry of static walls into a single Box2D body per world, instead of a separate
+ * body with a thin box for each wall segment. Each wall element becomes one fixture: an EdgeShape
+ * for a single segment or a ChainShape for a path or arc, with a radius equal to half the
+ * thickness of the boxes created by Box2DFactory.createThinWall so that the ball collides at the
+ * same distance. Chains also avoid the ball catching on the joints between segments.
+ *
+ * Walls call addWall while the layout is loading, if they can't move, retract, kick, or score.
+ * After all elements are created, build() creates the bodies and returns a map from each fixture
+ * to its element, which Field uses to dispatch collisions.
+ */
+public class StaticWallCompiler {
+
+    static final float WALL_RADIUS = 0.05f;
+    // Box2D requires chain vertices to be farther apart than its linear slop of 0.005.
+    static final float MIN_SEGMENT_LENGTH = 0.01f;
+
+    static class WallGeometry {
+        FieldElement element;
+        float[] xs;
+        float[] ys;
+        float restitution;
+        float friction;
+    }
+
+    // Per-world lists, in the order walls were added so that results are deterministic.
+    Map<World, List<WallGeometry>> wallsByWorld = new IdentityHashMap<>();
+    List<World> worlds = new ArrayList<>();
+
+    int mergedSegmentCount = 0;
+
+    /**
+     * Adds a wall made of the segments connecting consecutive points in `xs` and `ys`, which
+     * must not be modified afterwards. Returns false without adding anything if Box2D can't
+     * represent the wall as a chain, in which case the caller should create its own bodies.
+     */
+    boolean addWall(World world, FieldElement element, float[] xs, float[] ys,
+            float restitution, float friction) {
+        if (xs.length < 2) {
+            return false;
+        }
+        for (int i = 1; i < xs.length; i++) {
+            if (Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]) < MIN_SEGMENT_LENGTH) {
+                return false;
+            }
+        }
+        WallGeometry wall = new WallGeometry();
+        wall.element = element;
+        wall.xs = xs;
+        wall.ys = ys;
+        wall.restitution = restitution;
+        wall.friction = friction;
+        List<WallGeometry> walls = wallsByWorld.get(world);
+        if (walls == null) {
+            walls = new ArrayList<>();
+            wallsByWorld.put(world, walls);
+            worlds.add(world);
+        }
+        walls.add(wall);
+        mergedSegmentCount += xs.length - 1;
+        return true;
+    }
+
+    /** Returns the total number of wall segments added, for debugging and statistics. */
+    public int getMergedSegmentCount() {
+        return mergedSegmentCount;
+    }
+
+    /**
+     * Creates one static body in each world that has walls, with a fixture for each wall, and
+     * returns a map from fixtures to the wall elements they represent.
+     */
+    public Map<Fixture, FieldElement> build() {
+        Map<Fixture, FieldElement> fixtureToElement = new HashMap<>();
+        FixtureDef fdef = new FixtureDef();
+        for (World world : worlds) {
+            Body body = Box2DFactory.createEmptyStaticBody(world);
+            for (WallGeometry wall : wallsByWorld.get(world)) {
+                Shape shape = createShape(wall);
+                fdef.shape = shape;
+                fdef.restitution = wall.restitution;
+                fdef.friction = wall.friction;
+                fixtureToElement.put(body.createFixture(fdef), wall.element);
+                // Box2D copies the shape into the fixture.
+                shape.dispose();
+            }
+        }
+        wallsByWorld.clear();
+        worlds.clear();
+        return fixtureToElement;
+    }
+
+    static Shape createShape(WallGeometry wall) {
+        int numPoints = wall.xs.length;
+        if (numPoints == 2) {
+            EdgeShape edge = new EdgeShape();
+            edge.set(wall.xs[0], wall.ys[0], wall.xs[1], wall.ys[1]);
+            edge.setRadius(WALL_RADIUS);
+            return edge;
+        }
+        float[] vertices = new float[2 * numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            vertices[2 * i] = wall.xs[i];
+            vertices[2 * i + 1] = wall.ys[i];
+        }
+        ChainShape chain = new ChainShape();
+        chain.createChain(vertices);
+        chain.setRadius(WALL_RADIUS);
+        return chain;
+    }
+}
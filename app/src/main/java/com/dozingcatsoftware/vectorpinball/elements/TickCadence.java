@@ -0,0 +1,21 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+/**
+ * How often Field calls tick() on a FieldElement, as returned by FieldElement.getTickCadence().
+ * Most elements only have work to do occasionally, so the default is ON_DEMAND.
+ */
+public enum TickCadence {
+    /**
+     * tick() is called only after the element is passed to Field.requestTicks, for example when it
+     * starts flashing, and continues to be called until the element's needsTick() returns false.
+     */
+    ON_DEMAND,
+    /**
+     * tick() is called every frame while there are balls on the field, and once more on the first
+     * frame after the last ball is removed. Used by elements that check ball positions. It's also
+     * called on demand as above when there are no balls.
+     */
+    WHILE_BALLS_IN_PLAY,
+    /** tick() is called every frame. */
+    EVERY_FRAME,
+}
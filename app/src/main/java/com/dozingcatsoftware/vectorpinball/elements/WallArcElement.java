@@ -52,6 +52,7 @@ public class WallArcElement extends FieldElement {
     private float friction;
     private float[] xEndpoints;
     private float[] yEndpoints;
+    private StaticWallCompiler staticWallCompiler;
 
     @Override public void finishCreateElement(
             Map<String, ?> params, FieldElementCollection collection) {
@@ -83,12 +84,17 @@ public class WallArcElement extends FieldElement {
             this.xEndpoints[i] = centerX + radiusX * (float) Math.cos(angle);
             this.yEndpoints[i] = centerY + radiusY * (float) Math.sin(angle);
         }
+        this.staticWallCompiler = staticWallCompilerIfMergeable(collection);
     }
 
     @Override public void createBodies(World world) {
         if (getBooleanParameterValueForKey(IGNORE_BALL_PROPERTY)) {
             return;
         }
+        if (staticWallCompiler != null && staticWallCompiler.addWall(
+                world, this, xEndpoints, yEndpoints, restitution, friction)) {
+            return;
+        }
         for (int i = 1; i < xEndpoints.length; i++) {
             Body wall = Box2DFactory.createThinWall(
                     world, xEndpoints[i - 1], yEndpoints[i - 1], xEndpoints[i], yEndpoints[i],
@@ -101,6 +107,10 @@ public class WallArcElement extends FieldElement {
         return wallBodies;
     }
 
+    @Override public boolean hasFixedAppearance() {
+        return hasFixedColor();
+    }
+
     @Override public void draw(Field field, IFieldRenderer renderer) {
         int color = currentColor(DEFAULT_WALL_COLOR);
         // If possible, drawing an arc is faster and looks better compared to drawing the
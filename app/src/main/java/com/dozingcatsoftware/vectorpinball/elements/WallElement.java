@@ -30,6 +30,10 @@ import com.dozingcatsoftware.vectorpinball.model.IFieldRenderer;
  *
  * After creation, a wall can be moved with setStartAndDirection or setStartAndAngle.
  * The length of the wall cannot be changed; just its position and orientation.
+ *
+ * Walls without an ID that don't kick, kill, retract, or score can't be changed after creation,
+ * so unless the layout sets "mergeStaticWalls" to false they're merged with other static walls by
+ * StaticWallCompiler, and have no bodies of their own.
  */
 public class WallElement extends FieldElement {
 
@@ -55,6 +59,7 @@ public class WallElement extends FieldElement {
     boolean disabled;
     boolean ignoreBall;
     boolean visible = true;
+    StaticWallCompiler staticWallCompiler;
 
     @Override public void finishCreateElement(
             Map<String, ?> params, FieldElementCollection collection) {
@@ -72,6 +77,9 @@ public class WallElement extends FieldElement {
         this.retractWhenHit = (Boolean.TRUE.equals(params.get(RETRACT_WHEN_HIT_PROPERTY)));
         this.disabled = Boolean.TRUE.equals(params.get(DISABLED_PROPERTY));
         this.ignoreBall = Boolean.TRUE.equals(params.get(IGNORE_BALL_PROPERTY));
+        if (this.kick <= 0.01f && !this.killBall && !this.retractWhenHit && !this.disabled) {
+            this.staticWallCompiler = staticWallCompilerIfMergeable(collection);
+        }
     }
 
     @Override public void createBodies(World world) {
@@ -79,6 +87,11 @@ public class WallElement extends FieldElement {
             bodySet = Collections.emptyList();
             return;
         }
+        if (staticWallCompiler != null && staticWallCompiler.addWall(
+                world, this, new float[] {x1, x2}, new float[] {y1, y2}, restitution, friction)) {
+            bodySet = Collections.emptyList();
+            return;
+        }
 
         wallBody = Box2DFactory.createThinWall(world, x1, y1, x2, y2, restitution, friction);
         bodySet = Collections.singletonList(wallBody);
@@ -92,11 +105,19 @@ public class WallElement extends FieldElement {
     }
 
     public void setRetracted(boolean retracted) {
+        checkHasBody();
         if (retracted != this.isRetracted()) {
             wallBody.setActive(!retracted);
         }
     }
 
+    private void checkHasBody() {
+        if (wallBody == null && !ignoreBall) {
+            throw new IllegalStateException("Wall was merged into static geometry and can't be " +
+                    "changed; give it an id or set mergeStaticWalls to false in the layout");
+        }
+    }
+
     public void setVisible(boolean visible) {
         this.visible = visible;
     }
@@ -105,13 +126,20 @@ public class WallElement extends FieldElement {
         return bodySet;
     }
 
-    @Override public boolean shouldCallTick() {
-        // tick() needs to be called if this wall provides a kick which makes it flash.
-        return (super.shouldCallTick() || this.kick > 0.01f);
+    // Kicking walls flash, and retractable or disabled walls can disappear.
+    @Override public boolean hasFixedAppearance() {
+        return this.kick <= 0.01f && !this.retractWhenHit && !this.disabled && hasFixedColor();
     }
 
-    Vector2 impulseForBall(Ball ball) {
-        if (this.kick <= 0.01f) return null;
+    // Reused to avoid allocating memory in handleCollision().
+    final Vector2 impulse = new Vector2();
+
+    /**
+     * Sets `result` to the impulse to apply to the ball when it hits this wall, and returns true.
+     * Returns false and leaves `result` unchanged if the wall doesn't kick.
+     */
+    boolean impulseForBall(Ball ball, Vector2 result) {
+        if (this.kick <= 0.01f) return false;
         // Rotate wall direction 90 degrees for normal, choose direction toward ball.
         float ix = this.y2 - this.y1;
         float iy = this.x1 - this.x2;
@@ -130,7 +158,8 @@ public class WallElement extends FieldElement {
             ix = -ix;
             iy = -iy;
         }
-        return new Vector2(ix, iy);
+        result.set(ix, iy);
+        return true;
     }
 
     @Override public void handleCollision(Ball ball, Body bodyHit, Field field) {
@@ -142,10 +171,9 @@ public class WallElement extends FieldElement {
             field.removeBall(ball);
         }
         else {
-            Vector2 impulse = this.impulseForBall(ball);
-            if (impulse != null) {
-                ball.applyLinearImpulse(impulse);
-                flashForNanos(100_000_000);
+            if (this.impulseForBall(ball, impulse)) {
+                ball.applyLinearImpulse(impulse.x, impulse.y);
+                flashForNanos(field, 100_000_000);
             }
         }
     }
@@ -157,6 +185,7 @@ public class WallElement extends FieldElement {
     }
 
     public void setStartAndAngle(float x1, float y1, float angle) {
+        checkHasBody();
         this.x1 = x1;
         this.y1 = y1;
         this.x2 = x1 + (float) (this.length * Math.cos(angle));
@@ -31,6 +31,7 @@ public class WallPathElement extends FieldElement {
     private float[] yEndpoints;
     private float restitution;
     private float friction;
+    private StaticWallCompiler staticWallCompiler;
 
     @Override public void finishCreateElement(
             Map<String, ?> params, FieldElementCollection collection) {
@@ -46,12 +47,17 @@ public class WallPathElement extends FieldElement {
         }
         this.restitution = asFloat(params.get(RESTITUTION_PROPERTY));
         this.friction = asFloat(params.get(FRICTION_PROPERTY), Box2DFactory.DEFAULT_WALL_FRICTION);
+        this.staticWallCompiler = staticWallCompilerIfMergeable(collection);
     }
 
     @Override public void createBodies(World world) {
         if (getBooleanParameterValueForKey(IGNORE_BALL_PROPERTY)) {
             return;
         }
+        if (staticWallCompiler != null && staticWallCompiler.addWall(
+                world, this, xEndpoints, yEndpoints, restitution, friction)) {
+            return;
+        }
         for (int i = 1; i < xEndpoints.length; i++) {
             Body wall = Box2DFactory.createThinWall(
                     world, xEndpoints[i - 1], yEndpoints[i - 1], xEndpoints[i], yEndpoints[i],
@@ -64,6 +70,10 @@ public class WallPathElement extends FieldElement {
         return wallBodies;
     }
 
+    @Override public boolean hasFixedAppearance() {
+        return hasFixedColor();
+    }
+
     @Override public void draw(Field field, IFieldRenderer renderer) {
         int color = currentColor(DEFAULT_WALL_COLOR);
         renderer.drawLinePath(this.xEndpoints, this.yEndpoints, color);
@@ -1,11 +1,9 @@
 package com.dozingcatsoftware.vectorpinball.fields;
 
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.dozingcatsoftware.vectorpinball.model.Ball;
 import com.dozingcatsoftware.vectorpinball.model.BaseFieldDelegate;
 import com.dozingcatsoftware.vectorpinball.model.Field;
-import com.dozingcatsoftware.vectorpinball.elements.BumperElement;
 import com.dozingcatsoftware.vectorpinball.elements.DropTargetGroupElement;
 import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
 import com.dozingcatsoftware.vectorpinball.elements.RolloverGroupElement;
@@ -14,92 +12,6 @@ import com.dozingcatsoftware.vectorpinball.elements.WallElement;
 
 public class Field2Delegate extends BaseFieldDelegate {
 
-    static final double TAU = 2 * Math.PI; // pi is wrong.
-
-    static class RotatingGroup {
-        String[] elementIDs;
-        double centerX, centerY;
-        double radius;
-        double rotationSpeed;
-        double startAngle;
-        double currentAngle;
-        double angleIncrement;
-
-        RotatingGroup(
-                String[] ids, double cx, double cy, double radius, double startAngle,
-                double speed) {
-            this.elementIDs = ids;
-            this.centerX = cx;
-            this.centerY = cy;
-            this.radius = radius;
-            this.rotationSpeed = speed;
-            this.startAngle = this.currentAngle = startAngle;
-            this.angleIncrement = TAU / ids.length;
-        }
-
-        /**
-         * Creates a RotatingGroup by computing the distance and angle to center from the first
-         * element ID in the ids array.
-         */
-        static RotatingGroup create(
-                Field field, String[] ids, double cx, double cy, double speed) {
-            BumperElement element = field.getFieldElementById(ids[0]);
-            Vector2 position = element.getCenter();
-            double radius = Math.hypot(position.x - cx, position.y - cy);
-            double angle = Math.atan2(position.y - cy, position.x - cx);
-            return new RotatingGroup(ids, cx, cy, radius, angle, speed);
-        }
-
-        void applyRotation(Field field, double dt) {
-            currentAngle += dt * rotationSpeed;
-            if (currentAngle > TAU) currentAngle -= TAU;
-            if (currentAngle < 0) currentAngle += TAU;
-            for (int i = 0; i < elementIDs.length; i++) {
-                double angle = currentAngle + angleIncrement * i;
-
-                BumperElement element = field.getFieldElementById(elementIDs[i]);
-                double x = this.centerX + radius * Math.cos(angle);
-                double y = this.centerY + radius * Math.sin(angle);
-				element.setCenter((float) x, (float) y);
-            }
-        }
-    }
-
-    RotatingGroup[] rotatingGroups;
-
-    RotatingGroup createRotatingGroup(Field field, String centerID, String[] ids, double speed) {
-        FieldElement centerElement = field.getFieldElementById(centerID);
-        Vector2 centerPosition = centerElement.getBodies().get(0).getPosition();
-        return RotatingGroup.create(field, ids, centerPosition.x, centerPosition.y, speed);
-    }
-
-    private void setupRotatingGroups(Field field) {
-        // Read rotation params from variables defined in the field.
-        float b1Speed = ((Number) field.getValueWithKey("RotatingBumper1Speed")).floatValue();
-        float b2Speed = ((Number) field.getValueWithKey("RotatingBumper2Speed")).floatValue();
-        float b2cx = ((Number) field.getValueWithKey("RotatingBumper2CenterX")).floatValue();
-        float b2cy = ((Number) field.getValueWithKey("RotatingBumper2CenterY")).floatValue();
-        String[] group1Ids = {
-                "RotatingBumper1A", "RotatingBumper1B", "RotatingBumper1C", "RotatingBumper1D"
-        };
-        rotatingGroups = new RotatingGroup[] {
-                createRotatingGroup(field, "CenterBumper1", group1Ids, b1Speed),
-                RotatingGroup.create(field, new String[] {"RotatingBumper2A", "RotatingBumper2B"},
-                        b2cx, b2cy, b2Speed)
-        };
-    }
-
-    @Override public void tick(Field field, long nanos) {
-        if (rotatingGroups == null) {
-            setupRotatingGroups(field);
-        }
-
-        double seconds = nanos / 1e9;
-        for (RotatingGroup rotatingGroup : rotatingGroups) {
-            rotatingGroup.applyRotation(field, seconds);
-        }
-    }
-
     private void restoreLeftBallSaver(Field field) {
         ((WallElement) field.getFieldElementById("BallSaver-left")).setRetracted(false);
     }
@@ -121,7 +33,8 @@ public class Field2Delegate extends BaseFieldDelegate {
     }
 
     /**
-     * Always return true so the rotating bumpers animate smoothly
+     * Always return true so the rotating bumpers, which are RotatingBumperGroupElements in the
+     * layout, animate smoothly
      */
     @Override public boolean isFieldActive(Field field) {
         return true;
@@ -15,7 +15,6 @@ import com.dozingcatsoftware.vectorpinball.elements.WallElement;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
@@ -61,14 +60,24 @@ public class Field7Delegate extends BaseFieldDelegate {
         double[] magnitude = new double[capacity];
         int[] indices = new int[capacity];
         int[] starIndexToProjIndex = new int[capacity];
+        // Stars that may be visible, as returned by SkyIndex.findCandidateStars.
+        Stars.SkyIndex.Candidates candidates =
+                new Stars.SkyIndex.Candidates(CATALOG.index, capacity);
+
+        Star2DProjection() {
+            Arrays.fill(this.starIndexToProjIndex, -1);
+        }
 
         int size() {
             return size;
         }
 
         void clear() {
+            // Only the entries for the stars in the projection need to be reset.
+            for (int i = 0; i < size; i++) {
+                this.starIndexToProjIndex[this.indices[i]] = -1;
+            }
             size = 0;
-            Arrays.fill(this.starIndexToProjIndex, -1);
         }
 
         void add(double xx, double yy, double mag, int index) {
@@ -85,10 +94,14 @@ public class Field7Delegate extends BaseFieldDelegate {
         final static double CONSTELLATION_RADIUS_MULTIPLIER = 1.2;
 
         Set<Integer> activatedStars = new HashSet<>();
+        // Same as activatedStars, for checking stars every frame without boxing.
+        boolean[] activatedStarFlags = new boolean[CATALOG.size()];
         List<Constellation> lockedConstellations = new ArrayList<>();
         Constellation currentConstellation = null;
         ProjectionTarget currentTarget = new ProjectionTarget();
         Star2DProjection projection = new Star2DProjection();
+        // If false, tick() checks every star instead of using the catalog's SkyIndex.
+        boolean useSkyIndex = true;
 
         StarMode mode = StarMode.WANDERING;
         long wanderNanos = 0;
@@ -137,7 +150,26 @@ public class Field7Delegate extends BaseFieldDelegate {
             else if (currentConstellation != null) {
                 updateConstellationProjection();
             }
-            projectVisibleStars(CATALOG, this.currentTarget, this.projection);
+            if (useSkyIndex) {
+                projectVisibleStars(CATALOG, this.currentTarget, this.projection);
+            }
+            else {
+                projectAllStars(CATALOG, this.currentTarget, this.projection);
+            }
+        }
+
+        boolean isStarActivated(int starIndex) {
+            return activatedStarFlags[starIndex];
+        }
+
+        // Returns true if the star wasn't already activated.
+        boolean activateStar(int starIndex) {
+            if (activatedStarFlags[starIndex]) {
+                return false;
+            }
+            activatedStarFlags[starIndex] = true;
+            activatedStars.add(starIndex);
+            return true;
         }
 
         boolean allStarsInConstellationActive(Constellation c) {
@@ -159,6 +191,7 @@ public class Field7Delegate extends BaseFieldDelegate {
 
         void resetAndWander() {
             this.activatedStars.clear();
+            Arrays.fill(this.activatedStarFlags, false);
             this.lockedConstellations.clear();
             this.enterWanderingMode();
         }
@@ -181,11 +214,8 @@ public class Field7Delegate extends BaseFieldDelegate {
                         double px = projection.x[pi] / this.currentTarget.angularRadius;
                         double py = projection.y[pi] / this.currentTarget.angularRadius;
                         double dist2 = (x - px) * (x - px) + (y - py) * (y - py);
-                        if (dist2 < 0.1 * 0.1) {
-                            if (!this.activatedStars.contains(starIndex)) {
-                                this.activatedStars.add(starIndex);
-                                newActivations += 1;
-                            }
+                        if (dist2 < 0.1 * 0.1 && activateStar(starIndex)) {
+                            newActivations += 1;
                         }
                     }
                 }
@@ -238,45 +268,79 @@ public class Field7Delegate extends BaseFieldDelegate {
             return true;
         }
 
+        /**
+         * Projects the stars within the target's angular radius, using the catalog's SkyIndex to
+         * skip stars that are too far away. Stars are added in increasing index order, which is
+         * the order of increasing magnitude, as with projectAllStars.
+         */
         static void projectVisibleStars(
                 StarCatalog catalog, ProjectionTarget target, Star2DProjection projection) {
             projection.clear();
+            double cosDec = Math.cos(target.declination);
+            double sinDec = Math.sin(target.declination);
+            double cosRa = Math.cos(target.rightAscension);
+            double sinRa = Math.sin(target.rightAscension);
+            // The star at the target's position, which projects to (0, 0), has the same
+            // coordinates as in makeCatalog. Stars are visible if the sine of their angle from it
+            // is less than the angular radius, and the angle is less than 90 degrees.
+            double maxAngle = (target.angularRadius >= 1) ?
+                    Math.PI / 2 : Math.asin(target.angularRadius);
+            Stars.SkyIndex.Candidates candidates = projection.candidates;
+            catalog.index.findCandidateStars(
+                    cosDec * cosRa, -cosDec * sinRa, sinDec, maxAngle, candidates);
+            double rad2 = target.angularRadius * target.angularRadius;
+            for (int i = 0; i < candidates.count; i++) {
+                projectStar(catalog, candidates.stars[i],
+                        sinRa, cosRa, sinDec, cosDec, rad2, projection);
+            }
+        }
+
+        /** Projects the stars within the target's angular radius by checking every star. */
+        static void projectAllStars(
+                StarCatalog catalog, ProjectionTarget target, Star2DProjection projection) {
+            projection.clear();
             double rad2 = target.angularRadius * target.angularRadius;
             int catSize = catalog.size();
             double sinRa = Math.sin(target.rightAscension);
             double cosRa = Math.cos(target.rightAscension);
             double sinDec = Math.sin(target.declination);
             double cosDec = Math.cos(target.declination);
-            // Rotate each star around the Z axis for right ascension, then the Y axis for
+            for (int i = 0; i < catSize; i++) {
+                projectStar(catalog, i, sinRa, cosRa, sinDec, cosDec, rad2, projection);
+            }
+        }
+
+        private static void projectStar(StarCatalog catalog, int i,
+                double sinRa, double cosRa, double sinDec, double cosDec, double rad2,
+                Star2DProjection projection) {
+            // Rotate the star around the Z axis for right ascension, then the Y axis for
             // declination. The point we're looking at will now be at (1, 0, 0), and when we
             // project to 2D, Y becomes X and Z becomes Y.
-            for (int i = 0; i < catSize; i++) {
-                double x = catalog.x[i];
-                double y = catalog.y[i];
-                double z = catalog.z[i];
-                // https://en.wikipedia.org/wiki/Rotation_matrix#In_three_dimensions
-                // Around Z axis:
-                // [cos(theta), -sin(theta), 0]
-                // [sin(theta), cos(theta), 0]
-                // [0, 0, 1]
-                // We can treat this as a 2d rotation in the XY plane; z remains constant.
-                double x1 = x * cosRa - y * sinRa;
-                double y1 = x * sinRa + y * cosRa;
-                double z1 = z;
-                // Around Y axis:
-                // [cos(theta), 0, sin(theta)]
-                // [0, 1, 0]
-                // [-sin(theta), 0, cos(theta)]
-                double x2 = x1 * cosDec + z1 * sinDec;
-                double y2 = y1;
-                double z2 = -x1 * sinDec + z1 * cosDec;
-                // We started with a unit vector so we could normalize [x2, y2, z2], but it
-                // shouldn't be too far off. The star is "visible" if it's close enough to the
-                // X axis on the positive side.
-                double yzOffsetSq = y2 * y2 + z2 * z2;
-                if (x2 > 0 && yzOffsetSq < rad2) {
-                    projection.add(y2, z2, catalog.magnitude[i], i);
-                }
+            double x = catalog.x[i];
+            double y = catalog.y[i];
+            double z = catalog.z[i];
+            // https://en.wikipedia.org/wiki/Rotation_matrix#In_three_dimensions
+            // Around Z axis:
+            // [cos(theta), -sin(theta), 0]
+            // [sin(theta), cos(theta), 0]
+            // [0, 0, 1]
+            // We can treat this as a 2d rotation in the XY plane; z remains constant.
+            double x1 = x * cosRa - y * sinRa;
+            double y1 = x * sinRa + y * cosRa;
+            double z1 = z;
+            // Around Y axis:
+            // [cos(theta), 0, sin(theta)]
+            // [0, 1, 0]
+            // [-sin(theta), 0, cos(theta)]
+            double x2 = x1 * cosDec + z1 * sinDec;
+            double y2 = y1;
+            double z2 = -x1 * sinDec + z1 * cosDec;
+            // We started with a unit vector so we could normalize [x2, y2, z2], but it
+            // shouldn't be too far off. The star is "visible" if it's close enough to the
+            // X axis on the positive side.
+            double yzOffsetSq = y2 * y2 + z2 * z2;
+            if (x2 > 0 && yzOffsetSq < rad2) {
+                projection.add(y2, z2, catalog.magnitude[i], i);
             }
         }
     }
@@ -336,7 +400,9 @@ public class Field7Delegate extends BaseFieldDelegate {
         }
         starState.currentConstellation = constellation;
         starState.mode = StarMode.CONSTELLATION;
-        starState.activatedStars.addAll(constellation.starIndices);
+        for (int starIndex : constellation.starIndices) {
+            starState.activateStar(starIndex);
+        }
         // tick(0) projects the current constellation without advancing any animation.
         starState.tick(0);
         field.setShapes(shapesFromProjection());
@@ -408,7 +474,7 @@ public class Field7Delegate extends BaseFieldDelegate {
             setLaunchBarrierEnabled(field, false);
         }
         else if ("LeftFlipperDropSensor".equals(id) || "RightFlipperDropSensor".equals(id)) {
-            ball.getBody().setLinearVelocity(0, 0);
+            ball.setLinearVelocity(0, 0);
         }
         else if ("MiniTableOrBallLockSensor".equals(id)) {
             int toLayer = MINITABLE_LAYER;
@@ -555,7 +621,7 @@ public class Field7Delegate extends BaseFieldDelegate {
             ball = field.createBall(center.x, center.y);
         }
         ball.moveToLayer(BALL_LOCK_LAYER);
-        ball.getBody().setLinearVelocity(0, -(5.0f + RAND.nextFloat()));
+        ball.setLinearVelocity(0, -(5.0f + RAND.nextFloat()));
         field.playBallLaunchSound();
         field.updateBallLaunchTimes();
         numBallsLocked--;
@@ -570,6 +636,7 @@ public class Field7Delegate extends BaseFieldDelegate {
         bb.setTransform(center.x, center.y, bb.getAngle());
         bb.setLinearVelocity(0, 0);
         bb.setAngularVelocity(0);
+        ball.refreshState();
         final float origGravity = bb.getGravityScale();
         bb.setGravityScale(0);
 
@@ -603,9 +670,9 @@ public class Field7Delegate extends BaseFieldDelegate {
     static int CONSTELLATION_LINE_COLOR = Color.fromRGBA(240, 240, 240, 192);
 
     int starColorForIndex(int starIndex) {
-        boolean isActive = starState.activatedStars.contains(starIndex);
+        boolean isActive = starState.isStarActivated(starIndex);
         boolean isInActiveConstellation = starState.currentConstellation != null &&
-                starState.currentConstellation.starIndices.contains(starIndex);
+                starState.currentConstellation.containsStar[starIndex];
         if (isInActiveConstellation) {
             return isActive ?
                     ACTIVE_STAR_ACTIVE_CONSTELLATION_COLOR :
@@ -618,14 +685,22 @@ public class Field7Delegate extends BaseFieldDelegate {
         }
     }
 
+    // Reused by shapesFromProjection, which is called every tick. Field draws the shapes while
+    // synchronized on the field, as is tick(), so they can be updated in place.
+    final ArrayList<Shape> projectionShapes = new ArrayList<>();
+    final ArrayList<Shape.Circle> starCircles = new ArrayList<>();
+    final ArrayList<Shape.Line> constellationLines = new ArrayList<>();
+
     List<Shape> shapesFromProjection() {
         Star2DProjection proj = starState.projection;
         double centerX = this.starViewCenter.x;
         double centerY = this.starViewCenter.y;
         double distScale = this.starViewRadius / starState.currentTarget.angularRadius;
         double baseRadius = this.starViewRadius * 0.015;
-        List<Shape> shapes = new ArrayList<>();
-        for (int i = 0; i < proj.size(); i++) {
+        projectionShapes.clear();
+        int numCircles = 0;
+        // Draw brighter stars (with lower magnitudes) last.
+        for (int i = proj.size() - 1; i >= 0; i--) {
             double cx = centerX + proj.x[i] * distScale;
             double cy = centerY + proj.y[i] * distScale;
             double mag = proj.magnitude[i];
@@ -633,36 +708,45 @@ public class Field7Delegate extends BaseFieldDelegate {
             int baseColor = starColorForIndex(proj.indices[i]);
             int color = Color.withAlpha(baseColor, alpha);
             double rmul = (mag <= 0) ? 1.5 : (mag >= 4) ? 0.75 : 1.0;
-            shapes.add(Shape.Circle.create(
-                    cx, cy, rmul * baseRadius, Shape.FillType.SOLID, 0, color, null));
+            if (numCircles == starCircles.size()) {
+                starCircles.add(Shape.Circle.create(
+                        cx, cy, rmul * baseRadius, Shape.FillType.SOLID, 0, color, null));
+            }
+            else {
+                Shape.Circle circle = starCircles.get(numCircles);
+                circle.setCenterAndRadius(cx, cy, rmul * baseRadius);
+                circle.setColor(color);
+            }
+            projectionShapes.add(starCircles.get(numCircles));
+            numCircles++;
         }
-        // Draw brighter stars (with lower magnitudes) last.
-        Collections.reverse(shapes);
         // Lines for activated stars in constellations.
-        for (Constellation c : CONSTELLATIONS) {
-            for (int starIndex : c.starIndices) {
-                if (starState.activatedStars.contains((starIndex))) {
-                    Set<Integer> endpoints = c.segmentsByIndex.get(starIndex);
-                    if (endpoints != null) {
-                        for (int endIndex : endpoints) {
-                            if (starState.activatedStars.contains(endIndex)) {
-                                int pi1 = proj.starIndexToProjIndex[starIndex];
-                                int pi2 = proj.starIndexToProjIndex[endIndex];
-                                if (pi1 < 0 || pi2 < 0) {
-                                    continue;
-                                }
-                                double x1 = centerX + proj.x[pi1] * distScale;
-                                double y1 = centerY + proj.y[pi1] * distScale;
-                                double x2 = centerX + proj.x[pi2] * distScale;
-                                double y2 = centerY + proj.y[pi2] * distScale;
-                                shapes.add(Shape.Line.create(
-                                        x1, y1, x2, y2, 0, CONSTELLATION_LINE_COLOR, null));
-                            }
-                        }
-                    }
+        int numLines = 0;
+        for (int c = 0; c < CONSTELLATIONS.size(); c++) {
+            int[] segments = CONSTELLATIONS.get(c).uniqueSegments;
+            for (int i = 0; i < segments.length; i += 2) {
+                int pi1 = proj.starIndexToProjIndex[segments[i]];
+                int pi2 = proj.starIndexToProjIndex[segments[i + 1]];
+                if (pi1 < 0 || pi2 < 0 ||
+                        !starState.isStarActivated(segments[i]) ||
+                        !starState.isStarActivated(segments[i + 1])) {
+                    continue;
+                }
+                double x1 = centerX + proj.x[pi1] * distScale;
+                double y1 = centerY + proj.y[pi1] * distScale;
+                double x2 = centerX + proj.x[pi2] * distScale;
+                double y2 = centerY + proj.y[pi2] * distScale;
+                if (numLines == constellationLines.size()) {
+                    constellationLines.add(Shape.Line.create(
+                            x1, y1, x2, y2, 0, CONSTELLATION_LINE_COLOR, null));
+                }
+                else {
+                    constellationLines.get(numLines).setEndpoints(x1, y1, x2, y2);
                 }
+                projectionShapes.add(constellationLines.get(numLines));
+                numLines++;
             }
         }
-        return shapes;
+        return projectionShapes;
     }
 }
@@ -675,7 +675,7 @@ public class Field9Delegate extends BaseFieldDelegate {
             // velocity so it settles into the pocket instead of rebounding back down the ramp.
             // (The RampDropSensor there drops it to layer 0 once it's nearly stopped.)
             Vector2 v = ball.getLinearVelocity();
-            ball.getBody().setLinearVelocity(v.x * 0.2f, v.y * 0.2f);
+            ball.setLinearVelocity(v.x * 0.2f, v.y * 0.2f);
             return;
         }
         if ("LeftCycleTargets".equals(id)) {
@@ -1,5 +1,6 @@
 package com.dozingcatsoftware.vectorpinball.fields;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -26,12 +27,190 @@ public class Stars {
         double[] y;
         double[] z;
         double[] magnitude;
+        SkyIndex index;
 
         int size() {
             return this.x.length;
         }
     }
 
+    /**
+     * Groups the stars of a catalog into cells of a declination and right ascension grid, so that
+     * finding the stars near a point only has to check the stars in nearby cells. Each declination
+     * band is divided into enough right ascension cells that the cells are roughly square.
+     */
+    static class SkyIndex {
+        static final double CELL_SIZE_RADIANS = Math.toRadians(10);
+
+        int numCells;
+        // Unit vector to the center of the stars in each cell, and the greatest angle from it to
+        // a star in the cell. Only cells that contain stars are stored.
+        double[] cellX;
+        double[] cellY;
+        double[] cellZ;
+        double[] cellRadius;
+        double[] cellCosRadius;
+        double[] cellSinRadius;
+        // The stars in cell N are cellStars[cellStart[N]] through cellStars[cellStart[N+1]-1],
+        // in increasing order.
+        int[] cellStart;
+        int[] cellStars;
+
+        static SkyIndex create(StarCatalog catalog) {
+            int numBands = (int) Math.ceil(Math.PI / CELL_SIZE_RADIANS);
+            double bandHeight = Math.PI / numBands;
+            // Assign each star to a grid cell, with cells numbered consecutively by band.
+            int[] bandOffset = new int[numBands + 1];
+            int[] cellsInBand = new int[numBands];
+            for (int b = 0; b < numBands; b++) {
+                double decCenter = -Math.PI / 2 + (b + 0.5) * bandHeight;
+                cellsInBand[b] = Math.max(1,
+                        (int) Math.round(2 * Math.PI * cos(decCenter) / CELL_SIZE_RADIANS));
+                bandOffset[b + 1] = bandOffset[b] + cellsInBand[b];
+            }
+            int numStars = catalog.size();
+            int[] gridCell = new int[numStars];
+            int[] starsInGridCell = new int[bandOffset[numBands]];
+            for (int i = 0; i < numStars; i++) {
+                int band = (int) ((catalog.decRadians[i] + Math.PI / 2) / bandHeight);
+                band = Math.max(0, Math.min(numBands - 1, band));
+                double ra = catalog.raRadians[i] % (2 * Math.PI);
+                if (ra < 0) ra += 2 * Math.PI;
+                int raCell = (int) (ra / (2 * Math.PI) * cellsInBand[band]);
+                raCell = Math.min(cellsInBand[band] - 1, raCell);
+                gridCell[i] = bandOffset[band] + raCell;
+                starsInGridCell[gridCell[i]]++;
+            }
+            // Store only the cells that have stars.
+            int[] gridCellToIndex = new int[starsInGridCell.length];
+            SkyIndex self = new SkyIndex();
+            for (int c = 0; c < starsInGridCell.length; c++) {
+                gridCellToIndex[c] = (starsInGridCell[c] > 0) ? self.numCells++ : -1;
+            }
+            int n = self.numCells;
+            self.cellStart = new int[n + 1];
+            for (int c = 0; c < starsInGridCell.length; c++) {
+                if (gridCellToIndex[c] >= 0) {
+                    self.cellStart[gridCellToIndex[c] + 1] = starsInGridCell[c];
+                }
+            }
+            for (int c = 0; c < n; c++) {
+                self.cellStart[c + 1] += self.cellStart[c];
+            }
+            // Stars are added in increasing order, so each cell's stars are sorted.
+            self.cellStars = new int[numStars];
+            int[] fill = Arrays.copyOf(self.cellStart, n);
+            for (int i = 0; i < numStars; i++) {
+                self.cellStars[fill[gridCellToIndex[gridCell[i]]]++] = i;
+            }
+
+            self.cellX = new double[n];
+            self.cellY = new double[n];
+            self.cellZ = new double[n];
+            self.cellRadius = new double[n];
+            self.cellCosRadius = new double[n];
+            self.cellSinRadius = new double[n];
+            for (int c = 0; c < n; c++) {
+                double sx = 0, sy = 0, sz = 0;
+                for (int j = self.cellStart[c]; j < self.cellStart[c + 1]; j++) {
+                    int star = self.cellStars[j];
+                    sx += catalog.x[star];
+                    sy += catalog.y[star];
+                    sz += catalog.z[star];
+                }
+                double len = Math.sqrt(sx * sx + sy * sy + sz * sz);
+                sx /= len;
+                sy /= len;
+                sz /= len;
+                double radius = 0;
+                for (int j = self.cellStart[c]; j < self.cellStart[c + 1]; j++) {
+                    int star = self.cellStars[j];
+                    double dot = sx * catalog.x[star] + sy * catalog.y[star] + sz * catalog.z[star];
+                    radius = Math.max(radius, Math.acos(Math.min(1, dot)));
+                }
+                self.cellX[c] = sx;
+                self.cellY[c] = sy;
+                self.cellZ[c] = sz;
+                self.cellRadius[c] = radius;
+                self.cellCosRadius[c] = cos(radius);
+                self.cellSinRadius[c] = sin(radius);
+            }
+            return self;
+        }
+
+        /** Reusable buffers for the result of findCandidateStars. */
+        static class Candidates {
+            // stars[0] through stars[count-1] are the candidate star indices in increasing order.
+            int[] stars;
+            int count;
+            // Used while sorting: the start of each cell's stars in `stars`, and a second array
+            // to merge them into.
+            int[] scratch;
+            final int[] runStarts;
+
+            Candidates(SkyIndex index, int numStars) {
+                stars = new int[numStars];
+                scratch = new int[numStars];
+                runStarts = new int[index.numCells + 1];
+            }
+        }
+
+        // Extra angle for findCandidateStars, so that rounding can't exclude stars at the edge of
+        // a cell.
+        static final double ANGLE_MARGIN = 1e-6;
+
+        /**
+         * Finds the stars in every cell that may contain stars within `maxAngle` radians of the
+         * unit vector (x, y, z), and stores them in `result` in increasing order. Callers must
+         * check the distance of each star.
+         */
+        void findCandidateStars(double x, double y, double z, double maxAngle, Candidates result) {
+            maxAngle += ANGLE_MARGIN;
+            double cosMax = cos(maxAngle);
+            double sinMax = sin(maxAngle);
+            int count = 0;
+            int numRuns = 0;
+            for (int c = 0; c < numCells; c++) {
+                // A star in the cell can be close enough if the angle to the cell's center is at
+                // most maxAngle + cellRadius, and cos(a + b) = cos(a)cos(b) - sin(a)sin(b).
+                double minDot = cosMax * cellCosRadius[c] - sinMax * cellSinRadius[c];
+                if (maxAngle + cellRadius[c] >= Math.PI ||
+                        x * cellX[c] + y * cellY[c] + z * cellZ[c] >= minDot) {
+                    int start = cellStart[c];
+                    int cellSize = cellStart[c + 1] - start;
+                    result.runStarts[numRuns++] = count;
+                    System.arraycopy(cellStars, start, result.stars, count, cellSize);
+                    count += cellSize;
+                }
+            }
+            result.count = count;
+            // Each cell's stars are sorted, so merge adjacent runs until there's only one.
+            // This doesn't allocate, unlike Arrays.sort for large arrays.
+            while (numRuns > 1) {
+                int[] src = result.stars;
+                int[] dst = result.scratch;
+                int mergedRuns = 0;
+                for (int r = 0; r < numRuns; r += 2) {
+                    int aStart = result.runStarts[r];
+                    int aEnd = (r + 1 < numRuns) ? result.runStarts[r + 1] : count;
+                    int bEnd = (r + 2 < numRuns) ? result.runStarts[r + 2] : count;
+                    int a = aStart;
+                    int b = aEnd;
+                    int out = aStart;
+                    while (a < aEnd && b < bEnd) {
+                        dst[out++] = (src[a] <= src[b]) ? src[a++] : src[b++];
+                    }
+                    while (a < aEnd) dst[out++] = src[a++];
+                    while (b < bEnd) dst[out++] = src[b++];
+                    result.runStarts[mergedRuns++] = aStart;
+                }
+                numRuns = mergedRuns;
+                result.stars = dst;
+                result.scratch = src;
+            }
+        }
+    }
+
     static StarCatalog CATALOG = makeCatalog(StarData.STAR_DATA);
 
     private static StarCatalog makeCatalog(double[] starData) {
@@ -55,6 +234,7 @@ public class Stars {
             cat.z[i] = sin(rho);
             cat.magnitude[i] = starData[offset + 2];
         }
+        cat.index = SkyIndex.create(cat);
         return cat;
     }
 
@@ -95,6 +275,10 @@ public class Stars {
         int[] segments;
         // Maps smaller index to endpoints with greater indices.
         Map<Integer, Set<Integer>> segmentsByIndex = new HashMap<>();
+        // Flattened pairs of star indices without duplicates, ordered by the first star.
+        int[] uniqueSegments;
+        // Whether each star in the catalog is in this constellation.
+        boolean[] containsStar;
 
         static Constellation withSegments(StarCatalog catalog, String name, int... segments) {
             assert segments.length % 2 == 0;
@@ -145,6 +329,25 @@ public class Stars {
             self.centerDecRadians = avgDec;
             self.angularRadius = maxDist;
             self.starIndices = starIndices;
+
+            self.containsStar = new boolean[catalog.size()];
+            for (int index : starIndices) {
+                self.containsStar[index] = true;
+            }
+            List<Integer> unique = new ArrayList<>();
+            for (int index : starIndices) {
+                Set<Integer> endpoints = self.segmentsByIndex.get(index);
+                if (endpoints != null) {
+                    for (int endIndex : endpoints) {
+                        unique.add(index);
+                        unique.add(endIndex);
+                    }
+                }
+            }
+            self.uniqueSegments = new int[unique.size()];
+            for (int i = 0; i < unique.size(); i++) {
+                self.uniqueSegments[i] = unique.get(i);
+            }
             return self;
         }
     }
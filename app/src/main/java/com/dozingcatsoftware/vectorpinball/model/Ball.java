@@ -3,129 +3,136 @@ package com.dozingcatsoftware.vectorpinball.model;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
-import com.badlogic.gdx.physics.box2d.CircleShape;
-import com.badlogic.gdx.physics.box2d.World;
-import com.dozingcatsoftware.vectorpinball.elements.Box2DFactory;
 
 /**
  * Represents a ball in play. Not part of the elements package because balls are created and
  * removed at "runtime" rather than being part of the table definition.
+ *
+ * While a ball is in play, its position, velocity, angle, and trail are stored in Field's
+ * BallStore, and this object is a handle that reads them from there. Balls are created by
+ * BallPool, which reuses their Box2D bodies. Ball objects themselves are not reused, so that
+ * delegates can key per-ball state on them.
  */
 public class Ball implements IDrawable {
-    static class PreviousPosition {
-        long nanos;
-        float x;
-        float y;
-    }
-
-    private WorldLayers worlds;
+    private final BallPool pool;
     private int layer;
     private Body body;
+    private final float radius;
+    private BallStore store;
+    private int storeIndex = -1;
+    // Returned by getPosition and getLinearVelocity, and updated from the store when they're
+    // called. When the ball isn't in a store these hold its last state.
+    private final Vector2 position = new Vector2();
+    private final Vector2 linearVelocity = new Vector2();
+    private float angle;
     private int primaryColor;
     private int secondaryColor;
     private String mostRecentSensorId;
-    private PreviousPosition[] previousPositions = new PreviousPosition[20];
-    private int previousPositionHeadIndex = -1;
+    // Small integer that's unique among balls in play, or -1. See Field.MAX_BALL_SLOTS.
+    private int slot = -1;
 
-    private Ball(
-            WorldLayers worlds, int layer, Body body, int primaryColor, int secondaryColor) {
-        this.worlds = worlds;
+    Ball(BallPool pool, float radius, int layer, Body body, int primaryColor,
+            int secondaryColor) {
+        this.pool = pool;
+        this.radius = radius;
         this.layer = layer;
         this.body = body;
         this.primaryColor = primaryColor;
         this.secondaryColor = secondaryColor;
+        body.setUserData(this);
+        refreshState();
+    }
 
-        for (int i = 0; i < previousPositions.length; i++) {
-            previousPositions[i] = new PreviousPosition();
-            previousPositions[i].nanos = -1;
+    /**
+     * Updates the stored position, velocity, and angle from the Box2D body. Field does this for
+     * every ball after each physics step; code that moves a ball's body directly should call it
+     * afterwards so that getPosition and getLinearVelocity reflect the change.
+     */
+    public void refreshState() {
+        if (store != null) {
+            store.refresh(storeIndex);
+        }
+        else {
+            position.set(body.getPosition());
+            linearVelocity.set(body.getLinearVelocity());
+            angle = body.getAngle();
         }
     }
 
-    public static Ball create(
-            WorldLayers worlds, int layer, float x, float y, float radius,
-            int primaryColor, int secondaryColor) {
-        Body body = createBody(worlds.existingWorldForLayer(layer), x, y, radius);
-        return new Ball(worlds, layer, body, primaryColor, secondaryColor);
+    void attachToStore(BallStore store, int index) {
+        this.store = store;
+        this.storeIndex = index;
     }
 
-    private static Body createBody(World world, float x, float y, float radius) {
-        Body ballBody = Box2DFactory.createCircle(world, x, y, radius, false);
-        ballBody.setBullet(true);
-        // Default is radius of 0.5, if different we want the mass to be the same (could be
-        // configurable if needed), so adjust density proportional to square of the radius.
-        ballBody.getFixtureList().get(0).setDensity((0.5f*0.5f) / (radius*radius));
-        ballBody.resetMassData();
-        return ballBody;
+    void detachFromStore(float x, float y, float vx, float vy, float angle) {
+        this.store = null;
+        this.storeIndex = -1;
+        this.position.set(x, y);
+        this.linearVelocity.set(vx, vy);
+        this.angle = angle;
     }
 
-    public void tick(Field field, long nanos) {
-        if (previousPositionHeadIndex == -1) {
-            previousPositionHeadIndex = 0;
-        }
-        else {
-            previousPositionHeadIndex = (previousPositionHeadIndex + 1) % previousPositions.length;
-        }
-        PreviousPosition pp = previousPositions[previousPositionHeadIndex];
-        Vector2 pos = this.getPosition();
-        pp.nanos = field.getGameTimeNanos();
-        pp.x = pos.x;
-        pp.y = pos.y;
+    /** Returns this ball's index in the BallStore of the field it's in, or -1 if not in play. */
+    int getStoreIndex() {
+        return storeIndex;
     }
 
     @Override public void draw(Field field, IFieldRenderer renderer) {
-        if (field.ballTrailsEnabled()) {
+        if (field.ballTrailsEnabled() && store != null) {
             drawTrails(field, renderer);
         }
         Vector2 center = this.getPosition();
-        float radius = this.getRadius();
+        float angle = this.getAngle();
         renderer.fillCircle(center.x, center.y, radius, primaryColor);
 
         // Draw a smaller circle to show the ball's rotation.
-        float angle = body.getAngle();
         float smallCenterX = center.x + (radius / 2) * MathUtils.cos(angle);
         float smallCenterY = center.y + (radius / 2) * MathUtils.sin(angle);
         renderer.fillCircle(smallCenterX, smallCenterY, radius / 4, secondaryColor);
     }
 
     private void drawTrails(Field field, IFieldRenderer renderer) {
-        final int maxTrailImages = 25;
+        final int maxTrailImages = field.getMaxBallTrailImages();
         final long nanosPerTrailImage = 12_000_000L;
 
-        Vector2 center = this.getPosition();
+        final BallStore store = this.store;
+        final int trailStart = storeIndex * BallStore.TRAIL_LENGTH;
+        final int head = store.trailHead[storeIndex];
         int numTrailsDrawn = 0;
-        float prevX = center.x;
-        float prevY = center.y;
+        float prevX = store.x[storeIndex];
+        float prevY = store.y[storeIndex];
         long now = field.getGameTimeNanos();
         long prevDiffNanos = 0;
         long nextTrailBoundary = nanosPerTrailImage;
 
-        for (int i = 0; i < previousPositions.length && numTrailsDrawn < maxTrailImages; i++) {
-            int pi = previousPositionHeadIndex - i;
+        for (int i = 0; i < BallStore.TRAIL_LENGTH && numTrailsDrawn < maxTrailImages; i++) {
+            int pi = head - i;
             if (pi < 0) {
-                pi += previousPositions.length;
+                pi += BallStore.TRAIL_LENGTH;
             }
-            PreviousPosition pp = previousPositions[pi];
-            if (pp.nanos <= 0) {
+            long ppNanos = store.trailNanos[trailStart + pi];
+            if (ppNanos <= 0) {
                 break;
             }
+            float ppX = store.trailX[trailStart + pi];
+            float ppY = store.trailY[trailStart + pi];
 
-            long diffNanos = now - pp.nanos;
+            long diffNanos = now - ppNanos;
             while (diffNanos > nextTrailBoundary && numTrailsDrawn < maxTrailImages) {
                 // Interpolate position.
                 float positionFraction = ((float)(nextTrailBoundary - prevDiffNanos)) / (diffNanos - prevDiffNanos);
-                float x = prevX + positionFraction * (pp.x - prevX);
-                float y = prevY + positionFraction * (pp.y - prevY);
+                float x = prevX + positionFraction * (ppX - prevX);
+                float y = prevY + positionFraction * (ppY - prevY);
                 // Trail circles get gradually smaller and more transparent.
                 float sizeFraction = 1.0f - (numTrailsDrawn / (float) maxTrailImages);
-                float radius = this.getRadius() * sizeFraction;
                 int color = Color.blend(Color.withAlpha(primaryColor, 0), primaryColor, sizeFraction * 0.3f);
-                renderer.fillCircle(x, y, radius, color);
+                renderer.fillCircle(x, y, radius * sizeFraction, color);
                 numTrailsDrawn += 1;
                 nextTrailBoundary += nanosPerTrailImage;
             }
             prevDiffNanos = diffNanos;
-            prevX = pp.x;
-            prevY = pp.y;
+            prevX = ppX;
+            prevY = ppY;
         }
     }
 
@@ -133,25 +140,78 @@ public class Ball implements IDrawable {
         return this.layer;
     }
 
+    /**
+     * Returns the ball's position as of the last physics step. The returned vector is updated in
+     * place and must not be modified.
+     */
     public Vector2 getPosition() {
-        return body.getPosition();
+        if (store != null) {
+            position.set(store.x[storeIndex], store.y[storeIndex]);
+        }
+        return position;
+    }
+
+    public float getX() {
+        return (store != null) ? store.x[storeIndex] : position.x;
+    }
+
+    public float getY() {
+        return (store != null) ? store.y[storeIndex] : position.y;
     }
 
+    /**
+     * Returns the ball's velocity as of the last physics step or impulse. The returned vector is
+     * updated in place and must not be modified.
+     */
     public Vector2 getLinearVelocity() {
-        return body.getLinearVelocity();
+        if (store != null) {
+            linearVelocity.set(store.vx[storeIndex], store.vy[storeIndex]);
+        }
+        return linearVelocity;
+    }
+
+    public float getAngle() {
+        return (store != null) ? store.angle[storeIndex] : angle;
+    }
+
+    /** Sets the velocity of the ball's body and updates the stored velocity. */
+    public void setLinearVelocity(float vx, float vy) {
+        body.setLinearVelocity(vx, vy);
+        storeLinearVelocity(vx, vy);
+    }
+
+    private void storeLinearVelocity(float vx, float vy) {
+        if (store != null) {
+            store.vx[storeIndex] = vx;
+            store.vy[storeIndex] = vy;
+        }
+        else {
+            linearVelocity.set(vx, vy);
+        }
     }
 
     public void applyLinearImpulse(Vector2 impulse) {
-        body.applyLinearImpulse(impulse, body.getWorldCenter(), true);
+        applyLinearImpulse(impulse.x, impulse.y);
+    }
+
+    /** Applies an impulse at the ball's center, without allocating a Vector2. */
+    public void applyLinearImpulse(float ix, float iy) {
+        // The center of mass of a circle is its position.
+        body.applyLinearImpulse(ix, iy, getX(), getY(), true);
+        Vector2 v = body.getLinearVelocity();
+        storeLinearVelocity(v.x, v.y);
     }
 
+    /**
+     * Returns the ball's Box2D body. After the ball is removed, the body is inactive and may be
+     * reused by a ball launched later, so it shouldn't be modified.
+     */
     public Body getBody() {
         return body;
     }
 
     public float getRadius() {
-        CircleShape shape = (CircleShape)body.getFixtureList().get(0).getShape();
-        return shape.getRadius();
+        return radius;
     }
 
     public int getPrimaryColor() {
@@ -170,6 +230,20 @@ public class Ball implements IDrawable {
         this.secondaryColor = secondaryColor;
     }
 
+    /**
+     * Returns an integer between 0 and Field.MAX_BALL_SLOTS-1 which is unique among balls in
+     * play, or -1 if there were too many balls when this one was created. Elements can use it to
+     * index into primitive arrays or bit masks instead of storing Ball objects in maps. Slots of
+     * removed balls are reused.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
     public String getMostRecentSensorId() {
         return this.mostRecentSensorId;
     }
@@ -183,21 +257,16 @@ public class Ball implements IDrawable {
             return;
         }
         Body oldBody = this.body;
-        this.body = copyBodyToWorld(worlds.existingOrNewWorldForLayer(newLayer));
+        Vector2 oldPosition = oldBody.getPosition();
+        Vector2 oldVelocity = oldBody.getLinearVelocity();
+        this.body = pool.obtainBody(newLayer, oldPosition.x, oldPosition.y, oldBody.getAngle(),
+                oldVelocity.x, oldVelocity.y, oldBody.getAngularVelocity());
+        this.body.setUserData(this);
         this.layer = newLayer;
-        oldBody.getWorld().destroyBody(oldBody);
-    }
-
-    private Body copyBodyToWorld(World world) {
-        Vector2 position = this.body.getPosition();
-        Body newBody = createBody(world, position.x, position.y, this.getRadius());
-        newBody.setTransform(position.x, position.y, this.body.getAngle());
-        newBody.setLinearVelocity(this.body.getLinearVelocity());
-        newBody.setAngularVelocity(this.body.getAngularVelocity());
-        return newBody;
-    }
-
-    void destroySelf() {
-        this.getBody().getWorld().destroyBody(this.getBody());
+        if (store != null) {
+            store.layer[storeIndex] = newLayer;
+        }
+        pool.releaseBody(oldBody);
+        refreshState();
     }
 }
@@ -0,0 +1,228 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid of ball positions, used to find balls near a point or within a rectangle without
+ * testing every ball. Field rebuilds the grid at most once per tick, when it's first queried after
+ * the balls have moved or been added or removed.
+ *
+ * Elements that check for balls in fixed areas register those areas with addRegion when the
+ * layout is loaded, and the grid uses them to choose its bounds and cell size. Registration is
+ * only a hint; queries anywhere are correct because positions outside the grid bounds are clamped
+ * to the edge cells.
+ */
+public class BallGrid {
+
+    /** Pass as the `layer` argument of query methods to match balls on any layer. */
+    public static final int ANY_LAYER = Integer.MIN_VALUE;
+
+    static final float DEFAULT_CELL_SIZE = 1.0f;
+    static final int MAX_CELLS_PER_AXIS = 64;
+
+    float minX, minY;
+    float cellSize = DEFAULT_CELL_SIZE;
+    float inverseCellSize = 1.0f / DEFAULT_CELL_SIZE;
+    int columns = 1;
+    int rows = 1;
+
+    // Bounds and total size of regions registered with addRegion.
+    int regionCount = 0;
+    float regionMinX, regionMinY, regionMaxX, regionMaxY;
+    float regionExtentSum;
+
+    // Balls sorted by cell: the indices in `store` of the balls in cell N are
+    // cellBallIndices[cellStarts[N]] through cellBallIndices[cellStarts[N+1] - 1].
+    BallStore store;
+    int[] cellStarts = new int[2];
+    int[] cellBallIndices = new int[8];
+    int[] ballCells = new int[8];
+    int[] queryScratch = new int[8];
+    boolean valid = false;
+
+    /** Removes all registered regions, and marks the grid as needing to be rebuilt. */
+    public void clearRegions() {
+        regionCount = 0;
+        regionExtentSum = 0;
+        valid = false;
+    }
+
+    /** Registers a rectangular area that will be queried for balls. */
+    public void addRegion(float xmin, float ymin, float xmax, float ymax) {
+        if (regionCount == 0) {
+            regionMinX = xmin;
+            regionMinY = ymin;
+            regionMaxX = xmax;
+            regionMaxY = ymax;
+        }
+        else {
+            regionMinX = Math.min(regionMinX, xmin);
+            regionMinY = Math.min(regionMinY, ymin);
+            regionMaxX = Math.max(regionMaxX, xmax);
+            regionMaxY = Math.max(regionMaxY, ymax);
+        }
+        regionExtentSum += Math.max(xmax - xmin, ymax - ymin);
+        regionCount++;
+    }
+
+    /**
+     * Sets the grid bounds to cover the field and all registered regions. The cell size is the
+     * average size of the registered regions, but no smaller than a ball, so a typical query
+     * only looks at a few cells.
+     */
+    public void configure(float fieldWidth, float fieldHeight, float ballRadius) {
+        float xmin = 0, ymin = 0, xmax = fieldWidth, ymax = fieldHeight;
+        float size = DEFAULT_CELL_SIZE;
+        if (regionCount > 0) {
+            xmin = Math.min(xmin, regionMinX);
+            ymin = Math.min(ymin, regionMinY);
+            xmax = Math.max(xmax, regionMaxX);
+            ymax = Math.max(ymax, regionMaxY);
+            size = regionExtentSum / regionCount;
+        }
+        size = Math.max(size, 2 * ballRadius);
+        float width = Math.max(xmax - xmin, size);
+        float height = Math.max(ymax - ymin, size);
+        size = Math.max(size, Math.max(width, height) / MAX_CELLS_PER_AXIS);
+
+        this.minX = xmin;
+        this.minY = ymin;
+        this.cellSize = size;
+        this.inverseCellSize = 1.0f / size;
+        this.columns = Math.max(1, (int) Math.ceil(width / size));
+        this.rows = Math.max(1, (int) Math.ceil(height / size));
+        if (cellStarts.length < columns * rows + 1) {
+            cellStarts = new int[columns * rows + 1];
+        }
+        valid = false;
+    }
+
+    /** Marks the grid as needing to be rebuilt, because balls have moved or changed. */
+    public void invalidate() {
+        valid = false;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    int columnForX(float x) {
+        int col = (int) Math.floor((x - minX) * inverseCellSize);
+        return Math.max(0, Math.min(col, columns - 1));
+    }
+
+    int rowForY(float y) {
+        int row = (int) Math.floor((y - minY) * inverseCellSize);
+        return Math.max(0, Math.min(row, rows - 1));
+    }
+
+    /** Sorts the current positions of the balls in `store` into grid cells. */
+    public void rebuild(BallStore store) {
+        this.store = store;
+        int numBalls = store.size();
+        int numCells = columns * rows;
+        if (ballCells.length < numBalls) {
+            int newLength = Math.max(numBalls, 2 * ballCells.length);
+            ballCells = new int[newLength];
+            cellBallIndices = new int[newLength];
+            queryScratch = new int[newLength];
+        }
+        Arrays.fill(cellStarts, 0, numCells + 1, 0);
+        float[] xs = store.x;
+        float[] ys = store.y;
+        for (int i = 0; i < numBalls; i++) {
+            int cell = rowForY(ys[i]) * columns + columnForX(xs[i]);
+            ballCells[i] = cell;
+            cellStarts[cell + 1]++;
+        }
+        for (int c = 0; c < numCells; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        // Fill cells in ball order, using cellStarts as insertion points and then shifting back.
+        for (int i = 0; i < numBalls; i++) {
+            cellBallIndices[cellStarts[ballCells[i]]++] = i;
+        }
+        for (int c = numCells; c > 0; c--) {
+            cellStarts[c] = cellStarts[c - 1];
+        }
+        cellStarts[0] = 0;
+        valid = true;
+    }
+
+    /**
+     * Sets `result` to the balls on `layer` whose centers are within the given rectangle,
+     * inclusive. The balls are in the same order as in the store passed to rebuild().
+     */
+    public void ballsInRect(
+            float xmin, float ymin, float xmax, float ymax, int layer, List<Ball> result) {
+        result.clear();
+        int count = 0;
+        float[] xs = store.x;
+        float[] ys = store.y;
+        int[] layers = store.layer;
+        int col0 = columnForX(xmin), col1 = columnForX(xmax);
+        int row0 = rowForY(ymin), row1 = rowForY(ymax);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int cell = row * columns + col;
+                for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++) {
+                    int index = cellBallIndices[j];
+                    if (layer != ANY_LAYER && layers[index] != layer) continue;
+                    float bx = xs[index], by = ys[index];
+                    if (bx >= xmin && bx <= xmax && by >= ymin && by <= ymax) {
+                        queryScratch[count++] = index;
+                    }
+                }
+            }
+        }
+        addSortedBalls(count, result);
+    }
+
+    /**
+     * Sets `result` to the balls on `layer` whose centers are within `radius` of (x, y),
+     * inclusive. The balls are in the same order as in the store passed to rebuild().
+     */
+    public void ballsWithinRadius(float x, float y, float radius, int layer, List<Ball> result) {
+        result.clear();
+        int count = 0;
+        float[] xs = store.x;
+        float[] ys = store.y;
+        int[] layers = store.layer;
+        float radiusSquared = radius * radius;
+        int col0 = columnForX(x - radius), col1 = columnForX(x + radius);
+        int row0 = rowForY(y - radius), row1 = rowForY(y + radius);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int cell = row * columns + col;
+                for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++) {
+                    int index = cellBallIndices[j];
+                    if (layer != ANY_LAYER && layers[index] != layer) continue;
+                    float dx = xs[index] - x;
+                    float dy = ys[index] - y;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        queryScratch[count++] = index;
+                    }
+                }
+            }
+        }
+        addSortedBalls(count, result);
+    }
+
+    // Matches are found in cell order; sort them by index so results don't depend on the grid.
+    // There are very few balls, so insertion sort is fine.
+    private void addSortedBalls(int count, List<Ball> result) {
+        for (int i = 1; i < count; i++) {
+            int value = queryScratch[i];
+            int j = i - 1;
+            while (j >= 0 && queryScratch[j] > value) {
+                queryScratch[j + 1] = queryScratch[j];
+                j--;
+            }
+            queryScratch[j + 1] = value;
+        }
+        for (int i = 0; i < count; i++) {
+            result.add(store.get(queryScratch[i]));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.World;
+import com.dozingcatsoftware.vectorpinball.elements.Box2DFactory;
+
+/**
+ * Reuses the Box2D bodies of balls, so that launching a ball or moving it to another
+ * layer doesn't create and destroy native objects. Bodies that aren't in use are deactivated,
+ * which removes them from collision detection, and are kept in a list for the world they
+ * belong to. Field creates a new pool whenever it loads a layout, because the worlds and the
+ * ball radius can change.
+ */
+public class BallPool {
+
+    /** Number of inactive bodies created in each world when the layout is loaded. */
+    static final int PREALLOCATED_BODIES_PER_LAYER = 2;
+
+    private final WorldLayers worlds;
+    private final float radius;
+    private final Map<World, ArrayList<Body>> freeBodiesByWorld = new IdentityHashMap<>();
+    private int createdBodyCount = 0;
+
+    public BallPool(WorldLayers worlds, float radius) {
+        this.worlds = worlds;
+        this.radius = radius;
+    }
+
+    /** Creates inactive ball bodies in every world that currently exists. */
+    void preallocateBodies(int countPerLayer) {
+        for (World world : worlds.getWorlds()) {
+            ArrayList<Body> freeBodies = freeBodiesForWorld(world);
+            while (freeBodies.size() < countPerLayer) {
+                Body body = createBody(world, 0, 0);
+                body.setActive(false);
+                freeBodies.add(body);
+            }
+        }
+    }
+
+    /** Returns the number of Box2D bodies this pool has created, for debugging and tests. */
+    public int getCreatedBodyCount() {
+        return createdBodyCount;
+    }
+
+    private ArrayList<Body> freeBodiesForWorld(World world) {
+        ArrayList<Body> freeBodies = freeBodiesByWorld.get(world);
+        if (freeBodies == null) {
+            freeBodies = new ArrayList<>();
+            freeBodiesByWorld.put(world, freeBodies);
+        }
+        return freeBodies;
+    }
+
+    private Body createBody(World world, float x, float y) {
+        Body ballBody = Box2DFactory.createCircle(world, x, y, radius, false);
+        ballBody.setBullet(true);
+        // Default is radius of 0.5, if different we want the mass to be the same (could be
+        // configurable if needed), so adjust density proportional to square of the radius.
+        ballBody.getFixtureList().get(0).setDensity((0.5f*0.5f) / (radius*radius));
+        ballBody.resetMassData();
+        createdBodyCount++;
+        return ballBody;
+    }
+
+    /**
+     * Returns an active ball body in the world for `layer` with the given position and motion,
+     * reusing an inactive body if possible.
+     */
+    Body obtainBody(int layer, float x, float y, float angle,
+            float vx, float vy, float angularVelocity) {
+        World world = worlds.existingOrNewWorldForLayer(layer);
+        ArrayList<Body> freeBodies = freeBodiesForWorld(world);
+        Body body = freeBodies.isEmpty() ?
+                createBody(world, x, y) : freeBodies.remove(freeBodies.size() - 1);
+        // Set the position before activating, so Box2D adds the body to its collision
+        // detection structures at the right place.
+        body.setTransform(x, y, angle);
+        body.setLinearVelocity(vx, vy);
+        body.setAngularVelocity(angularVelocity);
+        body.setGravityScale(1f);
+        body.setActive(true);
+        body.setAwake(true);
+        return body;
+    }
+
+    /**
+     * Deactivates a body returned by obtainBody and makes it available for reuse. Deactivating
+     * the body ends its contacts, so Field's contact listener is notified as it would be if the
+     * body were destroyed.
+     */
+    void releaseBody(Body body) {
+        body.setActive(false);
+        body.setUserData(null);
+        freeBodiesForWorld(body.getWorld()).add(body);
+    }
+
+    /**
+     * Returns a new ball on `layer` at the given position, reusing a previously released body.
+     * Ball objects aren't reused, because delegates and elements may keep per-ball state keyed
+     * on them after the ball is removed.
+     */
+    Ball obtainBall(int layer, float x, float y, int primaryColor, int secondaryColor) {
+        Body body = obtainBody(layer, x, y, 0, 0, 0, 0);
+        return new Ball(this, radius, layer, body, primaryColor, secondaryColor);
+    }
+
+    /**
+     * Releases the ball's body for reuse. The ball must already have been removed from Field's
+     * BallStore. The ball keeps a reference to the inactive body.
+     */
+    void releaseBall(Ball ball) {
+        releaseBody(ball.getBody());
+    }
+}
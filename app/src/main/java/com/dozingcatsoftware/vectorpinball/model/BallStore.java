@@ -0,0 +1,205 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+
+/**
+ * State of the balls in play, stored in parallel primitive arrays so that code which looks at
+ * every ball each frame (trail recording, stuck ball detection, the ball grid) reads contiguous
+ * memory instead of following references to Ball and Body objects. Ball objects are handles
+ * whose getters read from these arrays.
+ *
+ * Balls are stored in the same order as Field.getBalls(); Field calls add and remove whenever it
+ * adds or removes a ball from that list. Removing a ball shifts the following balls down so that
+ * the order is preserved.
+ */
+public class BallStore {
+
+    /** Number of previous positions kept for each ball, for drawing trails. */
+    static final int TRAIL_LENGTH = 20;
+
+    int size = 0;
+    Ball[] balls = new Ball[4];
+
+    // Box2D state as of the last refresh.
+    float[] x = new float[4];
+    float[] y = new float[4];
+    float[] vx = new float[4];
+    float[] vy = new float[4];
+    float[] angle = new float[4];
+    int[] layer = new int[4];
+
+    // Positions saved by saveCheckpointPositions, used to detect balls that aren't moving.
+    float[] checkpointX = new float[4];
+    float[] checkpointY = new float[4];
+
+    // Ring buffers of previous positions; ball N uses elements N*TRAIL_LENGTH through
+    // (N+1)*TRAIL_LENGTH-1. trailHead is the index within the ball's buffer of the most recent
+    // position, or -1 if none. Unused entries have a time of -1.
+    long[] trailNanos = new long[4 * TRAIL_LENGTH];
+    float[] trailX = new float[4 * TRAIL_LENGTH];
+    float[] trailY = new float[4 * TRAIL_LENGTH];
+    int[] trailHead = new int[4];
+
+    public int size() {
+        return size;
+    }
+
+    public Ball get(int index) {
+        return balls[index];
+    }
+
+    /** Adds a ball at the end of the store, and reads its state from its Box2D body. */
+    void add(Ball ball) {
+        if (size == balls.length) {
+            grow(2 * size);
+        }
+        int index = size++;
+        balls[index] = ball;
+        layer[index] = ball.getLayer();
+        Arrays.fill(trailNanos, index * TRAIL_LENGTH, (index + 1) * TRAIL_LENGTH, -1);
+        trailHead[index] = -1;
+        ball.attachToStore(this, index);
+        refresh(index);
+        checkpointX[index] = x[index];
+        checkpointY[index] = y[index];
+    }
+
+    /**
+     * Removes a ball from the store. The ball keeps its last position and velocity, so that
+     * delegates holding a reference to it can still read them.
+     */
+    void remove(Ball ball) {
+        int index = ball.getStoreIndex();
+        if (index < 0 || balls[index] != ball) {
+            return;
+        }
+        ball.detachFromStore(x[index], y[index], vx[index], vy[index], angle[index]);
+        int numAfter = size - index - 1;
+        if (numAfter > 0) {
+            System.arraycopy(balls, index + 1, balls, index, numAfter);
+            System.arraycopy(x, index + 1, x, index, numAfter);
+            System.arraycopy(y, index + 1, y, index, numAfter);
+            System.arraycopy(vx, index + 1, vx, index, numAfter);
+            System.arraycopy(vy, index + 1, vy, index, numAfter);
+            System.arraycopy(angle, index + 1, angle, index, numAfter);
+            System.arraycopy(layer, index + 1, layer, index, numAfter);
+            System.arraycopy(checkpointX, index + 1, checkpointX, index, numAfter);
+            System.arraycopy(checkpointY, index + 1, checkpointY, index, numAfter);
+            System.arraycopy(trailHead, index + 1, trailHead, index, numAfter);
+            int dst = index * TRAIL_LENGTH;
+            int src = dst + TRAIL_LENGTH;
+            int trailCount = numAfter * TRAIL_LENGTH;
+            System.arraycopy(trailNanos, src, trailNanos, dst, trailCount);
+            System.arraycopy(trailX, src, trailX, dst, trailCount);
+            System.arraycopy(trailY, src, trailY, dst, trailCount);
+            for (int i = index; i < index + numAfter; i++) {
+                balls[i].attachToStore(this, i);
+            }
+        }
+        size--;
+        balls[size] = null;
+    }
+
+    /** Removes all balls. */
+    void clear() {
+        while (size > 0) {
+            remove(balls[size - 1]);
+        }
+    }
+
+    private void grow(int capacity) {
+        balls = Arrays.copyOf(balls, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+        layer = Arrays.copyOf(layer, capacity);
+        checkpointX = Arrays.copyOf(checkpointX, capacity);
+        checkpointY = Arrays.copyOf(checkpointY, capacity);
+        trailHead = Arrays.copyOf(trailHead, capacity);
+        trailNanos = Arrays.copyOf(trailNanos, capacity * TRAIL_LENGTH);
+        trailX = Arrays.copyOf(trailX, capacity * TRAIL_LENGTH);
+        trailY = Arrays.copyOf(trailY, capacity * TRAIL_LENGTH);
+    }
+
+    /** Reads the position, velocity, and angle of every ball from Box2D. */
+    void refreshAll() {
+        for (int i = 0; i < size; i++) {
+            refresh(i);
+        }
+    }
+
+    /** Reads the position, velocity, and angle of the ball at `index` from Box2D. */
+    void refresh(int index) {
+        Body body = balls[index].getBody();
+        Vector2 pos = body.getPosition();
+        x[index] = pos.x;
+        y[index] = pos.y;
+        Vector2 vel = body.getLinearVelocity();
+        vx[index] = vel.x;
+        vy[index] = vel.y;
+        angle[index] = body.getAngle();
+    }
+
+    /** Adds the current position of every ball to its trail, with the given game time. */
+    void recordTrailPositions(long gameTimeNanos) {
+        for (int i = 0; i < size; i++) {
+            int head = (trailHead[i] + 1) % TRAIL_LENGTH;
+            trailHead[i] = head;
+            int ti = i * TRAIL_LENGTH + head;
+            trailNanos[ti] = gameTimeNanos;
+            trailX[ti] = x[i];
+            trailY[ti] = y[i];
+        }
+    }
+
+    /** Saves the current position of every ball, for ballsUnmovedSinceCheckpoint. */
+    void saveCheckpointPositions() {
+        System.arraycopy(x, 0, checkpointX, 0, size);
+        System.arraycopy(y, 0, checkpointY, 0, size);
+    }
+
+    /**
+     * Returns true if there's at least one ball, and every ball has a squared speed of at most
+     * `maxSpeedSquared` and is within a squared distance of `maxDistanceSquared` of its position
+     * when saveCheckpointPositions was last called.
+     */
+    boolean ballsUnmovedSinceCheckpoint(float maxSpeedSquared, float maxDistanceSquared) {
+        if (size == 0) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (vx[i] * vx[i] + vy[i] * vy[i] > maxSpeedSquared) {
+                return false;
+            }
+            float dx = x[i] - checkpointX[i];
+            float dy = y[i] - checkpointY[i];
+            if (dx * dx + dy * dy > maxDistanceSquared) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns a bit mask with bit N set if there's a ball on a layer equal to N modulo 64. */
+    long layerMask() {
+        long mask = 0;
+        for (int i = 0; i < size; i++) {
+            mask |= 1L << (layer[i] & 63);
+        }
+        return mask;
+    }
+
+    boolean hasBallAtLayer(int targetLayer) {
+        for (int i = 0; i < size; i++) {
+            if (layer[i] == targetLayer) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -25,6 +25,69 @@ public class DigitShapes {
             /* 9 */ Set.of(Seg.Top, Seg.UpperLeft, Seg.Middle, Seg.UpperRight, Seg.LowerRight, Seg.Bottom),
     };
     
+    // Leave gaps between segments. Each vertical segment covers less than half the total height.
+    private static final double SEGMENT_WIDTH_FRACTION = 0.7;
+    private static final double SEGMENT_HEIGHT_FRACTION = 0.4;
+
+    // For each digit, segment endpoints as consecutive [x1, y1, x2, y2] values, relative to the
+    // center of the digit and in units of the digit's width and height.
+    private static final double[][] UNIT_DIGIT_SEGMENTS = new double[10][];
+    static {
+        for (int digit = 0; digit < 10; digit++) {
+            UNIT_DIGIT_SEGMENTS[digit] = createUnitSegments(DIGIT_SEGMENTS[digit]);
+        }
+    }
+
+    private static final double[] NO_SEGMENTS = new double[0];
+
+    private static double[] createUnitSegments(Set<Seg> segments) {
+        double halfSegWidth = SEGMENT_WIDTH_FRACTION / 2;
+        double halfSegHeight = SEGMENT_HEIGHT_FRACTION / 2;
+        double[] coords = new double[4 * segments.size()];
+        int i = 0;
+        // Order matches the original per-segment Shape creation.
+        if (segments.contains(Seg.Top)) {
+            i = putSegment(coords, i, -halfSegWidth, 0.5, halfSegWidth, 0.5);
+        }
+        if (segments.contains(Seg.UpperRight)) {
+            i = putSegment(coords, i, 0.5, 0.25 - halfSegHeight, 0.5, 0.25 + halfSegHeight);
+        }
+        if (segments.contains(Seg.LowerRight)) {
+            i = putSegment(coords, i, 0.5, -0.25 - halfSegHeight, 0.5, -0.25 + halfSegHeight);
+        }
+        if (segments.contains(Seg.Bottom)) {
+            i = putSegment(coords, i, -halfSegWidth, -0.5, halfSegWidth, -0.5);
+        }
+        if (segments.contains(Seg.LowerLeft)) {
+            i = putSegment(coords, i, -0.5, -0.25 - halfSegHeight, -0.5, -0.25 + halfSegHeight);
+        }
+        if (segments.contains(Seg.UpperLeft)) {
+            i = putSegment(coords, i, -0.5, 0.25 - halfSegHeight, -0.5, 0.25 + halfSegHeight);
+        }
+        if (segments.contains(Seg.Middle)) {
+            i = putSegment(coords, i, -halfSegWidth, 0, halfSegWidth, 0);
+        }
+        return coords;
+    }
+
+    private static int putSegment(
+            double[] coords, int i, double x1, double y1, double x2, double y2) {
+        coords[i++] = x1;
+        coords[i++] = y1;
+        coords[i++] = x2;
+        coords[i++] = y2;
+        return i;
+    }
+
+    /**
+     * Returns the segments of the specified digit as consecutive [x1, y1, x2, y2] values, relative
+     * to the digit's center and in units of its width and height. Returns an empty array for
+     * invalid digits. The returned array is shared and must not be modified.
+     */
+    public static double[] unitSegmentsForDigit(int digit) {
+        return (digit >= 0 && digit <= 9) ? UNIT_DIGIT_SEGMENTS[digit] : NO_SEGMENTS;
+    }
+
     /**
      * Creates a list of Shape objects representing the specified digit.
      * @param digit The digit to create (0-9)
@@ -43,56 +106,13 @@ public class DigitShapes {
             int layer,
             int color) {
         List<Shape> shapes = new ArrayList<>();
-        
-        if (digit < 0 || digit > 9) {
-            return shapes; // Return empty list for invalid digits
-        }
-
-        // Leave gaps between segments. Each vertical segments only covers half the total height.
-        double segmentWidth = width * 0.7;
-        double segmentHeight = height * 0.4;
-        
-        // Define the 7 segments of a digit display
-        Set<Seg> segments = DIGIT_SEGMENTS[digit];
-        
-        if (segments.contains(Seg.Top)) { // Top horizontal
-            shapes.add(createHorizontalSegment(centerX, centerY + height/2, segmentWidth, layer, color));
-        }
-        if (segments.contains(Seg.UpperRight)) { // Top right vertical  
-            shapes.add(createVerticalSegment(centerX + width/2, centerY + height/4, segmentHeight, layer, color));
-        }
-        if (segments.contains(Seg.LowerRight)) { // Bottom right vertical
-            shapes.add(createVerticalSegment(centerX + width/2, centerY - height/4, segmentHeight, layer, color));
+        double[] segments = unitSegmentsForDigit(digit);
+        for (int i = 0; i < segments.length; i += 4) {
+            shapes.add(Shape.Line.create(
+                    centerX + segments[i] * width, centerY + segments[i + 1] * height,
+                    centerX + segments[i + 2] * width, centerY + segments[i + 3] * height,
+                    layer, color, null));
         }
-        if (segments.contains(Seg.Bottom)) { // Bottom horizontal
-            shapes.add(createHorizontalSegment(centerX, centerY - height/2, segmentWidth, layer, color));
-        }
-        if (segments.contains(Seg.LowerLeft)) { // Bottom left vertical
-            shapes.add(createVerticalSegment(centerX - width/2, centerY - height/4, segmentHeight, layer, color));
-        }
-        if (segments.contains(Seg.UpperLeft)) { // Top left vertical
-            shapes.add(createVerticalSegment(centerX - width/2, centerY + height/4, segmentHeight, layer, color));
-        }
-        if (segments.contains(Seg.Middle)) { // Middle horizontal
-            shapes.add(createHorizontalSegment(centerX, centerY, segmentWidth, layer, color));
-        }
-        
         return shapes;
     }
-    
-    private static Shape createHorizontalSegment(double centerX, double centerY, double segmentWidth, int layer, int color) {
-        return Shape.Line.create(
-            centerX - segmentWidth / 2, centerY,
-            centerX + segmentWidth / 2, centerY,
-            layer, color, null
-        );
-    }
-    
-    private static Shape createVerticalSegment(double centerX, double centerY, double segmentHeight, int layer, int color) {
-        return Shape.Line.create(
-            centerX, centerY - segmentHeight / 2,
-            centerX, centerY + segmentHeight / 2,
-            layer, color, null
-        );
-    }
 }
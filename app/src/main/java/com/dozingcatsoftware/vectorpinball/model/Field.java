@@ -27,6 +27,10 @@ import com.dozingcatsoftware.vectorpinball.elements.FlipperElement;
 import com.dozingcatsoftware.vectorpinball.elements.RolloverGroupElement;
 import com.dozingcatsoftware.vectorpinball.elements.SensorElement;
 import com.dozingcatsoftware.vectorpinball.elements.SpinnerElement;
+import com.dozingcatsoftware.vectorpinball.elements.TickCadence;
+import com.dozingcatsoftware.vectorpinball.script.ScriptCompiler;
+import com.dozingcatsoftware.vectorpinball.script.ScriptDelegate;
+import com.dozingcatsoftware.vectorpinball.util.FramePhaseTimings;
 
 public class Field implements ContactListener {
 
@@ -34,15 +38,39 @@ public class Field implements ContactListener {
     WorldLayers worlds;
 
     ArrayList<Ball> balls;
+    // Creates and recycles balls and their Box2D bodies.
+    BallPool ballPool;
+    // Positions, velocities, and trails of the balls in `balls`, in the same order.
+    final BallStore ballStore = new BallStore();
     ArrayList<Shape> shapes;
     ArrayList<ScoreAnimation> scoreAnimations;
 
     // Allow access to model objects from Box2d bodies.
     Map<Body, FieldElement> bodyToFieldElement;
     Map<String, FieldElement> fieldElementsByID;
+    // Walls merged into shared static bodies are identified by fixture instead of body.
+    Map<Fixture, FieldElement> fixtureToFieldElement;
     // Store FieldElements in arrays for optimized iteration.
     FieldElement[] fieldElementsArray;
+    // The same elements in the order draw() uses, with runs of static walls grouped by color.
+    FieldElement[] fieldElementsInDrawOrder;
+    // Elements whose tick() is called every frame, or every frame while there are balls.
     FieldElement[] fieldElementsToTick;
+    FieldElement[] fieldElementsToTickWithBalls;
+    // Elements that need ticks when balls enter or leave their layer, to update their colors.
+    FieldElement[] layerColorElements;
+    // Elements that have called requestTicks; each is ticked until its needsTick() returns false.
+    List<FieldElement> onDemandTickElements = new ArrayList<>();
+    // Bit N is set if there's a ball at layer N (mod 64), as of the last processElementTicks call.
+    long ballLayerMask = 0;
+    boolean hadBallsOnPreviousTick = false;
+    // Spatial index of ball positions, rebuilt lazily after balls move or are added or removed.
+    final BallGrid ballGrid = new BallGrid();
+
+    /** Maximum number of balls that are assigned slots, as returned by Ball.getSlot(). */
+    public static final int MAX_BALL_SLOTS = 64;
+    // Bit N is set if slot N is assigned to a ball in play.
+    long usedBallSlots = 0;
 
     Random RAND = new Random();
 
@@ -58,10 +86,8 @@ public class Field implements ContactListener {
     GameState gameState = new GameState();
     GameMessage gameMessage;
 
-    // Used in checkForStuckBall() to see if the ball hasn't moved recently.
-    // Primitive arrays so we don't have to box floats or allocate vector objects.
-    float[] lastBallPositionsX = new float[10];
-    float[] lastBallPositionsY = new float[10];
+    // Used in checkForStuckBall() to see if the ball hasn't moved recently. The positions are
+    // stored in ballStore.
     int numLastBallPositions = 0;
     long nanosSinceBallMoved = -1;
     // Duration after which the ball is considered stuck if it hasn't moved significantly,
@@ -82,12 +108,22 @@ public class Field implements ContactListener {
     static final long ZOOM_DURATION_NANOS = 1_000_000_000L;
     long zoomNanos = 0;
     Vector2 zoomCenter = null;
+    // Reused to avoid allocating memory in launchBall() and zoomCenterPoint().
+    final Vector2 launchVelocity = new Vector2();
+    final Vector2 launchPositionForZoom = new Vector2();
 
     LongSupplier milliTimeFn;
     AudioPlayer audioPlayer;
     IStringResolver stringResolver;
     boolean showBallTrails = false;
     boolean showScoreAnimations = false;
+    // Reductions set by QualityGovernor, independent of the user's preferences above.
+    public static final int DEFAULT_MAX_BALL_TRAIL_IMAGES = 25;
+    int maxBallTrailImages = DEFAULT_MAX_BALL_TRAIL_IMAGES;
+    boolean scoreAnimationsSuppressed = false;
+
+    // How long each phase of tick() and draw() takes. Persists across table changes.
+    final FramePhaseTimings phaseTimings = new FramePhaseTimings();
 
     // Pass System::currentTimeMillis as `milliTimeFn` to use the standard system clock.
     public Field(LongSupplier milliTimeFn, IStringResolver sr, AudioPlayer player) {
@@ -149,20 +185,34 @@ public class Field implements ContactListener {
      */
     public void resetForLayoutMap(
             Map<String, Object> layoutMap, Function<Field, Delegate> delegateFn) {
+        // Free the previous layout's worlds. Its balls and elements refer to their bodies, so
+        // they're discarded below and must not be used afterwards.
+        ballStore.clear();
+        if (this.worlds != null) {
+            this.worlds.dispose();
+        }
         this.worlds = new WorldLayers(this);
         this.layout = new FieldLayout(layoutMap, worlds);
         worlds.setGravity(new Vector2(0.0f, -this.layout.getGravity()));
         balls = new ArrayList<>();
+        ballPool = new BallPool(worlds, layout.getBallRadius());
+        ballPool.preallocateBodies(BallPool.PREALLOCATED_BODIES_PER_LAYER);
+        usedBallSlots = 0;
+        clearSensorContacts();
         shapes = new ArrayList<>();
         scoreAnimations = new ArrayList<>();
 
         scheduledActions = new PriorityQueue<>();
         gameTimeNanos = 0;
 
-        // Map bodies and IDs to FieldElements, and get elements on whom tick() has to be called.
+        // Map bodies and IDs to FieldElements, and group elements by when tick() has to be called.
         bodyToFieldElement = new HashMap<>();
         fieldElementsByID = new HashMap<>();
+        fixtureToFieldElement = layout.getMergedWallFixtures();
+        ballGrid.clearRegions();
         List<FieldElement> tickElements = new ArrayList<>();
+        List<FieldElement> tickWithBallsElements = new ArrayList<>();
+        List<FieldElement> colorElements = new ArrayList<>();
 
         for (FieldElement element : layout.getFieldElements()) {
             if (element.getElementId() != null) {
@@ -171,12 +221,30 @@ public class Field implements ContactListener {
             for (Body body : element.getBodies()) {
                 bodyToFieldElement.put(body, element);
             }
-            if (element.shouldCallTick()) {
-                tickElements.add(element);
+            switch (element.getTickCadence()) {
+                case EVERY_FRAME:
+                    tickElements.add(element);
+                    break;
+                case WHILE_BALLS_IN_PLAY:
+                    tickWithBallsElements.add(element);
+                    break;
+                default:
+                    break;
             }
+            if (element.hasInactiveLayerColor()) {
+                colorElements.add(element);
+            }
+            element.registerBallRegions(ballGrid);
         }
+        ballGrid.configure(layout.getWidth(), layout.getHeight(), layout.getBallRadius());
         fieldElementsToTick = tickElements.toArray(new FieldElement[0]);
+        fieldElementsToTickWithBalls = tickWithBallsElements.toArray(new FieldElement[0]);
+        layerColorElements = colorElements.toArray(new FieldElement[0]);
+        onDemandTickElements.clear();
+        ballLayerMask = 0;
+        hadBallsOnPreviousTick = false;
         fieldElementsArray = layout.getFieldElements().toArray(new FieldElement[0]);
+        fieldElementsInDrawOrder = sortedForDrawing(fieldElementsArray);
 
         delegate = delegateFn.apply(this);
     }
@@ -198,6 +266,9 @@ public class Field implements ContactListener {
                 throw new RuntimeException(ex);
             }
         }
+        else if (field.layout.getScriptText() != null) {
+            return new ScriptDelegate(ScriptCompiler.compile(field.layout.getScriptText()));
+        }
         else {
             // Use no-op delegate if no class specified, so that field.getDelegate() is non-null.
             return new BaseFieldDelegate();
@@ -242,30 +313,123 @@ public class Field implements ContactListener {
     public void tick(long nanos, int iters) {
         float dt = (nanos / 1e9f) / iters;
 
+        long stepNanos = 0;
+        long contactNanos = 0;
         for (int i = 0; i < iters; i++) {
             clearBallContacts();
+            long t0 = System.nanoTime();
             worlds.step(dt, 10, 10);
+            refreshBallStates();
+            long t1 = System.nanoTime();
+            processSensorContacts();
             processBallContacts();
+            stepNanos += t1 - t0;
+            contactNanos += System.nanoTime() - t1;
         }
+        phaseTimings.record(FramePhaseTimings.Phase.WORLD_STEP, stepNanos);
+        phaseTimings.record(FramePhaseTimings.Phase.BALL_CONTACTS, contactNanos);
+        ballGrid.invalidate();
 
         gameTimeNanos += nanos;
+        long t0 = System.nanoTime();
         processElementTicks(nanos);
+        long t1 = System.nanoTime();
         processScheduledActions();
+        long t2 = System.nanoTime();
+        phaseTimings.record(FramePhaseTimings.Phase.ELEMENT_TICKS, t1 - t0);
+        phaseTimings.record(FramePhaseTimings.Phase.SCHEDULED_ACTIONS, t2 - t1);
         processGameMessages();
         processZoom(nanos);
         checkForStuckBall(nanos);
         updateScoreAnimations();
 
+        long t3 = System.nanoTime();
         getDelegate().tick(this, nanos);
+        phaseTimings.record(FramePhaseTimings.Phase.DELEGATE_TICK, System.nanoTime() - t3);
     }
 
-    /** Calls the tick() method of every FieldElement in the layout. */
+    /**
+     * Calls the tick() method of FieldElements according to their tick cadences, and of every ball.
+     */
     private void processElementTicks(long nanos) {
+        updateBallLayerMask();
         for (FieldElement elem : fieldElementsToTick) {
             elem.tick(this, nanos);
         }
-        for (Ball ball : balls) {
-            ball.tick(this, nanos);
+        // Elements that track balls get one more tick after the last ball is gone, so they can
+        // clear their state.
+        boolean hasBalls = !balls.isEmpty();
+        boolean tickWithBalls = hasBalls || hadBallsOnPreviousTick;
+        hadBallsOnPreviousTick = hasBalls;
+        if (tickWithBalls) {
+            for (FieldElement elem : fieldElementsToTickWithBalls) {
+                elem.tick(this, nanos);
+            }
+        }
+        // Iterate backwards so that elements can be removed, and so that elements added by
+        // requestTicks during this loop aren't ticked until the next frame.
+        for (int i = onDemandTickElements.size() - 1; i >= 0; i--) {
+            FieldElement elem = onDemandTickElements.get(i);
+            TickCadence cadence = elem.getTickCadence();
+            boolean alreadyTicked = (cadence == TickCadence.EVERY_FRAME) ||
+                    (tickWithBalls && cadence == TickCadence.WHILE_BALLS_IN_PLAY);
+            if (!alreadyTicked) {
+                elem.tick(this, nanos);
+            }
+            if (!elem.needsTick(this)) {
+                onDemandTickElements.remove(i);
+            }
+        }
+        ballStore.recordTrailPositions(gameTimeNanos);
+    }
+
+    /**
+     * Requests that `element` have its tick() method called every frame until its needsTick()
+     * method returns false. Elements call this when they start an animation such as flashing.
+     */
+    public void requestTicks(FieldElement element) {
+        if (!onDemandTickElements.contains(element)) {
+            onDemandTickElements.add(element);
+        }
+    }
+
+    private BallGrid updatedBallGrid() {
+        if (!ballGrid.isValid()) {
+            ballGrid.rebuild(ballStore);
+        }
+        return ballGrid;
+    }
+
+    /**
+     * Sets `result` to the balls whose centers are within the given rectangle, on the given layer
+     * or on any layer if `layer` is BallGrid.ANY_LAYER. Uses a spatial index so that it's fast even
+     * with many balls and many callers. Balls are in the same order as in getBalls().
+     */
+    public void getBallsInRect(
+            float xmin, float ymin, float xmax, float ymax, int layer, List<Ball> result) {
+        updatedBallGrid().ballsInRect(xmin, ymin, xmax, ymax, layer, result);
+    }
+
+    /**
+     * Sets `result` to the balls whose centers are within `radius` of (x, y), on the given layer
+     * or on any layer if `layer` is BallGrid.ANY_LAYER. Balls are in the same order as in
+     * getBalls().
+     */
+    public void getBallsWithinRadius(float x, float y, float radius, int layer, List<Ball> result) {
+        updatedBallGrid().ballsWithinRadius(x, y, radius, layer, result);
+    }
+
+    /**
+     * Recomputes which layers have balls, and if that's changed, requests ticks for elements whose
+     * colors depend on it.
+     */
+    private void updateBallLayerMask() {
+        long mask = ballStore.layerMask();
+        if (mask != ballLayerMask) {
+            ballLayerMask = mask;
+            for (FieldElement elem : layerColorElements) {
+                requestTicks(elem);
+            }
         }
     }
 
@@ -316,13 +480,18 @@ public class Field implements ContactListener {
     public void setShapes(List<Shape> shapes) {
         this.shapes.clear();
         this.shapes.ensureCapacity(shapes.size());
-        this.shapes.addAll(shapes);
+        // Add individually; addAll copies the list into a new array.
+        for (int i = 0; i < shapes.size(); i++) {
+            this.shapes.add(shapes.get(i));
+        }
     }
 
     /**
      * Adds a floating score animation with the specified position and color.
      */
     public void addScoreAnimation(long points, double x, double y, int color) {
+        // Don't create animations that won't be drawn.
+        if (!this.scoreAnimationsEnabled()) return;
         // Use a high layer so score animations appear on top of everything
         int animationLayer = 1000; 
         
@@ -331,9 +500,16 @@ public class Field implements ContactListener {
     }
 
     public Ball createBall(float x, float y) {
-        Ball ball = Ball.create(worlds, 0, x, y, layout.getBallRadius(),
-                layout.getBallColor(), layout.getSecondaryBallColor());
+        Ball ball = ballPool.obtainBall(
+                0, x, y, layout.getBallColor(), layout.getSecondaryBallColor());
         this.balls.add(ball);
+        ballStore.add(ball);
+        ballGrid.invalidate();
+        if (usedBallSlots != -1L) {
+            int slot = Long.numberOfTrailingZeros(~usedBallSlots);
+            usedBallSlots |= 1L << slot;
+            ball.setSlot(slot);
+        }
         return ball;
     }
 
@@ -352,15 +528,26 @@ public class Field implements ContactListener {
         scheduledActions.add(sa);
     }
 
+    /**
+     * Returns the game time in nanoseconds until the next action scheduled with scheduleAction
+     * should run, or -1 if there are no scheduled actions. Returns 0 if an action is overdue.
+     */
+    public long nanosUntilNextScheduledAction() {
+        ScheduledAction nextAction = scheduledActions.peek();
+        if (nextAction == null) {
+            return -1;
+        }
+        return Math.max(0, nextAction.actionTimeNanos - gameTimeNanos);
+    }
+
     /**
      * Launches a new ball. The position and velocity of the ball are controlled by the parameters
      * in the field layout JSON.
      */
     public Ball launchBall() {
-        List<Float> position = layout.getLaunchPosition();
-        List<Float> velocity = layout.getLaunchVelocity();
-        Ball ball = createBall(position.get(0), position.get(1));
-        ball.getBody().setLinearVelocity(new Vector2(velocity.get(0), velocity.get(1)));
+        Ball ball = createBall(layout.getLaunchPositionX(), layout.getLaunchPositionY());
+        layout.getLaunchVelocity(launchVelocity);
+        ball.setLinearVelocity(launchVelocity.x, launchVelocity.y);
         playBallLaunchSound();
         updateBallLaunchTimes();
         return ball;
@@ -450,8 +637,13 @@ public class Field implements ContactListener {
      * no balls remain.
      */
     public void removeBallWithoutBallLoss(Ball ball) {
-        ball.destroySelf();
-        this.balls.remove(ball);
+        if (!this.balls.remove(ball)) {
+            return;
+        }
+        ballStore.remove(ball);
+        ballGrid.invalidate();
+        freeBallSlot(ball);
+        ballPool.releaseBall(ball);
     }
 
     private boolean shouldPreserveLastMultiplierIncrease() {
@@ -576,17 +768,46 @@ public class Field implements ContactListener {
         return 1;
     }
 
+    private static int initialColorSortKey(FieldElement element) {
+        Integer color = element.getInitialColor();
+        return (color != null) ? color : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Returns the elements sorted by layer and draw rank, as draw() would order them, with each
+     * run of adjacent elements that have fixed appearances also sorted by color. Renderers then
+     * see long runs of same-colored lines they can batch, while every other element is drawn at
+     * the same point as in layout order. draw() uses a stable sort, so this order is preserved
+     * every frame.
+     */
+    private FieldElement[] sortedForDrawing(FieldElement[] elements) {
+        FieldElement[] sorted = elements.clone();
+        Arrays.sort(sorted, drawOrdering);
+        int runStart = 0;
+        for (int i = 0; i <= sorted.length; i++) {
+            boolean continuesRun = i < sorted.length && sorted[i].hasFixedAppearance() &&
+                    (i == runStart || drawOrdering.compare(sorted[runStart], sorted[i]) == 0);
+            if (!continuesRun) {
+                Arrays.sort(sorted, runStart, i,
+                        Comparator.comparingInt(Field::initialColorSortKey));
+                runStart = (i < sorted.length && sorted[i].hasFixedAppearance()) ? i : i + 1;
+            }
+        }
+        return sorted;
+    }
+
     /**
      * Draws all field elements and balls. Levels are drawn low to high, and each ball is drawn
      * after (i.e. on top of) all elements at its level.
      */
     public void draw(IFieldRenderer renderer) {
+        long startNanos = System.nanoTime();
         // Draw levels low to high, and draw each ball after everything else at its level.
         elementsInDrawOrder.clear();
-        elementsInDrawOrder.addAll(Arrays.asList(this.getFieldElementsArray()));
+        elementsInDrawOrder.addAll(Arrays.asList(this.fieldElementsInDrawOrder));
         elementsInDrawOrder.addAll(this.balls);
         elementsInDrawOrder.addAll(this.shapes);
-        if (this.showScoreAnimations) {
+        if (this.scoreAnimationsEnabled()) {
             elementsInDrawOrder.addAll(this.scoreAnimations);
         }
         Collections.sort(elementsInDrawOrder, drawOrdering);
@@ -594,6 +815,7 @@ public class Field implements ContactListener {
         for (int i = 0; i < elementsInDrawOrder.size(); i++) {
             this.elementsInDrawOrder.get(i).draw(this, renderer);
         }
+        phaseTimings.record(FramePhaseTimings.Phase.FIELD_DRAW, System.nanoTime() - startNanos);
     }
 
     ArrayList<FlipperElement> activatedFlippers = new ArrayList<>();
@@ -616,6 +838,9 @@ public class Field implements ContactListener {
                 }
             }
             flipper.setFlipperEngaged(engaged);
+            if (engaged) {
+                requestTicks(flipper);
+            }
         }
 
         if (engaged && !allFlippersPreviouslyActive) {
@@ -645,10 +870,13 @@ public class Field implements ContactListener {
      */
     public void endGame() {
         audioPlayer.playStart(); // play startup sound at end of game
+        ballStore.clear();
         for (Ball ball : this.getBalls()) {
-            ball.destroySelf();
+            freeBallSlot(ball);
+            ballPool.releaseBall(ball);
         }
         this.balls.clear();
+        ballGrid.invalidate();
         this.getGameState().setGameInProgress(false);
         this.showGameMessage(this.resolveString("game_over_message"), 2500);
         getDelegate().gameEnded(this);
@@ -670,11 +898,66 @@ public class Field implements ContactListener {
     ArrayList<Ball> contactedBalls = new ArrayList<>();
     ArrayList<Fixture> contactedFixtures = new ArrayList<>();
 
+    // Sensor fixture contacts are queued separately, because they're not collisions and they
+    // can be reported outside of World.step when a ball's body is destroyed. Entries in
+    // sensorContactBegan are true for beginContact, false for endContact. sensorContactSlots
+    // holds each ball's slot when the contact was reported, because a removed ball's slot can
+    // be given to a new ball before the contact is processed.
+    ArrayList<Ball> sensorContactBalls = new ArrayList<>();
+    ArrayList<Fixture> sensorContactFixtures = new ArrayList<>();
+    boolean[] sensorContactBegan = new boolean[16];
+    int[] sensorContactSlots = new int[16];
+
     private void clearBallContacts() {
         contactedBalls.clear();
         contactedFixtures.clear();
     }
 
+    private void clearSensorContacts() {
+        sensorContactBalls.clear();
+        sensorContactFixtures.clear();
+    }
+
+    private void freeBallSlot(Ball ball) {
+        if (ball.getSlot() >= 0) {
+            usedBallSlots &= ~(1L << ball.getSlot());
+        }
+    }
+
+    private void queueSensorContact(Ball ball, Fixture fixture, boolean began) {
+        int index = sensorContactBalls.size();
+        if (index == sensorContactBegan.length) {
+            sensorContactBegan = Arrays.copyOf(sensorContactBegan, 2 * index);
+            sensorContactSlots = Arrays.copyOf(sensorContactSlots, 2 * index);
+        }
+        sensorContactBalls.add(ball);
+        sensorContactFixtures.add(fixture);
+        sensorContactBegan[index] = began;
+        sensorContactSlots[index] = ball.getSlot();
+    }
+
+    // Reads each ball's position and velocity from Box2D once per step, so that collision
+    // handling, element ticks, and drawing can use the cached values.
+    private void refreshBallStates() {
+        ballStore.refreshAll();
+    }
+
+    /**
+     * Notifies FieldElements of balls entering and leaving their sensor fixtures, in the order
+     * Box2D reported them.
+     */
+    private void processSensorContacts() {
+        for (int i = 0; i < sensorContactBalls.size(); i++) {
+            Fixture f = sensorContactFixtures.get(i);
+            FieldElement element = bodyToFieldElement.get(f.getBody());
+            if (element != null) {
+                element.handleSensorContact(sensorContactBalls.get(i), sensorContactSlots[i],
+                        f, sensorContactBegan[i], this);
+            }
+        }
+        clearSensorContacts();
+    }
+
     /**
      * Called after Box2D world step method, to notify FieldElements that the ball collided with.
      */
@@ -682,7 +965,7 @@ public class Field implements ContactListener {
         for (int i = 0; i < contactedBalls.size(); i++) {
             Ball ball = contactedBalls.get(i);
             Fixture f = contactedFixtures.get(i);
-            FieldElement element = bodyToFieldElement.get(f.getBody());
+            FieldElement element = elementForFixture(f);
             if (element != null) {
                 element.handleCollision(ball, f.getBody(), this);
                 if (delegate != null) {
@@ -696,6 +979,11 @@ public class Field implements ContactListener {
         }
     }
 
+    private FieldElement elementForFixture(Fixture f) {
+        FieldElement element = bodyToFieldElement.get(f.getBody());
+        return (element != null) ? element : fixtureToFieldElement.get(f);
+    }
+
     public void addScoreWithAnimation(long basePoints, Vector2 position) {
         addScoreWithAnimation(basePoints, position.x, position.y);
     }
@@ -707,21 +995,45 @@ public class Field implements ContactListener {
     }
 
     private Ball ballWithBody(Body body) {
-        for (int i = 0; i < this.balls.size(); i++) {
-            Ball ball = this.balls.get(i);
-            if (ball.getBody() == body) {
-                return ball;
+        // Ball sets itself as the user data of its body.
+        Object data = body.getUserData();
+        return (data instanceof Ball) ? (Ball) data : null;
+    }
+
+    /**
+     * If one of the contact's fixtures is a sensor and the other belongs to a ball, queues the
+     * contact for processSensorContacts and returns true.
+     */
+    private boolean handleSensorContact(Contact contact, boolean began) {
+        Fixture fa = contact.getFixtureA();
+        Fixture fb = contact.getFixtureB();
+        if (fa.isSensor()) {
+            Ball ball = ballWithBody(fb.getBody());
+            if (ball != null) {
+                queueSensorContact(ball, fa, began);
             }
+            return true;
         }
-        return null;
+        if (fb.isSensor()) {
+            Ball ball = ballWithBody(fa.getBody());
+            if (ball != null) {
+                queueSensorContact(ball, fb, began);
+            }
+            return true;
+        }
+        return false;
     }
 
     // Box2D ContactListener methods.
     @Override public void beginContact(Contact contact) {
-        // Nothing here, contact is recorded in endContact().
+        // Collisions are recorded in endContact(), only sensors need to know about the start.
+        handleSensorContact(contact, true);
     }
 
     @Override public void endContact(Contact contact) {
+        if (handleSensorContact(contact, false)) {
+            return;
+        }
         Fixture fixture = null;
         Ball ball = ballWithBody(contact.getFixtureA().getBody());
         if (ball != null) {
@@ -765,6 +1077,18 @@ public class Field implements ContactListener {
         showGameMessage(text, durationMillis, true);
     }
 
+    /**
+     * Returns the real time in milliseconds until the current game message expires, or -1 if
+     * there is no message. Returns 0 if it has expired but hasn't been removed by tick().
+     */
+    public long millisUntilGameMessageExpires() {
+        if (gameMessage == null) {
+            return -1;
+        }
+        long messageEndTime = gameMessage.creationTimeMillis + gameMessage.durationMillis;
+        return Math.max(0, messageEndTime - milliTimeFn.getAsLong());
+    }
+
     /** Updates time remaining on current game message, and removes it if expired. */
     private void processGameMessages() {
         if (gameMessage != null) {
@@ -783,9 +1107,15 @@ public class Field implements ContactListener {
         return (float) (1.0 * zoomNanos / ZOOM_DURATION_NANOS);
     }
 
+    /**
+     * Returns the point to center the view on when zoomed in. The returned vector may be reused
+     * and must not be modified.
+     */
     public Vector2 zoomCenterPoint() {
-        return (zoomCenter != null) ?
-                zoomCenter : new Vector2(getLaunchPosition().get(0), getLaunchPosition().get(1));
+        if (zoomCenter != null) {
+            return zoomCenter;
+        }
+        return launchPositionForZoom.set(layout.getLaunchPositionX(), layout.getLaunchPositionY());
     }
 
     private void processZoom(long nanos) {
@@ -796,20 +1126,13 @@ public class Field implements ContactListener {
         zoomCenter = (this.balls.size() >= 1) ? this.balls.get(0).getPosition() : zoomCenter;
     }
 
-    // True if balls have near-zero velocity and the same positions as lastBallPositions.
+    // True if balls have near-zero velocity and the same positions as in the previous call to
+    // checkForStuckBall.
     private boolean areBallsPossiblyStuck() {
-        int numBalls = this.balls.size();
-        if (numBalls == 0 || numBalls != numLastBallPositions) {
+        if (ballStore.size() != numLastBallPositions) {
             return false;
         }
-        for (int i = 0; i < numBalls; i++) {
-            Ball b = this.balls.get(i);
-            if (b.getLinearVelocity().len2() > 0.01f ||
-                    b.getPosition().dst2(lastBallPositionsX[i], lastBallPositionsY[i]) > 0.01f) {
-                return false;
-            }
-        }
-        return true;
+        return ballStore.ballsUnmovedSinceCheckpoint(0.01f, 0.01f);
     }
 
     /**
@@ -819,12 +1142,8 @@ public class Field implements ContactListener {
         boolean maybeStuck = areBallsPossiblyStuck();
 
         int numBalls = this.balls.size();
-        numLastBallPositions = this.balls.size();
-        for (int i = 0; i < numBalls; i++) {
-            Vector2 pos = this.balls.get(i).getPosition();
-            lastBallPositionsX[i] = pos.x;
-            lastBallPositionsY[i] = pos.y;
-        }
+        numLastBallPositions = numBalls;
+        ballStore.saveCheckpointPositions();
 
         if (!maybeStuck) {
             nanosSinceBallMoved = 0;
@@ -845,8 +1164,7 @@ public class Field implements ContactListener {
             showGameMessage(this.stringResolver.resolveString("bump_message"), 1000);
             // Could make the bump impulse table-specific if needed.
             for (int i = 0; i < numBalls; i++) {
-                Vector2 impulse = new Vector2(RAND.nextBoolean() ? 1f : -1f, 1.5f);
-                this.balls.get(i).applyLinearImpulse(impulse);                    
+                this.balls.get(i).applyLinearImpulse(RAND.nextBoolean() ? 1f : -1f, 1.5f);
             }
             nanosSinceBallMoved = 0;
         }
@@ -857,12 +1175,7 @@ public class Field implements ContactListener {
     }
 
     public boolean hasBallAtLayer(int layer) {
-        for (int i = 0; i < this.balls.size(); i++) {
-            if (this.balls.get(i).getLayer() == layer) {
-                return true;
-            }
-        }
-        return false;
+        return ballStore.hasBallAtLayer(layer);
     }
 
     // Not used in production builds, but shows the returned value in the ScoreView for debugging.
@@ -936,6 +1249,25 @@ public class Field implements ContactListener {
         return layout.getFieldElements();
     }
 
+    /** Returns the Box2D worlds for the current layout, for debugging and statistics. */
+    public WorldLayers getWorldLayers() {
+        return worlds;
+    }
+
+    public FramePhaseTimings getPhaseTimings() {
+        return phaseTimings;
+    }
+
+    /** Returns the number of Box2D bodies created when the current layout was loaded. */
+    public int getLayoutBodyCount() {
+        return layout.getBodyCreationCount();
+    }
+
+    /** Returns the time spent creating Box2D bodies when the current layout was loaded. */
+    public long getLayoutBodyCreationNanos() {
+        return layout.getBodyCreationNanos();
+    }
+
     public FieldElement[] getFieldElementsArray() {
         return fieldElementsArray;
     }
@@ -977,7 +1309,7 @@ public class Field implements ContactListener {
     }
 
     public boolean ballTrailsEnabled() {
-        return showBallTrails;
+        return showBallTrails && maxBallTrailImages > 0;
     }
 
     public void setBallTrailsEnabled(boolean enabled) {
@@ -985,11 +1317,32 @@ public class Field implements ContactListener {
     }
 
     public boolean scoreAnimationsEnabled() {
-        return showScoreAnimations;
+        return showScoreAnimations && !scoreAnimationsSuppressed;
     }
 
     public void setScoreAnimationsEnabled(boolean enabled) {
         showScoreAnimations = enabled;
     }
 
+    public int getMaxBallTrailImages() {
+        return maxBallTrailImages;
+    }
+
+    /**
+     * Sets the maximum number of trail images drawn behind each ball, to reduce drawing cost
+     * when the device is overloaded. Trails are only drawn if also enabled by
+     * setBallTrailsEnabled.
+     */
+    public void setMaxBallTrailImages(int value) {
+        maxBallTrailImages = value;
+    }
+
+    /**
+     * Hides score animations regardless of setScoreAnimationsEnabled, to reduce drawing cost when
+     * the device is overloaded.
+     */
+    public void setScoreAnimationsSuppressed(boolean suppressed) {
+        scoreAnimationsSuppressed = suppressed;
+    }
+
 }
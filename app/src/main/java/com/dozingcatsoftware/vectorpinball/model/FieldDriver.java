@@ -1,6 +1,10 @@
 package com.dozingcatsoftware.vectorpinball.model;
 
+import com.dozingcatsoftware.vectorpinball.util.FramePhaseTimings;
 import com.dozingcatsoftware.vectorpinball.util.FrameRateManager;
+import com.dozingcatsoftware.vectorpinball.util.FrameTimeHistogram;
+import com.dozingcatsoftware.vectorpinball.util.ThermalSource;
+import com.dozingcatsoftware.vectorpinball.util.VsyncSource;
 
 /**
  * Class to manage the game thread which updates the game's internal state and draws to the
@@ -20,20 +24,36 @@ public class FieldDriver {
 
     // Volatile so game thread sees updates from main thread immediately.
     private volatile boolean running;
-    private Thread gameThread;
+    private volatile Thread gameThread;
 
     FrameRateManager frameRateManager = new FrameRateManager(
             System::nanoTime,
             new double[] {144, 120, 90, 60, 50, 45, 40, 30},
             new double[] {137, 114, 86, 57, 48, 43, 38});
     double averageFPS;
+    // Reduces physics substeps and visual effects when frames are over budget or the device is hot.
+    final QualityGovernor qualityGovernor = new QualityGovernor();
 
-    // Sleep this long when field.hasActiveElements() is false.
+    // When field.hasActiveElements() is false, the field is advanced in steps of at most this
+    // long. For the first IDLE_SETTLE_FRAMES inactive frames the thread also sleeps at most this
+    // long, so that element animations such as flashing bumpers can finish. After that it waits
+    // until it's woken up or there's a scheduled action or game message expiration to process.
     private static final long INACTIVE_FRAME_MSECS = 250;
+    private static final int IDLE_SETTLE_FRAMES = 4;
 
     private static final long MILLION = 1_000_000;
     private static final long BILLION = MILLION * 1000;
 
+    // Monitor for the game thread to wait on while idle, and whether wakeUp() has been called
+    // since it last woke up. `wakeRequested` is only accessed while synchronized on `idleLock`.
+    private final Object idleLock = new Object();
+    private boolean wakeRequested = false;
+    int idleFrames = 0;
+    // Display vsync times used for frame pacing, told to stop tracking vsyncs while the thread
+    // is parked after the settle frames. `vsyncIdle` is only accessed while synchronized on `idleLock`.
+    private VsyncSource vsyncSource;
+    private boolean vsyncIdle = false;
+
     /** Starts the game thread running. Does not actually start a new game. */
     public synchronized void start() {
         if (running) return;
@@ -47,50 +67,103 @@ public class FieldDriver {
         // Don't explicitly join() the game thread because that can deadlock.
         // Setting running to false will cause it to exit.
         running = false;
+        wakeUp();
+    }
+
+    /**
+     * Wakes the game thread if it's idle because nothing on the field is moving. Should be called
+     * after input events or other changes from outside the game thread that may need the field to
+     * be updated or redrawn, such as starting a game or switching tables. Has no effect if the
+     * game thread is already running frames.
+     */
+    public void wakeUp() {
+        synchronized (idleLock) {
+            wakeRequested = true;
+            setVsyncIdle(false);
+            idleLock.notifyAll();
+        }
+    }
+
+    // Must be called while synchronized on `idleLock`.
+    private void setVsyncIdle(boolean idle) {
+        if (vsyncSource != null && idle != vsyncIdle) {
+            vsyncIdle = idle;
+            vsyncSource.setIdle(idle);
+        }
+    }
+
+    private boolean isCurrentGameThread() {
+        // If stop() and start() are called in quick succession, the previous thread may not see
+        // that `running` was briefly false.
+        return running && gameThread == Thread.currentThread();
     }
 
     /**
      * Main loop for the game thread. Repeatedly calls field.tick to advance the game simulation,
      * redraws the field, and sleeps until it's time for the next frame. Dynamically adjusts sleep
-     * times in an attempt to maintain a consistent frame rate.
+     * times in an attempt to maintain a consistent frame rate. When nothing on the field is
+     * moving, waits without drawing until wakeUp() is called or the field has pending work.
      */
     void threadMain() {
-        while (running) {
+        long previousFrameStartNanos = System.nanoTime();
+        while (isCurrentGameThread()) {
             frameRateManager.frameStarted();
+            long frameStartNanos = System.nanoTime();
             boolean fieldActive = true;
+            long idleWaitNanos = -1;
             if (field != null) {
                 try {
                     synchronized (field) {
-                        long nanosPerFrame =
-                                (long) (BILLION / frameRateManager.targetFramesPerSecond());
-                        long fieldTickNanos = (long) (nanosPerFrame * field.getTargetTimeRatio());
-                        // If field isn't doing anything, sleep for a long time.
                         fieldActive = field.hasActiveElements();
-                        if (!fieldActive) {
-                            fieldTickNanos = (long)
-                                    (INACTIVE_FRAME_MSECS * MILLION * field.getTargetTimeRatio());
+                        if (fieldActive) {
+                            long nanosPerFrame =
+                                    (long) (BILLION / frameRateManager.targetFramesPerSecond());
+                            long fieldTickNanos =
+                                    (long) (nanosPerFrame * field.getTargetTimeRatio());
+                            field.tick(fieldTickNanos, qualityGovernor.getPhysicsSubsteps());
+                        }
+                        else {
+                            tickIdleField(frameStartNanos - previousFrameStartNanos);
+                            idleWaitNanos = nanosUntilIdleWorkDue();
                         }
-                        field.tick(fieldTickNanos, 4);
                     }
+                    // For the OpenGL renderer, this includes waiting for the render thread.
+                    long drawStartNanos = System.nanoTime();
                     drawFn.run();
+                    field.getPhaseTimings().record(
+                            FramePhaseTimings.Phase.RENDER, System.nanoTime() - drawStartNanos);
                 }
                 catch (Exception ex) {
                     ex.printStackTrace();
                 }
             }
+            previousFrameStartNanos = frameStartNanos;
 
-            // If field is inactive, clear start time history and bail.
+            // If field is inactive, clear start time history and wait.
             if (!fieldActive) {
                 frameRateManager.clearTimestamps();
                 setAverageFps(0);
-                try {
-                    Thread.sleep(INACTIVE_FRAME_MSECS);
-                }
-                catch (InterruptedException ignored) {
+                boolean settling = idleFrames < IDLE_SETTLE_FRAMES;
+                if (settling) {
+                    idleFrames++;
+                    long maxWaitNanos = INACTIVE_FRAME_MSECS * MILLION;
+                    idleWaitNanos = (idleWaitNanos >= 0) ?
+                            Math.min(idleWaitNanos, maxWaitNanos) : maxWaitNanos;
                 }
+                waitWhileIdle(idleWaitNanos, !settling);
                 continue;
             }
+            if (idleFrames > 0) {
+                idleFrames = 0;
+                // The thread may have woken from a timed wait rather than from wakeUp().
+                synchronized (idleLock) {
+                    setVsyncIdle(false);
+                }
+            }
 
+            if (qualityGovernor.update(frameRateManager)) {
+                applyQualitySettings();
+            }
             frameRateManager.sleepUntilNextFrame();
 
             // For debugging, show frames per second and other info.
@@ -100,17 +173,132 @@ public class FieldDriver {
         }
     }
 
+    /**
+     * Advances an inactive field by the game time corresponding to `elapsedNanos` of real time.
+     * Large intervals are limited to INACTIVE_FRAME_MSECS, except that they're extended to reach
+     * the next scheduled action so that actions run on time after a long wait. The field is
+     * updated in steps of at most INACTIVE_FRAME_MSECS. Must be called while synchronized on
+     * `field`.
+     */
+    private void tickIdleField(long elapsedNanos) {
+        long maxStepNanos = (long) (INACTIVE_FRAME_MSECS * MILLION * field.getTargetTimeRatio());
+        long maxTickNanos = Math.max(maxStepNanos, field.nanosUntilNextScheduledAction());
+        long remainingNanos = Math.min(
+                (long) (elapsedNanos * field.getTargetTimeRatio()), maxTickNanos);
+        do {
+            long stepNanos = Math.min(remainingNanos, maxStepNanos);
+            field.tick(stepNanos, qualityGovernor.getPhysicsSubsteps());
+            remainingNanos -= stepNanos;
+        } while (remainingNanos > 0);
+    }
+
+    /**
+     * Returns the real time in nanoseconds until an inactive field has work to do, either a
+     * scheduled action or removing a game message, or -1 if there's nothing pending. Must be
+     * called while synchronized on `field`.
+     */
+    private long nanosUntilIdleWorkDue() {
+        long waitNanos = -1;
+        long actionNanos = field.nanosUntilNextScheduledAction();
+        if (actionNanos >= 0) {
+            waitNanos = (long) (actionNanos / field.getTargetTimeRatio());
+        }
+        long messageMillis = field.millisUntilGameMessageExpires();
+        if (messageMillis >= 0) {
+            // Add a millisecond since the message is removed when the time is strictly greater.
+            long messageNanos = (messageMillis + 1) * MILLION;
+            waitNanos = (waitNanos >= 0) ? Math.min(waitNanos, messageNanos) : messageNanos;
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Waits until wakeUp() is called, the game thread is stopped, or `nanos` nanoseconds have
+     * passed. If `nanos` is negative, waits with no time limit. If `parked` is true, also tells
+     * the vsync source to stop tracking vsyncs until the field is active or wakeUp() is called.
+     */
+    private void waitWhileIdle(long nanos, boolean parked) {
+        long deadline = System.nanoTime() + nanos;
+        synchronized (idleLock) {
+            if (parked && !wakeRequested) {
+                setVsyncIdle(true);
+            }
+            try {
+                while (!wakeRequested && isCurrentGameThread()) {
+                    if (nanos < 0) {
+                        idleLock.wait();
+                    }
+                    else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) break;
+                        idleLock.wait(remaining / MILLION, (int) (remaining % MILLION));
+                    }
+                }
+            }
+            catch (InterruptedException ignored) {
+            }
+            wakeRequested = false;
+        }
+    }
+
+    private void applyQualitySettings() {
+        if (field != null) {
+            synchronized (field) {
+                qualityGovernor.applyTo(field);
+            }
+        }
+        frameRateManager.setFrameRateCap(qualityGovernor.getFrameRateCap());
+    }
+
     /**
      * Resets the frame rate and forgets any locked rate, called when rendering quality is changed.
+     * Also restores full simulation quality, if allowed by the thermal status.
      */
     public void resetFrameRate() {
         frameRateManager.resetFrameRate();
+        qualityGovernor.reset();
+    }
+
+    /** Sets the source of device thermal status used to limit quality, or null for none. */
+    public void setThermalSource(ThermalSource source) {
+        qualityGovernor.setThermalSource(source);
+    }
+
+    /** Returns the current quality level, 0 for full quality. */
+    public int getQualityLevel() {
+        return qualityGovernor.getLevel();
     }
 
     public void setMaxTargetFrameRate(double rate) {
         frameRateManager.setMaxTargetFrameRate(rate);
     }
 
+    /**
+     * Sets the frame rate to start at when the rate is next reset, normally a previous value of
+     * getStableFrameRate() for the same table and renderer. 0 starts at the maximum rate.
+     */
+    public void setInitialFrameRate(double rate) {
+        frameRateManager.setInitialFrameRate(rate);
+    }
+
+    /** Returns the most recent frame rate that was consistently maintained, or -1 if none. */
+    public double getStableFrameRate() {
+        return frameRateManager.getStableFrameRate();
+    }
+
+    /**
+     * Sets a source of display vsync times to align frames with, or null to pace frames only by
+     * sleeping for computed intervals. Sleep-based pacing is also used while the source doesn't
+     * have valid timing.
+     */
+    public void setVsyncSource(VsyncSource source) {
+        synchronized (idleLock) {
+            setVsyncIdle(false);
+            vsyncSource = source;
+        }
+        frameRateManager.setVsyncSource(source);
+    }
+
     public double getAverageFps() {
         return averageFPS;
     }
@@ -119,6 +307,16 @@ public class FieldDriver {
         averageFPS = value;
     }
 
+    /** Returns timings for the physics, game logic, and drawing phases of recent frames. */
+    public FramePhaseTimings getPhaseTimings() {
+        return field.getPhaseTimings();
+    }
+
+    /** Returns the distribution of frame durations since the histogram was last reset. */
+    public FrameTimeHistogram getFrameTimeHistogram() {
+        return frameRateManager.getFrameTimeHistogram();
+    }
+
     public double getTargetFps() {
         return frameRateManager.targetFramesPerSecond();
     }
@@ -4,15 +4,18 @@ import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloat;
 import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asFloatList;
 import static com.dozingcatsoftware.vectorpinball.util.MathUtils.asInt;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.dozingcatsoftware.vectorpinball.elements.Box2DFactory;
 import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
 import com.dozingcatsoftware.vectorpinball.elements.FieldElementCollection;
 import com.dozingcatsoftware.vectorpinball.elements.FlipperElement;
+import com.dozingcatsoftware.vectorpinball.elements.StaticWallCompiler;
 
 public class FieldLayout {
 
@@ -37,6 +40,11 @@ public class FieldLayout {
     // the increase will be applied to the next ball.
     static final String PRESERVE_MULTIPLIER_INCREASE_DURATION_PROPERTY = "preserveMultiplierIncreaseDuration";
     static final String SCRIPT_PROPERTY = "script";
+    // If true, sensors and rollovers use Box2D sensor fixtures unless they specify otherwise.
+    static final String SENSOR_FIXTURES_PROPERTY = "sensorFixtures";
+    // If false, every wall segment gets its own Box2D body instead of being merged by
+    // StaticWallCompiler. Defaults to true.
+    static final String MERGE_STATIC_WALLS_PROPERTY = "mergeStaticWalls";
 
     static final String VARIABLES_PROPERTY = "variables";
     static final String ELEMENTS_PROPERTY = "elements";
@@ -45,6 +53,9 @@ public class FieldLayout {
 
     Map<String, ?> allParameters;
     FieldElementCollection fieldElements;
+    Map<Fixture, FieldElement> mergedWallFixtures = Collections.emptyMap();
+    int bodyCreationCount = 0;
+    long bodyCreationNanos = 0;
     float width;
     float height;
     float gravity;
@@ -95,6 +106,11 @@ public class FieldLayout {
     private FieldElementCollection createFieldElements(
             Map<String, Object> layoutMap, WorldLayers worlds) {
         FieldElementCollection elements = new FieldElementCollection();
+        elements.setSensorFixturesByDefault(
+                Boolean.TRUE.equals(layoutMap.get(SENSOR_FIXTURES_PROPERTY)));
+        if (!Boolean.FALSE.equals(layoutMap.get(MERGE_STATIC_WALLS_PROPERTY))) {
+            elements.setStaticWallCompiler(new StaticWallCompiler());
+        }
 
         @SuppressWarnings("unchecked")
         Map<String, Object> variables = (Map<String, Object>) layoutMap.get(VARIABLES_PROPERTY);
@@ -102,13 +118,29 @@ public class FieldLayout {
             for (String varname : variables.keySet()) {
                 elements.setVariable(varname, variables.get(varname));
             }
+            elements.resolveVariableExpressions();
         }
 
-        for (Object obj : listForKey(layoutMap, ELEMENTS_PROPERTY)) {
-            if (!(obj instanceof Map)) continue;
-            @SuppressWarnings("unchecked")
-            Map<String, Object> params = (Map<String, Object>) obj;
-            elements.addElement(FieldElement.createFromParameters(params, elements, worlds));
+        // Create all bodies with shared Box2D definitions and shapes, and record statistics.
+        Box2DFactory.beginBatch();
+        try {
+            for (Object obj : listForKey(layoutMap, ELEMENTS_PROPERTY)) {
+                if (!(obj instanceof Map)) continue;
+                // Replace expressions with constants, so elements only see numbers. This returns
+                // a copy if needed, because the layout map is cached and shared between fields.
+                @SuppressWarnings("unchecked")
+                Map<String, Object> params =
+                        (Map<String, Object>) elements.resolveExpressions(obj);
+                elements.addElement(FieldElement.createFromParameters(params, elements, worlds));
+            }
+            if (elements.getStaticWallCompiler() != null) {
+                mergedWallFixtures = elements.getStaticWallCompiler().build();
+            }
+        }
+        finally {
+            Box2DFactory.BodyBatch batch = Box2DFactory.endBatch();
+            bodyCreationCount = batch.getBodyCount();
+            bodyCreationNanos = batch.getCreationNanos();
         }
 
         return elements;
@@ -120,6 +152,24 @@ public class FieldLayout {
         return (value != null) ? Color.fromList(value) : defaultColor;
     }
 
+    /**
+     * Returns a map from the fixtures of walls that were merged into shared static bodies to
+     * their elements. Those elements have no bodies of their own.
+     */
+    public Map<Fixture, FieldElement> getMergedWallFixtures() {
+        return mergedWallFixtures;
+    }
+
+    /** Returns the number of Box2D bodies created for the layout's elements. */
+    public int getBodyCreationCount() {
+        return bodyCreationCount;
+    }
+
+    /** Returns the time spent creating Box2D bodies for the layout's elements. */
+    public long getBodyCreationNanos() {
+        return bodyCreationNanos;
+    }
+
     public List<FieldElement> getFieldElements() {
         return fieldElements.getAllElements();
     }
@@ -168,12 +218,23 @@ public class FieldLayout {
         return launchPosition;
     }
 
+    public float getLaunchPositionX() {
+        return launchPosition.get(0);
+    }
+
+    public float getLaunchPositionY() {
+        return launchPosition.get(1);
+    }
+
     public List<Float> getLaunchDeadZone() {
         return launchDeadZoneRect;
     }
 
-    // Can apply random velocity increment if specified by "launchVelocityRandomDelta" key.
-    public List<Float> getLaunchVelocity() {
+    /**
+     * Sets `result` to the launch velocity, with a random increment if specified by the
+     * "launchVelocityRandomDelta" key.
+     */
+    public void getLaunchVelocity(Vector2 result) {
         float vx = launchVelocity.get(0);
         float vy = launchVelocity.get(1);
 
@@ -185,7 +246,7 @@ public class FieldLayout {
                 vy += launchVelocityRandomDelta.get(1) * RAND.nextFloat();
             }
         }
-        return Arrays.asList(vx, vy);
+        result.set(vx, vy);
     }
 
     public float getWidth() {
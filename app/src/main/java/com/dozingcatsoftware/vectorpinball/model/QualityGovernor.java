@@ -0,0 +1,165 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import com.dozingcatsoftware.vectorpinball.util.FrameRateManager;
+import com.dozingcatsoftware.vectorpinball.util.ThermalSource;
+
+/**
+ * Trades simulation and drawing quality for frame time. After each frame, FieldDriver reports how
+ * long the frame's work took relative to the target frame time. If that is consistently close to
+ * the budget, the governor moves to a lower quality level with fewer physics substeps, shorter ball
+ * trails, no score animations, and eventually a lower maximum frame rate. When there's
+ * consistently plenty of headroom, it moves back up one level at a time. Thresholds for moving up
+ * are much stricter than for moving down, so the level doesn't oscillate.
+ *
+ * An optional ThermalSource sets a minimum level while the device is hot, so that long sessions
+ * reduce their load before the system throttles the device and frames start to stutter.
+ *
+ * update() should only be called from the game thread. reset() may be called from any thread.
+ */
+public class QualityGovernor {
+
+    // Settings for each quality level, from highest to lowest quality.
+    static final int[] PHYSICS_SUBSTEPS = {4, 4, 3, 3, 2};
+    static final int[] MAX_BALL_TRAIL_IMAGES = {Field.DEFAULT_MAX_BALL_TRAIL_IMAGES, 12, 6, 0, 0};
+    static final boolean[] SCORE_ANIMATIONS = {true, true, false, false, false};
+    static final double[] FRAME_RATE_CAPS = {
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 60, 60};
+    public static final int NUM_LEVELS = PHYSICS_SUBSTEPS.length;
+
+    // Lowest allowed quality level for each thermal status, indexed by status.
+    static final int[] MIN_LEVEL_FOR_THERMAL_STATUS = {0, 0, 2, 3, 4, 4, 4};
+
+    private static final double BILLION = 1e9;
+    // Weight of each new frame in the moving average of load.
+    private static final double LOAD_AVERAGE_WEIGHT = 1.0 / 16;
+
+    // Load is frame work time as a fraction of the target frame time.
+    double overloadRatio = 0.9;
+    double headroomRatio = 0.5;
+    int overloadFramesBeforeDecrease = 90;
+    int headroomFramesBeforeIncrease = 900;
+    // Querying thermal status can be expensive, so only do it every this many frames.
+    int framesBetweenThermalChecks = 120;
+
+    volatile ThermalSource thermalSource;
+    int level = 0;
+    int thermalMinLevel = 0;
+    double averageLoad = 0;
+    int overloadFrames = 0;
+    int headroomFrames = 0;
+    int framesUntilThermalCheck = 0;
+    volatile boolean resetRequested = false;
+
+    public void setThermalSource(ThermalSource source) {
+        thermalSource = source;
+        framesUntilThermalCheck = 0;
+    }
+
+    /**
+     * When update() is next called, returns to the highest quality allowed by the thermal status
+     * and clears the load history. Called when the workload changes, e.g. a new table is loaded.
+     */
+    public void reset() {
+        resetRequested = true;
+    }
+
+    private void resetIfRequested() {
+        if (resetRequested) {
+            resetRequested = false;
+            level = 0;
+            averageLoad = 0;
+            overloadFrames = 0;
+            headroomFrames = 0;
+            framesUntilThermalCheck = 0;
+        }
+    }
+
+    private void updateThermalMinLevel() {
+        if (thermalSource == null) {
+            thermalMinLevel = 0;
+            return;
+        }
+        int status = thermalSource.thermalStatus();
+        int maxStatus = MIN_LEVEL_FOR_THERMAL_STATUS.length - 1;
+        thermalMinLevel = MIN_LEVEL_FOR_THERMAL_STATUS[Math.max(0, Math.min(status, maxStatus))];
+    }
+
+    /**
+     * Records a frame whose work took `workNanos` while targeting `targetFramesPerSecond`, and
+     * adjusts the quality level if needed. Returns true if the level changed, in which case the
+     * caller should apply the new settings.
+     */
+    public boolean update(long workNanos, double targetFramesPerSecond) {
+        int previousLevel = level;
+        resetIfRequested();
+        if (--framesUntilThermalCheck <= 0) {
+            framesUntilThermalCheck = framesBetweenThermalChecks;
+            updateThermalMinLevel();
+        }
+
+        double load = workNanos * targetFramesPerSecond / BILLION;
+        averageLoad += LOAD_AVERAGE_WEIGHT * (load - averageLoad);
+        if (averageLoad > overloadRatio) {
+            headroomFrames = 0;
+            if (++overloadFrames >= overloadFramesBeforeDecrease && level < NUM_LEVELS - 1) {
+                level++;
+                overloadFrames = 0;
+            }
+        }
+        else if (averageLoad < headroomRatio) {
+            overloadFrames = 0;
+            if (++headroomFrames >= headroomFramesBeforeIncrease) {
+                if (level > thermalMinLevel) {
+                    level--;
+                }
+                headroomFrames = 0;
+            }
+        }
+        else {
+            overloadFrames = 0;
+            headroomFrames = 0;
+        }
+        if (level < thermalMinLevel) {
+            level = thermalMinLevel;
+        }
+        return level != previousLevel;
+    }
+
+    /**
+     * Records the frame most recently started by `frameRateManager`, using the time since it
+     * started as the work time. Should be called after the frame is generated, before waiting for
+     * the next one.
+     */
+    public boolean update(FrameRateManager frameRateManager) {
+        return update(frameRateManager.nanosSinceFrameStarted(),
+                frameRateManager.targetFramesPerSecond());
+    }
+
+    /** Sets the trail and score animation settings for the current level in `field`. */
+    public void applyTo(Field field) {
+        field.setMaxBallTrailImages(getMaxBallTrailImages());
+        field.setScoreAnimationsSuppressed(!allowScoreAnimations());
+    }
+
+    /** Returns the current quality level, from 0 (highest) to NUM_LEVELS-1 (lowest). */
+    public int getLevel() {
+        return level;
+    }
+
+    public int getPhysicsSubsteps() {
+        return PHYSICS_SUBSTEPS[level];
+    }
+
+    public int getMaxBallTrailImages() {
+        return MAX_BALL_TRAIL_IMAGES[level];
+    }
+
+    public boolean allowScoreAnimations() {
+        return SCORE_ANIMATIONS[level];
+    }
+
+    /** Returns the maximum frame rate for the current level, or infinity if not limited. */
+    public double getFrameRateCap() {
+        return FRAME_RATE_CAPS[level];
+    }
+}
@@ -1,8 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.model;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Represents an animated floating score display that moves upward and fades out over time.
  * Implements IDrawable so it can be rendered alongside other game elements.
@@ -16,8 +13,18 @@ public class ScoreAnimation implements IDrawable {
     private final int layer;
     private final int baseColor;
     
-    private final List<Shape> digitShapes;
+    // Segment endpoints for all digits as consecutive [x1, y1, x2, y2] values, computed once.
+    // X values are relative to the left edge of the text and Y values to its vertical center, in
+    // world units at full size. Drawing scales and translates these, so no per-frame allocation.
+    private final double[] segmentCoords;
+    private final double unscaledTextWidth;
     private boolean expired = false;
+
+    // Current position, size and color, set by updateAnimation.
+    private double currentLeftX;
+    private double currentY;
+    private double currentScale;
+    private int currentColor;
     
     private static final long DEFAULT_DURATION_NANOS = 2_000_000_000L; // 2 seconds
     private static final double FLOAT_DISTANCE = 3.0; // World units to float upward
@@ -55,35 +62,45 @@ public class ScoreAnimation implements IDrawable {
         this.minX = minX;
         this.maxX = maxX;
         
-        this.digitShapes = new ArrayList<>();
-        createDigitShapes(startY, baseColor, 1.0);
-    }
-    
-    private void createDigitShapes(double currentY, int currentColor, double scale) {
-        digitShapes.clear();
         String scoreText = String.valueOf(score);
-        double totalWidth = scale * ((scoreText.length() - 1) * DIGIT_SPACING + DIGIT_WIDTH);
-        double startX = this.startX - totalWidth / 2;
-        if (startX < minX) {
-            startX = minX;
-        }
-        else if (startX + totalWidth > maxX) {
-            startX = maxX - totalWidth;
+        this.unscaledTextWidth = (scoreText.length() - 1) * DIGIT_SPACING + DIGIT_WIDTH;
+        this.segmentCoords = createSegmentCoords(scoreText);
+        setCurrentState(startY, baseColor, 1.0);
+    }
+
+    private static double[] createSegmentCoords(String scoreText) {
+        int numCoords = 0;
+        for (int i = 0; i < scoreText.length(); i++) {
+            int digit = Character.getNumericValue(scoreText.charAt(i));
+            numCoords += DigitShapes.unitSegmentsForDigit(digit).length;
         }
-        
+        double[] coords = new double[numCoords];
+        int c = 0;
         for (int i = 0; i < scoreText.length(); i++) {
             int digit = Character.getNumericValue(scoreText.charAt(i));
-            // DigitShape.createDigit takes the center point so we add half the width.
-            double digitX = startX + ((i * DIGIT_SPACING + DIGIT_WIDTH / 2) * scale);
-            digitShapes.addAll(DigitShapes.createDigit(
-                    digit,
-                    digitX,
-                    currentY,
-                    DIGIT_WIDTH * scale,
-                    DIGIT_HEIGHT * scale,
-                    layer,
-                    currentColor));
+            double[] unitSegments = DigitShapes.unitSegmentsForDigit(digit);
+            double digitCenterX = i * DIGIT_SPACING + DIGIT_WIDTH / 2;
+            for (int j = 0; j < unitSegments.length; j += 2) {
+                coords[c++] = digitCenterX + unitSegments[j] * DIGIT_WIDTH;
+                coords[c++] = unitSegments[j + 1] * DIGIT_HEIGHT;
+            }
+        }
+        return coords;
+    }
+
+    private void setCurrentState(double y, int color, double scale) {
+        double totalWidth = scale * unscaledTextWidth;
+        double leftX = this.startX - totalWidth / 2;
+        if (leftX < minX) {
+            leftX = minX;
+        }
+        else if (leftX + totalWidth > maxX) {
+            leftX = maxX - totalWidth;
         }
+        this.currentLeftX = leftX;
+        this.currentY = y;
+        this.currentScale = scale;
+        this.currentColor = color;
     }
     
     /**
@@ -97,16 +114,15 @@ public class ScoreAnimation implements IDrawable {
         }
         
         double progress = (double)(currentTimeNanos - startTimeNanos) / durationNanos;
-        double currentY = startY + (FLOAT_DISTANCE * progress);
+        double y = startY + (FLOAT_DISTANCE * progress);
 
         // Shrink to 50% of maximum size at the end of the animation.
         double scale = 1 - 0.5 * progress;
         // Fade out in the last 50% of animation.
         double alpha = progress < 0.5 ? 1.0 : (1.0 - (progress - 0.5) * 2.0);
-        int currentColor = applyAlpha(baseColor, alpha);
-        
-        // Update all digit shapes with new position and color
-        createDigitShapes(currentY, currentColor, scale);
+        int color = applyAlpha(baseColor, alpha);
+
+        setCurrentState(y, color, scale);
     }
     
     private int applyAlpha(int color, double alpha) {
@@ -123,8 +139,15 @@ public class ScoreAnimation implements IDrawable {
     
     @Override
     public void draw(Field field, IFieldRenderer renderer) {
-        for (Shape shape : digitShapes) {
-            shape.draw(field, renderer);
+        double[] coords = segmentCoords;
+        double x = currentLeftX;
+        double y = currentY;
+        double scale = currentScale;
+        for (int i = 0; i < coords.length; i += 4) {
+            renderer.drawLine(
+                    (float) (x + scale * coords[i]), (float) (y + scale * coords[i + 1]),
+                    (float) (x + scale * coords[i + 2]), (float) (y + scale * coords[i + 3]),
+                    currentColor);
         }
     }
     
@@ -13,6 +13,12 @@ public abstract class Shape implements IDrawable {
         return layer;
     }
 
+    // Shapes can be updated in place while synchronized on the Field they were passed to, so
+    // that delegates that change shapes every frame don't have to create new ones.
+    public void setColor(int color) {
+        this.color = color;
+    }
+
     int colorToDraw(Field field) {
         if (inactiveLayerColor == null) {
             return color;
@@ -41,6 +47,13 @@ public abstract class Shape implements IDrawable {
             return self;
         }
 
+        public void setEndpoints(double x1, double y1, double x2, double y2) {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+
         @Override public void draw(Field field, IFieldRenderer renderer) {
             renderer.drawLine(f32(x1), f32(y1), f32(x2), f32(y2), colorToDraw(field));
         }
@@ -112,6 +125,12 @@ public abstract class Shape implements IDrawable {
             return self;
         }
 
+        public void setCenterAndRadius(double cx, double cy, double radius) {
+            this.cx = cx;
+            this.cy = cy;
+            this.radius = radius;
+        }
+
         @Override public void draw(Field field, IFieldRenderer renderer) {
             if (this.fill == FillType.OUTLINE) {
                 renderer.frameCircle(f32(cx), f32(cy), f32(radius), colorToDraw(field));
@@ -8,12 +8,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Collection of Box2d worlds, one for each "layer" of a table.
+ * Collection of Box2d worlds, one for each "layer" of a table. The worlds hold native memory
+ * that isn't garbage collected, so dispose() must be called when they're no longer needed.
  */
 public class WorldLayers {
+    // Number of worlds created by any WorldLayers object and not yet disposed, to detect leaks.
+    private static final AtomicInteger liveWorldCount = new AtomicInteger();
+
     private Vector2 gravity = Vector2.Zero;
+    private boolean disposed = false;
     private ContactListener contactListener;
     private HashMap<Integer, World> worldsByLayer = new HashMap<>();
     private List<World> layerWorlds = Collections.emptyList();
@@ -41,7 +47,11 @@ public class WorldLayers {
     public World existingOrNewWorldForLayer(int layer) {
         World w = this.existingWorldForLayer(layer);
         if (w == null) {
+            if (disposed) {
+                throw new IllegalStateException("WorldLayers has been disposed");
+            }
             w = new World(this.gravity, false);
+            liveWorldCount.incrementAndGet();
             w.setContactListener(this.contactListener);
             this.worldsByLayer.put(layer, w);
             this._rebuildArrays();
@@ -49,6 +59,57 @@ public class WorldLayers {
         return w;
     }
 
+    /** Returns the worlds for all layers, ordered by layer. */
+    List<World> getWorlds() {
+        return this.layerWorlds;
+    }
+
+    /**
+     * Frees the native memory of all worlds, including their bodies, fixtures, and joints. Bodies
+     * and joints from these worlds must not be used afterwards.
+     */
+    public void dispose() {
+        for (int i = 0; i < this.layerWorlds.size(); i++) {
+            this.layerWorlds.get(i).dispose();
+            liveWorldCount.decrementAndGet();
+        }
+        this.worldsByLayer.clear();
+        this.layerWorlds = Collections.emptyList();
+        this.disposed = true;
+    }
+
+    /** Returns the number of worlds that have been created and not disposed, in all instances. */
+    public static int getLiveWorldCount() {
+        return liveWorldCount.get();
+    }
+
+    /** Returns the total number of Box2D bodies in all worlds. */
+    public int getBodyCount() {
+        int count = 0;
+        for (int i = 0; i < this.layerWorlds.size(); i++) {
+            count += this.layerWorlds.get(i).getBodyCount();
+        }
+        return count;
+    }
+
+    /** Returns the total number of Box2D fixtures in all worlds. */
+    public int getFixtureCount() {
+        int count = 0;
+        for (int i = 0; i < this.layerWorlds.size(); i++) {
+            count += this.layerWorlds.get(i).getFixtureCount();
+        }
+        return count;
+    }
+
+    /** Returns the total number of Box2D joints in all worlds. */
+    public int getJointCount() {
+        int count = 0;
+        for (int i = 0; i < this.layerWorlds.size(); i++) {
+            count += this.layerWorlds.get(i).getJointCount();
+        }
+        return count;
+    }
+
     void setGravity(Vector2 gravity) {
         this.gravity = gravity.cpy();
         for (int i = 0; i < this.layerWorlds.size(); i++) {
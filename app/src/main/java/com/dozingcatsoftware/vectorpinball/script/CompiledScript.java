@@ -0,0 +1,46 @@
+package com.dozingcatsoftware.vectorpinball.script;
+
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.Stmt;
+
+/**
+ * A table script compiled by ScriptCompiler. Holds the statements for each event handler and the
+ * initial values of the script's variables. Running the script requires a ScriptDelegate, which
+ * holds the variable values and cached element lookups, so a CompiledScript can be shared by
+ * several delegates.
+ */
+public class CompiledScript {
+
+    final String[] variableNames;
+    // Sets variables declared outside of handlers to their initial values.
+    final Stmt initializer;
+    // Handler statements indexed by ScriptEvent ordinal, null for events with no handler.
+    final Stmt[] handlers;
+    // Size of each delegate's Frame.cache.
+    final int cacheSlotCount;
+
+    CompiledScript(
+            String[] variableNames, Stmt initializer, Stmt[] handlers, int cacheSlotCount) {
+        this.variableNames = variableNames;
+        this.initializer = initializer;
+        this.handlers = handlers;
+        this.cacheSlotCount = cacheSlotCount;
+    }
+
+    public boolean hasHandler(ScriptEvent event) {
+        return handlers[event.ordinal()] != null;
+    }
+
+    public int getVariableCount() {
+        return variableNames.length;
+    }
+
+    /** Returns the index of the variable with the given name, or -1 if there isn't one. */
+    public int getVariableIndex(String name) {
+        for (int i = 0; i < variableNames.length; i++) {
+            if (variableNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
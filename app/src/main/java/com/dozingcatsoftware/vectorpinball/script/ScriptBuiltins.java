@@ -0,0 +1,206 @@
+package com.dozingcatsoftware.vectorpinball.script;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dozingcatsoftware.vectorpinball.elements.DropTargetGroupElement;
+import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
+import com.dozingcatsoftware.vectorpinball.elements.RolloverGroupElement;
+import com.dozingcatsoftware.vectorpinball.elements.WallElement;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.CacheSlots;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.Frame;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.NumExpr;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.StrConst;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.StrExpr;
+
+/**
+ * Functions that scripts can call. These are the only way a script can affect the game, which
+ * keeps scripts from calling arbitrary Java code. Every function returns a number; functions
+ * that only have side effects return 0. Functions that take an element ID do nothing and return
+ * 0 if there is no element of the expected type with that ID.
+ */
+class ScriptBuiltins {
+
+    interface Factory {
+        // `args` contains a NumExpr or StrExpr for each argument, as given by the signature.
+        // Values that should be computed once per delegate are stored in slots from `cache`.
+        NumExpr create(Object[] args, CacheSlots cache);
+    }
+
+    static class Builtin {
+        // One character per argument: 'n' for number, 's' for string.
+        final String signature;
+        final Factory factory;
+
+        Builtin(String signature, Factory factory) {
+            this.signature = signature;
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Finds an element by ID. If the ID is a string literal, the element is looked up once per
+     * delegate and field and stored in the Frame, rather than on every call.
+     */
+    static class ElementRef<T extends FieldElement> {
+        final StrExpr id;
+        final Class<T> elementClass;
+        // Index in Frame.cache, or -1 if the ID isn't constant.
+        final int cacheSlot;
+
+        ElementRef(Object id, Class<T> elementClass, CacheSlots cache) {
+            this.id = (StrExpr) id;
+            this.elementClass = elementClass;
+            this.cacheSlot = (id instanceof StrConst) ? cache.allocate() : -1;
+        }
+
+        T get(Frame f) {
+            if (cacheSlot < 0) {
+                return lookup(f, id.eval(f));
+            }
+            Object cached = f.cache[cacheSlot];
+            if (cached == null) {
+                cached = lookup(f, ((StrConst) id).value);
+                f.cache[cacheSlot] = (cached != null) ? cached : Frame.NOT_FOUND;
+            }
+            return (cached != Frame.NOT_FOUND) ? elementClass.cast(cached) : null;
+        }
+
+        private T lookup(Frame f, String elementId) {
+            FieldElement element = f.field.getFieldElementById(elementId);
+            return elementClass.isInstance(element) ? elementClass.cast(element) : null;
+        }
+    }
+
+    static final Map<String, Builtin> BUILTINS = new HashMap<>();
+
+    private static void add(String name, String signature, Factory factory) {
+        BUILTINS.put(name, new Builtin(signature, factory));
+    }
+
+    private static NumExpr num(Object arg) {
+        return (NumExpr) arg;
+    }
+
+    static {
+        // Math.
+        add("abs", "n", (args, cache) -> {
+            NumExpr a = num(args[0]);
+            return f -> Math.abs(a.eval(f));
+        });
+        add("min", "nn", (args, cache) -> {
+            NumExpr a = num(args[0]), b = num(args[1]);
+            return f -> Math.min(a.eval(f), b.eval(f));
+        });
+        add("max", "nn", (args, cache) -> {
+            NumExpr a = num(args[0]), b = num(args[1]);
+            return f -> Math.max(a.eval(f), b.eval(f));
+        });
+        add("floor", "n", (args, cache) -> {
+            NumExpr a = num(args[0]);
+            return f -> Math.floor(a.eval(f));
+        });
+
+        // Game state.
+        add("score", "", (args, cache) -> f -> f.field.getScore());
+        add("addScore", "n", (args, cache) -> {
+            NumExpr points = num(args[0]);
+            return f -> {
+                f.field.addScore((long) points.eval(f));
+                return 0;
+            };
+        });
+        add("multiplier", "", (args, cache) -> f -> f.field.getScoreMultiplier());
+        add("incrementMultiplier", "n", (args, cache) -> {
+            NumExpr millis = num(args[0]);
+            return f -> {
+                f.field.incrementAndDisplayScoreMultiplier((long) millis.eval(f));
+                return 0;
+            };
+        });
+        add("showMessage", "sn", (args, cache) -> {
+            StrExpr key = (StrExpr) args[0];
+            NumExpr millis = num(args[1]);
+            return f -> {
+                f.field.showGameMessage(f.field.resolveString(key.eval(f)), (long) millis.eval(f));
+                return 0;
+            };
+        });
+        add("gameTimeMillis", "", (args, cache) -> f -> f.field.getGameTimeNanos() / 1e6);
+        add("ballCount", "", (args, cache) -> f -> f.field.getBalls().size());
+        add("hasBallAtLayer", "n", (args, cache) -> {
+            NumExpr layer = num(args[0]);
+            return f -> f.field.hasBallAtLayer((int) layer.eval(f)) ? 1 : 0;
+        });
+        add("launchBall", "", (args, cache) -> f -> {
+            f.field.launchBall();
+            return 0;
+        });
+        add("addExtraBall", "", (args, cache) -> f -> {
+            f.field.addExtraBall();
+            return 0;
+        });
+
+        // Elements.
+        add("setRetracted", "sn", (args, cache) -> {
+            ElementRef<WallElement> wall = new ElementRef<>(args[0], WallElement.class, cache);
+            NumExpr retracted = num(args[1]);
+            return f -> {
+                WallElement w = wall.get(f);
+                if (w != null) w.setRetracted(retracted.eval(f) != 0);
+                return 0;
+            };
+        });
+        add("isRetracted", "s", (args, cache) -> {
+            ElementRef<WallElement> wall = new ElementRef<>(args[0], WallElement.class, cache);
+            return f -> {
+                WallElement w = wall.get(f);
+                return (w != null && w.isRetracted()) ? 1 : 0;
+            };
+        });
+        add("allRolloversActive", "s", (args, cache) -> {
+            ElementRef<RolloverGroupElement> group =
+                    new ElementRef<>(args[0], RolloverGroupElement.class, cache);
+            return f -> {
+                RolloverGroupElement g = group.get(f);
+                return (g != null && g.allRolloversActive()) ? 1 : 0;
+            };
+        });
+        add("activateNextRollover", "s", (args, cache) -> {
+            ElementRef<RolloverGroupElement> group =
+                    new ElementRef<>(args[0], RolloverGroupElement.class, cache);
+            return f -> {
+                RolloverGroupElement g = group.get(f);
+                if (g != null) g.activateFirstUnactivatedRollover();
+                return 0;
+            };
+        });
+        add("setRolloversActive", "sn", (args, cache) -> {
+            ElementRef<RolloverGroupElement> group =
+                    new ElementRef<>(args[0], RolloverGroupElement.class, cache);
+            NumExpr active = num(args[1]);
+            return f -> {
+                RolloverGroupElement g = group.get(f);
+                if (g != null) g.setAllRolloversActivated(active.eval(f) != 0);
+                return 0;
+            };
+        });
+        add("allDropTargetsHit", "s", (args, cache) -> {
+            ElementRef<DropTargetGroupElement> group =
+                    new ElementRef<>(args[0], DropTargetGroupElement.class, cache);
+            return f -> {
+                DropTargetGroupElement g = group.get(f);
+                return (g != null && g.allTargetsHit()) ? 1 : 0;
+            };
+        });
+        add("resetDropTargets", "s", (args, cache) -> {
+            ElementRef<DropTargetGroupElement> group =
+                    new ElementRef<>(args[0], DropTargetGroupElement.class, cache);
+            return f -> {
+                DropTargetGroupElement g = group.get(f);
+                if (g != null) g.makeAllTargetsVisible();
+                return 0;
+            };
+        });
+    }
+}
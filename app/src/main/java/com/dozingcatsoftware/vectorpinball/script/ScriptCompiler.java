@@ -0,0 +1,474 @@
+package com.dozingcatsoftware.vectorpinball.script;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dozingcatsoftware.vectorpinball.script.ScriptBuiltins.Builtin;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.AfterStmt;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.CacheSlots;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.Frame;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.NumExpr;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.StrExpr;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.Stmt;
+
+/**
+ * Compiles the "script" property of a table layout. A script declares variables and handlers for
+ * the events in ScriptEvent, for example:
+ *
+ * <pre>
+ * var hits = 0;
+ * on gameStarted { hits = 0; setRetracted("LaunchBarrier", true); }
+ * on processCollision {
+ *     if (id == "Bumper1") {
+ *         hits += 1;
+ *         if (hits % 10 == 0) { addScore(5000); showMessage("bonus_message", 1500); }
+ *     }
+ * }
+ * on ballInSensorRange {
+ *     if (id == "LaunchSensor") after (500) setRetracted("LaunchBarrier", false);
+ * }
+ * </pre>
+ *
+ * Statements are blocks, "var" declarations, assignments with =, +=, and -=, if/else, while,
+ * "after (millis) statement" to run a statement later, and calls to the functions in
+ * ScriptBuiltins. Values are numbers, with 0 as false, or strings. Strings can only be compared
+ * with == and != and passed to functions. In handlers, "id" is the ID of the element that caused
+ * the event, or "" if none, and "nanos" is the time passed to tick. All variables are global, and
+ * must be declared before they are used.
+ *
+ * The script is compiled into a tree of closures, so that running a handler doesn't parse
+ * anything or look up names. Throws IllegalArgumentException for invalid scripts.
+ */
+public class ScriptCompiler {
+
+    static final int NUMBER = 0;
+    static final int STRING = 1;
+    static final int NAME = 2;
+    static final int SYMBOL = 3;
+    static final int END = 4;
+
+    static class Token {
+        final int type;
+        final String text;
+        final double number;
+        final int line;
+
+        Token(int type, String text, double number, int line) {
+            this.type = type;
+            this.text = text;
+            this.number = number;
+            this.line = line;
+        }
+    }
+
+    // Typed result of parsing an expression; exactly one of the fields is set.
+    static class Expr {
+        final NumExpr num;
+        final StrExpr str;
+
+        Expr(NumExpr num, StrExpr str) {
+            this.num = num;
+            this.str = str;
+        }
+    }
+
+    private static final String[] SYMBOLS = {
+            "&&", "||", "==", "!=", "<=", ">=", "+=", "-=",
+            "(", ")", "{", "}", ",", ";", "+", "-", "*", "/", "%", "!", "<", ">", "=",
+    };
+
+    private final List<Token> tokens;
+    private int pos = 0;
+    private final List<String> variableNames = new ArrayList<>();
+    private final CacheSlots cacheSlots = new CacheSlots();
+
+    private ScriptCompiler(String source) {
+        this.tokens = tokenize(source);
+    }
+
+    public static CompiledScript compile(String source) {
+        return new ScriptCompiler(source).parseScript();
+    }
+
+    static List<Token> tokenize(String source) {
+        List<Token> tokens = new ArrayList<>();
+        int line = 1;
+        int i = 0;
+        int length = source.length();
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+            }
+            else if (Character.isWhitespace(c)) {
+                i++;
+            }
+            else if (source.startsWith("//", i)) {
+                while (i < length && source.charAt(i) != '\n') i++;
+            }
+            else if (Character.isDigit(c) || c == '.') {
+                int start = i;
+                while (i < length &&
+                        (Character.isDigit(source.charAt(i)) || source.charAt(i) == '.')) {
+                    i++;
+                }
+                String text = source.substring(start, i);
+                try {
+                    tokens.add(new Token(NUMBER, text, Double.parseDouble(text), line));
+                }
+                catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException(
+                            "Invalid number \"" + text + "\" on line " + line);
+                }
+            }
+            else if (c == '"') {
+                int end = source.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated string on line " + line);
+                }
+                tokens.add(new Token(STRING, source.substring(i + 1, end), 0, line));
+                i = end + 1;
+            }
+            else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(source.charAt(i)) ||
+                        source.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(NAME, source.substring(start, i), 0, line));
+            }
+            else {
+                String symbol = null;
+                for (String s : SYMBOLS) {
+                    if (source.startsWith(s, i)) {
+                        symbol = s;
+                        break;
+                    }
+                }
+                if (symbol == null) {
+                    throw new IllegalArgumentException(
+                            "Unexpected character '" + c + "' on line " + line);
+                }
+                tokens.add(new Token(SYMBOL, symbol, 0, line));
+                i += symbol.length();
+            }
+        }
+        tokens.add(new Token(END, "end of script", 0, line));
+        return tokens;
+    }
+
+    private Token peek() {
+        return tokens.get(pos);
+    }
+
+    private Token next() {
+        Token token = tokens.get(pos);
+        if (token.type != END) pos++;
+        return token;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " on line " + peek().line);
+    }
+
+    private boolean isSymbol(String symbol) {
+        Token token = peek();
+        return token.type == SYMBOL && token.text.equals(symbol);
+    }
+
+    private boolean isName(String name) {
+        Token token = peek();
+        return token.type == NAME && token.text.equals(name);
+    }
+
+    private boolean consumeSymbol(String symbol) {
+        if (isSymbol(symbol)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectSymbol(String symbol) {
+        if (!consumeSymbol(symbol)) {
+            throw error("Expected '" + symbol + "' but found '" + peek().text + "'");
+        }
+    }
+
+    private String expectName() {
+        if (peek().type != NAME) {
+            throw error("Expected a name but found '" + peek().text + "'");
+        }
+        return next().text;
+    }
+
+    private CompiledScript parseScript() {
+        List<Stmt> initializers = new ArrayList<>();
+        Stmt[] handlers = new Stmt[ScriptEvent.values().length];
+        while (peek().type != END) {
+            if (isName("var")) {
+                Stmt init = parseVar();
+                if (init != null) initializers.add(init);
+            }
+            else if (isName("on")) {
+                next();
+                String name = expectName();
+                ScriptEvent event = ScriptEvent.forScriptName(name);
+                if (event == null) {
+                    throw error("Unknown event " + name);
+                }
+                if (handlers[event.ordinal()] != null) {
+                    throw error("Duplicate handler for " + name);
+                }
+                handlers[event.ordinal()] = parseBlock();
+            }
+            else {
+                throw error("Expected 'var' or 'on' but found '" + peek().text + "'");
+            }
+        }
+        return new CompiledScript(variableNames.toArray(new String[0]),
+                ScriptNodes.block(initializers.toArray(new Stmt[0])), handlers, cacheSlots.count);
+    }
+
+    // Declares a variable, and returns an assignment statement if it has an initial value.
+    private Stmt parseVar() {
+        next();
+        String name = expectName();
+        if (isReservedName(name)) {
+            throw error("Can't declare variable " + name);
+        }
+        int slot = variableNames.indexOf(name);
+        if (slot < 0) {
+            slot = variableNames.size();
+            variableNames.add(name);
+        }
+        Stmt init = null;
+        if (consumeSymbol("=")) {
+            init = ScriptNodes.assign(slot, parseNumber());
+        }
+        expectSymbol(";");
+        return init;
+    }
+
+    private static boolean isReservedName(String name) {
+        switch (name) {
+            case "var": case "on": case "if": case "else": case "while": case "after":
+            case "true": case "false": case "id": case "nanos":
+                return true;
+            default:
+                return ScriptBuiltins.BUILTINS.containsKey(name);
+        }
+    }
+
+    private Stmt parseBlock() {
+        expectSymbol("{");
+        List<Stmt> statements = new ArrayList<>();
+        while (!consumeSymbol("}")) {
+            if (peek().type == END) {
+                throw error("Expected '}'");
+            }
+            Stmt statement = parseStatement();
+            if (statement != null) statements.add(statement);
+        }
+        if (statements.isEmpty()) {
+            return f -> {};
+        }
+        return ScriptNodes.block(statements.toArray(new Stmt[0]));
+    }
+
+    private Stmt parseStatement() {
+        if (isSymbol("{")) {
+            return parseBlock();
+        }
+        if (isName("var")) {
+            return parseVar();
+        }
+        if (isName("if")) {
+            next();
+            NumExpr condition = parseCondition();
+            Stmt ifTrue = parseStatement();
+            Stmt ifFalse = null;
+            if (isName("else")) {
+                next();
+                ifFalse = parseStatement();
+            }
+            return ScriptNodes.ifElse(condition, orEmpty(ifTrue), ifFalse);
+        }
+        if (isName("while")) {
+            next();
+            NumExpr condition = parseCondition();
+            return ScriptNodes.whileLoop(condition, orEmpty(parseStatement()));
+        }
+        if (isName("after")) {
+            next();
+            NumExpr delay = parseCondition();
+            return new AfterStmt(delay, orEmpty(parseStatement()), cacheSlots);
+        }
+        if (peek().type == NAME && tokens.get(pos + 1).type == SYMBOL) {
+            String op = tokens.get(pos + 1).text;
+            if (op.equals("=") || op.equals("+=") || op.equals("-=")) {
+                String name = next().text;
+                int slot = variableSlot(name);
+                next();
+                NumExpr value = parseNumber();
+                expectSymbol(";");
+                if (!op.equals("=")) {
+                    value = ScriptNodes.binary(
+                            op.substring(0, 1), ScriptNodes.global(slot), value);
+                }
+                return ScriptNodes.assign(slot, value);
+            }
+        }
+        Expr expr = parseExpression();
+        expectSymbol(";");
+        if (expr.num == null) {
+            throw error("Statement has no effect");
+        }
+        NumExpr call = expr.num;
+        return f -> call.eval(f);
+    }
+
+    private static Stmt orEmpty(Stmt statement) {
+        return (statement != null) ? statement : f -> {};
+    }
+
+    private NumExpr parseCondition() {
+        expectSymbol("(");
+        NumExpr condition = parseNumber();
+        expectSymbol(")");
+        return condition;
+    }
+
+    private int variableSlot(String name) {
+        int slot = variableNames.indexOf(name);
+        if (slot < 0) {
+            throw error("Undeclared variable " + name);
+        }
+        return slot;
+    }
+
+    private NumExpr parseNumber() {
+        Expr expr = parseExpression();
+        if (expr.num == null) {
+            throw error("Expected a number");
+        }
+        return expr.num;
+    }
+
+    private static Expr num(NumExpr expr) {
+        return new Expr(expr, null);
+    }
+
+    private NumExpr requireNumber(Expr expr, String op) {
+        if (expr.num == null) {
+            throw error("Operator " + op + " requires numbers");
+        }
+        return expr.num;
+    }
+
+    private Expr parseExpression() {
+        return parseBinary(0);
+    }
+
+    // Binary operators from lowest to highest precedence.
+    private static final String[][] PRECEDENCE = {
+            {"||"}, {"&&"}, {"==", "!="}, {"<", "<=", ">", ">="}, {"+", "-"}, {"*", "/", "%"},
+    };
+
+    private Expr parseBinary(int level) {
+        if (level == PRECEDENCE.length) {
+            return parseUnary();
+        }
+        Expr left = parseBinary(level + 1);
+        while (true) {
+            String op = null;
+            for (String candidate : PRECEDENCE[level]) {
+                if (isSymbol(candidate)) {
+                    op = candidate;
+                    break;
+                }
+            }
+            if (op == null) {
+                return left;
+            }
+            next();
+            Expr right = parseBinary(level + 1);
+            boolean equality = op.equals("==") || op.equals("!=");
+            if (equality && left.str != null && right.str != null) {
+                left = num(ScriptNodes.stringEquals(left.str, right.str, op.equals("==")));
+            }
+            else {
+                left = num(ScriptNodes.binary(
+                        op, requireNumber(left, op), requireNumber(right, op)));
+            }
+        }
+    }
+
+    private Expr parseUnary() {
+        if (consumeSymbol("-")) {
+            return num(ScriptNodes.negate(requireNumber(parseUnary(), "-")));
+        }
+        if (consumeSymbol("!")) {
+            return num(ScriptNodes.not(requireNumber(parseUnary(), "!")));
+        }
+        return parsePrimary();
+    }
+
+    private Expr parsePrimary() {
+        Token token = next();
+        switch (token.type) {
+            case NUMBER:
+                return num(ScriptNodes.constant(token.number));
+            case STRING:
+                return new Expr(null, ScriptNodes.constant(token.text));
+            case SYMBOL:
+                if (token.text.equals("(")) {
+                    Expr expr = parseExpression();
+                    expectSymbol(")");
+                    return expr;
+                }
+                break;
+            case NAME:
+                return parseName(token.text);
+        }
+        pos--;
+        throw error("Unexpected '" + token.text + "'");
+    }
+
+    private Expr parseName(String name) {
+        switch (name) {
+            case "true":
+                return num(ScriptNodes.bool(true));
+            case "false":
+                return num(ScriptNodes.bool(false));
+            case "id":
+                return new Expr(null, (Frame f) -> f.id);
+            case "nanos":
+                return num((Frame f) -> f.nanos);
+        }
+        if (consumeSymbol("(")) {
+            Builtin builtin = ScriptBuiltins.BUILTINS.get(name);
+            if (builtin == null) {
+                throw error("Unknown function " + name);
+            }
+            int numArgs = builtin.signature.length();
+            Object[] args = new Object[numArgs];
+            for (int i = 0; i < numArgs; i++) {
+                if (i > 0) expectSymbol(",");
+                Expr arg = parseExpression();
+                boolean wantString = builtin.signature.charAt(i) == 's';
+                if (wantString ? arg.str == null : arg.num == null) {
+                    throw error("Argument " + (i + 1) + " of " + name + " must be a " +
+                            (wantString ? "string" : "number"));
+                }
+                args[i] = wantString ? arg.str : arg.num;
+            }
+            if (!consumeSymbol(")")) {
+                throw error(name + " takes " + numArgs + " argument(s)");
+            }
+            return num(builtin.factory.create(args, cacheSlots));
+        }
+        return num(ScriptNodes.global(variableSlot(name)));
+    }
+}
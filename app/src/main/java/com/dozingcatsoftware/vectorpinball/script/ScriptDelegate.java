@@ -0,0 +1,190 @@
+package com.dozingcatsoftware.vectorpinball.script;
+
+import java.util.List;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.dozingcatsoftware.vectorpinball.elements.DropTargetGroupElement;
+import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
+import com.dozingcatsoftware.vectorpinball.elements.FlipperElement;
+import com.dozingcatsoftware.vectorpinball.elements.RolloverGroupElement;
+import com.dozingcatsoftware.vectorpinball.elements.SensorElement;
+import com.dozingcatsoftware.vectorpinball.elements.SpinnerElement;
+import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.Frame;
+import com.dozingcatsoftware.vectorpinball.script.ScriptNodes.Stmt;
+
+/**
+ * Field delegate that runs the handlers of a table script compiled by ScriptCompiler. Field uses
+ * this delegate when a layout has a "script" property and no "delegate" class.
+ *
+ * Scripts are sandboxed: they can only call the functions in ScriptBuiltins, and each callback
+ * has a time budget. A callback that runs longer than its budget is stopped at the next loop
+ * iteration, and a callback that throws an exception is stopped, without affecting the game.
+ * Both are counted, along with the number of calls and time spent in each callback, so that
+ * table authors can find slow or broken handlers.
+ */
+public class ScriptDelegate implements Field.Delegate {
+
+    public static final long DEFAULT_BUDGET_NANOS = 1_000_000L;
+
+    final CompiledScript script;
+    final Frame frame;
+    long budgetNanos = DEFAULT_BUDGET_NANOS;
+
+    // Statistics per ScriptEvent ordinal.
+    final long[] callCounts = new long[ScriptEvent.values().length];
+    final long[] totalNanos = new long[ScriptEvent.values().length];
+    final long[] maxNanos = new long[ScriptEvent.values().length];
+    final long[] budgetOverrunCounts = new long[ScriptEvent.values().length];
+    long errorCount = 0;
+    String lastError = null;
+
+    public ScriptDelegate(CompiledScript script) {
+        this.script = script;
+        this.frame = new Frame(this, script.getVariableCount(), script.cacheSlotCount);
+        // Initializers that call functions which use the field will fail here, but will
+        // succeed when they run again before the gameStarted handler, so don't count errors.
+        execute(ScriptEvent.GAME_STARTED, script.initializer, null, "", 0);
+        errorCount = 0;
+        lastError = null;
+    }
+
+    public CompiledScript getScript() {
+        return script;
+    }
+
+    public void setBudgetNanos(long nanos) {
+        budgetNanos = nanos;
+    }
+
+    public long getCallCount(ScriptEvent event) {
+        return callCounts[event.ordinal()];
+    }
+
+    public long getTotalNanos(ScriptEvent event) {
+        return totalNanos[event.ordinal()];
+    }
+
+    public long getMaxNanos(ScriptEvent event) {
+        return maxNanos[event.ordinal()];
+    }
+
+    public long getBudgetOverrunCount(ScriptEvent event) {
+        return budgetOverrunCounts[event.ordinal()];
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /** Returns a description of the most recent exception thrown by a handler, or null. */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /** Returns the current value of a script variable. */
+    public double getVariable(String name) {
+        int index = script.getVariableIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No script variable: " + name);
+        }
+        return frame.globals[index];
+    }
+
+    private void runHandler(ScriptEvent event, Stmt handler, Field field, String id, long nanos) {
+        if (handler == null) {
+            return;
+        }
+        int index = event.ordinal();
+        long startNanos = System.nanoTime();
+        if (!execute(event, handler, field, id, nanos)) {
+            budgetOverrunCounts[index]++;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        callCounts[index]++;
+        totalNanos[index] += elapsed;
+        if (elapsed > maxNanos[index]) {
+            maxNanos[index] = elapsed;
+        }
+    }
+
+    // Runs a statement within the time budget, and returns false if it exceeded the budget.
+    private boolean execute(ScriptEvent event, Stmt statement, Field field, String id, long nanos) {
+        frame.setField(field);
+        frame.id = (id != null) ? id : "";
+        frame.nanos = nanos;
+        frame.aborted = false;
+        frame.loopIterations = 0;
+        frame.deadlineNanos = System.nanoTime() + budgetNanos;
+        try {
+            statement.run(frame);
+        }
+        catch (RuntimeException ex) {
+            errorCount++;
+            lastError = event.scriptName + ": " + ex;
+        }
+        return !frame.aborted;
+    }
+
+    private void run(ScriptEvent event, Field field, FieldElement element, long nanos) {
+        Stmt handler = script.handlers[event.ordinal()];
+        if (handler != null) {
+            runHandler(event, handler, field,
+                    (element != null) ? element.getElementId() : "", nanos);
+        }
+    }
+
+    void runScheduledAction(Stmt statement) {
+        runHandler(ScriptEvent.SCHEDULED_ACTION, statement, frame.field, "", 0);
+    }
+
+    @Override public void gameStarted(Field field) {
+        // Reset variables for the new game.
+        execute(ScriptEvent.GAME_STARTED, script.initializer, field, "", 0);
+        run(ScriptEvent.GAME_STARTED, field, null, 0);
+    }
+
+    @Override public void ballLost(Field field) {
+        run(ScriptEvent.BALL_LOST, field, null, 0);
+    }
+
+    @Override public void gameEnded(Field field) {
+        run(ScriptEvent.GAME_ENDED, field, null, 0);
+    }
+
+    @Override public void tick(Field field, long nanos) {
+        run(ScriptEvent.TICK, field, null, nanos);
+    }
+
+    @Override public void processCollision(
+            Field field, FieldElement element, Body hitBody, Ball ball) {
+        run(ScriptEvent.PROCESS_COLLISION, field, element, 0);
+    }
+
+    @Override public void flippersActivated(Field field, List<FlipperElement> flippers) {
+        run(ScriptEvent.FLIPPERS_ACTIVATED, field, null, 0);
+    }
+
+    @Override public void allDropTargetsInGroupHit(
+            Field field, DropTargetGroupElement targetGroup, Ball ball) {
+        run(ScriptEvent.ALL_DROP_TARGETS_IN_GROUP_HIT, field, targetGroup, 0);
+    }
+
+    @Override public void allRolloversInGroupActivated(
+            Field field, RolloverGroupElement rollovers, Ball ball) {
+        run(ScriptEvent.ALL_ROLLOVERS_IN_GROUP_ACTIVATED, field, rollovers, 0);
+    }
+
+    @Override public void spinnerActivated(Field field, SpinnerElement spinner, Ball ball) {
+        run(ScriptEvent.SPINNER_ACTIVATED, field, spinner, 0);
+    }
+
+    @Override public void ballInSensorRange(Field field, SensorElement sensor, Ball ball) {
+        run(ScriptEvent.BALL_IN_SENSOR_RANGE, field, sensor, 0);
+    }
+
+    @Override public boolean isFieldActive(Field field) {
+        return false;
+    }
+}
@@ -0,0 +1,39 @@
+package com.dozingcatsoftware.vectorpinball.script;
+
+/**
+ * Field.Delegate callbacks that a table script can handle with an "on" block. The script name of
+ * each event is the name of the corresponding Field.Delegate method.
+ */
+public enum ScriptEvent {
+    GAME_STARTED("gameStarted"),
+    BALL_LOST("ballLost"),
+    GAME_ENDED("gameEnded"),
+    TICK("tick"),
+    PROCESS_COLLISION("processCollision"),
+    FLIPPERS_ACTIVATED("flippersActivated"),
+    ALL_DROP_TARGETS_IN_GROUP_HIT("allDropTargetsInGroupHit"),
+    ALL_ROLLOVERS_IN_GROUP_ACTIVATED("allRolloversInGroupActivated"),
+    SPINNER_ACTIVATED("spinnerActivated"),
+    BALL_IN_SENSOR_RANGE("ballInSensorRange"),
+    // Not a delegate method; statements run by "after" blocks.
+    SCHEDULED_ACTION("scheduledAction");
+
+    final String scriptName;
+
+    ScriptEvent(String scriptName) {
+        this.scriptName = scriptName;
+    }
+
+    public String getScriptName() {
+        return scriptName;
+    }
+
+    static ScriptEvent forScriptName(String name) {
+        for (ScriptEvent event : values()) {
+            if (event != SCHEDULED_ACTION && event.scriptName.equals(name)) {
+                return event;
+            }
+        }
+        return null;
+    }
+}
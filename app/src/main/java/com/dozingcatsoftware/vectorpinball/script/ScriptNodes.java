@@ -0,0 +1,206 @@
+package com.dozingcatsoftware.vectorpinball.script;
+
+import java.util.Arrays;
+
+import com.dozingcatsoftware.vectorpinball.model.Field;
+
+/**
+ * The closure tree that ScriptCompiler builds from a script. Every expression has a static type,
+ * either number or string, so evaluating a script never boxes numbers or allocates.
+ */
+class ScriptNodes {
+
+    /** How many loop iterations run between checks of the time budget. */
+    static final int BUDGET_CHECK_INTERVAL = 64;
+
+    /**
+     * Assigns indexes in Frame.cache while a script is compiled, for nodes that compute a value
+     * once and reuse it. The compiled nodes don't hold such values themselves, so that a
+     * CompiledScript can be shared by several delegates.
+     */
+    static class CacheSlots {
+        int count = 0;
+
+        int allocate() {
+            return count++;
+        }
+    }
+
+    /** State of a running script, shared by all callbacks of a ScriptDelegate. */
+    static class Frame {
+        // Stored in `cache` by lookups that found nothing, so they aren't repeated.
+        static final Object NOT_FOUND = new Object();
+
+        final ScriptDelegate delegate;
+        final double[] globals;
+        // Values computed by nodes for this delegate and field, indexed by CacheSlots.
+        final Object[] cache;
+        Field field;
+        // Arguments of the current callback: the ID of the element that triggered it, or "" if
+        // none, and the elapsed time for tick.
+        String id = "";
+        double nanos = 0;
+        // Set when the callback exceeds its time budget, which stops all statements.
+        boolean aborted = false;
+        long deadlineNanos;
+        int loopIterations;
+
+        Frame(ScriptDelegate delegate, int numGlobals, int numCacheSlots) {
+            this.delegate = delegate;
+            this.globals = new double[numGlobals];
+            this.cache = new Object[numCacheSlots];
+        }
+
+        /** Sets the field for the next callback, and clears the cache if it changed. */
+        void setField(Field newField) {
+            if (newField != field) {
+                Arrays.fill(cache, null);
+                field = newField;
+            }
+        }
+
+        void checkBudget() {
+            if (++loopIterations % BUDGET_CHECK_INTERVAL == 0 &&
+                    System.nanoTime() > deadlineNanos) {
+                aborted = true;
+            }
+        }
+    }
+
+    interface NumExpr {
+        double eval(Frame f);
+    }
+
+    interface StrExpr {
+        String eval(Frame f);
+    }
+
+    interface Stmt {
+        void run(Frame f);
+    }
+
+    static Stmt block(final Stmt[] statements) {
+        if (statements.length == 1) {
+            return statements[0];
+        }
+        return f -> {
+            for (Stmt s : statements) {
+                if (f.aborted) return;
+                s.run(f);
+            }
+        };
+    }
+
+    static Stmt ifElse(final NumExpr condition, final Stmt ifTrue, final Stmt ifFalse) {
+        if (ifFalse == null) {
+            return f -> {
+                if (condition.eval(f) != 0) ifTrue.run(f);
+            };
+        }
+        return f -> {
+            if (condition.eval(f) != 0) {
+                ifTrue.run(f);
+            }
+            else {
+                ifFalse.run(f);
+            }
+        };
+    }
+
+    static Stmt whileLoop(final NumExpr condition, final Stmt body) {
+        return f -> {
+            while (!f.aborted && condition.eval(f) != 0) {
+                body.run(f);
+                f.checkBudget();
+            }
+        };
+    }
+
+    static Stmt assign(final int slot, final NumExpr value) {
+        return f -> f.globals[slot] = value.eval(f);
+    }
+
+    /** Runs `body` after a delay in milliseconds of game time, using Field.scheduleAction. */
+    static class AfterStmt implements Stmt {
+        final NumExpr delayMillis;
+        final Stmt body;
+        // Index in Frame.cache of the Runnable passed to scheduleAction, which is created on
+        // first use for each delegate.
+        final int actionSlot;
+
+        AfterStmt(NumExpr delayMillis, Stmt body, CacheSlots cache) {
+            this.delayMillis = delayMillis;
+            this.body = body;
+            this.actionSlot = cache.allocate();
+        }
+
+        @Override public void run(final Frame f) {
+            Runnable action = (Runnable) f.cache[actionSlot];
+            if (action == null) {
+                action = () -> f.delegate.runScheduledAction(body);
+                f.cache[actionSlot] = action;
+            }
+            f.field.scheduleAction((long) delayMillis.eval(f), action);
+        }
+    }
+
+    static NumExpr constant(final double value) {
+        return f -> value;
+    }
+
+    /** A string literal, which lets builtins look up elements with constant IDs only once. */
+    static class StrConst implements StrExpr {
+        final String value;
+
+        StrConst(String value) {
+            this.value = value;
+        }
+
+        @Override public String eval(Frame f) {
+            return value;
+        }
+    }
+
+    static StrExpr constant(String value) {
+        return new StrConst(value);
+    }
+
+    static NumExpr global(final int slot) {
+        return f -> f.globals[slot];
+    }
+
+    static NumExpr bool(boolean value) {
+        return constant(value ? 1 : 0);
+    }
+
+    static NumExpr binary(String op, final NumExpr a, final NumExpr b) {
+        switch (op) {
+            case "+": return f -> a.eval(f) + b.eval(f);
+            case "-": return f -> a.eval(f) - b.eval(f);
+            case "*": return f -> a.eval(f) * b.eval(f);
+            case "/": return f -> a.eval(f) / b.eval(f);
+            case "%": return f -> a.eval(f) % b.eval(f);
+            case "<": return f -> (a.eval(f) < b.eval(f)) ? 1 : 0;
+            case "<=": return f -> (a.eval(f) <= b.eval(f)) ? 1 : 0;
+            case ">": return f -> (a.eval(f) > b.eval(f)) ? 1 : 0;
+            case ">=": return f -> (a.eval(f) >= b.eval(f)) ? 1 : 0;
+            case "==": return f -> (a.eval(f) == b.eval(f)) ? 1 : 0;
+            case "!=": return f -> (a.eval(f) != b.eval(f)) ? 1 : 0;
+            case "&&": return f -> (a.eval(f) != 0 && b.eval(f) != 0) ? 1 : 0;
+            case "||": return f -> (a.eval(f) != 0 || b.eval(f) != 0) ? 1 : 0;
+            default: throw new IllegalArgumentException("Unknown operator: " + op);
+        }
+    }
+
+    static NumExpr stringEquals(final StrExpr a, final StrExpr b, final boolean equal) {
+        return f -> (a.eval(f).equals(b.eval(f)) == equal) ? 1 : 0;
+    }
+
+    static NumExpr negate(final NumExpr a) {
+        return f -> -a.eval(f);
+    }
+
+    static NumExpr not(final NumExpr a) {
+        return f -> (a.eval(f) == 0) ? 1 : 0;
+    }
+}
@@ -0,0 +1,143 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates how long each phase of a frame takes: physics, game logic, drawing, and waiting for
+ * the renderer. Each phase has a fixed-size histogram with power-of-two microsecond buckets, along
+ * with counts, totals, the maximum, and a moving average for display. Recording never allocates,
+ * so it's cheap enough to leave enabled.
+ *
+ * Each phase should only be recorded from a single thread (e.g. ticks from the game thread, draws
+ * from the render thread). Values may be read from any thread, but since they aren't updated
+ * atomically readers may see slightly inconsistent snapshots, which is fine for diagnostics.
+ */
+public class FramePhaseTimings {
+
+    public enum Phase {
+        WORLD_STEP("step"),
+        BALL_CONTACTS("contacts"),
+        ELEMENT_TICKS("elements"),
+        SCHEDULED_ACTIONS("actions"),
+        DELEGATE_TICK("delegate"),
+        FIELD_DRAW("draw"),
+        RENDER("render");
+
+        public final String shortName;
+
+        Phase(String shortName) {
+            this.shortName = shortName;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    // Bucket 0 is under 1 microsecond (1024 nanos), bucket i is [2^(i-1), 2^i) microseconds.
+    // The last bucket also holds everything larger, which is about 1 second.
+    public static final int NUM_BUCKETS = 21;
+    private static final int MICROS_SHIFT = 10;
+
+    // Weight of each new sample in the moving average.
+    private static final double AVERAGE_WEIGHT = 1.0 / 32;
+
+    private final long[][] buckets = new long[PHASES.length][NUM_BUCKETS];
+    private final long[] counts = new long[PHASES.length];
+    private final long[] totalNanos = new long[PHASES.length];
+    private final long[] maxNanos = new long[PHASES.length];
+    private final double[] averageNanos = new double[PHASES.length];
+
+    static int bucketForNanos(long nanos) {
+        long micros = Math.max(0, nanos) >> MICROS_SHIFT;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    /** Returns the exclusive upper bound of the given bucket, in nanoseconds. */
+    static long bucketUpperBoundNanos(int bucket) {
+        return (1L << MICROS_SHIFT) << bucket;
+    }
+
+    /** Records one occurrence of `phase` that took `nanos` nanoseconds. */
+    public void record(Phase phase, long nanos) {
+        int p = phase.ordinal();
+        buckets[p][bucketForNanos(nanos)]++;
+        counts[p]++;
+        totalNanos[p] += nanos;
+        if (nanos > maxNanos[p]) {
+            maxNanos[p] = nanos;
+        }
+        averageNanos[p] = (counts[p] == 1) ?
+                nanos : averageNanos[p] + AVERAGE_WEIGHT * (nanos - averageNanos[p]);
+    }
+
+    public long getCount(Phase phase) {
+        return counts[phase.ordinal()];
+    }
+
+    public long getTotalNanos(Phase phase) {
+        return totalNanos[phase.ordinal()];
+    }
+
+    public long getMaxNanos(Phase phase) {
+        return maxNanos[phase.ordinal()];
+    }
+
+    /** Returns an exponential moving average of recent times, weighted toward the latest. */
+    public double getRecentAverageNanos(Phase phase) {
+        return averageNanos[phase.ordinal()];
+    }
+
+    public double getMeanNanos(Phase phase) {
+        int p = phase.ordinal();
+        return (counts[p] > 0) ? (double) totalNanos[p] / counts[p] : 0;
+    }
+
+    /** Returns the number of samples in the given histogram bucket. */
+    public long getBucketCount(Phase phase, int bucket) {
+        return buckets[phase.ordinal()][bucket];
+    }
+
+    /**
+     * Returns an upper bound for the given percentile (between 0 and 100) of recorded times, with
+     * the precision of the histogram buckets. Returns 0 if nothing has been recorded.
+     */
+    public long getPercentileNanos(Phase phase, double percentile) {
+        int p = phase.ordinal();
+        if (counts[p] == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(counts[p] * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets[p][i];
+            if (seen >= threshold && seen > 0) {
+                return Math.min(bucketUpperBoundNanos(i), maxNanos[p]);
+            }
+        }
+        return maxNanos[p];
+    }
+
+    public void reset() {
+        for (int p = 0; p < PHASES.length; p++) {
+            Arrays.fill(buckets[p], 0);
+            counts[p] = 0;
+            totalNanos[p] = 0;
+            maxNanos[p] = 0;
+            averageNanos[p] = 0;
+        }
+    }
+
+    /**
+     * Returns a compact summary of recent average times in microseconds, suitable for a debug
+     * overlay. For example: "step 812 contacts 40 elements 95 ... render 4100 us".
+     */
+    public String recentAveragesSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : PHASES) {
+            sb.append(phase.shortName).append(' ');
+            sb.append(Math.round(averageNanos[phase.ordinal()] / 1000)).append(' ');
+        }
+        sb.append("us");
+        return sb.toString();
+    }
+}
@@ -1,6 +1,5 @@
 package com.dozingcatsoftware.vectorpinball.util;
 
-import java.util.LinkedList;
 import java.util.function.LongSupplier;
 
 /**
@@ -13,8 +12,15 @@ import java.util.function.LongSupplier;
  * nanoseconds to wait before starting the next frame, and sleepUntilNextFrame() to sleep the
  * current thread for that interval.
  *
- * frameStarted(), nanosToWaitUntilNextFrame(), and sleepUntilNextFrame() should not be called from
- * separate threads.
+ * Reducing the target rate is permanent until the rate is reset, but if frames consistently finish
+ * with plenty of time to spare, the FrameRateManager will periodically try the next higher rate
+ * (up to the maximum), and go back to the previous rate if the higher one can't be maintained.
+ * Failed attempts increase the interval until the next one. The most recent rate that was
+ * maintained for a sufficient number of frames is available from getStableFrameRate(), so that
+ * clients can persist it and pass it to setInitialFrameRate() in a later session.
+ *
+ * frameStarted(), frameWorkFinished(), nanosToWaitUntilNextFrame(), and sleepUntilNextFrame()
+ * should not be called from separate threads.
  */
 
 public class FrameRateManager {
@@ -29,9 +35,24 @@ public class FrameRateManager {
     double targetFrameRateFudgeFactor = 1.015;
     double[] unfudgedTargetFrameRates; // Report un-fudged target frame rates to client.
 
-    LinkedList<Long> previousFrameTimestamps = new LinkedList<>();
+    // Start times of the most recent frames, in a ring buffer so that recording a frame doesn't
+    // allocate. `oldestTimestampIndex` is the position of the earliest time, and there are
+    // `numTimestamps` valid entries (at most frameHistorySize).
+    long[] frameTimestamps = new long[DEFAULT_FRAME_HISTORY_SIZE];
+    int oldestTimestampIndex = 0;
+    int numTimestamps = 0;
+
+    // If set and providing valid data, frame starts are aligned to vsync times.
+    VsyncSource vsyncSource;
+
+    // Distribution of individual frame durations, which shows stutters that averaging over
+    // frameHistorySize frames hides.
+    final FrameTimeHistogram frameTimeHistogram = new FrameTimeHistogram();
+    // Frames that take longer than this multiple of the target frame time are counted as jank.
+    static final double JANK_FRAME_TIME_RATIO = 1.5;
 
-    int frameHistorySize = 10;
+    static final int DEFAULT_FRAME_HISTORY_SIZE = 10;
+    int frameHistorySize = DEFAULT_FRAME_HISTORY_SIZE;
     boolean allowReducingFrameRate = true;
     boolean allowLockingFrameRate = true;
 
@@ -40,6 +61,32 @@ public class FrameRateManager {
     int maxGoodFrames = 500; // After maintaining target FPS for this many frames, lock frame rate.
     int maxSlowFrames = 150; // After this many slow frames, reduce target FPS if possible.
 
+    // When frame work takes less than this fraction of the next higher rate's frame time for
+    // `headroomFramesBeforeProbe` consecutive frames, try the higher rate. Much lower than the
+    // minimum rate thresholds, so that the rate doesn't oscillate between two levels.
+    boolean allowProbingHigherRates = true;
+    double probeHeadroomRatio = 0.6;
+    int headroomFramesBeforeProbe = 600;
+    // Minimum number of frames between a failed probe and the next one; doubles with each
+    // consecutive failure up to the maximum.
+    int initialProbeBackoffFrames = 1800;
+    int maxProbeBackoffFrames = 28800;
+
+    int headroomFrames = 0;
+    boolean probing = false;
+    int probeFromRateIndex = 0;
+    boolean probeFromRateLocked = false;
+    int failedProbes = 0;
+    long nextProbeFrame = 0;
+    // Frames to skip before checking the frame rate after increasing the target, since the frame
+    // history still reflects the previous rate.
+    int framesUntilRateCheck = 0;
+
+    // Rate most recently maintained for maxGoodFrames frames, or -1 if none since the last reset.
+    double stableFrameRate = -1;
+    // If positive, start at the highest target rate that doesn't exceed this after a reset.
+    double initialFrameRate = -1;
+
     double currentFPS = -1;
     int goodFrames = 0;
     int slowFrames = 0;
@@ -47,6 +94,8 @@ public class FrameRateManager {
     boolean resetRequested = false;
     // Never try to go higher than this rate. Typically this will be the display refresh rate.
     double maxTargetFrameRate = 60.0;
+    // Temporary limit below maxTargetFrameRate, e.g. to reduce power use when the device is hot.
+    double frameRateCap = Double.POSITIVE_INFINITY;
 
     final static long BILLION = 1_000_000_000L; // nanoseconds per second.
     final static long MILLION = 1_000_000L; // nanoseconds per millisecond.
@@ -82,14 +131,39 @@ public class FrameRateManager {
         resetCurrentRateIndex();
     }
 
+    private long newestTimestamp() {
+        return frameTimestamps[(oldestTimestampIndex + numTimestamps - 1) % frameHistorySize];
+    }
+
+    public int getFrameHistorySize() {
+        return frameHistorySize;
+    }
+
+    /**
+     * Sets the number of recent frames used to compute the current frame rate and to keep frame
+     * start times on schedule. Larger values smooth out short stutters but react more slowly to
+     * sustained slowdowns. Clears the existing history. Should be called from the thread that
+     * calls frameStarted(), or while no frames are being generated.
+     */
+    public void setFrameHistorySize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Frame history size must be positive: " + size);
+        }
+        frameHistorySize = size;
+        frameTimestamps = new long[size];
+        clearTimestamps();
+    }
+
     /**
      * Clears the history of frame starting times. Should be called when the app is paused or
      * otherwise not generating frames, to avoid inaccurate frame rates when it starts again.
      */
     public void clearTimestamps() {
-        previousFrameTimestamps.clear();
+        oldestTimestampIndex = 0;
+        numTimestamps = 0;
         goodFrames = 0;
         slowFrames = 0;
+        headroomFrames = 0;
         currentFPS = -1;
     }
 
@@ -98,15 +172,35 @@ public class FrameRateManager {
         currentNanosPerFrame = (long) (BILLION / targetFrameRates[currentRateIndex]);
     }
 
-    private void resetCurrentRateIndex() {
-        // Use the first frame rate that's less than or equal to the max target.
+    /** Returns the index of the first (highest) target rate not above `rate`, or -1 if none. */
+    private int highestRateIndexNotAbove(double rate) {
         for (int i = 0; i < unfudgedTargetFrameRates.length; i++) {
-            if (maxTargetFrameRate >= unfudgedTargetFrameRates[i]) {
-                setCurrentRateIndex(i);
-                return;
+            if (rate >= unfudgedTargetFrameRates[i]) {
+                return i;
             }
         }
-        throw new IllegalStateException("Invalid target frame rate: " + maxTargetFrameRate);
+        return -1;
+    }
+
+    private void resetCurrentRateIndex() {
+        // Use the first frame rate that's less than or equal to the max target, and to the
+        // cap and initial rate if they're set and valid.
+        int index = -1;
+        double maxRate = Math.min(maxTargetFrameRate, frameRateCap);
+        if (initialFrameRate > 0) {
+            index = highestRateIndexNotAbove(Math.min(initialFrameRate, maxRate));
+        }
+        if (index < 0) {
+            index = highestRateIndexNotAbove(maxRate);
+        }
+        if (index < 0 && highestRateIndexNotAbove(maxTargetFrameRate) >= 0) {
+            // The cap is below every target rate, so use the lowest.
+            index = unfudgedTargetFrameRates.length - 1;
+        }
+        if (index < 0) {
+            throw new IllegalStateException("Invalid target frame rate: " + maxTargetFrameRate);
+        }
+        setCurrentRateIndex(index);
     }
 
     public double getMaxTargetFrameRate() {
@@ -117,12 +211,113 @@ public class FrameRateManager {
         maxTargetFrameRate = value;
     }
 
+    public double getFrameRateCap() {
+        return frameRateCap;
+    }
+
+    /**
+     * Limits the target frame rate to at most `cap` (but never below the lowest target rate),
+     * reducing the current target immediately if needed. Unlike setMaxTargetFrameRate, this is
+     * intended to change while frames are being generated, and should be called from the thread
+     * that calls frameStarted(). Pass Double.POSITIVE_INFINITY to remove the limit; the rate can
+     * then increase again by probing.
+     */
+    public void setFrameRateCap(double cap) {
+        frameRateCap = cap;
+        if (targetFramesPerSecond() > cap) {
+            int index = highestRateIndexNotAbove(cap);
+            setCurrentRateIndex(index >= 0 ? index : unfudgedTargetFrameRates.length - 1);
+            goodFrames = 0;
+            slowFrames = 0;
+            probing = false;
+            frameRateLocked = false;
+            stableFrameRate = -1;
+        }
+    }
+
+    public double getInitialFrameRate() {
+        return initialFrameRate;
+    }
+
+    /**
+     * Sets the rate to start at after the frame rate is reset, typically a value previously
+     * returned by getStableFrameRate(). The rate can still increase up to the maximum target rate
+     * if there's enough headroom. Pass 0 or a negative value to start at the maximum rate.
+     */
+    public void setInitialFrameRate(double value) {
+        initialFrameRate = value;
+    }
+
+    /**
+     * Returns the target rate most recently maintained for a sufficient number of frames since the
+     * last reset, or -1 if there is none yet.
+     */
+    public double getStableFrameRate() {
+        return stableFrameRate;
+    }
+
+    /** Returns true if currently trying a higher rate to see if it can be maintained. */
+    public boolean isProbingHigherRate() {
+        return probing;
+    }
+
+    public boolean allowProbingHigherRates() {
+        return allowProbingHigherRates;
+    }
+
+    /**
+     * Sets whether the FrameRateManager should try higher target rates when frames are being
+     * generated much faster than required. Defaults to true.
+     */
+    public void setAllowProbingHigherRates(boolean value) {
+        allowProbingHigherRates = value;
+    }
+
     /** Internal method to reduce the target frame rate to the next lower value. */
     private void reduceFps() {
         setCurrentRateIndex(currentRateIndex + 1);
         goodFrames = 0;
         slowFrames = 0;
         frameRateLocked = false;
+        if (probing) {
+            // The higher rate didn't work. Back off before trying again, and restore the lock on
+            // the previous rate if it had one. (The 60fps throttling check below can reduce more
+            // than one level, in which case the next call will unlock it).
+            probing = false;
+            frameRateLocked = probeFromRateLocked && currentRateIndex == probeFromRateIndex;
+            failedProbes++;
+            stableFrameRate = frameRateLocked ? targetFramesPerSecond() : -1;
+        }
+        else {
+            stableFrameRate = -1;
+        }
+        headroomFrames = 0;
+        nextProbeFrame = totalFrames + probeBackoffFrames();
+    }
+
+    private long probeBackoffFrames() {
+        int doublings = Math.max(0, Math.min(failedProbes - 1, 20));
+        long frames = (long) initialProbeBackoffFrames << doublings;
+        return Math.min(frames, maxProbeBackoffFrames);
+    }
+
+    private boolean canProbeHigherRate() {
+        return allowProbingHigherRates && !probing && currentRateIndex > 0 &&
+                unfudgedTargetFrameRates[currentRateIndex - 1] <= maxTargetFrameRate &&
+                unfudgedTargetFrameRates[currentRateIndex - 1] <= frameRateCap;
+    }
+
+    /** Internal method to try the next higher target frame rate. */
+    private void probeHigherFps() {
+        probing = true;
+        probeFromRateIndex = currentRateIndex;
+        probeFromRateLocked = frameRateLocked;
+        setCurrentRateIndex(currentRateIndex - 1);
+        goodFrames = 0;
+        slowFrames = 0;
+        headroomFrames = 0;
+        frameRateLocked = false;
+        framesUntilRateCheck = frameHistorySize;
     }
 
     /**
@@ -141,6 +336,11 @@ public class FrameRateManager {
             clearTimestamps();
             resetCurrentRateIndex();
             frameRateLocked = false;
+            probing = false;
+            framesUntilRateCheck = 0;
+            stableFrameRate = -1;
+            // Failed probes and the backoff interval are kept, so that a device that can't run at
+            // higher rates doesn't retry them every time the rate is reset.
             resetRequested = false;
         }
     }
@@ -154,13 +354,28 @@ public class FrameRateManager {
         resetIfRequested();
         long time = nanoTimeFn.getAsLong();
         ++totalFrames;
-        previousFrameTimestamps.add(time);
-        if (previousFrameTimestamps.size() > frameHistorySize) {
-            long firstTime = previousFrameTimestamps.removeFirst();
+        if (numTimestamps > 0) {
+            long jankThresholdNanos =
+                    (long) (JANK_FRAME_TIME_RATIO * BILLION / targetFramesPerSecond());
+            frameTimeHistogram.record(time - newestTimestamp(), jankThresholdNanos);
+        }
+        if (numTimestamps < frameHistorySize) {
+            frameTimestamps[(oldestTimestampIndex + numTimestamps) % frameHistorySize] = time;
+            numTimestamps++;
+        }
+        else {
+            // Replace the oldest time, which measures the duration of the last frameHistorySize
+            // frames.
+            long firstTime = frameTimestamps[oldestTimestampIndex];
+            frameTimestamps[oldestTimestampIndex] = time;
+            oldestTimestampIndex = (oldestTimestampIndex + 1) % frameHistorySize;
             double seconds = (time - firstTime) / (double) BILLION;
             currentFPS = frameHistorySize / seconds;
 
-            if (!frameRateLocked && currentRateIndex < minimumFrameRates.length) {
+            if (framesUntilRateCheck > 0) {
+                --framesUntilRateCheck;
+            }
+            else if (!frameRateLocked && currentRateIndex < minimumFrameRates.length) {
                 if (currentFPS < minimumFrameRates[currentRateIndex]) {
                     // Too slow; increment slow frame counter and reduce FPS if hit limit.
                     ++slowFrames;
@@ -174,6 +389,11 @@ public class FrameRateManager {
                         if (allowLockingFrameRate) {
                             frameRateLocked = true;
                         }
+                        stableFrameRate = targetFramesPerSecond();
+                        if (probing) {
+                            probing = false;
+                            failedProbes = 0;
+                        }
                         // Reset frame counters in any case, so we won't slow down after 150 bad
                         // frames and a million good ones.
                         slowFrames = 0;
@@ -187,9 +407,10 @@ public class FrameRateManager {
     // Android 15 throttles games to 60fps unless the user toggles a secret setting.
     // Unfortunately there seems to be no way to detect the condition where the display is running
     // at >60fps but the game is throttled, so we'll attempt to run at 90 or 120fps until we
-    // hit the maxSlowFrames limit. The result is that every time the frame rate manager resets
-    // there will be a slowdown until we detect that we can't run faster than 60. The workaround
-    // is to have a lower slow frame limit specifically for >60fps.
+    // hit the maxSlowFrames limit. To keep the slowdown short we have a lower slow frame limit
+    // specifically for >60fps. Clients can avoid it entirely after the first session by starting
+    // at the stable rate (see setInitialFrameRate); while throttled, frames have lots of headroom
+    // so higher rates will be probed, but each failure doubles the interval before the next probe.
     final int maxSlowFramesFor60fpsLimitDetection = 20;
 
     void reduceFpsIfNeeded() {
@@ -223,7 +444,40 @@ public class FrameRateManager {
      */
     public String fpsDebugInfo() {
         return String.format("FPS: %.1f target: %.1f %s",
-                currentFPS, targetFramesPerSecond(), (frameRateLocked) ? "(locked)" : "");
+                currentFPS, targetFramesPerSecond(),
+                (frameRateLocked) ? "(locked)" : (probing) ? "(probing)" : "");
+    }
+
+    /**
+     * Returns the number of nanoseconds since the most recent call to frameStarted(), or 0 if
+     * there's no frame history. Called after generating a frame, this is the frame's work time.
+     */
+    public long nanosSinceFrameStarted() {
+        return (numTimestamps > 0) ? nanoTimeFn.getAsLong() - newestTimestamp() : 0;
+    }
+
+    /**
+     * Records that the work for the current frame is done, and the caller is about to wait for
+     * the next frame. The time taken since frameStarted() determines whether there's enough
+     * headroom to try a higher frame rate. Called by sleepUntilNextFrame(); clients that wait
+     * using nanosToWaitUntilNextFrame() should call it themselves.
+     */
+    public void frameWorkFinished() {
+        if (numTimestamps == 0 || !canProbeHigherRate()) {
+            headroomFrames = 0;
+            return;
+        }
+        long workNanos = nanosSinceFrameStarted();
+        double higherRateNanos = BILLION / unfudgedTargetFrameRates[currentRateIndex - 1];
+        if (workNanos < probeHeadroomRatio * higherRateNanos) {
+            ++headroomFrames;
+            if (headroomFrames >= headroomFramesBeforeProbe && totalFrames >= nextProbeFrame) {
+                probeHigherFps();
+            }
+        }
+        else {
+            headroomFrames = 0;
+        }
     }
 
     /**
@@ -232,16 +486,20 @@ public class FrameRateManager {
      */
     public long nanosToWaitUntilNextFrame() {
         long time = nanoTimeFn.getAsLong();
-        if (previousFrameTimestamps.isEmpty()) {
+        if (numTimestamps == 0) {
             return MIN_SLEEP_NANOS;
         }
-        long lastStartTime = previousFrameTimestamps.getLast();
+        long lastStartTime = newestTimestamp();
+        long vsyncWaitTime = nanosToWaitForVsync(time, lastStartTime);
+        if (vsyncWaitTime >= 0) {
+            return Math.max(vsyncWaitTime, MIN_SLEEP_NANOS);
+        }
         long singleFrameGoalTime = lastStartTime + currentNanosPerFrame;
         long waitTime = singleFrameGoalTime - time;
         // adjust based on previous frame rates
-        if (previousFrameTimestamps.size() == frameHistorySize) {
+        if (numTimestamps == frameHistorySize) {
             long multiFrameGoalTime =
-                    previousFrameTimestamps.getFirst() + frameHistorySize * currentNanosPerFrame;
+                    frameTimestamps[oldestTimestampIndex] + frameHistorySize * currentNanosPerFrame;
             long behind = singleFrameGoalTime - multiFrameGoalTime;
             // behind>0 means we're behind schedule and should decrease wait time.
             // behind<0 means we're ahead of schedule, but don't adjust.
@@ -252,13 +510,50 @@ public class FrameRateManager {
         return Math.max(waitTime, MIN_SLEEP_NANOS);
     }
 
+    /**
+     * Returns the number of nanoseconds until the vsync closest to when the next frame should
+     * start, or -1 if there's no vsync source or it doesn't have valid timing yet. Aligning to
+     * actual vsyncs avoids the drift and judder that result from sleeping for computed intervals.
+     * If the target rate isn't a divisor of the display rate (e.g. 45fps on a 60Hz display), frames
+     * alternate between one and two vsync intervals to approximate it.
+     */
+    long nanosToWaitForVsync(long time, long lastStartTime) {
+        VsyncSource source = vsyncSource;
+        if (source == null) {
+            return -1;
+        }
+        long period = source.vsyncPeriodNanos();
+        long lastVsync = source.lastVsyncNanos();
+        if (period <= 0 || lastVsync <= 0) {
+            return -1;
+        }
+        // Use the requested rate without the fudge factor; vsync alignment keeps frames on time.
+        long goalTime = lastStartTime + (long) (BILLION / targetFramesPerSecond());
+        long vsyncsAfterLast = Math.floorDiv(goalTime - lastVsync + period / 2, period);
+        long nextVsync = lastVsync + vsyncsAfterLast * period;
+        if (nextVsync < time) {
+            // Already missed it, use the next one.
+            nextVsync += ((time - nextVsync + period - 1) / period) * period;
+        }
+        return nextVsync - time;
+    }
+
+    /**
+     * Sets a source of vsync timing to align frame starts with, or null to only use sleep-based
+     * pacing. If the source doesn't have valid timing, sleep-based pacing is used as a fallback.
+     */
+    public void setVsyncSource(VsyncSource source) {
+        vsyncSource = source;
+    }
+
     /**
      * Sleeps the current thread until the next frame should start generation. The time the current
      * thread sleeps is the number of nanoseconds returned by nanosToWaitUntilNextFrame(). Returns
      * immediately if an InterruptedException is raised during sleep. Returns the number of
-     * nanoseconds slept.
+     * nanoseconds slept. Calls frameWorkFinished() before computing the sleep time.
      */
     public long sleepUntilNextFrame() {
+        frameWorkFinished();
         long nanos = nanosToWaitUntilNextFrame();
         try {
             Thread.sleep(nanos / MILLION, (int) (nanos % MILLION));
@@ -293,6 +588,15 @@ public class FrameRateManager {
         allowLockingFrameRate = value;
     }
 
+    /**
+     * Returns the histogram of frame durations, from which percentiles and jank counts can be read.
+     * Frames are only recorded while the frame timestamp history is active, so pauses and inactive
+     * periods (after clearTimestamps) aren't counted as long frames.
+     */
+    public FrameTimeHistogram getFrameTimeHistogram() {
+        return frameTimeHistogram;
+    }
+
     /**
      * Returns the total number of frames recorded by calls to frameStarted(). This can be used
      * when clients want to perform an action every N frames, such as updating an FPS display.
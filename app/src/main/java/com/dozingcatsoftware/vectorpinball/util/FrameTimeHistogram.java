@@ -0,0 +1,128 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of frame durations, in the style of HdrHistogram. Durations are recorded in
+ * microseconds; values below 16 have their own buckets, and above that each power of two is split
+ * into 16 linear sub-buckets, so reported values are within about 6% of the actual durations.
+ * Frames longer than the "jank" threshold passed to record() are also counted separately.
+ *
+ * Recording and reading are lock-free, so the game thread can record every frame while another
+ * thread reads percentiles or writes a report.
+ */
+public class FrameTimeHistogram {
+
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Largest power of two tracked, 2^24 microseconds is about 16 seconds.
+    static final int MAX_EXPONENT = 24;
+    static final int NUM_BUCKETS = SUB_BUCKET_COUNT * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong jankCount = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    static int bucketIndexForMicros(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >> shift) & (SUB_BUCKET_COUNT - 1);
+        return SUB_BUCKET_COUNT * (shift + 1) + subBucket;
+    }
+
+    /** Returns the largest number of microseconds that falls in the given bucket. */
+    static long highestMicrosInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        long lowest = (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a frame that took `durationNanos`, counting it as janky if it took longer than
+     * `jankThresholdNanos`.
+     */
+    public void record(long durationNanos, long jankThresholdNanos) {
+        counts.incrementAndGet(bucketIndexForMicros(durationNanos / 1000));
+        totalCount.incrementAndGet();
+        if (durationNanos > jankThresholdNanos) {
+            jankCount.incrementAndGet();
+        }
+        long prevMax;
+        while (durationNanos > (prevMax = maxNanos.get())) {
+            if (maxNanos.compareAndSet(prevMax, durationNanos)) break;
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getJankCount() {
+        return jankCount.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the duration in nanoseconds at or below which `percentile` percent of frames fall,
+     * with the precision of the histogram buckets. Returns 0 if no frames have been recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= threshold) {
+                return Math.min(1000 * highestMicrosInBucket(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently with a reset may be partially lost,
+     * which is acceptable for statistics.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        jankCount.set(0);
+        maxNanos.set(0);
+    }
+
+    /** Returns a one-line summary of frame count, percentiles, maximum, and jank count. */
+    public String summary() {
+        long total = getTotalCount();
+        long jank = getJankCount();
+        return String.format(Locale.US,
+                "frames: %d p50: %.2fms p95: %.2fms p99: %.2fms max: %.2fms jank: %d (%.2f%%)",
+                total,
+                getPercentileNanos(50) / 1e6,
+                getPercentileNanos(95) / 1e6,
+                getPercentileNanos(99) / 1e6,
+                getMaxNanos() / 1e6,
+                jank,
+                (total > 0) ? 100.0 * jank / total : 0.0);
+    }
+}
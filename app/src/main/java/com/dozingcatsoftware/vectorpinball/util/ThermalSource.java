@@ -0,0 +1,19 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+/**
+ * Reports how thermally stressed the device is, so that QualityGovernor can reduce work before the
+ * system throttles the CPU and GPU. The status values match the ordering of Android's
+ * PowerManager.THERMAL_STATUS_* constants, so implementations can return those directly.
+ */
+public interface ThermalSource {
+    int THERMAL_STATUS_NONE = 0;
+    int THERMAL_STATUS_LIGHT = 1;
+    int THERMAL_STATUS_MODERATE = 2;
+    int THERMAL_STATUS_SEVERE = 3;
+    int THERMAL_STATUS_CRITICAL = 4;
+    int THERMAL_STATUS_EMERGENCY = 5;
+    int THERMAL_STATUS_SHUTDOWN = 6;
+
+    /** Returns the current thermal status, one of the THERMAL_STATUS constants. */
+    int thermalStatus();
+}
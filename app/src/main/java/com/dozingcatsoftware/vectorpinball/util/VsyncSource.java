@@ -0,0 +1,22 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+/**
+ * Supplies display vsync timing so that FrameRateManager can align frame starts with display
+ * refreshes instead of relying only on sleep durations. Times must use the same clock as the
+ * FrameRateManager's `nanoTimeFn` (normally System.nanoTime). Implementations are typically
+ * updated from the UI thread and read from the game thread, so they should be thread safe.
+ */
+public interface VsyncSource {
+    /** Returns the time of the most recent vsync in nanoseconds, or 0 if not known. */
+    long lastVsyncNanos();
+
+    /** Returns the time between vsyncs in nanoseconds, or 0 if not known. */
+    long vsyncPeriodNanos();
+
+    /**
+     * Called by FieldDriver with true when the game thread stops running frames because the field
+     * is idle, and with false when it's woken up. Implementations can stop tracking vsyncs while
+     * idle so that the display pipeline isn't kept awake.
+     */
+    void setIdle(boolean idle);
+}
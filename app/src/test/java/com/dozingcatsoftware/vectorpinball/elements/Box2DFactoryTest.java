@@ -0,0 +1,81 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.World;
+import com.dozingcatsoftware.vectorpinball.model.TestFields;
+
+/**
+ * Tests for Box2DFactory, checking that bodies created in a batch with shared definitions have
+ * the same properties as bodies created individually.
+ */
+public class Box2DFactoryTest {
+
+    @BeforeClass public static void loadNatives() {
+        TestFields.loadNatives();
+    }
+
+    private static void assertSameBodies(Body expected, Body actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getPosition(), actual.getPosition());
+        assertEquals(expected.getAngle(), actual.getAngle(), 1e-6f);
+        assertEquals(expected.getMass(), actual.getMass(), 1e-6f);
+        Fixture ef = expected.getFixtureList().get(0);
+        Fixture af = actual.getFixtureList().get(0);
+        assertEquals(ef.getShape().getType(), af.getShape().getType());
+        assertEquals(ef.getShape().getRadius(), af.getShape().getRadius(), 1e-6f);
+        assertEquals(ef.getRestitution(), af.getRestitution(), 1e-6f);
+        assertEquals(ef.getFriction(), af.getFriction(), 1e-6f);
+        assertEquals(ef.isSensor(), af.isSensor());
+    }
+
+    @Test public void batch_createsSameBodiesAsIndividualCalls() {
+        World world = new World(new Vector2(0, -1), true);
+        Body circle = Box2DFactory.createCircle(world, 1, 2, 0.5f, false);
+        Body wall = Box2DFactory.createThinWall(world, 0, 0, 3, 4, 0.5f, 0.1f);
+        Body sensor = Box2DFactory.createSensorCircle(world, 5, 6, 0.7f);
+        Body anchor = Box2DFactory.createCircle(world, 1, 1, 0.05f, true);
+
+        Box2DFactory.beginBatch();
+        Body batchCircle = Box2DFactory.createCircle(world, 1, 2, 0.5f, false);
+        Body batchWall = Box2DFactory.createThinWall(world, 0, 0, 3, 4, 0.5f, 0.1f);
+        Body batchSensor = Box2DFactory.createSensorCircle(world, 5, 6, 0.7f);
+        Body batchAnchor = Box2DFactory.createCircle(world, 1, 1, 0.05f, true);
+        Box2DFactory.BodyBatch batch = Box2DFactory.endBatch();
+
+        assertSameBodies(circle, batchCircle);
+        assertSameBodies(wall, batchWall);
+        assertSameBodies(sensor, batchSensor);
+        assertSameBodies(anchor, batchAnchor);
+        assertEquals(BodyDef.BodyType.DynamicBody, batchCircle.getType());
+        assertEquals(BodyDef.BodyType.StaticBody, batchAnchor.getType());
+        assertEquals(0.5f, ((CircleShape) batchCircle.getFixtureList().get(0).getShape())
+                .getRadius(), 1e-6f);
+        assertEquals(4, batch.getBodyCount());
+        assertTrue(batch.getCreationNanos() > 0);
+        world.dispose();
+    }
+
+    @Test public void beginBatch_failsIfAlreadyStarted() {
+        Box2DFactory.beginBatch();
+        try {
+            Box2DFactory.beginBatch();
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException expected) {
+        }
+        finally {
+            Box2DFactory.endBatch();
+        }
+    }
+}
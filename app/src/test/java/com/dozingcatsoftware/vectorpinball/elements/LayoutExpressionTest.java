@@ -0,0 +1,166 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests compiling and evaluating layout expressions, and resolving them in variables and element
+ * parameters.
+ */
+public class LayoutExpressionTest {
+
+    private static double constantValue(String source, Map<String, ?> variables) {
+        LayoutExpression expr = LayoutExpression.compile(source, variables);
+        assertTrue(source, expr.isConstant());
+        return expr.getConstantValue();
+    }
+
+    private static void assertInvalid(String source) {
+        try {
+            LayoutExpression.compile(source, null);
+            fail("Expected error for " + source);
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test public void compile_arithmetic() {
+        assertEquals(7, constantValue("=1 + 2 * 3", null), 0);
+        assertEquals(9, constantValue("=(1 + 2) * 3", null), 0);
+        assertEquals(1, constantValue("=7 % 3", null), 0);
+        assertEquals(-4, constantValue("=-2^2", null), 0);
+        assertEquals(512, constantValue("=2^3^2", null), 0);
+        assertEquals(0.5, constantValue("=2^-1", null), 0);
+        assertEquals(2.5, constantValue("=10 / 4", null), 0);
+        assertEquals(0.0015, constantValue("=1.5e-3", null), 1e-12);
+        assertEquals(3, constantValue("=--3", null), 0);
+    }
+
+    @Test public void compile_functionsAndConstants() {
+        assertEquals(Math.PI, constantValue("=pi", null), 0);
+        assertEquals(2 * Math.PI, constantValue("=tau", null), 0);
+        assertEquals(1, constantValue("=sin(rad(90))", null), 1e-12);
+        assertEquals(180, constantValue("=deg(pi)", null), 1e-12);
+        assertEquals(5, constantValue("=sqrt(3*3 + 4*4)", null), 0);
+        assertEquals(2, constantValue("=max(min(2, 3), abs(-1))", null), 0);
+        assertEquals(Math.PI / 4, constantValue("=atan2(1, 1)", null), 1e-12);
+        assertEquals(-2, constantValue("=floor(-1.5)", null), 0);
+        assertEquals(-1, constantValue("=ceil(-1.5)", null), 0);
+    }
+
+    @Test public void compile_foldsKnownVariables() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("cx", 9.35);
+        vars.put("r", 2);
+        assertEquals(11.35, constantValue("=cx + r", vars), 1e-12);
+        // A variable can shadow the built in constants.
+        vars.put("pi", 3);
+        assertEquals(6, constantValue("=pi * r", vars), 0);
+    }
+
+    @Test public void evaluate_unknownVariables() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("scale", 2);
+        LayoutExpression expr = LayoutExpression.compile("=scale * (t + 1) + cos(0) * t", vars);
+        assertFalse(expr.isConstant());
+        assertArrayEquals(new String[] {"t"}, expr.getVariableNames());
+        assertEquals(2 * 4 + 3, expr.evaluate(new double[] {3}), 1e-12);
+        assertEquals(2 * 1 + 0, expr.evaluate(new double[] {0}), 1e-12);
+    }
+
+    @Test public void compile_errors() {
+        assertInvalid("=1 +");
+        assertInvalid("=(1 + 2");
+        assertInvalid("=1 2");
+        assertInvalid("=foo(1)");
+        assertInvalid("=min(1)");
+        assertInvalid("=sin(1, 2)");
+        assertInvalid("=1..2");
+        assertInvalid("=#");
+    }
+
+    @Test public void resolveVariableExpressions_inAnyOrder() {
+        FieldElementCollection elements = new FieldElementCollection();
+        elements.setVariable("c", "=b * 2");
+        elements.setVariable("b", "=a + 1");
+        elements.setVariable("a", 3);
+        elements.setVariable("name", "not an expression");
+        elements.resolveVariableExpressions();
+        assertEquals(8.0, elements.getVariable("c"));
+        assertEquals(4.0, elements.getVariable("b"));
+        assertEquals(3, elements.getVariable("a"));
+        assertEquals("not an expression", elements.getVariable("name"));
+    }
+
+    @Test public void resolveVariableExpressions_rejectsCycles() {
+        FieldElementCollection elements = new FieldElementCollection();
+        elements.setVariable("a", "=b + 1");
+        elements.setVariable("b", "=a + 1");
+        try {
+            elements.resolveVariableExpressions();
+            fail("Expected error for cyclic variables");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test public void resolveExpressions_replacesNestedParameters() {
+        FieldElementCollection elements = new FieldElementCollection();
+        elements.setVariable("cx", 10);
+        elements.setVariable("cy", 5);
+        Map<String, Object> params = new HashMap<>();
+        params.put("class", "BumperElement");
+        params.put("radius", "=0.5 * 2");
+        params.put("position", new ArrayList<Object>(Arrays.asList("=cx - 1", "=cy", 2)));
+        Map<?, ?> resolved = (Map<?, ?>) elements.resolveExpressions(params);
+
+        assertEquals("BumperElement", resolved.get("class"));
+        assertEquals(1.0, resolved.get("radius"));
+        assertEquals(Arrays.asList(9.0, 5.0, 2), resolved.get("position"));
+        // The original parameters, which may be in a shared layout map, aren't changed.
+        assertEquals("=0.5 * 2", params.get("radius"));
+        assertEquals(Arrays.asList("=cx - 1", "=cy", 2), params.get("position"));
+    }
+
+    @Test public void resolveExpressions_returnsParametersWithoutExpressions() {
+        FieldElementCollection elements = new FieldElementCollection();
+        List<Object> position = new ArrayList<Object>(Arrays.asList(1, 2));
+        Map<String, Object> params = new HashMap<>();
+        params.put("class", "BumperElement");
+        params.put("position", position);
+        params.put("color", new ArrayList<Object>(Arrays.asList(0, "=255", 0)));
+        Map<?, ?> resolved = (Map<?, ?>) elements.resolveExpressions(params);
+        assertNotSame(params, resolved);
+        assertSame(position, resolved.get("position"));
+        assertEquals(Arrays.asList(0, 255.0, 0), resolved.get("color"));
+
+        params.remove("color");
+        assertSame(params, elements.resolveExpressions(params));
+    }
+
+    @Test public void resolveExpressions_rejectsUnsetVariables() {
+        FieldElementCollection elements = new FieldElementCollection();
+        Map<String, Object> params = new HashMap<>();
+        params.put("radius", "=missing * 2");
+        try {
+            elements.resolveExpressions(params);
+            fail("Expected error for unset variable");
+        }
+        catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("missing"));
+        }
+    }
+}
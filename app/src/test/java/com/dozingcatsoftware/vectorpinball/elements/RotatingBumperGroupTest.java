@@ -0,0 +1,131 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.bumper;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.list;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.wall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.model.TestFields;
+
+/**
+ * Runs a layout with a RotatingBumperGroupElement with real Box2D physics, and checks that the
+ * bumpers move as kinematic bodies, stay evenly spaced on their circle, and still hit balls.
+ */
+public class RotatingBumperGroupTest {
+
+    static final double CENTER = 10;
+    static final double RADIUS = 4;
+
+    static Map<String, Object> rotatingBumper(String id, double x, double y) {
+        Map<String, Object> bumper = bumper(x, y);
+        bumper.put("id", id);
+        return bumper;
+    }
+
+    /**
+     * A 20x20 box with no gravity and four bumpers rotating around its center at `speed`
+     * radians per second. The ball is launched from the center, so it starts inside the circle.
+     */
+    static Map<String, Object> rotatingTableLayout(double speed) {
+        Map<String, Object> group = new HashMap<>();
+        group.put("class", "RotatingBumperGroupElement");
+        group.put("id", "Rotator");
+        group.put("bumpers", list("Bumper1", "Bumper2", "Bumper3", "Bumper4"));
+        group.put("center", list(CENTER, CENTER));
+        group.put("speed", speed);
+
+        Map<String, Object> layout = TestFields.bumperTableLayout();
+        layout.put("elements", list(
+                wall(0, 0, 20, 0), wall(20, 0, 20, 20), wall(20, 20, 0, 20), wall(0, 20, 0, 0),
+                rotatingBumper("Bumper1", CENTER + RADIUS, CENTER),
+                rotatingBumper("Bumper2", CENTER, CENTER + RADIUS),
+                rotatingBumper("Bumper3", CENTER - RADIUS, CENTER),
+                rotatingBumper("Bumper4", CENTER, CENTER - RADIUS),
+                group));
+        return layout;
+    }
+
+    static void assertBumperPositions(RotatingBumperGroup group, double angle, double delta) {
+        for (int i = 0; i < group.bumpers.length; i++) {
+            double bumperAngle = angle + 2 * Math.PI * i / group.bumpers.length;
+            BumperElement bumper = group.bumpers[i];
+            assertEquals(CENTER + RADIUS * Math.cos(bumperAngle), bumper.getCenterX(), delta);
+            assertEquals(CENTER + RADIUS * Math.sin(bumperAngle), bumper.getCenterY(), delta);
+        }
+    }
+
+    @Test public void tick_movesKinematicBumpersAroundCircle() {
+        Field field = TestFields.newField(rotatingTableLayout(-2.5));
+        field.startGame();
+        RotatingBumperGroupElement element = field.getFieldElementById("Rotator");
+        RotatingBumperGroup group = element.getGroup();
+        assertEquals(RADIUS, group.getRadius(), 1e-6);
+        double startAngle = group.getAngle();
+        double elapsed = 0;
+        // Mix of tick lengths, like a game whose frame rate changes.
+        double[] ticks = {1 / 60.0, 1 / 60.0, 1 / 45.0, 1 / 120.0, 1 / 60.0};
+        for (int i = 0; i < 600; i++) {
+            double seconds = ticks[i % ticks.length];
+            field.tick((long) (seconds * 1e9), 4);
+            elapsed += (long) (seconds * 1e9) / 1e9;
+        }
+        // A tick of a different length leaves the bumpers off the circle until the next tick.
+        field.tick(FRAME_NANOS, 4);
+        field.tick(FRAME_NANOS, 4);
+        elapsed += 2 * FRAME_NANOS / 1e9;
+
+        for (BumperElement bumper : group.bumpers) {
+            assertEquals(BodyDef.BodyType.KinematicBody, bumper.getBodies().get(0).getType());
+        }
+        double angle = startAngle - 2.5 * elapsed;
+        assertEquals(Math.cos(angle), Math.cos(group.getAngle()), 1e-6);
+        assertEquals(Math.sin(angle), Math.sin(group.getAngle()), 1e-6);
+        // The bodies reach each tick's positions during the following tick.
+        assertBumperPositions(group, angle + 2.5 * FRAME_NANOS / 1e9, 1e-3);
+    }
+
+    @Test public void rotatingBumpers_hitBallWithoutOverlapping() {
+        Field field = TestFields.newField(rotatingTableLayout(3));
+        RotatingBumperGroup group =
+                field.<RotatingBumperGroupElement>getFieldElementById("Rotator").getGroup();
+        field.startGame();
+        Ball ball = field.launchBall();
+        for (int i = 0; i < 600; i++) {
+            field.tick(FRAME_NANOS, 4);
+            Vector2 position = ball.getPosition();
+            for (BumperElement bumper : group.bumpers) {
+                double distance = Math.hypot(
+                        position.x - bumper.getCenterX(), position.y - bumper.getCenterY());
+                assertTrue("Ball inside bumper",
+                        distance > bumper.radius + ball.getRadius() - 0.1);
+            }
+        }
+        assertTrue("No bumpers were hit", field.getGameState().getScore() > 0);
+        assertEquals(1, field.getBalls().size());
+    }
+
+    @Test public void tick_doesNotAllocate() {
+        Field field = TestFields.newField(rotatingTableLayout(3));
+        field.startGame();
+        for (int i = 0; i < 600; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        long allocated = TestFields.minBytesAllocatedBy(() -> {
+            for (int i = 0; i < 600; i++) {
+                field.tick(FRAME_NANOS, 4);
+            }
+        }, 5);
+        assertEquals("Bytes allocated in 600 ticks", 0, allocated);
+    }
+}
@@ -0,0 +1,136 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.list;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.wall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.BaseFieldDelegate;
+import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.model.TestFields;
+
+/**
+ * Runs a ball through a sensor and a rollover with real Box2D physics, and checks that elements
+ * using sensor fixtures detect the ball on the same ticks as elements that check ball positions.
+ */
+public class SensorFixtureTest {
+
+    static class SensorDelegate extends BaseFieldDelegate {
+        int tickCount = 0;
+        List<Integer> sensorTicks = new ArrayList<>();
+
+        @Override public void tick(Field field, long nanos) {
+            tickCount++;
+        }
+
+        @Override public void ballInSensorRange(Field field, SensorElement sensor, Ball ball) {
+            sensorTicks.add(tickCount);
+        }
+    }
+
+    /**
+     * A box with no gravity, where the launched ball moves straight up through a sensor and
+     * then a rollover, and bounces back down through them.
+     */
+    static Map<String, Object> sensorTableLayout(boolean sensorFixtures) {
+        Map<String, Object> sensor = new HashMap<>();
+        sensor.put("class", "SensorElement");
+        sensor.put("id", "Sensor");
+        sensor.put("rect", list(8.0, 9.0, 12.0, 11.0));
+
+        Map<String, Object> rollover = new HashMap<>();
+        rollover.put("position", list(10.0, 15.0));
+        Map<String, Object> rollovers = new HashMap<>();
+        rollovers.put("class", "RolloverGroupElement");
+        rollovers.put("id", "Rollovers");
+        rollovers.put("radius", 0.7);
+        rollovers.put("toggleOff", true);
+        rollovers.put("rollovers", list(rollover));
+
+        Map<String, Object> layout = new HashMap<>();
+        layout.put("width", 20);
+        layout.put("height", 20);
+        layout.put("gravity", 0);
+        layout.put("launchPosition", list(10.0, 2.0));
+        layout.put("launchVelocity", list(0.0, 6.0));
+        layout.put("sensorFixtures", sensorFixtures);
+        layout.put("elements", list(
+                wall(0, 0, 20, 0), wall(20, 0, 20, 20), wall(20, 20, 0, 20), wall(0, 20, 0, 0),
+                sensor, rollovers));
+        return layout;
+    }
+
+    static Field createField(boolean sensorFixtures, SensorDelegate delegate) {
+        TestFields.loadNatives();
+        Field field = TestFields.newField();
+        field.resetForLayoutMap(sensorTableLayout(sensorFixtures), (f) -> delegate);
+        field.startGame();
+        return field;
+    }
+
+    // Runs the field for 16 seconds, and returns the ticks where the rollover changed state. The
+    // ball takes about 6 seconds to go up and back down, and passes the rollover twice each time.
+    static List<Integer> runBall(Field field, SensorDelegate delegate) {
+        RolloverGroupElement rollovers = field.getFieldElementById("Rollovers");
+        List<Integer> rolloverTicks = new ArrayList<>();
+        boolean rolloverActive = false;
+        field.launchBall();
+        for (int i = 0; i < 960; i++) {
+            field.tick(FRAME_NANOS, 4);
+            if (rollovers.isRolloverActiveAtIndex(0) != rolloverActive) {
+                rolloverActive = !rolloverActive;
+                rolloverTicks.add(delegate.tickCount);
+            }
+        }
+        return rolloverTicks;
+    }
+
+    @Test public void sensorFixtures_matchPolling() {
+        SensorDelegate pollingDelegate = new SensorDelegate();
+        Field pollingField = createField(false, pollingDelegate);
+        List<Integer> pollingRolloverTicks = runBall(pollingField, pollingDelegate);
+
+        SensorDelegate fixtureDelegate = new SensorDelegate();
+        Field fixtureField = createField(true, fixtureDelegate);
+        SensorElement sensor = fixtureField.getFieldElementById("Sensor");
+        assertEquals(1, sensor.getBodies().size());
+        assertTrue(sensor.getBodies().get(0).getFixtureList().get(0).isSensor());
+        List<Integer> fixtureRolloverTicks = runBall(fixtureField, fixtureDelegate);
+
+        // The ball passes through each element several times.
+        assertTrue(pollingDelegate.sensorTicks.size() > 10);
+        assertTrue(pollingRolloverTicks.size() >= 3);
+        assertEquals(pollingDelegate.sensorTicks, fixtureDelegate.sensorTicks);
+        assertEquals(pollingRolloverTicks, fixtureRolloverTicks);
+    }
+
+    @Test public void removedBall_doesNotClearReusedSlot() {
+        SensorDelegate delegate = new SensorDelegate();
+        Field field = createField(true, delegate);
+        SensorElement sensor = field.getFieldElementById("Sensor");
+        Ball ball = field.launchBall();
+        while (sensor.overlappingBallSlots == 0) {
+            field.tick(FRAME_NANOS, 4);
+            assertTrue("Ball didn't reach the sensor", delegate.tickCount < 240);
+        }
+        int slot = ball.getSlot();
+        // Removing the ball queues an end contact, which is processed after the new ball in the
+        // sensor gets the same slot and must not clear the new ball's bit.
+        field.removeBallWithoutBallLoss(ball);
+        Ball newBall = field.createBall(10, 10);
+        assertEquals(slot, newBall.getSlot());
+        int sensorCalls = delegate.sensorTicks.size();
+        field.tick(FRAME_NANOS, 4);
+        assertEquals(1L << slot, sensor.overlappingBallSlots);
+        assertEquals(sensorCalls + 1, delegate.sensorTicks.size());
+    }
+}
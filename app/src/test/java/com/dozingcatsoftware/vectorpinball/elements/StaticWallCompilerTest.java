@@ -0,0 +1,171 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.list;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.wall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.BaseFieldDelegate;
+import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.model.TestFields;
+
+/**
+ * Runs a ball between static walls with real Box2D physics, and checks that walls merged by
+ * StaticWallCompiler get their collisions, that walls it can't merge keep their own bodies, and
+ * that merged walls can't be changed.
+ */
+public class StaticWallCompilerTest {
+
+    static class CollisionDelegate extends BaseFieldDelegate {
+        List<FieldElement> elements = new ArrayList<>();
+        List<Body> bodies = new ArrayList<>();
+
+        @Override public void processCollision(
+                Field field, FieldElement element, Body hitBody, Ball ball) {
+            elements.add(element);
+            bodies.add(hitBody);
+        }
+    }
+
+    /**
+     * A 20x20 box with no gravity, whose top is a WallPathElement through `topPositions`,
+     * followed by `extraElements`. The launched ball moves straight up from (10, 2), and bounces
+     * between the top and bottom.
+     */
+    static Map<String, Object> boxLayout(List<Object> topPositions, Object... extraElements) {
+        Map<String, Object> top = new HashMap<>();
+        top.put("class", "WallPathElement");
+        top.put("positions", topPositions);
+        top.put("restitution", 1.0);
+
+        Map<String, Object> layout = new HashMap<>();
+        layout.put("width", 20);
+        layout.put("height", 20);
+        layout.put("gravity", 0);
+        layout.put("launchPosition", list(10.0, 2.0));
+        layout.put("launchVelocity", list(0.0, 6.0));
+        List<Object> elements = list(
+                wall(0, 0, 20, 0), wall(20, 0, 20, 20), wall(0, 20, 0, 0), top);
+        elements.addAll(Arrays.asList(extraElements));
+        layout.put("elements", elements);
+        return layout;
+    }
+
+    static List<Object> straightTop() {
+        return list(list(20.0, 20.0), list(15.0, 20.0), list(5.0, 20.0), list(0.0, 20.0));
+    }
+
+    static Field createField(Map<String, Object> layout, CollisionDelegate delegate) {
+        TestFields.loadNatives();
+        Field field = TestFields.newField();
+        field.resetForLayoutMap(layout, (f) -> delegate);
+        field.startGame();
+        return field;
+    }
+
+    /** Ticks until the ball has hit the top and then the bottom, and returns the elements hit. */
+    static List<FieldElement> bounceOffTopAndBottom(Field field, CollisionDelegate delegate) {
+        field.launchBall();
+        int ticks = 0;
+        while (delegate.elements.size() < 2) {
+            field.tick(FRAME_NANOS, 4);
+            assertTrue("Ball didn't bounce", ++ticks < 600);
+        }
+        return delegate.elements;
+    }
+
+    @Test public void mergedWalls_dispatchCollisionsToElements() {
+        CollisionDelegate delegate = new CollisionDelegate();
+        Field field = createField(boxLayout(straightTop()), delegate);
+        List<FieldElement> elements = field.getFieldElements();
+        for (FieldElement element : elements) {
+            assertEquals(0, element.getBodies().size());
+        }
+        FieldElement bottom = elements.get(0);
+        FieldElement top = elements.get(3);
+
+        List<FieldElement> hits = bounceOffTopAndBottom(field, delegate);
+        assertSame(top, hits.get(0));
+        assertSame(bottom, hits.get(1));
+        // Both walls are fixtures of the one shared static body.
+        Body sharedBody = delegate.bodies.get(0);
+        assertSame(sharedBody, delegate.bodies.get(1));
+        assertEquals(4, sharedBody.getFixtureList().size);
+    }
+
+    @Test public void tooShortSegment_fallsBackToOwnBodies() {
+        CollisionDelegate delegate = new CollisionDelegate();
+        List<Object> topPositions = list(
+                list(20.0, 20.0), list(5.0, 20.0), list(4.995, 20.0), list(0.0, 20.0));
+        Field field = createField(boxLayout(topPositions), delegate);
+        List<FieldElement> elements = field.getFieldElements();
+        FieldElement bottom = elements.get(0);
+        FieldElement top = elements.get(3);
+        assertEquals(0, bottom.getBodies().size());
+        assertEquals(3, top.getBodies().size());
+
+        List<FieldElement> hits = bounceOffTopAndBottom(field, delegate);
+        assertSame(top, hits.get(0));
+        assertTrue(top.getBodies().contains(delegate.bodies.get(0)));
+        assertSame(bottom, hits.get(1));
+        // The other three walls are still merged.
+        assertEquals(3, delegate.bodies.get(1).getFixtureList().size);
+    }
+
+    @Test public void mergeStaticWallsFalse_createsBodiesPerSegment() {
+        CollisionDelegate delegate = new CollisionDelegate();
+        Map<String, Object> layout = boxLayout(straightTop());
+        layout.put("mergeStaticWalls", false);
+        Field field = createField(layout, delegate);
+        List<FieldElement> elements = field.getFieldElements();
+        FieldElement bottom = elements.get(0);
+        FieldElement top = elements.get(3);
+        assertEquals(1, bottom.getBodies().size());
+        assertEquals(3, top.getBodies().size());
+
+        List<FieldElement> hits = bounceOffTopAndBottom(field, delegate);
+        assertSame(top, hits.get(0));
+        assertSame(top.getBodies().get(1), delegate.bodies.get(0));
+        assertSame(bottom, hits.get(1));
+        assertSame(bottom.getBodies().get(0), delegate.bodies.get(1));
+        assertNotSame(delegate.bodies.get(0), delegate.bodies.get(1));
+    }
+
+    @Test public void mergedWall_cantBeChanged() {
+        Map<String, Object> gate = wall(5, 10, 15, 10);
+        gate.put("id", "Gate");
+        Field field = createField(boxLayout(straightTop(), gate), new CollisionDelegate());
+        WallElement bottom = (WallElement) field.getFieldElements().get(0);
+        try {
+            bottom.setRetracted(true);
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException expected) {
+        }
+        try {
+            bottom.setStartAndAngle(0, 1, 0);
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException expected) {
+        }
+        // Walls with IDs aren't merged, so delegates can change them.
+        WallElement gateElement = field.getFieldElementById("Gate");
+        assertEquals(1, gateElement.getBodies().size());
+        gateElement.setRetracted(true);
+        assertTrue(gateElement.isRetracted());
+    }
+}
@@ -0,0 +1,201 @@
+package com.dozingcatsoftware.vectorpinball.elements;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.bumper;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.isTickRequested;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.list;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.wall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.model.TestFields;
+
+/**
+ * Runs small layouts with real Box2D physics, and checks that elements with the ON_DEMAND and
+ * WHILE_BALLS_IN_PLAY tick cadences get ticks for as long as they have something to do, and
+ * stop getting them afterwards.
+ */
+public class TickCadenceTest {
+
+    /** A 20x20 box with no gravity, where the ball is launched straight up from (10, 2). */
+    static Map<String, Object> boxLayout(Object... elements) {
+        Map<String, Object> layout = TestFields.bumperTableLayout();
+        layout.put("launchPosition", list(10.0, 2.0));
+        layout.put("launchVelocity", list(0.0, 6.0));
+        List<Object> allElements = list(
+                wall(0, 0, 20, 0), wall(20, 0, 20, 20), wall(20, 20, 0, 20), wall(0, 20, 0, 0));
+        allElements.addAll(Arrays.asList(elements));
+        layout.put("elements", allElements);
+        return layout;
+    }
+
+    static Field startField(Map<String, Object> layout) {
+        Field field = TestFields.newField(layout);
+        field.startGame();
+        return field;
+    }
+
+    @Test public void bumper_stopsTickingAfterFlash() {
+        Map<String, Object> bumper = bumper(10, 8);
+        bumper.put("id", "Bumper");
+        Field field = startField(boxLayout(bumper));
+        BumperElement element = field.getFieldElementById("Bumper");
+        assertEquals(TickCadence.ON_DEMAND, element.getTickCadence());
+        Ball ball = field.launchBall();
+        int ticks = 0;
+        while (element.flashCounter == 0) {
+            field.tick(FRAME_NANOS, 4);
+            assertTrue("Ball didn't hit the bumper", ++ticks < 120);
+        }
+        assertTrue(isTickRequested(field, element));
+
+        field.removeBallWithoutBallLoss(ball);
+        // The flash lasts 100 milliseconds, or 6 frames.
+        for (int i = 0; i < 7; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertEquals(0, element.flashCounter);
+        assertFalse(element.needsTick(field));
+        assertFalse(isTickRequested(field, element));
+    }
+
+    @Test public void flipper_stopsTickingAtTop() {
+        Map<String, Object> flipper = new HashMap<>();
+        flipper.put("class", "FlipperElement");
+        flipper.put("id", "Flipper");
+        flipper.put("position", list(6.0, 4.0));
+        flipper.put("length", 2.5);
+        flipper.put("minangle", -20);
+        flipper.put("maxangle", 20);
+        flipper.put("upspeed", 7);
+        flipper.put("downspeed", 3);
+        Field field = startField(boxLayout(flipper));
+        FlipperElement element = field.getFieldElementById("Flipper");
+        for (int i = 0; i < 60; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertFalse(isTickRequested(field, element));
+
+        field.setLeftFlippersEngaged(true);
+        assertTrue(isTickRequested(field, element));
+        int ticks = 0;
+        while (isTickRequested(field, element)) {
+            field.tick(FRAME_NANOS, 4);
+            assertTrue("Flipper didn't reach the top", ++ticks < 60);
+        }
+        assertTrue(element.isFlipperEngaged());
+        assertEquals(element.jointDef.upperAngle, element.joint.getJointAngle(), 0.05);
+        // It stays at the top without ticks.
+        for (int i = 0; i < 60; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertFalse(isTickRequested(field, element));
+        assertEquals(element.jointDef.upperAngle, element.joint.getJointAngle(), 0.05);
+    }
+
+    @Test public void spinner_keepsSpinningAfterLastBallIsGone() {
+        Map<String, Object> spinner = new HashMap<>();
+        spinner.put("class", "SpinnerElement");
+        spinner.put("id", "Spinner");
+        spinner.put("position", list(10.0, 5.0));
+        spinner.put("radius", 0.5);
+        spinner.put("score", 5);
+        Field field = startField(boxLayout(spinner));
+        SpinnerElement element = field.getFieldElementById("Spinner");
+        Ball ball = field.launchBall();
+        int ticks = 0;
+        while (!isTickRequested(field, element)) {
+            field.tick(FRAME_NANOS, 4);
+            assertTrue("Ball didn't cross the spinner", ++ticks < 120);
+        }
+
+        field.removeBallWithoutBallLoss(ball);
+        long score = field.getGameState().getScore();
+        for (int i = 0; i < 30; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertTrue("Spinner stopped scoring", field.getGameState().getScore() > score);
+        // It slows down and stops within a few seconds.
+        for (int i = 0; i < 600; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertFalse(isTickRequested(field, element));
+        score = field.getGameState().getScore();
+        field.tick(FRAME_NANOS, 4);
+        assertEquals(score, field.getGameState().getScore());
+    }
+
+    @Test public void layerColorWall_updatesWhenBallChangesLayer() {
+        Map<String, Object> upperWall = wall(2, 18, 18, 18);
+        upperWall.put("layer", 1);
+        upperWall.put("color", list(255, 0, 0));
+        upperWall.put("inactiveLayerColor", list(128, 128, 128));
+        upperWall.put("id", "UpperWall");
+        Field field = startField(boxLayout(upperWall));
+        WallElement element = field.getFieldElementById("UpperWall");
+        assertTrue(element.hasInactiveLayerColor());
+        Ball ball = field.launchBall();
+        for (int i = 0; i < 30; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertEquals(0.0, element.layerColorFraction, 0.0);
+        assertFalse(isTickRequested(field, element));
+
+        // The color changes over a quarter second, or 15 frames.
+        ball.moveToLayer(1);
+        field.tick(FRAME_NANOS, 4);
+        assertTrue(isTickRequested(field, element));
+        for (int i = 0; i < 16; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertEquals(1.0, element.layerColorFraction, 0.0);
+        assertFalse(isTickRequested(field, element));
+
+        ball.moveToLayer(0);
+        for (int i = 0; i < 17; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertEquals(0.0, element.layerColorFraction, 0.0);
+        assertFalse(isTickRequested(field, element));
+    }
+
+    @Test public void extraTickAfterLastBall_clearsRolloverState() {
+        Map<String, Object> rollover = new HashMap<>();
+        rollover.put("position", list(10.0, 10.0));
+        Map<String, Object> rollovers = new HashMap<>();
+        rollovers.put("class", "RolloverGroupElement");
+        rollovers.put("id", "Rollovers");
+        rollovers.put("radius", 0.7);
+        rollovers.put("toggleOff", true);
+        rollovers.put("rollovers", list(rollover));
+        Field field = startField(boxLayout(rollovers));
+        RolloverGroupElement element = field.getFieldElementById("Rollovers");
+
+        Ball ball = field.createBall(10, 10);
+        field.tick(FRAME_NANOS, 4);
+        assertTrue(element.isRolloverActiveAtIndex(0));
+        assertEquals(1, element.rolloversHitOnPreviousTick.size());
+
+        // Without the extra tick the group would still count the rollover as hit, and the next
+        // ball on it wouldn't toggle it off.
+        field.removeBallWithoutBallLoss(ball);
+        field.tick(FRAME_NANOS, 4);
+        assertTrue(element.rolloversHitOnPreviousTick.isEmpty());
+        for (int i = 0; i < 30; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        field.createBall(10, 10);
+        field.tick(FRAME_NANOS, 4);
+        assertFalse(element.isRolloverActiveAtIndex(0));
+    }
+}
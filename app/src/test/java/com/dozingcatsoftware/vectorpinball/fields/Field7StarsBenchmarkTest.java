@@ -0,0 +1,217 @@
+package com.dozingcatsoftware.vectorpinball.fields;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+import com.dozingcatsoftware.vectorpinball.fields.Field7Delegate.ProjectionTarget;
+import com.dozingcatsoftware.vectorpinball.fields.Field7Delegate.Star2DProjection;
+import com.dozingcatsoftware.vectorpinball.fields.Field7Delegate.StarState;
+import com.dozingcatsoftware.vectorpinball.model.Color;
+import com.dozingcatsoftware.vectorpinball.model.Shape;
+import com.dozingcatsoftware.vectorpinball.model.TestFields;
+
+/**
+ * Checks that projecting stars with the catalog's SkyIndex gives the same result as checking
+ * every star, and that animation frames of table 7's star view don't allocate. With benchmarks
+ * enabled, also checks that frames are faster than checking every star and creating new shapes.
+ * Only the star projection and shapes are used, so this doesn't need a Field or Box2D.
+ */
+public class Field7StarsBenchmarkTest {
+
+    static void assertSameProjection(Star2DProjection expected, Star2DProjection actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.indices[i], actual.indices[i]);
+            assertEquals(expected.x[i], actual.x[i], 0);
+            assertEquals(expected.y[i], actual.y[i], 0);
+        }
+        for (int i = 0; i < Field7Delegate.CATALOG.size(); i++) {
+            assertEquals(expected.starIndexToProjIndex[i], actual.starIndexToProjIndex[i]);
+        }
+    }
+
+    @Test public void skyIndex_matchesAllStars() {
+        Star2DProjection expected = new Star2DProjection();
+        Star2DProjection actual = new Star2DProjection();
+        ProjectionTarget target = new ProjectionTarget();
+        double[] radii = {0.05, 0.2, 0.4, 0.8, 0.99, 1.0, 1.5};
+        for (double radius : radii) {
+            for (int ra = -36; ra <= 72; ra += 5) {
+                for (int dec = -90; dec <= 90; dec += 9) {
+                    target.rightAscension = Math.toRadians(5 * ra);
+                    target.declination = Math.toRadians(dec);
+                    target.angularRadius = radius;
+                    StarState.projectAllStars(Field7Delegate.CATALOG, target, expected);
+                    StarState.projectVisibleStars(Field7Delegate.CATALOG, target, actual);
+                    assertSameProjection(expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test public void skyIndex_containsEveryStarOnce() {
+        Stars.SkyIndex index = Field7Delegate.CATALOG.index;
+        int[] counts = new int[Field7Delegate.CATALOG.size()];
+        for (int j = 0; j < index.cellStart[index.numCells]; j++) {
+            counts[index.cellStars[j]]++;
+        }
+        for (int count : counts) {
+            assertEquals(1, count);
+        }
+    }
+
+    static Field7Delegate delegateWithStarView() {
+        Field7Delegate delegate = new Field7Delegate();
+        delegate.starViewCenter = new Vector2(10, 20);
+        delegate.starViewRadius = 4;
+        return delegate;
+    }
+
+    // Runs the star view through a full wandering period and an animation to each
+    // constellation, and returns the total time.
+    static long runFrames(Field7Delegate delegate, boolean useIndex, int[] numFrames) {
+        StarState state = delegate.starState;
+        state.useSkyIndex = useIndex;
+        long start = System.nanoTime();
+        long wanderFrames = state.wanderPeriodNanos / FRAME_NANOS;
+        for (int i = 0; i < wanderFrames; i++) {
+            runFrame(delegate, useIndex);
+            numFrames[0]++;
+        }
+        for (int c = 0; c < Field7Delegate.CONSTELLATIONS.size(); c++) {
+            state.animateToConstellation(Field7Delegate.CONSTELLATIONS.get(c));
+            state.mode = Field7Delegate.StarMode.CONSTELLATION;
+            long animationFrames = state.animationDurationNanos / FRAME_NANOS + 1;
+            for (int i = 0; i < animationFrames; i++) {
+                runFrame(delegate, useIndex);
+                numFrames[0]++;
+            }
+        }
+        state.mode = Field7Delegate.StarMode.WANDERING;
+        state.animationElapsedNanos = -1;
+        state.useSkyIndex = true;
+        return System.nanoTime() - start;
+    }
+
+    static void runFrame(Field7Delegate delegate, boolean useIndex) {
+        delegate.starState.tick(FRAME_NANOS);
+        if (useIndex) {
+            delegate.shapesFromProjection();
+        }
+        else {
+            newShapesFromProjection(delegate);
+        }
+    }
+
+    // Creates the shapes the way shapesFromProjection did before it reused them, with new
+    // objects for every star and line and boxed star indices.
+    static List<Shape> newShapesFromProjection(Field7Delegate delegate) {
+        StarState state = delegate.starState;
+        Star2DProjection proj = state.projection;
+        double centerX = delegate.starViewCenter.x;
+        double centerY = delegate.starViewCenter.y;
+        double distScale = delegate.starViewRadius / state.currentTarget.angularRadius;
+        double baseRadius = delegate.starViewRadius * 0.015;
+        List<Shape> shapes = new ArrayList<>();
+        for (int i = 0; i < proj.size(); i++) {
+            double cx = centerX + proj.x[i] * distScale;
+            double cy = centerY + proj.y[i] * distScale;
+            double mag = proj.magnitude[i];
+            int alpha = (mag <= 0) ? 255 : Math.max(0, (int) (255 - 30 * mag));
+            int color = Color.withAlpha(delegate.starColorForIndex(proj.indices[i]), alpha);
+            double rmul = (mag <= 0) ? 1.5 : (mag >= 4) ? 0.75 : 1.0;
+            shapes.add(Shape.Circle.create(
+                    cx, cy, rmul * baseRadius, Shape.FillType.SOLID, 0, color, null));
+        }
+        Collections.reverse(shapes);
+        for (Stars.Constellation c : Field7Delegate.CONSTELLATIONS) {
+            for (int starIndex : c.starIndices) {
+                if (state.activatedStars.contains(starIndex)) {
+                    Set<Integer> endpoints = c.segmentsByIndex.get(starIndex);
+                    if (endpoints != null) {
+                        for (int endIndex : endpoints) {
+                            if (state.activatedStars.contains(endIndex)) {
+                                int pi1 = proj.starIndexToProjIndex[starIndex];
+                                int pi2 = proj.starIndexToProjIndex[endIndex];
+                                if (pi1 < 0 || pi2 < 0) {
+                                    continue;
+                                }
+                                shapes.add(Shape.Line.create(
+                                        centerX + proj.x[pi1] * distScale,
+                                        centerY + proj.y[pi1] * distScale,
+                                        centerX + proj.x[pi2] * distScale,
+                                        centerY + proj.y[pi2] * distScale,
+                                        0, Field7Delegate.CONSTELLATION_LINE_COLOR, null));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return shapes;
+    }
+
+    @Test public void animationFrames_doNotAllocate() {
+        Field7Delegate delegate = delegateWithStarView();
+        int[] numFrames = {0};
+        // Warm up, and create the pooled shapes.
+        runFrames(delegate, true, numFrames);
+        long allocated = TestFields.bytesAllocatedBy(() -> runFrames(delegate, true, numFrames));
+        assertEquals("Bytes allocated by animation frames", 0, allocated);
+    }
+
+    @Test public void animationFrames_fasterWithSkyIndex() {
+        assumeTrue(TestFields.benchmarksEnabled());
+        Field7Delegate delegate = delegateWithStarView();
+        int[] numFrames = {0};
+        // Warm up.
+        runFrames(delegate, false, numFrames);
+        runFrames(delegate, true, numFrames);
+
+        long allStarsNanos = runFrames(delegate, false, numFrames);
+        long indexNanos = runFrames(delegate, true, numFrames);
+        assertTrue(indexNanos < allStarsNanos);
+    }
+
+    @Test public void shapesFromProjection_reusesShapes() {
+        Field7Delegate delegate = delegateWithStarView();
+        StarState state = delegate.starState;
+        Stars.Constellation orion = null;
+        for (Stars.Constellation c : Field7Delegate.CONSTELLATIONS) {
+            if ("Orion".equals(c.name)) {
+                orion = c;
+            }
+        }
+        assertNotNull(orion);
+        state.currentConstellation = orion;
+        state.mode = Field7Delegate.StarMode.CONSTELLATION;
+        for (int starIndex : orion.starIndices) {
+            state.activateStar(starIndex);
+        }
+        state.tick(0);
+        List<Shape> shapes = delegate.shapesFromProjection();
+        int numShapes = shapes.size();
+        Shape first = shapes.get(0);
+        Shape last = shapes.get(numShapes - 1);
+        assertTrue(last instanceof Shape.Line);
+
+        state.tick(0);
+        shapes = delegate.shapesFromProjection();
+        assertEquals(numShapes, shapes.size());
+        assertSame(first, shapes.get(0));
+        assertSame(last, shapes.get(numShapes - 1));
+        assertEquals(state.projection.size(), delegate.starCircles.size());
+    }
+}
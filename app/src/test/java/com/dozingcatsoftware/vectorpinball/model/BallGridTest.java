@@ -0,0 +1,135 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Queries a BallGrid directly, with balls from a field with real Box2D bodies that isn't ticked,
+ * so the balls stay where they were created. Checks the results against testing every ball.
+ */
+public class BallGridTest {
+
+    /** Returns a field with balls at the given x and y coordinates, in order. */
+    static Field fieldWithBallsAt(float... coordinates) {
+        Field field = TestFields.newField(TestFields.bumperTableLayout());
+        field.startGame();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            field.createBall(coordinates[i], coordinates[i + 1]);
+        }
+        return field;
+    }
+
+    /** Returns a grid with 1x1 cells covering the 20x20 bumper table, containing the balls. */
+    static BallGrid gridForField(Field field) {
+        BallGrid grid = new BallGrid();
+        grid.configure(20, 20, 0.25f);
+        grid.rebuild(field.ballStore);
+        return grid;
+    }
+
+    static List<Ball> expectedBallsInRect(
+            Field field, float xmin, float ymin, float xmax, float ymax, int layer) {
+        List<Ball> expected = new ArrayList<>();
+        for (Ball ball : field.getBalls()) {
+            if (layer != BallGrid.ANY_LAYER && ball.getLayer() != layer) continue;
+            float x = ball.getPosition().x;
+            float y = ball.getPosition().y;
+            if (x >= xmin && x <= xmax && y >= ymin && y <= ymax) {
+                expected.add(ball);
+            }
+        }
+        return expected;
+    }
+
+    @Test public void ballsInRect_matchesCheckingEveryBall() {
+        Field field = fieldWithBallsAt(
+                15.5f, 15.5f, 1.5f, 1.5f, 15.2f, 15.7f, 7.0f, 12.0f, 7.0f, 12.0f, 19.9f, 0.1f);
+        BallGrid grid = gridForField(field);
+        assertEquals(20, grid.columns);
+        assertEquals(20, grid.rows);
+        List<Ball> result = new ArrayList<>();
+        float[][] rects = {
+                {0, 0, 20, 20}, {1, 1, 2, 2}, {15, 15, 16, 16}, {7, 12, 7, 12},
+                {2, 2, 6, 6}, {6.5f, 0, 20, 13}, {19.9f, 0.1f, 19.9f, 0.1f},
+        };
+        for (float[] r : rects) {
+            grid.ballsInRect(r[0], r[1], r[2], r[3], BallGrid.ANY_LAYER, result);
+            assertEquals(Arrays.toString(r),
+                    expectedBallsInRect(field, r[0], r[1], r[2], r[3], BallGrid.ANY_LAYER),
+                    result);
+        }
+    }
+
+    @Test public void results_areInGetBallsOrder() {
+        // Balls are added in reverse cell order, so cell order and ball order differ.
+        Field field = fieldWithBallsAt(18.5f, 18.5f, 10.5f, 10.5f, 10.6f, 10.4f, 1.5f, 1.5f);
+        List<Ball> balls = field.getBalls();
+        BallGrid grid = gridForField(field);
+        List<Ball> result = new ArrayList<>();
+        grid.ballsInRect(0, 0, 20, 20, BallGrid.ANY_LAYER, result);
+        assertEquals(balls, result);
+        grid.ballsWithinRadius(10, 10, 20, BallGrid.ANY_LAYER, result);
+        assertEquals(balls, result);
+
+        // Removing a ball shifts the store indices of the balls after it.
+        field.removeBallWithoutBallLoss(balls.get(1));
+        grid.rebuild(field.ballStore);
+        grid.ballsInRect(0, 0, 20, 20, BallGrid.ANY_LAYER, result);
+        assertEquals(balls, result);
+        grid.ballsWithinRadius(10.5f, 10.5f, 1, BallGrid.ANY_LAYER, result);
+        assertEquals(Collections.singletonList(balls.get(1)), result);
+    }
+
+    @Test public void layer_filtersResults() {
+        Field field = fieldWithBallsAt(5.5f, 5.5f, 5.6f, 5.6f, 5.7f, 5.4f);
+        List<Ball> balls = new ArrayList<>(field.getBalls());
+        balls.get(1).moveToLayer(1);
+        BallGrid grid = gridForField(field);
+        List<Ball> result = new ArrayList<>();
+
+        grid.ballsInRect(5, 5, 6, 6, 0, result);
+        assertEquals(Arrays.asList(balls.get(0), balls.get(2)), result);
+        grid.ballsInRect(5, 5, 6, 6, 1, result);
+        assertEquals(Collections.singletonList(balls.get(1)), result);
+        grid.ballsInRect(5, 5, 6, 6, 2, result);
+        assertEquals(Collections.emptyList(), result);
+        grid.ballsInRect(5, 5, 6, 6, BallGrid.ANY_LAYER, result);
+        assertEquals(balls, result);
+
+        grid.ballsWithinRadius(5.5f, 5.5f, 0.5f, 0, result);
+        assertEquals(Arrays.asList(balls.get(0), balls.get(2)), result);
+        grid.ballsWithinRadius(5.5f, 5.5f, 0.5f, 1, result);
+        assertEquals(Collections.singletonList(balls.get(1)), result);
+        grid.ballsWithinRadius(5.5f, 5.5f, 0.5f, BallGrid.ANY_LAYER, result);
+        assertEquals(balls, result);
+    }
+
+    @Test public void positionsOutsideGrid_areClampedToEdgeCells() {
+        Field field = fieldWithBallsAt(-3, 5, 25, 25, 10, -40, 0.5f, 5.5f);
+        List<Ball> balls = field.getBalls();
+        BallGrid grid = gridForField(field);
+        assertEquals(0, grid.columnForX(-3));
+        assertEquals(19, grid.columnForX(25));
+        assertEquals(19, grid.rowForY(25));
+        assertEquals(0, grid.rowForY(-40));
+        List<Ball> result = new ArrayList<>();
+
+        grid.ballsInRect(-5, 0, -1, 10, BallGrid.ANY_LAYER, result);
+        assertEquals(Collections.singletonList(balls.get(0)), result);
+        grid.ballsInRect(22, 22, 30, 30, BallGrid.ANY_LAYER, result);
+        assertEquals(Collections.singletonList(balls.get(1)), result);
+        grid.ballsWithinRadius(10, -40, 1, BallGrid.ANY_LAYER, result);
+        assertEquals(Collections.singletonList(balls.get(2)), result);
+        // Balls clamped into an edge cell are still checked against the exact bounds.
+        grid.ballsInRect(0, 0, 1, 10, BallGrid.ANY_LAYER, result);
+        assertEquals(Collections.singletonList(balls.get(3)), result);
+        grid.ballsInRect(-100, -100, 100, 100, BallGrid.ANY_LAYER, result);
+        assertEquals(balls, result);
+    }
+}
@@ -0,0 +1,76 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+
+/**
+ * Checks that Field reuses the Box2D bodies of balls when launching and removing balls and when
+ * moving them between layers, using the bumper table from TestFields.
+ */
+public class BallPoolTest {
+
+    static Field createField() {
+        Field field = TestFields.newField(TestFields.bumperTableLayout());
+        field.startGame();
+        return field;
+    }
+
+    @Test public void launchBall_reusesRemovedBody() {
+        Field field = createField();
+        int bodiesAfterLoad = field.ballPool.getCreatedBodyCount();
+        assertEquals(BallPool.PREALLOCATED_BODIES_PER_LAYER, bodiesAfterLoad);
+
+        Ball ball = field.launchBall();
+        Body body = ball.getBody();
+        assertTrue(body.isActive());
+        field.tick(FRAME_NANOS, 4);
+        ball.setMostRecentSensorId("Sensor");
+        Vector2 lastPosition = ball.getPosition().cpy();
+        field.removeBallWithoutBallLoss(ball);
+        assertFalse(body.isActive());
+        assertNull(body.getUserData());
+        assertSame(body, ball.getBody());
+
+        Ball newBall = field.launchBall();
+        assertNotSame(ball, newBall);
+        assertNull(newBall.getMostRecentSensorId());
+        assertSame(body, newBall.getBody());
+        assertSame(newBall, body.getUserData());
+        assertTrue(body.isActive());
+        Vector2 launchPosition = newBall.getPosition();
+        assertEquals(field.layout.getLaunchPositionX(), launchPosition.x, 1e-6f);
+        assertEquals(field.layout.getLaunchPositionY(), launchPosition.y, 1e-6f);
+        assertEquals(bodiesAfterLoad, field.ballPool.getCreatedBodyCount());
+        // The removed ball keeps its last state.
+        assertEquals(lastPosition, ball.getPosition());
+    }
+
+    @Test public void moveToLayer_reusesBodies() {
+        Field field = createField();
+        Ball ball = field.launchBall();
+        field.tick(FRAME_NANOS, 4);
+        ball.moveToLayer(1);
+        int bodiesAfterFirstMove = field.ballPool.getCreatedBodyCount();
+
+        for (int i = 0; i < 10; i++) {
+            field.tick(FRAME_NANOS, 4);
+            Vector2 velocity = ball.getLinearVelocity().cpy();
+            ball.moveToLayer(i % 2 == 0 ? 0 : 1);
+            assertEquals(velocity.x, ball.getLinearVelocity().x, 1e-6f);
+            assertEquals(velocity.y, ball.getLinearVelocity().y, 1e-6f);
+            assertSame(ball, ball.getBody().getUserData());
+        }
+        assertEquals(bodiesAfterFirstMove, field.ballPool.getCreatedBodyCount());
+        assertEquals(1, field.getBalls().size());
+    }
+}
@@ -0,0 +1,130 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Runs many balls on the bumper table from TestFields, with real Box2D physics. Checks that
+ * Field's BallStore stays consistent with getBalls() as the number of balls increases and as
+ * balls are removed, and that ball queries are correct. With benchmarks enabled, also checks
+ * that the time per ball of a tick doesn't grow much from 4 to 64 balls.
+ */
+public class BallStoreTest {
+
+    /** Creates a field with `numBalls` balls on an 8x8 grid between the bumpers. */
+    static Field fieldWithBalls(int numBalls) {
+        Field field = TestFields.newField(TestFields.bumperTableLayout());
+        field.startGame();
+        for (int i = 0; i < numBalls; i++) {
+            Ball ball = field.createBall(1.25f + 2.5f * (i % 8), 1.25f + 2.5f * ((i / 8) % 8));
+            ball.setLinearVelocity(3 + (i % 5), 7 - (i % 3));
+        }
+        return field;
+    }
+
+    static void assertStoreMatchesBalls(Field field) {
+        List<Ball> balls = field.getBalls();
+        assertEquals(balls.size(), field.ballStore.size());
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            assertSame(ball, field.ballStore.get(i));
+            assertEquals(ball.getBody().getPosition().x, ball.getPosition().x, 0f);
+            assertEquals(ball.getBody().getPosition().y, ball.getPosition().y, 0f);
+            assertEquals(ball.getLayer(), field.ballStore.layer[i]);
+        }
+    }
+
+    @Test public void tick_keepsStoreConsistentWithManyBalls() {
+        int[] ballCounts = {4, 16, 64};
+        for (int numBalls : ballCounts) {
+            Field field = fieldWithBalls(numBalls);
+            for (int i = 0; i < 600; i++) {
+                field.tick(FRAME_NANOS, 4);
+            }
+
+            // The box is closed, so every ball should still be in play.
+            assertEquals(numBalls, field.getBalls().size());
+            assertStoreMatchesBalls(field);
+        }
+    }
+
+    // Returns the average time of a tick with `numBalls` balls, after warming up.
+    static long nanosPerTick(int numBalls) {
+        Field field = fieldWithBalls(numBalls);
+        for (int i = 0; i < 120; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        int numTicks = 600;
+        long start = System.nanoTime();
+        for (int i = 0; i < numTicks; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        return (System.nanoTime() - start) / numTicks;
+    }
+
+    @Test public void tick_scalesToManyBalls() {
+        assumeTrue(TestFields.benchmarksEnabled());
+        // Warm up the JIT before any timing.
+        nanosPerTick(16);
+        long nanosPerBallWith4 = nanosPerTick(4) / 4;
+        long nanosPerBallWith64 = nanosPerTick(64) / 64;
+        // With 64 balls there are more collisions between balls, but the cost per ball shouldn't
+        // grow much beyond that.
+        assertTrue("Per-ball tick time with 64 balls: " + nanosPerBallWith64 +
+                        " ns, with 4 balls: " + nanosPerBallWith4 + " ns",
+                nanosPerBallWith64 < 4 * nanosPerBallWith4);
+    }
+
+    @Test public void ballQueries_matchAllBalls() {
+        Field field = fieldWithBalls(64);
+        for (int i = 0; i < 300; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        List<Ball> balls = field.getBalls();
+        List<Ball> result = new ArrayList<>();
+        List<Ball> expected = new ArrayList<>();
+        float radius = 2f;
+        for (int x = 0; x <= 20; x += 2) {
+            for (int y = 0; y <= 20; y += 2) {
+                expected.clear();
+                for (Ball ball : balls) {
+                    if (ball.getPosition().dst2(x, y) <= radius * radius) {
+                        expected.add(ball);
+                    }
+                }
+                field.getBallsWithinRadius(x, y, radius, BallGrid.ANY_LAYER, result);
+                assertEquals(expected, result);
+            }
+        }
+    }
+
+    @Test public void removeBall_preservesOrder() {
+        Field field = fieldWithBalls(20);
+        for (int i = 0; i < 60; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        List<Ball> balls = field.getBalls();
+        Ball removed = balls.get(5);
+        float lastX = removed.getPosition().x;
+        field.removeBallWithoutBallLoss(removed);
+        field.removeBallWithoutBallLoss(balls.get(0));
+        field.removeBallWithoutBallLoss(balls.get(balls.size() - 1));
+        assertEquals(17, balls.size());
+        assertStoreMatchesBalls(field);
+        // Removed balls keep their last state.
+        assertEquals(lastX, removed.getPosition().x, 0f);
+
+        for (int i = 0; i < 60; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        assertStoreMatchesBalls(field);
+    }
+}
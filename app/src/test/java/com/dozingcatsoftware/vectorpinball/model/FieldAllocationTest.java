@@ -0,0 +1,38 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Runs the bumper table from TestFields, with real Box2D physics and no Android dependencies,
+ * and checks that ticking the field doesn't allocate memory once it's warmed up.
+ */
+public class FieldAllocationTest {
+
+    @Test public void tick_doesNotAllocateWithBumperHits() {
+        Field field = TestFields.newField(TestFields.bumperTableLayout());
+        field.startGame();
+        field.launchBall();
+        field.launchBall();
+        field.launchBall();
+        assertEquals(3, field.getBalls().size());
+
+        // Warm up so that lazily created objects and reusable lists reach their final sizes.
+        for (int i = 0; i < 600; i++) {
+            field.tick(FRAME_NANOS, 4);
+        }
+        long scoreBefore = field.getGameState().getScore();
+        long allocated = TestFields.minBytesAllocatedBy(() -> {
+            for (int i = 0; i < 600; i++) {
+                field.tick(FRAME_NANOS, 4);
+            }
+        }, 5);
+
+        assertTrue("No bumpers were hit", field.getGameState().getScore() > scoreBefore);
+        assertEquals(3, field.getBalls().size());
+        assertEquals("Bytes allocated in 600 ticks", 0, allocated);
+    }
+}
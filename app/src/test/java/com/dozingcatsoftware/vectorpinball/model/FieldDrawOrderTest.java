@@ -0,0 +1,54 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.bumper;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.list;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.wall;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
+
+/**
+ * Checks that Field keeps its elements in layout order, and that its draw order only regroups
+ * adjacent walls whose appearance can't change by color.
+ */
+public class FieldDrawOrderTest {
+
+    static Map<String, Object> coloredWall(int x, List<Object> color) {
+        Map<String, Object> wall = wall(x, 0, x, 10);
+        wall.put("color", color);
+        return wall;
+    }
+
+    @Test public void drawOrder_groupsOnlyFixedAppearanceWallsByColor() {
+        List<Object> red = list(255, 0, 0);
+        List<Object> blue = list(0, 0, 255);
+        Map<String, Object> gate = coloredWall(3, red);
+        gate.put("id", "Gate");
+        Map<String, Object> kicker = coloredWall(7, red);
+        kicker.put("kick", 2.0);
+        Map<String, Object> upperWall = coloredWall(9, red);
+        upperWall.put("layer", 1);
+        Map<String, Object> layout = TestFields.bumperTableLayout();
+        layout.put("elements", list(
+                coloredWall(0, blue), coloredWall(1, red), coloredWall(2, blue), gate,
+                coloredWall(4, blue), upperWall, bumper(5, 5), coloredWall(5, red),
+                coloredWall(6, blue), kicker, coloredWall(8, red)));
+        Field field = TestFields.newField(layout);
+        FieldElement[] e = field.getFieldElementsArray();
+
+        // Layout order is kept, so callbacks like flippersActivated run in that order.
+        assertArrayEquals(field.getFieldElements().toArray(), e);
+        // Blue (0xFF0000FF) sorts before red (0xFFFF0000). The gate and kicker stay between the
+        // same walls as in layout order, and the bumper and upper layer come last.
+        FieldElement[] expected = {
+                e[0], e[2], e[1], e[3], e[4], e[8], e[7], e[9], e[10], e[6], e[5]};
+        assertArrayEquals(expected, field.fieldElementsInDrawOrder);
+        assertSame(e[3], field.getFieldElementById("Gate"));
+    }
+}
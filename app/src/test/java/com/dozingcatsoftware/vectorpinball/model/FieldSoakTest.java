@@ -0,0 +1,99 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.list;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Switches between two tables many times, with real Box2D physics, and checks that the native
+ * worlds, bodies, fixtures, and joints of previous tables are freed.
+ */
+public class FieldSoakTest {
+
+    private static Map<String, Object> flipper(double x, double length, double min, double max) {
+        Map<String, Object> flipper = new HashMap<>();
+        flipper.put("class", "FlipperElement");
+        flipper.put("position", list(x, 2.0));
+        flipper.put("length", length);
+        flipper.put("minangle", min);
+        flipper.put("maxangle", max);
+        flipper.put("upspeed", 7.0);
+        flipper.put("downspeed", 3.0);
+        return flipper;
+    }
+
+    /** The bumper table with two flippers, which use joints, and a wall on another layer. */
+    static Map<String, Object> flipperTableLayout() {
+        Map<String, Object> layout = TestFields.bumperTableLayout();
+        @SuppressWarnings("unchecked")
+        List<Object> elements = (List<Object>) layout.get("elements");
+        elements.add(flipper(6, 2.5, -20, 20));
+        elements.add(flipper(14, -2.5, -20, 20));
+        Map<String, Object> wall = new HashMap<>();
+        wall.put("class", "WallElement");
+        wall.put("position", list(2.0, 18.0, 18.0, 18.0));
+        wall.put("layer", 1);
+        elements.add(wall);
+        return layout;
+    }
+
+    static class NativeCounts {
+        final int worlds;
+        final int bodies;
+        final int fixtures;
+        final int joints;
+
+        NativeCounts(Field field) {
+            WorldLayers worlds = field.getWorldLayers();
+            this.worlds = WorldLayers.getLiveWorldCount();
+            this.bodies = worlds.getBodyCount();
+            this.fixtures = worlds.getFixtureCount();
+            this.joints = worlds.getJointCount();
+        }
+
+        void assertEqualTo(NativeCounts expected, int iteration) {
+            String msg = "Iteration " + iteration;
+            assertEquals(msg, expected.worlds, worlds);
+            assertEquals(msg, expected.bodies, bodies);
+            assertEquals(msg, expected.fixtures, fixtures);
+            assertEquals(msg, expected.joints, joints);
+        }
+    }
+
+    @Test public void switchingTables_doesNotLeakNativeObjects() {
+        TestFields.loadNatives();
+        Field field = TestFields.newField();
+        List<Map<String, Object>> layouts = Arrays.asList(
+                TestFields.bumperTableLayout(), flipperTableLayout());
+        NativeCounts[] expectedCounts = new NativeCounts[layouts.size()];
+
+        for (int i = 0; i < 1000; i++) {
+            int layoutIndex = i % layouts.size();
+            field.resetForLayoutMap(layouts.get(layoutIndex));
+            NativeCounts counts = new NativeCounts(field);
+            if (expectedCounts[layoutIndex] == null) {
+                expectedCounts[layoutIndex] = counts;
+            }
+            else {
+                counts.assertEqualTo(expectedCounts[layoutIndex], i);
+            }
+            // Play briefly so that balls, contacts, and layer changes are created.
+            field.startGame();
+            field.launchBall().moveToLayer(1);
+            for (int t = 0; t < 10; t++) {
+                field.tick(FRAME_NANOS, 4);
+            }
+        }
+        assertEquals(0, expectedCounts[0].joints);
+        assertEquals(2, expectedCounts[1].joints);
+        assertTrue(expectedCounts[1].worlds > expectedCounts[0].worlds);
+    }
+}
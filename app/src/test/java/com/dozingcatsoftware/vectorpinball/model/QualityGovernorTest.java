@@ -0,0 +1,150 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.dozingcatsoftware.vectorpinball.util.ThermalSource;
+
+/**
+ * Tests for {@link QualityGovernor}, using fixed frame work times and a fake thermal source.
+ */
+public class QualityGovernorTest {
+
+    static class FakeThermalSource implements ThermalSource {
+        int status = THERMAL_STATUS_NONE;
+        int calls = 0;
+
+        @Override public int thermalStatus() {
+            calls++;
+            return status;
+        }
+    }
+
+    static final double FPS = 60;
+    static final long FRAME_NANOS = (long) (1e9 / FPS);
+
+    /** Reports `numFrames` frames with the given load, and returns how many changed the level. */
+    private static int runFrames(QualityGovernor governor, int numFrames, double load) {
+        int changes = 0;
+        for (int i = 0; i < numFrames; i++) {
+            if (governor.update((long) (load * FRAME_NANOS), FPS)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    @Test public void startsAtFullQuality() {
+        QualityGovernor governor = new QualityGovernor();
+        assertEquals(0, governor.getLevel());
+        assertEquals(4, governor.getPhysicsSubsteps());
+        assertEquals(Field.DEFAULT_MAX_BALL_TRAIL_IMAGES, governor.getMaxBallTrailImages());
+        assertTrue(governor.allowScoreAnimations());
+        assertEquals(Double.POSITIVE_INFINITY, governor.getFrameRateCap(), 0);
+    }
+
+    @Test public void sustainedOverload_reducesQualityOneLevelAtATime() {
+        QualityGovernor governor = new QualityGovernor();
+        // A short spike doesn't change anything.
+        assertEquals(0, runFrames(governor, 20, 2.0));
+        assertEquals(0, runFrames(governor, 200, 0.7));
+        assertEquals(0, governor.getLevel());
+
+        assertEquals(1, runFrames(governor, 150, 1.2));
+        assertEquals(1, governor.getLevel());
+        runFrames(governor, 1000, 1.2);
+        assertEquals(QualityGovernor.NUM_LEVELS - 1, governor.getLevel());
+        assertEquals(2, governor.getPhysicsSubsteps());
+        assertEquals(0, governor.getMaxBallTrailImages());
+        assertFalse(governor.allowScoreAnimations());
+        assertEquals(60, governor.getFrameRateCap(), 0);
+    }
+
+    @Test public void sustainedHeadroom_restoresQualitySlowly() {
+        QualityGovernor governor = new QualityGovernor();
+        runFrames(governor, 400, 1.5);
+        int reducedLevel = governor.getLevel();
+        assertTrue(reducedLevel >= 2);
+
+        // Moderate load in between the thresholds holds the current level.
+        runFrames(governor, 3000, 0.7);
+        assertEquals(reducedLevel, governor.getLevel());
+
+        runFrames(governor, 500, 0.2);
+        assertEquals(reducedLevel, governor.getLevel());
+        runFrames(governor, 500, 0.2);
+        assertEquals(reducedLevel - 1, governor.getLevel());
+        runFrames(governor, 900 * reducedLevel, 0.2);
+        assertEquals(0, governor.getLevel());
+    }
+
+    @Test public void thermalStatus_setsMinimumLevel() {
+        QualityGovernor governor = new QualityGovernor();
+        FakeThermalSource thermal = new FakeThermalSource();
+        governor.setThermalSource(thermal);
+        thermal.status = ThermalSource.THERMAL_STATUS_SEVERE;
+        assertEquals(1, runFrames(governor, 1, 0.1));
+        assertEquals(3, governor.getLevel());
+        assertEquals(60, governor.getFrameRateCap(), 0);
+
+        // Can't go above the thermal minimum even with lots of headroom.
+        runFrames(governor, 5000, 0.1);
+        assertEquals(3, governor.getLevel());
+
+        // After cooling down, quality is restored one level at a time.
+        thermal.status = ThermalSource.THERMAL_STATUS_NONE;
+        int lastChangeFrame = -1;
+        for (int frame = 1; frame <= 4000; frame++) {
+            if (runFrames(governor, 1, 0.1) > 0) {
+                if (lastChangeFrame >= 0) {
+                    assertEquals(governor.headroomFramesBeforeIncrease, frame - lastChangeFrame);
+                }
+                lastChangeFrame = frame;
+            }
+        }
+        assertEquals(0, governor.getLevel());
+    }
+
+    @Test public void thermalStatus_polledPeriodically() {
+        QualityGovernor governor = new QualityGovernor();
+        FakeThermalSource thermal = new FakeThermalSource();
+        governor.setThermalSource(thermal);
+        runFrames(governor, 10 * governor.framesBetweenThermalChecks, 0.5);
+        assertEquals(10, thermal.calls);
+
+        // Out of range values are clamped.
+        thermal.status = 99;
+        runFrames(governor, governor.framesBetweenThermalChecks, 0.5);
+        assertEquals(QualityGovernor.NUM_LEVELS - 1, governor.getLevel());
+    }
+
+    @Test public void reset_restoresFullQuality() {
+        QualityGovernor governor = new QualityGovernor();
+        runFrames(governor, 400, 1.5);
+        assertTrue(governor.getLevel() > 0);
+        governor.reset();
+        assertEquals(1, runFrames(governor, 1, 0.5));
+        assertEquals(0, governor.getLevel());
+    }
+
+    @Test public void applyTo_setsFieldSettings() {
+        QualityGovernor governor = new QualityGovernor();
+        Field field = new Field(() -> 0L, null, null);
+        field.setBallTrailsEnabled(true);
+        field.setScoreAnimationsEnabled(true);
+        runFrames(governor, 1000, 1.5);
+        governor.applyTo(field);
+        assertEquals(0, field.getMaxBallTrailImages());
+        assertFalse(field.ballTrailsEnabled());
+        assertFalse(field.scoreAnimationsEnabled());
+
+        governor.reset();
+        runFrames(governor, 1, 0.5);
+        governor.applyTo(field);
+        assertTrue(field.ballTrailsEnabled());
+        assertTrue(field.scoreAnimationsEnabled());
+    }
+}
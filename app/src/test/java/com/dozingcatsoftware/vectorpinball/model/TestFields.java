@@ -0,0 +1,138 @@
+package com.dozingcatsoftware.vectorpinball.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.badlogic.gdx.physics.box2d.Box2D;
+import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
+
+/**
+ * Setup shared by tests that run fields without Android: creating fields, loading the Box2D
+ * natives, building small table layouts, and measuring allocations with the HotSpot per-thread
+ * allocation counter.
+ */
+public class TestFields {
+
+    /** Length of a 60 fps frame, which tests tick fields by. */
+    public static final long FRAME_NANOS = 16_666_667L;
+    public static final int BUMPER_SCORE = 10;
+
+    private static boolean nativesLoaded = false;
+
+    /** Loads the Box2D native library if it hasn't been loaded yet. */
+    public static synchronized void loadNatives() {
+        if (!nativesLoaded) {
+            Box2D.init();
+            nativesLoaded = true;
+        }
+    }
+
+    /**
+     * Returns a field with no layout, whose strings are their keys and which plays no sounds.
+     * Doesn't need the Box2D natives.
+     */
+    public static Field newField() {
+        return new Field(System::currentTimeMillis, (key, params) -> key,
+                AudioPlayer.NoOpPlayer.getInstance());
+    }
+
+    /** Loads the Box2D natives and returns a field with the given layout. */
+    public static Field newField(Map<String, Object> layout) {
+        loadNatives();
+        Field field = newField();
+        field.resetForLayoutMap(layout);
+        return field;
+    }
+
+    /** Returns true if `element` is getting the ticks it requested with Field.requestTicks. */
+    public static boolean isTickRequested(Field field, FieldElement element) {
+        return field.onDemandTickElements.contains(element);
+    }
+
+    public static List<Object> list(Object... values) {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    public static Map<String, Object> wall(double x1, double y1, double x2, double y2) {
+        Map<String, Object> wall = new HashMap<>();
+        wall.put("class", "WallElement");
+        wall.put("position", list(x1, y1, x2, y2));
+        wall.put("restitution", 1.0);
+        return wall;
+    }
+
+    public static Map<String, Object> bumper(double x, double y) {
+        Map<String, Object> bumper = new HashMap<>();
+        bumper.put("class", "BumperElement");
+        bumper.put("position", list(x, y));
+        bumper.put("radius", 1.0);
+        bumper.put("kick", 1.5);
+        bumper.put("score", BUMPER_SCORE);
+        return bumper;
+    }
+
+    /**
+     * A 20x20 box with no gravity and 8 bumpers, so balls keep hitting bumpers indefinitely.
+     * Returns a new map each time, so tests can add elements.
+     */
+    public static Map<String, Object> bumperTableLayout() {
+        List<Object> elements = list(
+                wall(0, 0, 20, 0), wall(20, 0, 20, 20), wall(20, 20, 0, 20), wall(0, 20, 0, 0),
+                bumper(5, 5), bumper(10, 5), bumper(15, 5),
+                bumper(5, 10), bumper(15, 10),
+                bumper(5, 15), bumper(10, 15), bumper(15, 15));
+        Map<String, Object> layout = new HashMap<>();
+        layout.put("width", 20);
+        layout.put("height", 20);
+        layout.put("gravity", 0);
+        layout.put("launchPosition", list(10.0, 10.0));
+        layout.put("launchVelocity", list(3.0, 7.0));
+        layout.put("elements", elements);
+        return layout;
+    }
+
+    /**
+     * Returns true if timing comparisons should run, which they don't by default because they're
+     * unreliable on shared machines. Set the VECTORPINBALL_BENCHMARKS environment variable to
+     * enable them.
+     */
+    public static boolean benchmarksEnabled() {
+        return System.getenv("VECTORPINBALL_BENCHMARKS") != null;
+    }
+
+    /** Returns the number of bytes allocated so far by the current thread. */
+    public static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns the number of bytes that `runnable` allocates, not counting what reading the
+     * allocation counter allocates.
+     */
+    public static long bytesAllocatedBy(Runnable runnable) {
+        long overheadStart = allocatedBytes();
+        long overhead = allocatedBytes() - overheadStart;
+        long start = allocatedBytes();
+        runnable.run();
+        return allocatedBytes() - start - overhead;
+    }
+
+    /**
+     * Returns the fewest bytes that `runnable` allocates in up to `attempts` runs, stopping at the
+     * first run that allocates nothing. The JIT can make a single run allocate a few hundred
+     * bytes, for example when HotSpot resolves a class's string constants before compiling one of
+     * its methods. Code that allocates every time it runs allocates in every run.
+     */
+    public static long minBytesAllocatedBy(Runnable runnable, int attempts) {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < attempts && min > 0; i++) {
+            min = Math.min(min, bytesAllocatedBy(runnable));
+        }
+        return min;
+    }
+}
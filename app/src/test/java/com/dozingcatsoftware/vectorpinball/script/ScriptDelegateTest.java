@@ -0,0 +1,194 @@
+package com.dozingcatsoftware.vectorpinball.script;
+
+import static com.dozingcatsoftware.vectorpinball.model.TestFields.FRAME_NANOS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.dozingcatsoftware.vectorpinball.elements.BumperElement;
+import com.dozingcatsoftware.vectorpinball.elements.FieldElement;
+import com.dozingcatsoftware.vectorpinball.model.Ball;
+import com.dozingcatsoftware.vectorpinball.model.BaseFieldDelegate;
+import com.dozingcatsoftware.vectorpinball.model.Field;
+import com.dozingcatsoftware.vectorpinball.model.TestFields;
+
+/**
+ * Compares a scripted delegate with the equivalent Java delegate, checking that they have the same
+ * effects and, if TestFields.benchmarksEnabled(), that the script isn't much slower. The delegates
+ * only use the field's score, so most tests don't need a layout or Box2D.
+ */
+public class ScriptDelegateTest {
+
+    static final String SCRIPT = String.join("\n",
+            "var hits = 0;",
+            "var elapsed = 0;",
+            "var seconds = 0;",
+            "on tick {",
+            "    elapsed += nanos;",
+            "    if (elapsed >= 1000000000) { elapsed -= 1000000000; seconds += 1; }",
+            "}",
+            "on processCollision {",
+            "    if (id == \"Bumper1\") {",
+            "        hits += 1;",
+            "        if (hits % 10 == 0) addScore(500);",
+            "    }",
+            "    else if (id == \"Bumper2\") addScore(10);",
+            "}");
+
+    static class JavaDelegate extends BaseFieldDelegate {
+        int hits = 0;
+        long elapsed = 0;
+        int seconds = 0;
+
+        @Override public void tick(Field field, long nanos) {
+            elapsed += nanos;
+            if (elapsed >= 1_000_000_000L) {
+                elapsed -= 1_000_000_000L;
+                seconds += 1;
+            }
+        }
+
+        @Override public void processCollision(
+                Field field, FieldElement element, Body hitBody, Ball ball) {
+            String id = element.getElementId();
+            if ("Bumper1".equals(id)) {
+                hits += 1;
+                if (hits % 10 == 0) field.addScore(500);
+            }
+            else if ("Bumper2".equals(id)) {
+                field.addScore(10);
+            }
+        }
+    }
+
+    static FieldElement bumper(final String id) {
+        return new BumperElement() {
+            @Override public String getElementId() {
+                return id;
+            }
+        };
+    }
+
+    static final FieldElement[] BUMPERS = {bumper("Bumper1"), bumper("Bumper2"), bumper("Other")};
+
+    // Calls tick and processCollision `n` times each, and returns the elapsed time.
+    static long runCallbacks(Field.Delegate delegate, Field field, int n) {
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            delegate.tick(field, FRAME_NANOS);
+            delegate.processCollision(field, BUMPERS[i % BUMPERS.length], null, null);
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test public void scriptMatchesJavaDelegate() {
+        Field javaField = TestFields.newField();
+        JavaDelegate javaDelegate = new JavaDelegate();
+        Field scriptField = TestFields.newField();
+        ScriptDelegate scriptDelegate = new ScriptDelegate(ScriptCompiler.compile(SCRIPT));
+
+        runCallbacks(javaDelegate, javaField, 3000);
+        runCallbacks(scriptDelegate, scriptField, 3000);
+        assertEquals(javaField.getScore(), scriptField.getScore());
+        assertEquals(javaDelegate.hits, scriptDelegate.getVariable("hits"), 0);
+        assertEquals(javaDelegate.seconds, scriptDelegate.getVariable("seconds"), 0);
+        assertEquals(3000, scriptDelegate.getCallCount(ScriptEvent.TICK));
+        assertEquals(3000, scriptDelegate.getCallCount(ScriptEvent.PROCESS_COLLISION));
+        assertEquals(0, scriptDelegate.getErrorCount());
+    }
+
+    @Test public void callbacks_notMuchSlowerThanJava() {
+        assumeTrue(TestFields.benchmarksEnabled());
+        int n = 1_000_000;
+        Field javaField = TestFields.newField();
+        JavaDelegate javaDelegate = new JavaDelegate();
+        Field scriptField = TestFields.newField();
+        ScriptDelegate scriptDelegate = new ScriptDelegate(ScriptCompiler.compile(SCRIPT));
+        // Warm up.
+        runCallbacks(javaDelegate, javaField, n);
+        runCallbacks(scriptDelegate, scriptField, n);
+
+        long javaNanos = runCallbacks(javaDelegate, javaField, n);
+        long scriptNanos = runCallbacks(scriptDelegate, scriptField, n);
+        // The script is typically about 10 times slower; allow for noisy timings.
+        assertTrue("Script callbacks took " + scriptNanos + " ns, Java took " + javaNanos + " ns",
+                scriptNanos < 100 * Math.max(javaNanos, n));
+    }
+
+    @Test public void sharedScript_keepsStatePerDelegate() {
+        CompiledScript script = ScriptCompiler.compile(
+                "var n = 0; on gameStarted { after (100) { n += 1; } }");
+        Field field1 = TestFields.newField(TestFields.bumperTableLayout());
+        Field field2 = TestFields.newField(TestFields.bumperTableLayout());
+        ScriptDelegate delegate1 = new ScriptDelegate(script);
+        ScriptDelegate delegate2 = new ScriptDelegate(script);
+        delegate1.gameStarted(field1);
+        delegate2.gameStarted(field2);
+        for (int i = 0; i < 20; i++) {
+            field1.tick(FRAME_NANOS, 1);
+            field2.tick(FRAME_NANOS, 1);
+        }
+        assertEquals(1, delegate1.getVariable("n"), 0);
+        assertEquals(1, delegate2.getVariable("n"), 0);
+    }
+
+    @Test public void budget_stopsLongLoops() {
+        ScriptDelegate delegate = new ScriptDelegate(ScriptCompiler.compile(
+                "var x = 0; on tick { while (true) { x += 1; } }"));
+        delegate.setBudgetNanos(1_000_000);
+        Field field = TestFields.newField();
+        delegate.tick(field, FRAME_NANOS);
+        delegate.tick(field, FRAME_NANOS);
+        assertEquals(2, delegate.getBudgetOverrunCount(ScriptEvent.TICK));
+        assertTrue(delegate.getVariable("x") > 0);
+    }
+
+    @Test public void errors_areCountedAndDoNotPropagate() {
+        // The field has no layout, so looking up elements fails.
+        ScriptDelegate delegate = new ScriptDelegate(ScriptCompiler.compile(
+                "var n = 0; on tick { n += 1; setRetracted(\"Wall\", true); n += 1; }"));
+        delegate.tick(TestFields.newField(), FRAME_NANOS);
+        assertEquals(1, delegate.getErrorCount());
+        assertNotNull(delegate.getLastError());
+        assertEquals(1, delegate.getVariable("n"), 0);
+    }
+
+    @Test public void gameStarted_resetsVariables() {
+        ScriptDelegate delegate = new ScriptDelegate(ScriptCompiler.compile(
+                "var n = 2 * 3; var started = 0;" +
+                "on tick { n += 1; } on gameStarted { started += 1; }"));
+        Field field = TestFields.newField();
+        delegate.tick(field, FRAME_NANOS);
+        assertEquals(7, delegate.getVariable("n"), 0);
+        delegate.gameStarted(field);
+        assertEquals(6, delegate.getVariable("n"), 0);
+        assertEquals(1, delegate.getVariable("started"), 0);
+    }
+
+    private static void assertInvalid(String script) {
+        try {
+            ScriptCompiler.compile(script);
+            fail("Expected error for " + script);
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test public void compile_errors() {
+        assertInvalid("on tick { x = 1; }");
+        assertInvalid("on tick { foo(); }");
+        assertInvalid("on tick { addScore(\"a\"); }");
+        assertInvalid("on tick { if (id + 1) addScore(1); }");
+        assertInvalid("on unknownEvent { }");
+        assertInvalid("on tick { } on tick { }");
+        assertInvalid("var id = 1;");
+        assertInvalid("on tick { addScore(1) }");
+        assertInvalid("on tick { \"a\"; }");
+        assertInvalid("on tick { addScore(1 @ 2); }");
+    }
+}
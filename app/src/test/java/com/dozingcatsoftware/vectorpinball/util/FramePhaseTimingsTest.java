@@ -0,0 +1,80 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.dozingcatsoftware.vectorpinball.util.FramePhaseTimings.Phase;
+
+/**
+ * Tests for {@link FramePhaseTimings} histogram bucketing and the statistics derived from it.
+ */
+public class FramePhaseTimingsTest {
+
+    @Test public void bucketForNanos_powerOfTwoMicroseconds() {
+        assertEquals(0, FramePhaseTimings.bucketForNanos(0));
+        assertEquals(0, FramePhaseTimings.bucketForNanos(1023));
+        assertEquals(1, FramePhaseTimings.bucketForNanos(1024));
+        assertEquals(2, FramePhaseTimings.bucketForNanos(2048));
+        assertEquals(2, FramePhaseTimings.bucketForNanos(4095));
+        assertEquals(3, FramePhaseTimings.bucketForNanos(4096));
+        // Huge values and negative values are clamped.
+        assertEquals(FramePhaseTimings.NUM_BUCKETS - 1,
+                FramePhaseTimings.bucketForNanos(Long.MAX_VALUE));
+        assertEquals(0, FramePhaseTimings.bucketForNanos(-5));
+    }
+
+    @Test public void record_tracksCountsTotalsAndMax() {
+        FramePhaseTimings timings = new FramePhaseTimings();
+        timings.record(Phase.WORLD_STEP, 1000);
+        timings.record(Phase.WORLD_STEP, 3000);
+        timings.record(Phase.FIELD_DRAW, 500);
+
+        assertEquals(2, timings.getCount(Phase.WORLD_STEP));
+        assertEquals(4000, timings.getTotalNanos(Phase.WORLD_STEP));
+        assertEquals(3000, timings.getMaxNanos(Phase.WORLD_STEP));
+        assertEquals(2000, timings.getMeanNanos(Phase.WORLD_STEP), 1e-9);
+        assertEquals(1, timings.getCount(Phase.FIELD_DRAW));
+        assertEquals(0, timings.getCount(Phase.RENDER));
+        assertEquals(0, timings.getMeanNanos(Phase.RENDER), 1e-9);
+    }
+
+    @Test public void percentile_returnsBucketUpperBound() {
+        FramePhaseTimings timings = new FramePhaseTimings();
+        // 90 fast samples under 1 microsecond, 10 slow samples of about 5ms.
+        for (int i = 0; i < 90; i++) {
+            timings.record(Phase.DELEGATE_TICK, 500);
+        }
+        for (int i = 0; i < 10; i++) {
+            timings.record(Phase.DELEGATE_TICK, 5_000_000);
+        }
+        // Fast samples are all in the first bucket, whose upper bound is 1024 nanos.
+        assertEquals(1024, timings.getPercentileNanos(Phase.DELEGATE_TICK, 50));
+        assertEquals(1024, timings.getPercentileNanos(Phase.DELEGATE_TICK, 90));
+        // The 99th percentile is in the slow bucket, capped by the maximum.
+        assertEquals(5_000_000, timings.getPercentileNanos(Phase.DELEGATE_TICK, 99));
+        assertEquals(0, timings.getPercentileNanos(Phase.RENDER, 99));
+    }
+
+    @Test public void recentAverage_movesTowardNewSamples() {
+        FramePhaseTimings timings = new FramePhaseTimings();
+        timings.record(Phase.RENDER, 1000);
+        assertEquals(1000, timings.getRecentAverageNanos(Phase.RENDER), 1e-9);
+        for (int i = 0; i < 200; i++) {
+            timings.record(Phase.RENDER, 9000);
+        }
+        double average = timings.getRecentAverageNanos(Phase.RENDER);
+        assertTrue(average > 8900 && average <= 9000);
+    }
+
+    @Test public void reset_clearsEverything() {
+        FramePhaseTimings timings = new FramePhaseTimings();
+        timings.record(Phase.ELEMENT_TICKS, 12345);
+        timings.reset();
+        assertEquals(0, timings.getCount(Phase.ELEMENT_TICKS));
+        assertEquals(0, timings.getMaxNanos(Phase.ELEMENT_TICKS));
+        assertEquals(0, timings.getBucketCount(
+                Phase.ELEMENT_TICKS, FramePhaseTimings.bucketForNanos(12345)));
+    }
+}
@@ -0,0 +1,387 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link FrameRateManager}, using a fake clock so frame timing is deterministic.
+ */
+public class FrameRateManagerTest {
+
+    static class FakeClock {
+        long nanos = 1_000_000_000L;
+
+        long nanoTime() {
+            return nanos;
+        }
+
+        void advanceNanos(long delta) {
+            nanos += delta;
+        }
+    }
+
+    static class FakeVsyncSource implements VsyncSource {
+        long lastVsync = 0;
+        long period = 0;
+
+        @Override public long lastVsyncNanos() {
+            return lastVsync;
+        }
+
+        @Override public long vsyncPeriodNanos() {
+            return period;
+        }
+
+        @Override public void setIdle(boolean idle) {
+        }
+    }
+
+    static final long NANOS_60FPS = 1_000_000_000L / 60;
+
+    private static FrameRateManager createManager(FakeClock clock) {
+        FrameRateManager frm = new FrameRateManager(
+                clock::nanoTime, new double[] {60, 30}, new double[] {57});
+        frm.setMaxTargetFrameRate(60);
+        frm.resetFrameRate();
+        return frm;
+    }
+
+    private static FrameRateManager createLadderManager(FakeClock clock, double initialRate) {
+        FrameRateManager frm = new FrameRateManager(
+                clock::nanoTime, new double[] {120, 90, 60, 30}, new double[] {114, 86, 57});
+        frm.setMaxTargetFrameRate(120);
+        frm.setInitialFrameRate(initialRate);
+        frm.resetFrameRate();
+        return frm;
+    }
+
+    /**
+     * Runs frames that each take `workNanos` to generate, and start `nanosPerFrame` apart.
+     */
+    private static void runFramesWithWork(FrameRateManager frm, FakeClock clock, int numFrames,
+            long workNanos, long nanosPerFrame) {
+        for (int i = 0; i < numFrames; i++) {
+            frm.frameStarted();
+            clock.advanceNanos(workNanos);
+            frm.frameWorkFinished();
+            clock.advanceNanos(nanosPerFrame - workNanos);
+        }
+    }
+
+    /**
+     * Runs 60fps frames with lots of headroom until the manager starts probing a higher rate, and
+     * returns the number of frames run, or -1 if it didn't start within `maxFrames`.
+     */
+    private static int runUntilProbe(FrameRateManager frm, FakeClock clock, int maxFrames) {
+        for (int i = 1; i <= maxFrames; i++) {
+            runFramesWithWork(frm, clock, 1, 2_000_000, NANOS_60FPS);
+            if (frm.isProbingHigherRate()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void runFrames(
+            FrameRateManager frm, FakeClock clock, int numFrames, long nanosPerFrame) {
+        for (int i = 0; i < numFrames; i++) {
+            frm.frameStarted();
+            clock.advanceNanos(nanosPerFrame);
+        }
+    }
+
+    @Test public void currentFps_unknownUntilHistoryFull() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        runFrames(frm, clock, 10, NANOS_60FPS);
+        assertEquals(-1, frm.currentFramesPerSecond(), 0);
+        runFrames(frm, clock, 1, NANOS_60FPS);
+        assertEquals(60, frm.currentFramesPerSecond(), 0.01);
+    }
+
+    @Test public void currentFps_usesMostRecentFrames() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        runFrames(frm, clock, 50, NANOS_60FPS);
+        assertEquals(60, frm.currentFramesPerSecond(), 0.01);
+        // After a full history of slower frames, only those are reflected.
+        runFrames(frm, clock, 11, 1_000_000_000L / 40);
+        assertEquals(40, frm.currentFramesPerSecond(), 0.01);
+    }
+
+    @Test public void setFrameHistorySize_changesWindow() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        frm.setFrameHistorySize(3);
+        assertEquals(3, frm.getFrameHistorySize());
+        runFrames(frm, clock, 3, NANOS_60FPS);
+        assertEquals(-1, frm.currentFramesPerSecond(), 0);
+        runFrames(frm, clock, 1, NANOS_60FPS);
+        assertEquals(60, frm.currentFramesPerSecond(), 0.01);
+
+        // Three 20ms frames fill the smaller window.
+        runFrames(frm, clock, 4, 20_000_000L);
+        assertEquals(50, frm.currentFramesPerSecond(), 0.01);
+
+        frm.setFrameHistorySize(100);
+        runFrames(frm, clock, 100, NANOS_60FPS);
+        assertEquals(-1, frm.currentFramesPerSecond(), 0);
+        runFrames(frm, clock, 1, NANOS_60FPS);
+        assertEquals(60, frm.currentFramesPerSecond(), 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setFrameHistorySize_rejectsNonPositive() {
+        FakeClock clock = new FakeClock();
+        createManager(clock).setFrameHistorySize(0);
+    }
+
+    @Test public void nanosToWait_targetsNextFrameStart() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        frm.frameStarted();
+        clock.advanceNanos(5_000_000);
+        long expected = (long) (1e9 / (60 * frm.targetFrameRateFudgeFactor)) - 5_000_000;
+        assertEquals(expected, frm.nanosToWaitUntilNextFrame());
+    }
+
+    @Test public void nanosToWait_catchesUpWhenBehindSchedule() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        runFrames(frm, clock, 9, NANOS_60FPS);
+        // One slow frame puts the history behind schedule, so the wait should be shorter than
+        // the single-frame goal.
+        frm.frameStarted();
+        clock.advanceNanos(40_000_000);
+        frm.frameStarted();
+        long singleFrameWait = frm.currentNanosPerFrame;
+        long wait = frm.nanosToWaitUntilNextFrame();
+        assertTrue(wait < singleFrameWait);
+        assertTrue(wait >= FrameRateManager.MIN_SLEEP_NANOS);
+    }
+
+    @Test public void nanosToWait_minimumWithNoHistory() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        assertEquals(FrameRateManager.MIN_SLEEP_NANOS, frm.nanosToWaitUntilNextFrame());
+    }
+
+    @Test public void slowFrames_reduceTargetRate() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        assertEquals(60, frm.targetFramesPerSecond(), 0);
+        runFrames(frm, clock, 200, 1_000_000_000L / 45);
+        assertEquals(30, frm.targetFramesPerSecond(), 0);
+    }
+
+    @Test public void clearTimestamps_resetsHistory() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        runFrames(frm, clock, 20, NANOS_60FPS);
+        frm.clearTimestamps();
+        assertEquals(-1, frm.currentFramesPerSecond(), 0);
+        assertEquals(FrameRateManager.MIN_SLEEP_NANOS, frm.nanosToWaitUntilNextFrame());
+    }
+
+    @Test public void vsync_waitsForNearestVsyncToGoal() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        FakeVsyncSource vsync = new FakeVsyncSource();
+        vsync.period = NANOS_60FPS;
+        frm.setVsyncSource(vsync);
+
+        // Frame starts 1ms after a vsync and takes 5ms; next frame should start at the next vsync.
+        vsync.lastVsync = clock.nanos - 1_000_000;
+        frm.frameStarted();
+        clock.advanceNanos(5_000_000);
+        assertEquals(vsync.lastVsync + NANOS_60FPS - clock.nanos, frm.nanosToWaitUntilNextFrame());
+    }
+
+    @Test public void vsync_skipsVsyncsForLowerTargetRate() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        FakeVsyncSource vsync = new FakeVsyncSource();
+        // 120Hz display with a 60fps target, so frames should start every other vsync.
+        vsync.period = NANOS_60FPS / 2;
+        frm.setVsyncSource(vsync);
+
+        vsync.lastVsync = clock.nanos;
+        frm.frameStarted();
+        clock.advanceNanos(2_000_000);
+        assertEquals(vsync.lastVsync + 2 * vsync.period - clock.nanos,
+                frm.nanosToWaitUntilNextFrame());
+    }
+
+    @Test public void vsync_usesNextVsyncWhenGoalMissed() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        FakeVsyncSource vsync = new FakeVsyncSource();
+        vsync.period = NANOS_60FPS;
+        frm.setVsyncSource(vsync);
+
+        long frameStart = clock.nanos;
+        vsync.lastVsync = frameStart;
+        frm.frameStarted();
+        // The frame took 1.5 vsync periods, and the source hasn't updated since the frame started.
+        clock.advanceNanos(NANOS_60FPS * 3 / 2);
+        long wait = frm.nanosToWaitUntilNextFrame();
+        assertEquals(frameStart + 2 * NANOS_60FPS, clock.nanos + wait);
+    }
+
+    @Test public void vsync_fallsBackToSleepPacingWithoutValidTimes() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        FakeVsyncSource vsync = new FakeVsyncSource();
+        frm.setVsyncSource(vsync);
+        frm.frameStarted();
+        clock.advanceNanos(5_000_000);
+        long expected = (long) (1e9 / (60 * frm.targetFrameRateFudgeFactor)) - 5_000_000;
+        // No vsync times yet.
+        assertEquals(expected, frm.nanosToWaitUntilNextFrame());
+        // Period but no timestamp, as after the source is stopped.
+        vsync.period = NANOS_60FPS;
+        assertEquals(expected, frm.nanosToWaitUntilNextFrame());
+        // Removing the source also uses sleep pacing.
+        vsync.lastVsync = clock.nanos - 1_000_000;
+        frm.setVsyncSource(null);
+        assertEquals(expected, frm.nanosToWaitUntilNextFrame());
+    }
+
+    @Test public void vsync_neverWaitsLessThanMinimum() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        FakeVsyncSource vsync = new FakeVsyncSource();
+        vsync.period = NANOS_60FPS;
+        frm.setVsyncSource(vsync);
+        vsync.lastVsync = clock.nanos;
+        frm.frameStarted();
+        // Just before the next vsync.
+        clock.advanceNanos(NANOS_60FPS - 100);
+        assertEquals(FrameRateManager.MIN_SLEEP_NANOS, frm.nanosToWaitUntilNextFrame());
+    }
+
+    @Test public void initialFrameRate_limitsStartingRate() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createLadderManager(clock, 60);
+        frm.frameStarted();
+        assertEquals(60, frm.targetFramesPerSecond(), 0);
+
+        // Rates between targets use the next lower target.
+        frm.setInitialFrameRate(100);
+        frm.resetFrameRate();
+        frm.frameStarted();
+        assertEquals(90, frm.targetFramesPerSecond(), 0);
+
+        // Above the maximum or unset uses the maximum.
+        frm.setInitialFrameRate(240);
+        frm.resetFrameRate();
+        frm.frameStarted();
+        assertEquals(120, frm.targetFramesPerSecond(), 0);
+        frm.setInitialFrameRate(0);
+        frm.resetFrameRate();
+        frm.frameStarted();
+        assertEquals(120, frm.targetFramesPerSecond(), 0);
+    }
+
+    @Test public void stableFrameRate_setAfterGoodFramesAndClearedOnReset() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createManager(clock);
+        assertEquals(-1, frm.getStableFrameRate(), 0);
+        runFrames(frm, clock, 600, NANOS_60FPS);
+        assertEquals(60, frm.getStableFrameRate(), 0);
+        frm.resetFrameRate();
+        frm.frameStarted();
+        assertEquals(-1, frm.getStableFrameRate(), 0);
+    }
+
+    @Test public void probe_triesHigherRateWithHeadroomAndKeepsItIfMaintained() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createLadderManager(clock, 60);
+        runFramesWithWork(frm, clock, 599, 2_000_000, NANOS_60FPS);
+        assertEquals(60, frm.targetFramesPerSecond(), 0);
+        assertFalse(frm.isProbingHigherRate());
+        runFramesWithWork(frm, clock, 1, 2_000_000, NANOS_60FPS);
+        assertTrue(frm.isProbingHigherRate());
+        assertEquals(90, frm.targetFramesPerSecond(), 0);
+
+        // Maintaining 90fps makes it the stable rate.
+        runFramesWithWork(frm, clock, 550, 2_000_000, 1_000_000_000L / 90);
+        assertFalse(frm.isProbingHigherRate());
+        assertEquals(90, frm.targetFramesPerSecond(), 0);
+        assertEquals(90, frm.getStableFrameRate(), 0);
+    }
+
+    @Test public void probe_notTriedWithoutEnoughHeadroom() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createLadderManager(clock, 60);
+        // 8ms of work is more than 60% of a 90fps frame.
+        runFramesWithWork(frm, clock, 2000, 8_000_000, NANOS_60FPS);
+        assertFalse(frm.isProbingHigherRate());
+        assertEquals(60, frm.targetFramesPerSecond(), 0);
+
+        // Or if probing is disabled.
+        frm.setAllowProbingHigherRates(false);
+        runFramesWithWork(frm, clock, 2000, 2_000_000, NANOS_60FPS);
+        assertEquals(60, frm.targetFramesPerSecond(), 0);
+    }
+
+    @Test public void probe_failureRevertsAndBacksOff() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createLadderManager(clock, 60);
+        // Lock 60fps first, then probe 90fps.
+        runFramesWithWork(frm, clock, 600, 2_000_000, NANOS_60FPS);
+        assertTrue(frm.isProbingHigherRate());
+        assertEquals(60, frm.getStableFrameRate(), 0);
+
+        // Frames are throttled to 60fps, so the probe fails quickly and 60 is locked again.
+        runFramesWithWork(frm, clock, 50, 2_000_000, NANOS_60FPS);
+        assertFalse(frm.isProbingHigherRate());
+        assertEquals(60, frm.targetFramesPerSecond(), 0);
+        assertEquals(60, frm.getStableFrameRate(), 0);
+        assertTrue(frm.frameRateLocked);
+
+        // No new probe until the backoff interval has passed, even with plenty of headroom.
+        int framesUntilProbe = runUntilProbe(frm, clock, 10000);
+        assertTrue(framesUntilProbe >= frm.initialProbeBackoffFrames - 50);
+        assertTrue(framesUntilProbe <= frm.initialProbeBackoffFrames);
+
+        // The interval doubles after another failure.
+        runFramesWithWork(frm, clock, 50, 2_000_000, NANOS_60FPS);
+        assertFalse(frm.isProbingHigherRate());
+        framesUntilProbe = runUntilProbe(frm, clock, 10000);
+        assertTrue(framesUntilProbe >= 2 * frm.initialProbeBackoffFrames - 50);
+        assertTrue(framesUntilProbe <= 2 * frm.initialProbeBackoffFrames);
+    }
+
+    @Test public void probe_neverExceedsMaxTargetRate() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createLadderManager(clock, 0);
+        frm.setMaxTargetFrameRate(90);
+        frm.resetFrameRate();
+        runFramesWithWork(frm, clock, 5000, 1_000_000, 1_000_000_000L / 90);
+        assertFalse(frm.isProbingHigherRate());
+        assertEquals(90, frm.targetFramesPerSecond(), 0);
+    }
+
+    @Test public void frameRateCap_limitsCurrentAndProbedRates() {
+        FakeClock clock = new FakeClock();
+        FrameRateManager frm = createLadderManager(clock, 0);
+        runFrames(frm, clock, 20, 1_000_000_000L / 120);
+        assertEquals(120, frm.targetFramesPerSecond(), 0);
+
+        frm.setFrameRateCap(60);
+        assertEquals(60, frm.targetFramesPerSecond(), 0);
+        runFramesWithWork(frm, clock, 5000, 1_000_000, NANOS_60FPS);
+        assertFalse(frm.isProbingHigherRate());
+        assertEquals(60, frm.targetFramesPerSecond(), 0);
+
+        // Removing the cap allows probing again.
+        frm.setFrameRateCap(Double.POSITIVE_INFINITY);
+        runFramesWithWork(frm, clock, 600, 1_000_000, NANOS_60FPS);
+        assertTrue(frm.isProbingHigherRate());
+        assertEquals(90, frm.targetFramesPerSecond(), 0);
+    }
+}
@@ -0,0 +1,65 @@
+package com.dozingcatsoftware.vectorpinball.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link FrameTimeHistogram} bucketing, percentiles, and jank counting.
+ */
+public class FrameTimeHistogramTest {
+
+    @Test public void bucketIndex_isMonotonicAndContainsValue() {
+        int prevIndex = -1;
+        for (long micros = 0; micros < 200_000; micros += 7) {
+            int index = FrameTimeHistogram.bucketIndexForMicros(micros);
+            assertTrue(index >= prevIndex);
+            assertTrue(micros <= FrameTimeHistogram.highestMicrosInBucket(index));
+            if (index > 0) {
+                assertTrue(micros > FrameTimeHistogram.highestMicrosInBucket(index - 1));
+            }
+            prevIndex = index;
+        }
+        assertEquals(FrameTimeHistogram.NUM_BUCKETS - 1,
+                FrameTimeHistogram.bucketIndexForMicros(Long.MAX_VALUE));
+    }
+
+    @Test public void bucketPrecision_withinSixPercent() {
+        for (long micros = 16; micros < 10_000_000; micros = micros * 3 / 2) {
+            long highest = FrameTimeHistogram.highestMicrosInBucket(
+                    FrameTimeHistogram.bucketIndexForMicros(micros));
+            assertTrue((highest - micros) <= micros / 16.0);
+        }
+    }
+
+    @Test public void percentilesAndJank() {
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        long jankThreshold = 25_000_000;
+        // 97 frames at 16.7ms, 3 stutters at 50ms.
+        for (int i = 0; i < 97; i++) {
+            histogram.record(16_700_000, jankThreshold);
+        }
+        for (int i = 0; i < 3; i++) {
+            histogram.record(50_000_000, jankThreshold);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(3, histogram.getJankCount());
+        assertEquals(50_000_000, histogram.getMaxNanos());
+
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 >= 16_700_000 && p50 < 16_700_000 * 1.07);
+        long p95 = histogram.getPercentileNanos(95);
+        assertTrue(p95 >= 16_700_000 && p95 < 16_700_000 * 1.07);
+        assertEquals(50_000_000, histogram.getPercentileNanos(99));
+    }
+
+    @Test public void reset_clearsCounts() {
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        histogram.record(100_000_000, 1);
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getJankCount());
+        assertEquals(0, histogram.getPercentileNanos(99));
+    }
+}